@@ -41,6 +41,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractAction;
@@ -79,17 +81,21 @@ import net.sf.jabref.external.FindFullTextAction;
 import net.sf.jabref.external.RegExpFileSearch;
 import net.sf.jabref.external.SynchronizeFileField;
 import net.sf.jabref.external.WriteXMPAction;
+import net.sf.jabref.groups.GroupMembership;
 import net.sf.jabref.groups.GroupSelector;
 import net.sf.jabref.groups.GroupTreeNode;
 import net.sf.jabref.gui.*;
 import net.sf.jabref.imports.AppendDatabaseAction;
 import net.sf.jabref.imports.BibtexParser;
+import net.sf.jabref.imports.BibtexSnapshot;
 import net.sf.jabref.imports.SPIRESFetcher;
 import net.sf.jabref.journals.AbbreviateAction;
 import net.sf.jabref.journals.UnabbreviateAction;
 import net.sf.jabref.labelPattern.LabelPatternUtil;
 import net.sf.jabref.labelPattern.SearchFixDuplicateLabels;
 import net.sf.jabref.search.NoSearchMatcher;
+import net.sf.jabref.search.SearchIndex;
+import net.sf.jabref.search.SearchSession;
 import net.sf.jabref.search.SearchMatcher;
 import net.sf.jabref.specialfields.Printed;
 import net.sf.jabref.specialfields.Priority;
@@ -132,6 +138,24 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
      */
     BibtexDatabase database;
 
+    // Full text index for the simple search, built on first use:
+    private SearchIndex searchIndex = null;
+
+    private SearchSession searchSession = null;
+
+    // The entries of each group, built on first use:
+    private GroupMembership groupMembership = null;
+
+    // Guards the search index, which may be loaded in the background:
+    private final Object searchIndexLock = new Object();
+
+    // Loads and writes search index files, one at a time:
+    private static final ExecutorService searchIndexExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "BasePanel-SearchIndex");
+        t.setDaemon(true);
+        return t;
+    });
+
     private int mode = 0;
     private EntryEditor currentEditor = null;
     private PreviewPanel currentPreview = null;
@@ -225,6 +249,7 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
     private SidePaneManager sidePaneManager;
 
     private GroupTreeUpdater groupTreeUpdater;
+    private CrossrefPreviewUpdater crossrefPreviewUpdater;
     private SearchAutoCompleterUpdater searchAutoCompleterUpdater;
     private AutoCompletersUpdater autoCompletersUpdater;
     private GlazedEntrySorter glazedEntrySorter;
@@ -279,6 +304,12 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
         }
         db.addDatabaseChangeListener(groupTreeUpdater);
 
+        // fields the preview shows through a crossref may change with another entry
+        if (crossrefPreviewUpdater == null) {
+            crossrefPreviewUpdater = new CrossrefPreviewUpdater();
+        }
+        db.addDatabaseChangeListener(crossrefPreviewUpdater);
+
         if (file == null) {
             if (!database.getEntries().isEmpty()) {
                 // if the database is not empty and no file is assigned,
@@ -456,9 +487,9 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
                 if ((bes != null) && (bes.length > 0)) {
                     // Create a CompoundEdit to make the action undoable.
                     NamedCompound ce = new NamedCompound(Globals.lang(bes.length > 1 ? "cut entries" : "cut entry"));
-                    // Loop through the array of entries, and delete them.
+                    // Remove all entries at once, so that listeners get a single event.
+                    database.removeEntries(Arrays.asList(bes));
                     for (BibtexEntry be : bes) {
-                        database.removeEntry(be.getId());
                         ensureNotShowing(be);
                         ce.addEdit(new UndoableRemoveEntry(database, be, BasePanel.this));
                     }
@@ -490,9 +521,9 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
                     if (goOn) {
                         // Create a CompoundEdit to make the action undoable.
                         NamedCompound ce = new NamedCompound(Globals.lang(bes.length > 1 ? "delete entries" : "delete entry"));
-                        // Loop through the array of entries, and delete them.
+                        // Remove all entries at once, so that listeners get a single event.
+                        database.removeEntries(Arrays.asList(bes));
                         for (BibtexEntry be : bes) {
-                            database.removeEntry(be.getId());
                             ensureNotShowing(be);
                             ce.addEdit(new UndoableRemoveEntry(database, be, BasePanel.this));
                         }
@@ -1798,6 +1829,10 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
         if (commit) {
             session.commit();
             this.encoding = encoding; // Make sure to remember which encoding we used.
+            BibtexSnapshot.delete(file);
+            if (!selectedOnly) {
+                writeSearchIndexLater(file);
+            }
         } else {
             session.cancel();
         }
@@ -1874,10 +1909,10 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
 
         @Override
         public void databaseChanged(DatabaseChangeEvent e) {
-            if ((e.getType() == ChangeType.ADDED_ENTRY)
+            if (((e.getType() == ChangeType.ADDED_ENTRY) || (e.getType() == ChangeType.ADDED_ENTRIES))
                     && (Globals.prefs.getBoolean("autoAssignGroup"))
                     && (frame.groupToggle.isSelected())) {
-                BibtexEntry[] entries = {e.getEntry()};
+                BibtexEntry[] entries = e.getEntries().toArray(new BibtexEntry[e.getEntries().size()]);
                 TreePath[] selection = frame.groupSelector.getGroupsTree().getSelectionPaths();
                 if (selection != null) {
                     // it is possible that the user selected nothing. Therefore, checked for "!= null"
@@ -1896,6 +1931,32 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
         }
     }
 
+    /**
+     * Updates the preview when an entry changes that the previewed entry
+     * refers to by its crossref field.
+     */
+    private class CrossrefPreviewUpdater implements DatabaseChangeListener {
+
+        @Override
+        public void databaseChanged(DatabaseChangeEvent e) {
+            if ((e.getType() != ChangeType.CHANGED_ENTRY) || (mode != SHOWING_PREVIEW) || (currentPreview == null)) {
+                return;
+            }
+            final PreviewPanel preview = currentPreview;
+            final BibtexEntry shown = preview.getEntry();
+            if ((shown != null) && database.getDependentEntries(e.getEntry()).contains(shown)) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (preview.getEntry() == shown) {
+                            preview.update();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
     /**
      * Ensures that the search auto completer is up to date when entries are
      * changed AKA Let the auto completer, if any, harvest words from the entry
@@ -1906,6 +1967,8 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
         public void databaseChanged(DatabaseChangeEvent e) {
             if ((e.getType() == ChangeType.CHANGED_ENTRY) || (e.getType() == ChangeType.ADDED_ENTRY)) {
                 Util.updateCompletersForEntry(BasePanel.this.searchAutoCompleterHM, e.getEntry());
+            } else if (e.getType() == ChangeType.ADDED_ENTRIES) {
+                Util.updateCompletersForEntries(BasePanel.this.searchAutoCompleterHM, e.getEntries());
             }
         }
     }
@@ -1920,6 +1983,8 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
         public void databaseChanged(DatabaseChangeEvent e) {
             if ((e.getType() == ChangeType.CHANGED_ENTRY) || (e.getType() == ChangeType.ADDED_ENTRY)) {
                 Util.updateCompletersForEntry(BasePanel.this.getAutoCompleters(), e.getEntry());
+            } else if (e.getType() == ChangeType.ADDED_ENTRIES) {
+                Util.updateCompletersForEntries(BasePanel.this.getAutoCompleters(), e.getEntries());
             }
         }
     }
@@ -2721,6 +2786,77 @@ public final class BasePanel extends JPanel implements ClipboardOwner, FileUpdat
         return database;
     }
 
+    /**
+     * Returns the full text index of the database, which is created when
+     * first asked for and then kept up to date with the database. It is
+     * loaded from the index file of the database file if there is a valid
+     * one; otherwise a new index file is written in the background.
+     */
+    public SearchIndex getSearchIndex() {
+        synchronized (searchIndexLock) {
+            if (searchIndex == null) {
+                File file = getFile();
+                boolean useFile = (file != null) && Globals.prefs.getBoolean(JabRefPreferences.USE_SEARCH_INDEX_FILES);
+                if (useFile) {
+                    searchIndex = SearchIndex.load(database, file);
+                }
+                if (searchIndex == null) {
+                    searchIndex = new SearchIndex(database);
+                    if (useFile) {
+                        writeSearchIndexLater(file);
+                    }
+                }
+                database.addDatabaseChangeListener(searchIndex);
+            }
+            return searchIndex;
+        }
+    }
+
+    /**
+     * Returns the session that keeps the results of recent simple searches
+     * in the database, so that refined searches are faster.
+     */
+    public SearchSession getSearchSession() {
+        synchronized (searchIndexLock) {
+            if (searchSession == null) {
+                searchSession = new SearchSession(database, getSearchIndex());
+            }
+            return searchSession;
+        }
+    }
+
+    /**
+     * Returns the group memberships of the entries of the database, which
+     * are kept up to date with the database once created.
+     */
+    public synchronized GroupMembership getGroupMembership() {
+        if (groupMembership == null) {
+            groupMembership = new GroupMembership(database);
+            database.addDatabaseChangeListener(groupMembership);
+        }
+        return groupMembership;
+    }
+
+    /**
+     * Gets the search index ready in the background, so that the first
+     * search after opening the database does not have to wait for it.
+     */
+    public void loadSearchIndexLater() {
+        searchIndexExecutor.execute(this::getSearchIndex);
+    }
+
+    /**
+     * Writes the index file for the given database file in the background,
+     * from a snapshot of the database as it is now.
+     */
+    public void writeSearchIndexLater(final File file) {
+        if (!Globals.prefs.getBoolean(JabRefPreferences.USE_SEARCH_INDEX_FILES)) {
+            return;
+        }
+        final BibtexDatabase snapshot = database.snapshot();
+        searchIndexExecutor.execute(() -> SearchIndex.write(file, snapshot));
+    }
+
     public void preambleEditorClosing() {
         preambleEditor = null;
     }
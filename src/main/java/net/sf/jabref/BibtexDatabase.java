@@ -38,38 +38,111 @@ import java.beans.PropertyVetoException;
 import java.beans.VetoableChangeListener;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.JOptionPane;
 
+import net.sf.jabref.util.PersistentHashMap;
+
+/**
+ * The entries, strings and preamble of a BibTeX database.
+ *
+ * This class is thread safe. Lookups take a read lock, so that background
+ * workers and the EDT can read concurrently, while changes to the entry set,
+ * the cite keys and the strings take the write lock. Change events are fired
+ * after the write lock has been released, except for the ones caused by
+ * setCiteKeyForEntry(). The collections returned by getEntries(),
+ * getKeySet() and the like are live views which can be iterated while the
+ * database is changed, but may or may not reflect such changes. Readers that
+ * need a consistent view should work on a snapshot() instead.
+ */
 public class BibtexDatabase {
 
-    private final Map<String, BibtexEntry> _entries = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Written under the write lock; concurrent so that the views returned
+    // by getEntries() and getKeySet() can be iterated without locking.
+    // In a snapshot, this is a view of _entryCopies.
+    private final Map<String, BibtexEntry> _entries;
+
+    // The entries by cite key. In a snapshot, it is built when first needed.
+    private volatile CiteKeyIndex _keyIndex;
+
+    volatile String _preamble = null;
+
+    private final Map<String, BibtexString> _strings;
+
+    private final Map<String, BibtexString> _stringsByName;
+
+    // Fully resolved contents of strings by lower case label. Replaced by an
+    // empty map whenever a string is added, removed or changed.
+    private volatile Map<String, String> _resolvedStrings = new ConcurrentHashMap<>();
 
-    private final Map<String, BibtexEntry> _keyToEntryMap = new HashMap<>();
+    // Copies of the entries by ID, and the ID of the first entry for each
+    // key in _keyIndex. They are maintained from the first call of snapshot()
+    // on, and shared by all snapshots taken since. Field changes replace the
+    // copies without the lock; all other changes of the copies are made
+    // under the write lock, but also with compare-and-set.
+    private final AtomicReference<PersistentHashMap<String, BibtexEntry>> _entryCopies = new AtomicReference<>();
 
-    String _preamble = null;
+    private volatile PersistentHashMap<String, String> _keyIds;
 
-    private final HashMap<String, BibtexString> _strings = new HashMap<>();
+    // Null in a snapshot.
+    private final CrossrefIndex _crossrefs;
 
-    private final Map<String, BibtexString> _stringsByName = new HashMap<>();
+    private final boolean _readOnly;
 
-    Set<DatabaseChangeListener> changeListeners = new HashSet<>();
+    Set<DatabaseChangeListener> changeListeners = new CopyOnWriteArraySet<>();
 
-    private boolean suppressEvents = false;
+    private volatile boolean suppressEvents = false;
+
+    // Increased by every change event, even if it is suppressed:
+    private final AtomicLong _modificationCount = new AtomicLong();
 
     public boolean followCrossrefs = true;
 
+    public BibtexDatabase() {
+        _entries = new ConcurrentHashMap<>();
+        _keyIndex = new CiteKeyIndex();
+        _strings = new ConcurrentHashMap<>();
+        _stringsByName = new HashMap<>();
+        _crossrefs = new CrossrefIndex();
+        _readOnly = false;
+    }
+
     /**
-     * use a map instead of a set since i need to know how many of each key is
-     * inthere
+     * Creates a snapshot of the given database. Must be called with the
+     * source's lock held, and after its entry copies have been set up.
      */
-    private HashMap<String, Integer> allKeys = new HashMap<String, Integer>();
+    private BibtexDatabase(BibtexDatabase source) {
+        _entryCopies.set(source._entryCopies.get());
+        _keyIds = source._keyIds;
+        _entries = _entryCopies.get().asMap();
+        // Strings are changed in place, so they have to be copied:
+        _strings = new HashMap<>();
+        _stringsByName = new HashMap<>();
+        for (BibtexString string : source._strings.values()) {
+            BibtexString copy = string.readOnlyCopy();
+            _strings.put(copy.getId(), copy);
+            _stringsByName.put(copy.getName().toLowerCase(), copy);
+        }
+        _preamble = source._preamble;
+        followCrossrefs = source.followCrossrefs;
+        _crossrefs = null;
+        _readOnly = true;
+    }
 
     /*
 	 * Entries are stored in a HashMap with the ID as key. What happens if
@@ -87,41 +160,165 @@ public class BibtexDatabase {
             if (pce.getPropertyName() == null) {
                 fireDatabaseChanged(new DatabaseChangeEvent(BibtexDatabase.this, DatabaseChangeEvent.ChangeType.CHANGING_ENTRY, (BibtexEntry) pce.getSource()));
             } else if ("id".equals(pce.getPropertyName())) {
-                // locate the entry under its old key
-                BibtexEntry oldEntry = _entries.remove(pce.getOldValue());
-
-                if (oldEntry != pce.getSource()) {
-                    // Something is very wrong!
-                    // The entry under the old key isn't
-                    // the one that sent this event.
-                    // Restore the old state.
-                    _entries.put((String) pce.getOldValue(), oldEntry);
-                    throw new PropertyVetoException("Wrong old ID", pce);
-                }
+                lock.writeLock().lock();
+                try {
+                    // locate the entry under its old key
+                    BibtexEntry oldEntry = _entries.get(pce.getOldValue());
+
+                    if (oldEntry != pce.getSource()) {
+                        // Something is very wrong!
+                        // The entry under the old key isn't
+                        // the one that sent this event.
+                        throw new PropertyVetoException("Wrong old ID", pce);
+                    }
 
-                if (_entries.get(pce.getNewValue()) != null) {
-                    _entries.put((String) pce.getOldValue(), oldEntry);
-                    throw new PropertyVetoException("New ID already in use, please choose another",
-                            pce);
-                }
+                    if (_entries.get(pce.getNewValue()) != null) {
+                        throw new PropertyVetoException("New ID already in use, please choose another",
+                                pce);
+                    }
 
-                // and re-file this entry
-                _entries.put((String) pce.getNewValue(),
-                        (BibtexEntry) pce.getSource());
+                    // and re-file this entry
+                    _entries.remove(pce.getOldValue());
+                    _entries.put((String) pce.getNewValue(),
+                            (BibtexEntry) pce.getSource());
+
+                    if (_entryCopies.get() != null) {
+                        String oldId = (String) pce.getOldValue();
+                        String newId = (String) pce.getNewValue();
+                        _entryCopies.updateAndGet(copies -> copies.minus(oldId).plus(newId, oldEntry.copy(newId)));
+                        String key = oldEntry.getCiteKey();
+                        if ((key != null) && oldId.equals(_keyIds.get(key))) {
+                            _keyIds = _keyIds.plus(key, newId);
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
             } else {
-                fireDatabaseChanged(new DatabaseChangeEvent(BibtexDatabase.this, DatabaseChangeEvent.ChangeType.CHANGED_ENTRY, (BibtexEntry) pce.getSource()));
+                // The entry has already been changed; bring its copy and the
+                // indexes up to date:
+                updateCopy((BibtexEntry) pce.getSource(), pce.getPropertyName(),
+                        (String) pce.getNewValue());
+                updateIndexes(pce);
+                fireDatabaseChanged(new DatabaseChangeEvent(BibtexDatabase.this, DatabaseChangeEvent.ChangeType.CHANGED_ENTRY,
+                        (BibtexEntry) pce.getSource(), pce.getPropertyName()));
                 //Util.pr(pce.getSource().toString()+"\n"+pce.getPropertyName()
                 //    +"\n"+pce.getNewValue());
             }
         }
     };
 
+    /**
+     * Replaces the copy of the entry after a field change, without taking
+     * the lock, so that edits never wait for readers. The field gets the
+     * value from the change event rather than from the entry: if a later
+     * listener vetoes the change, the event reverting it comes before the
+     * entry itself is restored.
+     */
+    private void updateCopy(BibtexEntry entry, String field, String value) {
+        _entryCopies.updateAndGet(copies -> {
+            if (copies == null) {
+                return null;
+            }
+            String id = entry.getId();
+            return _entries.get(id) == entry ? copies.plus(id, entry.copy(id, field, value)) : copies;
+        });
+    }
+
+    private void updateIndexes(PropertyChangeEvent pce) {
+        String field = pce.getPropertyName();
+        BibtexEntry entry = (BibtexEntry) pce.getSource();
+        boolean keyChange = BibtexFields.KEY_FIELD.equals(field);
+        boolean structural = keyChange || CrossrefIndex.CROSSREF_FIELD.equals(field);
+        if (structural) {
+            lock.writeLock().lock();
+        }
+        try {
+            if (_entries.get(entry.getId()) == entry) {
+                if (keyChange) {
+                    unindexKey((String) pce.getOldValue(), entry);
+                    indexKey((String) pce.getNewValue(), entry);
+                }
+                _crossrefs.fieldChanged(entry, field, (String) pce.getOldValue(), (String) pce.getNewValue());
+            }
+        } finally {
+            if (structural) {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void checkWritable() {
+        if (_readOnly) {
+            throw new UnsupportedOperationException("A database snapshot cannot be modified");
+        }
+    }
+
+    /**
+     * Returns an unmodifiable copy of this database as it is now. Changes to
+     * the database are not reflected in the snapshot, so background tasks
+     * like saving, exporting and searching can work on it without locking,
+     * and see no half-done changes. The entries of the snapshot are copies,
+     * which must not be modified. Use getEntryById() on this database to
+     * find the original of an entry.
+     *
+     * The first snapshot of a database takes time proportional to the number
+     * of entries; after that, this database keeps its copies up to date on
+     * every change, and further snapshots only have to copy the strings.
+     * Changes made with BibtexEntry.setField(Map), which fires no events,
+     * are not seen by snapshots.
+     *
+     * @return A snapshot, which throws UnsupportedOperationException on
+     * attempts to change it. A snapshot is its own snapshot.
+     */
+    public BibtexDatabase snapshot() {
+        if (_readOnly) {
+            return this;
+        }
+        if (_entryCopies.get() == null) {
+            lock.writeLock().lock();
+            try {
+                if (_entryCopies.get() == null) {
+                    PersistentHashMap<String, String> keyIds = PersistentHashMap.empty();
+                    for (String key : _keyIndex.getKeys()) {
+                        keyIds = keyIds.plus(key, _keyIndex.getFirst(key).getId());
+                    }
+                    _keyIds = keyIds;
+                    // Field changes made while the entries are copied are
+                    // put in by updateCopy(), and are newer than ours:
+                    _entryCopies.set(PersistentHashMap.<String, BibtexEntry>empty());
+                    for (BibtexEntry entry : _entries.values()) {
+                        String id = entry.getId();
+                        _entryCopies.updateAndGet(copies -> copies.containsKey(id) ? copies
+                                : copies.plus(id, entry.copy(id)));
+                    }
+                }
+                return new BibtexDatabase(this);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lock.readLock().lock();
+        try {
+            return new BibtexDatabase(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if this is a snapshot, which cannot be modified.
+     */
+    public boolean isSnapshot() {
+        return _readOnly;
+    }
+
     /**
      * Returns the number of entries.
      *
      * @return
      */
-    public synchronized int getEntryCount() {
+    public int getEntryCount() {
         return _entries.size();
     }
 
@@ -131,7 +328,7 @@ public class BibtexDatabase {
      *
      * @return
      */
-    public synchronized Set<String> getKeySet() {
+    public Set<String> getKeySet() {
         return _entries.keySet();
     }
 
@@ -142,7 +339,7 @@ public class BibtexDatabase {
      * @param comp
      * @return
      */
-    public synchronized EntrySorter getSorter(Comparator<BibtexEntry> comp) {
+    public EntrySorter getSorter(Comparator<BibtexEntry> comp) {
         EntrySorter sorter = new EntrySorter(_entries, comp);
         addDatabaseChangeListener(sorter);
         return sorter;
@@ -163,11 +360,11 @@ public class BibtexDatabase {
      * @param id
      * @return
      */
-    public synchronized BibtexEntry getEntryById(String id) {
-        return _entries.get(id);
+    public BibtexEntry getEntryById(String id) {
+        return id == null ? null : _entries.get(id);
     }
 
-    public synchronized Collection<BibtexEntry> getEntries() {
+    public Collection<BibtexEntry> getEntries() {
         return _entries.values();
     }
 
@@ -190,92 +387,247 @@ public class BibtexDatabase {
     //        }
     //        return back;
     //    }
-    public synchronized BibtexEntry getEntryByKey(String key) {
-        return _keyToEntryMap.get(key);
+    public BibtexEntry getEntryByKey(String key) {
+        lock.readLock().lock();
+        try {
+            return entryForKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public synchronized BibtexEntry[] getEntriesByKey(String key) {
-        // Use the new key map if available, otherwise fall back
-        if (_keyToEntryMap != null) {
-            BibtexEntry entry = _keyToEntryMap.get(key);
-            if (entry != null) {
-                return new BibtexEntry[]{entry};
-            } else {
-                return new BibtexEntry[0];
+    private BibtexEntry entryForKey(String key) {
+        if (!_readOnly) {
+            return _keyIndex.getFirst(key);
+        }
+        String id = key == null ? null : _keyIds.get(key);
+        return id == null ? null : _entries.get(id);
+    }
+
+    /**
+     * Returns all entries with the given key, in the order they got it.
+     */
+    public BibtexEntry[] getEntriesByKey(String key) {
+        lock.readLock().lock();
+        try {
+            List<BibtexEntry> entries = keyIndex().get(key);
+            return entries.toArray(new BibtexEntry[entries.size()]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the keys that are used by more than one entry.
+     */
+    public Set<String> getDuplicateKeys() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(keyIndex().getDuplicateKeys());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CiteKeyIndex keyIndex() {
+        if (_keyIndex == null) {
+            // A snapshot, which does not change:
+            _keyIndex = CiteKeyIndex.of(_entries.values());
+        }
+        return _keyIndex;
+    }
+
+    /**
+     * Returns the entries whose crossref field refers to the given entry, and
+     * whose resolved fields may therefore change along with it.
+     */
+    public Set<BibtexEntry> getDependentEntries(BibtexEntry entry) {
+        String key = entry.getCiteKey();
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        if (_crossrefs != null) {
+            return _crossrefs.getChildren(key);
+        }
+        Set<BibtexEntry> dependents = new HashSet<>();
+        for (BibtexEntry e : _entries.values()) {
+            if (key.equals(e.getField(CrossrefIndex.CROSSREF_FIELD))) {
+                dependents.add(e);
             }
         }
+        return dependents;
+    }
 
-        // Fallback to original implementation (should rarely be called)
-        ArrayList<BibtexEntry> entries = new ArrayList<>();
-        for (BibtexEntry entry : _entries.values()) {
-            if (key.equals(entry.getCiteKey())) {
-                entries.add(entry);
+    public boolean insertEntry(BibtexEntry entry) throws KeyCollisionException {
+        checkWritable();
+        boolean duplicate;
+        lock.writeLock().lock();
+        try {
+            if (_entries.containsKey(entry.getId())) {
+                throw new KeyCollisionException("ID is already in use, please choose another");
             }
+            duplicate = addEntry(entry);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return entries.toArray(new BibtexEntry[0]);
+
+        fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.ADDED_ENTRY, entry));
+        return duplicate;
     }
 
-    // Update insertEntry to maintain the map
-    public synchronized boolean insertEntry(BibtexEntry entry) throws KeyCollisionException {
-        String id = entry.getId();
-        if (getEntryById(id) != null) {
-            throw new KeyCollisionException("ID is already in use, please choose another");
+    /**
+     * Inserts several entries at once. Listeners are notified by a single
+     * ADDED_ENTRIES event, which lets them update in one pass; this is much
+     * faster than inserting the entries one by one when there are many.
+     *
+     * @param entries The entries to insert.
+     * @return true if the key of any of the entries was already in use.
+     * @throws KeyCollisionException if the ID of an entry is already in use,
+     * in the database or in the given entries. No entry is inserted then.
+     */
+    public boolean insertEntries(Collection<BibtexEntry> entries) throws KeyCollisionException {
+        checkWritable();
+        List<BibtexEntry> added = new ArrayList<>(entries);
+        if (added.isEmpty()) {
+            return false;
+        }
+        boolean duplicate = false;
+        lock.writeLock().lock();
+        try {
+            Set<String> ids = new HashSet<>();
+            for (BibtexEntry entry : added) {
+                if (_entries.containsKey(entry.getId()) || !ids.add(entry.getId())) {
+                    throw new KeyCollisionException("ID is already in use, please choose another");
+                }
+            }
+            for (BibtexEntry entry : added) {
+                duplicate |= addEntry(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
 
+        fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.ADDED_ENTRIES, added));
+        return duplicate;
+    }
+
+    // Called with the write lock held. Returns true if the key is a duplicate.
+    private boolean addEntry(BibtexEntry entry) {
+        String id = entry.getId();
         entry.addPropertyChangeListener(listener);
         _entries.put(id, entry);
+        if (_entryCopies.get() != null) {
+            _entryCopies.updateAndGet(copies -> copies.plus(id, entry.copy(id)));
+        }
 
-        // MAINTAIN THE KEY MAP
-        String citeKey = entry.getCiteKey();
-        if (citeKey != null && !citeKey.isEmpty()) {
-            _keyToEntryMap.put(citeKey, entry);
+        boolean duplicate = indexKey(entry.getCiteKey(), entry);
+        _crossrefs.add(entry);
+        return duplicate;
+    }
+
+    public BibtexEntry removeEntry(String id) {
+        checkWritable();
+        BibtexEntry oldValue;
+        lock.writeLock().lock();
+        try {
+            oldValue = takeEntry(id);
+        } finally {
+            lock.writeLock().unlock();
         }
 
-        fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.ADDED_ENTRY, entry));
-        return checkForDuplicateKeyAndAdd(null, entry.getCiteKey(), false);
+        if (oldValue != null) {
+            fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.REMOVED_ENTRY, oldValue));
+        }
+        return oldValue;
     }
 
-    // Update removeEntry
-    public synchronized BibtexEntry removeEntry(String id) {
-        BibtexEntry oldValue = _entries.remove(id);
+    /**
+     * Removes several entries at once. Listeners are notified by a single
+     * REMOVED_ENTRIES event.
+     *
+     * @param entries The entries to remove. Entries which are not in the
+     * database are ignored.
+     * @return The entries that were removed.
+     */
+    public List<BibtexEntry> removeEntries(Collection<BibtexEntry> entries) {
+        checkWritable();
+        List<BibtexEntry> removed = new ArrayList<>(entries.size());
+        lock.writeLock().lock();
+        try {
+            for (BibtexEntry entry : entries) {
+                BibtexEntry oldValue = takeEntry(entry.getId());
+                if (oldValue != null) {
+                    removed.add(oldValue);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (!removed.isEmpty()) {
+            fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.REMOVED_ENTRIES, removed));
+        }
+        return removed;
+    }
+
+    // Called with the write lock held.
+    private BibtexEntry takeEntry(String id) {
+        BibtexEntry oldValue = id == null ? null : _entries.remove(id);
         if (oldValue == null) {
             return null;
         }
-
-        // REMOVE FROM KEY MAP
-        String citeKey = oldValue.getCiteKey();
-        if (citeKey != null) {
-            _keyToEntryMap.remove(citeKey);
+        if (_entryCopies.get() != null) {
+            _entryCopies.updateAndGet(copies -> copies.minus(id));
         }
 
-        removeKeyFromSet(citeKey);
+        unindexKey(oldValue.getCiteKey(), oldValue);
+        _crossrefs.remove(oldValue);
         oldValue.removePropertyChangeListener(listener);
-        fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.REMOVED_ENTRY, oldValue));
         return oldValue;
     }
 
-    // Update setCiteKeyForEntry
-    public synchronized boolean setCiteKeyForEntry(String id, String key) {
-        if (!_entries.containsKey(id)) {
-            return false;
+    /**
+     * Sets the key of the entry with the given id.
+     *
+     * @return true if another entry has the same key.
+     */
+    public boolean setCiteKeyForEntry(String id, String key) {
+        checkWritable();
+        // The key field is changed under the lock as well, so the change
+        // event for the entry, which updates the key index, is fired while
+        // holding it.
+        lock.writeLock().lock();
+        try {
+            BibtexEntry entry = getEntryById(id);
+            if (entry == null) {
+                return false;
+            }
+            if (key != null) {
+                entry.setField(BibtexFields.KEY_FIELD, key);
+            } else {
+                entry.clearField(BibtexFields.KEY_FIELD);
+            }
+            return _keyIndex.count(entry.getCiteKey()) > 1;
+        } finally {
+            lock.writeLock().unlock();
         }
-        BibtexEntry entry = getEntryById(id);
-        String oldKey = entry.getCiteKey();
+    }
 
-        // UPDATE KEY MAP
-        if (oldKey != null) {
-            _keyToEntryMap.remove(oldKey);
-        }
-        if (key != null && !key.isEmpty()) {
-            _keyToEntryMap.put(key, entry);
+    // Called with the write lock held. Returns true if the key was in use.
+    private boolean indexKey(String key, BibtexEntry entry) {
+        boolean duplicate = _keyIndex.add(key, entry);
+        if ((_entryCopies.get() != null) && !duplicate && (key != null) && !key.isEmpty()) {
+            _keyIds = _keyIds.plus(key, entry.getId());
         }
+        return duplicate;
+    }
 
-        if (key != null) {
-            entry.setField(BibtexFields.KEY_FIELD, key);
-        } else {
-            entry.clearField(BibtexFields.KEY_FIELD);
+    private void unindexKey(String key, BibtexEntry entry) {
+        _keyIndex.remove(key, entry);
+        if ((_entryCopies.get() != null) && (key != null) && entry.getId().equals(_keyIds.get(key))) {
+            BibtexEntry first = _keyIndex.getFirst(key);
+            _keyIds = first == null ? _keyIds.minus(key) : _keyIds.plus(key, first.getId());
         }
-        return checkForDuplicateKeyAndAdd(oldKey, entry.getCiteKey(), false);
     }
 
     /**
@@ -283,7 +635,8 @@ public class BibtexDatabase {
      *
      * @param preamble
      */
-    public synchronized void setPreamble(String preamble) {
+    public void setPreamble(String preamble) {
+        checkWritable();
         _preamble = preamble;
     }
 
@@ -292,7 +645,7 @@ public class BibtexDatabase {
      *
      * @return
      */
-    public synchronized String getPreamble() {
+    public String getPreamble() {
         return _preamble;
     }
 
@@ -301,18 +654,26 @@ public class BibtexDatabase {
      *
      * @param string
      */
-    public synchronized void addString(BibtexString string)
+    public void addString(BibtexString string)
             throws KeyCollisionException {
-        if (hasStringLabel(string.getName())) {
-            throw new KeyCollisionException(Globals.lang("A string with this label already exists"));
-        }
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            if (hasStringLabel(string.getName())) {
+                throw new KeyCollisionException(Globals.lang("A string with this label already exists"));
+            }
 
-        if (_strings.containsKey(string.getId())) {
-            throw new KeyCollisionException("Duplicate BibtexString id.");
-        }
+            if (_strings.containsKey(string.getId())) {
+                throw new KeyCollisionException("Duplicate BibtexString id.");
+            }
 
-        _strings.put(string.getId(), string);
-        _stringsByName.put(string.getName().toLowerCase(), string);
+            _strings.put(string.getId(), string);
+            _stringsByName.put(string.getName().toLowerCase(), string);
+            string._database = this;
+            stringsChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -320,10 +681,49 @@ public class BibtexDatabase {
      *
      * @param id
      */
-    public synchronized void removeString(String id) {
-        BibtexString removed = _strings.remove(id);
-        if (removed != null) {
-            _stringsByName.remove(removed.getName().toLowerCase());
+    public void removeString(String id) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            BibtexString removed = _strings.remove(id);
+            if (removed != null) {
+                _stringsByName.remove(removed.getName().toLowerCase());
+                if (removed._database == this) {
+                    removed._database = null;
+                }
+                stringsChanged();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Called by a string of this database after its name or content has
+     * changed.
+     */
+    void stringChanged(BibtexString string, String oldName) {
+        checkWritable();
+        lock.writeLock().lock();
+        try {
+            if (_strings.get(string.getId()) != string) {
+                return;
+            }
+            if ((oldName != null) && (_stringsByName.get(oldName.toLowerCase()) == string)) {
+                _stringsByName.remove(oldName.toLowerCase());
+            }
+            _stringsByName.put(string.getName().toLowerCase(), string);
+            stringsChanged();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the write lock held.
+    private void stringsChanged() {
+        _resolvedStrings = new ConcurrentHashMap<>();
+        if (_crossrefs != null) {
+            _crossrefs.invalidateAll();
         }
     }
 
@@ -353,8 +753,8 @@ public class BibtexDatabase {
      * @param o
      * @return
      */
-    public synchronized BibtexString getString(String o) {
-        return _strings.get(o);
+    public BibtexString getString(String o) {
+        return o == null ? null : _strings.get(o);
     }
 
     /**
@@ -362,7 +762,7 @@ public class BibtexDatabase {
      *
      * @return
      */
-    public synchronized int getStringCount() {
+    public int getStringCount() {
         return _strings.size();
     }
 
@@ -372,11 +772,16 @@ public class BibtexDatabase {
      * @param label
      * @return
      */
-    public synchronized boolean hasStringLabel(String label) {
+    public boolean hasStringLabel(String label) {
         if (label == null) {
             return false;
         }
-        return _stringsByName.containsKey(label.toLowerCase());
+        lock.readLock().lock();
+        try {
+            return _stringsByName.containsKey(label.toLowerCase());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -390,7 +795,7 @@ public class BibtexDatabase {
         if (content == null) {
             throw new IllegalArgumentException("Content for resolveForStrings must not be null.");
         }
-        return resolveContent(content, new HashSet<>());
+        return resolveContent(content, new Resolution(_resolvedStrings));
     }
 
     /**
@@ -457,20 +862,37 @@ public class BibtexDatabase {
      * to follow a circular reference pattern. If the string is undefined,
      * returns null.
      */
-    private String resolveString(String label, HashSet<String> usedIds) {
-        BibtexString string = _stringsByName.get(label.toLowerCase());
+    private String resolveString(String label, Resolution resolution) {
+        String key = label.toLowerCase();
+        String cached = resolution.cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        BibtexString string;
+        lock.readLock().lock();
+        try {
+            string = _stringsByName.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
         if (string != null) {
 
-            if (usedIds.contains(string.getId())) {
+            if (resolution.usedIds.contains(string.getId())) {
                 Util.pr("Stopped due to circular reference in strings: " + label);
+                resolution.cycles++;
                 return label;
             }
-            usedIds.add(string.getId());
+            resolution.usedIds.add(string.getId());
+            int cycles = resolution.cycles;
 
-            String res = string.getContent();
-            res = resolveContent(res, usedIds);
+            String res = resolveContent(string.getContent(), resolution);
 
-            usedIds.remove(string.getId());
+            resolution.usedIds.remove(string.getId());
+            // What a string resolves to depends on where we started only if
+            // a circular reference was cut short on the way:
+            if (resolution.cycles == cycles) {
+                resolution.cache.put(key, res);
+            }
 
             return res;
         }
@@ -485,82 +907,86 @@ public class BibtexDatabase {
         }
     }
 
-    private String resolveContent(String res, HashSet<String> usedIds) {
-        //if (res.matches(".*#[-\\^\\:\\w]+#.*")) {
-        if (res.matches(".*#[^#]+#.*")) {
-            StringBuilder newRes = new StringBuilder();
-
-            int piv = 0;
-            int next = 0;
-            while ((next = res.indexOf("#", piv)) >= 0) {
-
-                // We found the next string ref. Append the text up to it.
-                if (next > 0) {
-                    newRes.append(res.substring(piv, next));
-                }
-                int stringEnd = res.indexOf("#", next + 1);
-                if (stringEnd >= 0) {
-                    // We found the boundaries of the string ref,
-                    // now resolve that one.
-                    String refLabel = res.substring(next + 1, stringEnd);
-                    String resolved = resolveString(refLabel, usedIds);
-
-                    if (resolved == null) {
-                        // Could not resolve string. Display the #
-                        // characters rather than removing them:
-                        newRes.append(res.substring(next, stringEnd + 1));
-                    } else // The string was resolved, so we display its meaning only,
-                    // stripping the # characters signifying the string label:
-                    {
-                        newRes.append(resolved);
-                    }
-                    piv = stringEnd + 1;
-                } else {
-                    // We didn't find the boundaries of the string ref. This
-                    // makes it impossible to interpret it as a string label.
-                    // So we should just append the rest of the text and finish.
-                    newRes.append(res.substring(next));
-                    piv = res.length();
-                    break;
-                }
-
+    /**
+     * Replaces each #label# in the text by the resolved string, leaving
+     * references that cannot be resolved as they are. Text spanning several
+     * lines is returned unchanged.
+     */
+    private String resolveContent(String res, Resolution resolution) {
+        if (res.indexOf('#') < 0) {
+            return res;
+        }
+        StringBuilder newRes = null;
+        int piv = 0;
+        int open = -1;
+        for (int i = 0; i < res.length(); i++) {
+            char c = res.charAt(i);
+            if ((c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028') || (c == '\u2029')) {
+                // References used to be detected by a regular expression
+                // whose '.' does not match line terminators:
+                return res;
+            }
+            if (c != '#') {
+                continue;
             }
-            if (piv < res.length() - 1) {
-                newRes.append(res.substring(piv));
+            if (open < 0) {
+                open = i;
+                continue;
             }
-            res = newRes.toString();
+            // We found the boundaries of a string ref, now resolve that one.
+            String resolved = i > (open + 1) ? resolveString(res.substring(open + 1, i), resolution) : null;
+            if (newRes == null) {
+                newRes = new StringBuilder(res.length());
+            }
+            newRes.append(res, piv, open);
+            if (resolved == null) {
+                // Could not resolve string. Display the # characters rather
+                // than removing them:
+                newRes.append(res, open, i + 1);
+            } else {
+                // The string was resolved, so we display its meaning only,
+                // stripping the # characters signifying the string label:
+                newRes.append(resolved);
+            }
+            piv = i + 1;
+            open = -1;
         }
-        return res;
+        if (newRes == null) {
+            return res;
+        }
+        newRes.append(res, piv, res.length());
+        return newRes.toString();
     }
 
-    //##########################################
-    //  usage:
-    //  isDuplicate=checkForDuplicateKeyAndAdd( null, b.getKey() , issueDuplicateWarning);
-    //############################################
-    // if the newkey already exists and is not the same as oldkey it will give a warning
-    // else it will add the newkey to the to set and remove the oldkey
-    public boolean checkForDuplicateKeyAndAdd(String oldKey, String newKey, boolean issueWarning) {
-        // Globals.logger(" checkForDuplicateKeyAndAdd [oldKey = " + oldKey + "] [newKey = " + newKey + "]");
+    /**
+     * The state of one call of resolveForStrings().
+     */
+    private static class Resolution {
 
-        boolean duplicate = false;
-        if (oldKey == null) {// this is a new entry so don't bother removing oldKey
-            duplicate = addKeyToSet(newKey);
-        } else {
-            if (oldKey.equals(newKey)) {// were OK because the user did not change keys
-                duplicate = false;
-            } else {// user changed the key
-
-                // removed the oldkey
-                // But what if more than two have the same key?
-                // this means that user can add another key and would not get a warning!
-                // consider this: i add a key xxx, then i add another key xxx . I get a warning. I delete the key xxx. JBM
-                // removes this key from the allKey. then I add another key xxx. I don't get a warning!
-                // i need a way to count the number of keys of each type
-                // hashmap=>int (increment each time)
-                removeKeyFromSet(oldKey);
-                duplicate = addKeyToSet(newKey);
-            }
+        // The strings being resolved, to detect circular references:
+        final HashSet<String> usedIds = new HashSet<>();
+
+        final Map<String, String> cache;
+
+        // The number of circular references met so far:
+        int cycles;
+
+        Resolution(Map<String, String> cache) {
+            this.cache = cache;
         }
+    }
+
+    /**
+     * Checks whether a key is used by more than one entry, and shows a
+     * warning if asked to. The key index itself is kept up to date by
+     * insertEntry(), removeEntry() and changes of the key field.
+     *
+     * @param oldKey The previous key of the entry, if any.
+     * @param newKey The key the entry has now.
+     * @return true if the key changed, and another entry has the new key.
+     */
+    public boolean checkForDuplicateKeyAndAdd(String oldKey, String newKey, boolean issueWarning) {
+        boolean duplicate = (newKey != null) && !newKey.equals(oldKey) && (getNumberOfKeyOccurences(newKey) > 1);
         if (duplicate && issueWarning) {
             JOptionPane.showMessageDialog(null, Globals.lang("Warning there is a duplicate key") + ":" + newKey,
                     Globals.lang("Duplicate Key Warning"),
@@ -576,52 +1002,16 @@ public class BibtexDatabase {
      * @return 
      */
     public int getNumberOfKeyOccurences(String key) {
-        Object o = allKeys.get(key);
-        if (o == null) {
-            return 0;
-        } else {
-            return (Integer) o;
-        }
-
-    }
-
-    //========================================================
-    // keep track of all the keys to warn if there are duplicates
-    //========================================================
-    private boolean addKeyToSet(String key) {
-        boolean exists = false;
-        if ((key == null) || key.equals("")) {
-            return false;//don't put empty key
-        }
-        if (allKeys.containsKey(key)) {
-            // warning
-            exists = true;
-            allKeys.put(key, allKeys.get(key) + 1);// incrementInteger( allKeys.get(key)));
-        } else {
-            allKeys.put(key, 1);
-        }
-        return exists;
-    }
-
-    //========================================================
-    // reduce the number of keys by 1. if this number goes to zero then remove from the set
-    // note: there is a good reason why we should not use a hashset but use hashmap instead
-    //========================================================
-    private void removeKeyFromSet(String key) {
-        if ((key == null) || key.equals("")) {
-            return;
-        }
-        if (allKeys.containsKey(key)) {
-            Integer tI = allKeys.get(key); // if(allKeys.get(key) instanceof Integer)
-            if (tI == 1) {
-                allKeys.remove(key);
-            } else {
-                allKeys.put(key, tI - 1);//decrementInteger( tI ));
-            }
+        lock.readLock().lock();
+        try {
+            return keyIndex().count(key);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     public void fireDatabaseChanged(DatabaseChangeEvent e) {
+        _modificationCount.incrementAndGet();
         if (suppressEvents) {
             return;
         }
@@ -630,6 +1020,15 @@ public class BibtexDatabase {
         }
     }
 
+    /**
+     * Returns a number that grows whenever an entry is added, removed or
+     * changed. Results computed from the entries are still valid as long as
+     * it stays the same.
+     */
+    public long getModificationCount() {
+        return _modificationCount.get();
+    }
+
     public void setSuppressEvents(boolean suppressEvents) {
         this.suppressEvents = suppressEvents;
     }
@@ -667,6 +1066,25 @@ public class BibtexDatabase {
             return bibtex.getType().getName();
         }
 
+        // Values of entries with a crossref are cached, as they take a lookup
+        // of the referred entry:
+        CrossrefIndex crossrefs = database == null ? null : database._crossrefs;
+        if ((crossrefs == null) || !database.followCrossrefs
+                || (bibtex.getField(CrossrefIndex.CROSSREF_FIELD) == null)
+                || (database.getEntryById(bibtex.getId()) != bibtex)) {
+            return resolveField(field, bibtex, database);
+        }
+        String cached = crossrefs.getCached(bibtex, field);
+        if (cached != null) {
+            return CrossrefIndex.fromCache(cached);
+        }
+        long version = crossrefs.getVersion();
+        String value = resolveField(field, bibtex, database);
+        crossrefs.store(bibtex, field, value, version);
+        return value;
+    }
+
+    private static String resolveField(String field, BibtexEntry bibtex, BibtexDatabase database) {
         // TODO: Changed this to also consider alias fields, which is the expected 
         // behavior for the preview layout and for the check whatever all fields are present.
         // But there might be unwanted side-effects?!
@@ -675,7 +1093,7 @@ public class BibtexDatabase {
         // If this field is not set, and the entry has a crossref, try to look up the
         // field in the referred entry: Do not do this for the bibtex key.
         if ((o == null) && (database != null) && database.followCrossrefs && !field.equals(BibtexFields.KEY_FIELD)) {
-            Object crossRef = bibtex.getField("crossref");
+            Object crossRef = bibtex.getField(CrossrefIndex.CROSSREF_FIELD);
             if (crossRef != null) {
                 BibtexEntry referred = database.getEntryByKey((String) crossRef);
                 if (referred != null) {
@@ -81,8 +81,15 @@ public class BibtexEntry {
 
     private String _id;
     private BibtexEntryType _type;
-    private Map<String, String> _fields = new HashMap<>();
-    VetoableChangeSupport _changeSupport = new VetoableChangeSupport(this);
+
+    // The fields, replaced as a whole on every change, so that copies of the
+    // entry can share them and threads reading without a lock always see ids
+    // and values that belong together:
+    private volatile Fields _fields = Fields.EMPTY;
+    // The values as searched, for the field values they were computed from:
+    private volatile NormalizedFields _normalizedFields;
+    // Created with the first listener:
+    volatile VetoableChangeSupport _changeSupport;
 
     // Search and grouping status is stored in boolean fields for quick reference:
     private boolean searchHit, groupHit;
@@ -134,7 +141,44 @@ public class BibtexEntry {
      * @return
      */
     public Set<String> getAllFields() {
-        return new TreeSet<>(_fields.keySet());
+        TreeSet<String> names = new TreeSet<>();
+        for (int id : _fields.ids) {
+            names.add(FieldNameRegistry.getName(id));
+        }
+        return names;
+    }
+
+    /**
+     * Returns the ids of the fields set in this entry, as given by
+     * FieldNameRegistry, in ascending order. Cheaper than getAllFields() for
+     * code that looks at many entries. The array must not be modified.
+     */
+    public int[] getFieldIds() {
+        return _fields.ids;
+    }
+
+    /**
+     * Returns the field values in the form they are searched in. They are
+     * computed on the first call after the fields have changed, and then
+     * kept until the next change.
+     */
+    public NormalizedFields getNormalizedFields() {
+        Fields fields = _fields;
+        NormalizedFields normalized = _normalizedFields;
+        if ((normalized == null) || !normalized.isFor(fields.values)) {
+            normalized = new NormalizedFields(fields.ids, fields.values);
+            _normalizedFields = normalized;
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns the normalized field values if they are up to date, or null
+     * if they have not been computed since the last change.
+     */
+    NormalizedFields peekNormalizedFields() {
+        NormalizedFields normalized = _normalizedFields;
+        return (normalized != null) && normalized.isFor(_fields.values) ? normalized : null;
     }
 
     /**
@@ -248,7 +292,52 @@ public class BibtexEntry {
      * @return
      */
     public String getField(String name) {
-        return _fields.get(name);
+        Fields fields = _fields;
+        int index = fields.indexOf(name);
+        return index < 0 ? null : fields.values[index];
+    }
+
+    private void putField(String name, String value) {
+        int id = FieldNameRegistry.register(name);
+        Fields fields = _fields;
+        int index = Arrays.binarySearch(fields.ids, id);
+        if (index >= 0) {
+            String[] values = fields.values.clone();
+            values[index] = value;
+            _fields = new Fields(fields.ids, values);
+            return;
+        }
+        index = -index - 1;
+        int size = fields.ids.length;
+        int[] ids = new int[size + 1];
+        String[] values = new String[size + 1];
+        System.arraycopy(fields.ids, 0, ids, 0, index);
+        System.arraycopy(fields.values, 0, values, 0, index);
+        ids[index] = id;
+        values[index] = value;
+        System.arraycopy(fields.ids, index, ids, index + 1, size - index);
+        System.arraycopy(fields.values, index, values, index + 1, size - index);
+        _fields = new Fields(ids, values);
+    }
+
+    private void removeField(String name) {
+        Fields fields = _fields;
+        int index = fields.indexOf(name);
+        if (index < 0) {
+            return;
+        }
+        int size = fields.ids.length - 1;
+        if (size == 0) {
+            _fields = Fields.EMPTY;
+            return;
+        }
+        int[] ids = new int[size];
+        String[] values = new String[size];
+        System.arraycopy(fields.ids, 0, ids, 0, index);
+        System.arraycopy(fields.values, 0, values, 0, index);
+        System.arraycopy(fields.ids, index + 1, ids, index, size - index);
+        System.arraycopy(fields.values, index + 1, values, index, size - index);
+        _fields = new Fields(ids, values);
     }
 
     /**
@@ -373,7 +462,53 @@ public class BibtexEntry {
      * @param fields
      */
     public void setField(Map<String, String> fields) {
-        _fields.putAll(fields);
+        if (fields.isEmpty()) {
+            return;
+        }
+        if (fields.containsKey(BibtexFields.KEY_FIELD)) {
+            citeKeyCached = false;
+            cachedCiteKey = null;
+        }
+        // Builds the new arrays in one go instead of copying them for every
+        // field: values of fields already set are replaced in a copy, and new
+        // fields are sorted as (id << 32 | position) and merged in.
+        Fields old = _fields;
+        String[] oldValues = old.values.clone();
+        long[] added = new long[fields.size()];
+        String[] addedValues = new String[fields.size()];
+        int count = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            int id = FieldNameRegistry.register(field.getKey());
+            int index = Arrays.binarySearch(old.ids, id);
+            if (index >= 0) {
+                oldValues[index] = field.getValue();
+            } else {
+                added[count] = ((long) id << 32) | count;
+                addedValues[count] = field.getValue();
+                count++;
+            }
+        }
+        if (count == 0) {
+            _fields = new Fields(old.ids, oldValues);
+            return;
+        }
+        Arrays.sort(added, 0, count);
+        int[] ids = new int[old.ids.length + count];
+        String[] values = new String[ids.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < ids.length; k++) {
+            if ((j == count) || ((i < old.ids.length) && (old.ids[i] < (int) (added[j] >>> 32)))) {
+                ids[k] = old.ids[i];
+                values[k] = oldValues[i];
+                i++;
+            } else {
+                ids[k] = (int) (added[j] >>> 32);
+                values[k] = addedValues[(int) added[j]];
+                j++;
+            }
+        }
+        _fields = new Fields(ids, values);
     }
 
     /**
@@ -387,7 +522,7 @@ public class BibtexEntry {
             throw new IllegalArgumentException("The field name '" + name + "' is reserved");
         }
 
-        String oldValue = _fields.get(name);
+        String oldValue = getField(name);
 
         // Invalidate cache if KEY_FIELD is being modified
         if (BibtexFields.KEY_FIELD.equals(name)) {
@@ -396,12 +531,16 @@ public class BibtexEntry {
         }
 
         try {
-            _fields.put(name, value);
+            putField(name, value);
             firePropertyChangedEvent(name, oldValue, value);
         } catch (PropertyVetoException pve) {
             // Since we have already made the change, we must undo it since
             // the change was rejected:
-            _fields.put(name, oldValue);
+            if (oldValue == null) {
+                removeField(name);
+            } else {
+                putField(name, oldValue);
+            }
 
             // Also restore cache state if this was a KEY_FIELD change
             if (BibtexFields.KEY_FIELD.equals(name)) {
@@ -424,7 +563,7 @@ public class BibtexEntry {
             throw new IllegalArgumentException("The field name '" + name + "' is reserved");
         }
 
-        String oldValue = _fields.get(name);
+        String oldValue = getField(name);
 
         // Invalidate cache if KEY_FIELD is being cleared
         if (BibtexFields.KEY_FIELD.equals(name)) {
@@ -433,12 +572,12 @@ public class BibtexEntry {
         }
 
         try {
-            _fields.remove(name);
+            removeField(name);
             firePropertyChangedEvent(name, oldValue, null);
         } catch (PropertyVetoException pve) {
             // Restore the field since change was rejected
             if (oldValue != null) {
-                _fields.put(name, oldValue);
+                putField(name, oldValue);
             }
 
             // Restore cache state if this was a KEY_FIELD change
@@ -484,6 +623,9 @@ public class BibtexEntry {
 
     private void firePropertyChangedEvent(String fieldName, Object oldValue,
             Object newValue) throws PropertyVetoException {
+        if (_changeSupport == null) {
+            return;
+        }
         _changeSupport.fireVetoableChange(new PropertyChangeEvent(this,
                 fieldName, oldValue, newValue));
     }
@@ -495,7 +637,10 @@ public class BibtexEntry {
      *
      * @param listener
      */
-    public void addPropertyChangeListener(VetoableChangeListener listener) {
+    public synchronized void addPropertyChangeListener(VetoableChangeListener listener) {
+        if (_changeSupport == null) {
+            _changeSupport = new VetoableChangeSupport(this);
+        }
         _changeSupport.addVetoableChangeListener(listener);
     }
 
@@ -505,7 +650,9 @@ public class BibtexEntry {
      * @param listener
      */
     public void removePropertyChangeListener(VetoableChangeListener listener) {
-        _changeSupport.removeVetoableChangeListener(listener);
+        if (_changeSupport != null) {
+            _changeSupport.removeVetoableChangeListener(listener);
+        }
     }
 
     /**
@@ -528,9 +675,31 @@ public class BibtexEntry {
      */
     @Override
     public Object clone() {
-        BibtexEntry clone = new BibtexEntry(_id, _type);
-        clone._fields = new HashMap<>(_fields);
-        return clone;
+        return copy(_id);
+    }
+
+    /**
+     * Returns a copy of this entry with the given ID. This takes constant
+     * time, as the copy shares the field storage until either is changed.
+     */
+    BibtexEntry copy(String id) {
+        BibtexEntry copy = new BibtexEntry(id, _type);
+        copy._fields = _fields;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this entry with the given ID, in which the given
+     * field has the given value, or is not set if the value is null.
+     */
+    BibtexEntry copy(String id, String field, String value) {
+        BibtexEntry copy = copy(id);
+        if (value == null) {
+            copy.removeField(field);
+        } else {
+            copy.putField(field, value);
+        }
+        return copy;
     }
 
     @Override
@@ -576,4 +745,32 @@ public class BibtexEntry {
         }
         return text.substring(0, maxCharacters + 1) + "...";
     }
+
+    /**
+     * The fields of an entry, as ids from FieldNameRegistry in ascending
+     * order, and their values at the same positions. Both arrays are exactly
+     * as long as the number of fields, which takes far less memory than a
+     * HashMap. Never modified once published.
+     */
+    private static final class Fields {
+
+        static final Fields EMPTY = new Fields(new int[0], new String[0]);
+
+        final int[] ids;
+        final String[] values;
+
+        Fields(int[] ids, String[] values) {
+            this.ids = ids;
+            this.values = values;
+        }
+
+        /**
+         * Returns the position of the given field, or a negative value if it
+         * is not set.
+         */
+        int indexOf(String name) {
+            int id = FieldNameRegistry.lookup(name);
+            return id < 0 ? -1 : Arrays.binarySearch(ids, id);
+        }
+    }
 }
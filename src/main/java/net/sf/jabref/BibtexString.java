@@ -79,6 +79,13 @@ public class BibtexString {
     String _name, _content, _id;
     Type _type;
 
+    // The database this string was last added to, which is told about
+    // changes so that it can keep its lookups and resolved strings current.
+    volatile BibtexDatabase _database;
+
+    // Set for the strings of database snapshots:
+    private boolean _readOnly = false;
+
     public BibtexString(String id, String name, String content) {
         _id = id;
         _name = name;
@@ -98,6 +105,7 @@ public class BibtexString {
     }
 
     public void setId(String id) {
+        checkWritable();
         _id = id;
     }
 
@@ -106,8 +114,14 @@ public class BibtexString {
     }
 
     public void setName(String name) {
+        checkWritable();
+        String oldName = _name;
         _name = name;
         _type = Type.get(name);
+        BibtexDatabase database = _database;
+        if (database != null) {
+            database.stringChanged(this, oldName);
+        }
     }
 
     public String getContent() {
@@ -115,7 +129,12 @@ public class BibtexString {
     }
 
     public void setContent(String content) {
+        checkWritable();
         _content = content;
+        BibtexDatabase database = _database;
+        if (database != null) {
+            database.stringChanged(this, _name);
+        }
     }
 
     @Override
@@ -123,6 +142,23 @@ public class BibtexString {
         return new BibtexString(_id, _name, _content);
     }
 
+    /**
+     * Returns a copy of this string which throws
+     * UnsupportedOperationException on attempts to change it, for a
+     * database snapshot.
+     */
+    BibtexString readOnlyCopy() {
+        BibtexString copy = new BibtexString(_id, _name, _content, _type);
+        copy._readOnly = true;
+        return copy;
+    }
+
+    private void checkWritable() {
+        if (_readOnly) {
+            throw new UnsupportedOperationException("A string of a database snapshot cannot be modified");
+        }
+    }
+
     public Type getType() {
         return _type;
     }
@@ -0,0 +1,141 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The entries of a database by cite key. All entries sharing a key are kept,
+ * in the order they got it, so that duplicates can be found without going
+ * through the whole database. Empty keys are not indexed.
+ *
+ * Not thread safe; BibtexDatabase guards it with its lock.
+ */
+class CiteKeyIndex {
+
+    // A key maps to its entry, or to a List of entries if it is used by more
+    // than one. Most keys are unique, so this saves a list per key.
+    private final HashMap<String, Object> entries = new HashMap<>();
+
+    private final Set<String> duplicates = new HashSet<>();
+
+    static CiteKeyIndex of(Collection<BibtexEntry> entries) {
+        CiteKeyIndex index = new CiteKeyIndex();
+        for (BibtexEntry entry : entries) {
+            index.add(entry.getCiteKey(), entry);
+        }
+        return index;
+    }
+
+    /**
+     * Adds the entry under the given key. Returns true if the key was already
+     * in use.
+     */
+    @SuppressWarnings("unchecked")
+    boolean add(String key, BibtexEntry entry) {
+        if ((key == null) || key.isEmpty()) {
+            return false;
+        }
+        Object o = entries.get(key);
+        if (o == null) {
+            entries.put(key, entry);
+            return false;
+        }
+        if (o instanceof BibtexEntry) {
+            List<BibtexEntry> list = new ArrayList<>(2);
+            list.add((BibtexEntry) o);
+            list.add(entry);
+            entries.put(key, list);
+            duplicates.add(key);
+        } else {
+            ((List<BibtexEntry>) o).add(entry);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    void remove(String key, BibtexEntry entry) {
+        if ((key == null) || key.isEmpty()) {
+            return;
+        }
+        Object o = entries.get(key);
+        if (o == entry) {
+            entries.remove(key);
+        } else if (o instanceof List) {
+            List<BibtexEntry> list = (List<BibtexEntry>) o;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == entry) {
+                    list.remove(i);
+                    break;
+                }
+            }
+            if (list.size() == 1) {
+                entries.put(key, list.get(0));
+                duplicates.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the entry that got the key first, or null.
+     */
+    @SuppressWarnings("unchecked")
+    BibtexEntry getFirst(String key) {
+        Object o = key == null ? null : entries.get(key);
+        if (o instanceof List) {
+            return ((List<BibtexEntry>) o).get(0);
+        }
+        return (BibtexEntry) o;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<BibtexEntry> get(String key) {
+        Object o = key == null ? null : entries.get(key);
+        if (o == null) {
+            return Collections.emptyList();
+        }
+        if (o instanceof List) {
+            return new ArrayList<>((List<BibtexEntry>) o);
+        }
+        return Collections.singletonList((BibtexEntry) o);
+    }
+
+    @SuppressWarnings("unchecked")
+    int count(String key) {
+        Object o = key == null ? null : entries.get(key);
+        if (o == null) {
+            return 0;
+        }
+        return o instanceof List ? ((List<BibtexEntry>) o).size() : 1;
+    }
+
+    Set<String> getKeys() {
+        return entries.keySet();
+    }
+
+    /**
+     * Returns the keys used by more than one entry.
+     */
+    Set<String> getDuplicateKeys() {
+        return duplicates;
+    }
+}
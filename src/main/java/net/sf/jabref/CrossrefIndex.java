@@ -0,0 +1,165 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of which entries of a database refer to which other entries
+ * through their crossref field, and caches the resolved field values of the
+ * referring entries.
+ *
+ * The children are changed by BibtexDatabase under its write lock, but can be
+ * read without locking. Cached values are dropped whenever anything they may
+ * depend on changes: a field of the entry itself, a field or the key of its
+ * parent, or a string of the database.
+ */
+class CrossrefIndex {
+
+    static final String CROSSREF_FIELD = "crossref";
+
+    // Stands for a field that resolved to null:
+    private static final String NO_VALUE = new String();
+
+    // Entries by the key given in their crossref field:
+    private final Map<String, Set<BibtexEntry>> children = new ConcurrentHashMap<>();
+
+    // Resolved field values of entries that have a crossref field:
+    private final ConcurrentHashMap<BibtexEntry, Map<String, String>> resolved = new ConcurrentHashMap<>();
+
+    // Increased by every invalidation, so that a value computed before it is
+    // not stored after it:
+    private final AtomicLong version = new AtomicLong();
+
+    void add(BibtexEntry entry) {
+        String parentKey = entry.getField(CROSSREF_FIELD);
+        if (parentKey != null) {
+            Set<BibtexEntry> set = children.get(parentKey);
+            if (set == null) {
+                set = Collections.newSetFromMap(new ConcurrentHashMap<BibtexEntry, Boolean>());
+                children.put(parentKey, set);
+            }
+            set.add(entry);
+        }
+        invalidateChildren(entry.getCiteKey());
+    }
+
+    void remove(BibtexEntry entry) {
+        removeChild(entry, entry.getField(CROSSREF_FIELD));
+        invalidate(entry);
+        invalidateChildren(entry.getCiteKey());
+    }
+
+    /**
+     * Called after a field of an entry of the database has changed.
+     */
+    void fieldChanged(BibtexEntry entry, String field, String oldValue, String newValue) {
+        if (CROSSREF_FIELD.equals(field)) {
+            removeChild(entry, oldValue);
+            add(entry);
+        } else if (BibtexFields.KEY_FIELD.equals(field)) {
+            invalidateChildren(oldValue);
+        }
+        invalidate(entry);
+        invalidateChildren(entry.getCiteKey());
+    }
+
+    /**
+     * Drops all cached values, as when strings have changed.
+     */
+    void invalidateAll() {
+        version.incrementAndGet();
+        resolved.clear();
+    }
+
+    /**
+     * Returns the entries whose crossref field holds the given key.
+     */
+    Set<BibtexEntry> getChildren(String key) {
+        Set<BibtexEntry> set = key == null ? null : children.get(key);
+        return set == null ? Collections.<BibtexEntry>emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the cached value of the field, NO_VALUE if it is cached as
+     * null, or null if it is not cached.
+     */
+    String getCached(BibtexEntry entry, String field) {
+        Map<String, String> values = resolved.get(entry);
+        return values == null ? null : values.get(field);
+    }
+
+    static String fromCache(String cached) {
+        return cached == NO_VALUE ? null : cached;
+    }
+
+    /**
+     * Caches a value, unless anything was invalidated since the given
+     * version was taken.
+     */
+    void store(BibtexEntry entry, String field, String value, long since) {
+        Map<String, String> values = resolved.get(entry);
+        if (values == null) {
+            values = new ConcurrentHashMap<>();
+            Map<String, String> existing = resolved.putIfAbsent(entry, values);
+            if (existing != null) {
+                values = existing;
+            }
+        }
+        values.put(field, value == null ? NO_VALUE : value);
+        // An invalidation may have happened while we were computing, and
+        // missed the value just stored:
+        if (version.get() != since) {
+            values.remove(field);
+        }
+    }
+
+    private void removeChild(BibtexEntry entry, String parentKey) {
+        Set<BibtexEntry> set = parentKey == null ? null : children.get(parentKey);
+        if (set != null) {
+            set.remove(entry);
+            if (set.isEmpty()) {
+                children.remove(parentKey);
+            }
+        }
+    }
+
+    private void invalidate(BibtexEntry entry) {
+        version.incrementAndGet();
+        resolved.remove(entry);
+    }
+
+    private void invalidateChildren(String key) {
+        if (key == null) {
+            return;
+        }
+        Set<BibtexEntry> set = children.get(key);
+        if (set != null) {
+            version.incrementAndGet();
+            for (BibtexEntry child : set) {
+                resolved.remove(child);
+            }
+        }
+    }
+}
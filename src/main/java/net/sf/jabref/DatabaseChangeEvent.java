@@ -15,31 +15,80 @@
  */
 package net.sf.jabref;
 
+import java.util.Collections;
+import java.util.List;
+
 public class DatabaseChangeEvent {
 
     public enum ChangeType {
-        ADDED_ENTRY, REMOVED_ENTRY, CHANGED_ENTRY, CHANGING_ENTRY
+        ADDED_ENTRY, REMOVED_ENTRY, CHANGED_ENTRY, CHANGING_ENTRY,
+        // Fired once for all entries of BibtexDatabase.insertEntries() and
+        // removeEntries(); getEntries() returns them.
+        ADDED_ENTRIES, REMOVED_ENTRIES
     }
 
     private final BibtexEntry entry;
+    private final List<BibtexEntry> entries;
     private final ChangeType type;
     private final BibtexDatabase source;
+    private final String fieldName;
 
     public DatabaseChangeEvent(BibtexDatabase source, ChangeType type,
             BibtexEntry entry) {
+        this(source, type, entry, null);
+    }
+
+    /**
+     * Creates an event for a change of a single field of an entry.
+     */
+    public DatabaseChangeEvent(BibtexDatabase source, ChangeType type,
+            BibtexEntry entry, String fieldName) {
         this.source = source;
         this.type = type;
         this.entry = entry;
+        this.entries = Collections.singletonList(entry);
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * Creates an event for a change of several entries at once.
+     */
+    public DatabaseChangeEvent(BibtexDatabase source, ChangeType type,
+            List<BibtexEntry> entries) {
+        this.source = source;
+        this.type = type;
+        this.entry = entries.isEmpty() ? null : entries.get(0);
+        this.entries = Collections.unmodifiableList(entries);
+        this.fieldName = null;
     }
 
     public BibtexDatabase getSource() {
         return source;
     }
 
+    /**
+     * Returns the entry that was changed, or the first of them for
+     * ADDED_ENTRIES and REMOVED_ENTRIES.
+     */
     public BibtexEntry getEntry() {
         return entry;
     }
 
+    /**
+     * Returns all entries that were changed.
+     */
+    public List<BibtexEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the name of the field that was changed for CHANGED_ENTRY, or
+     * null if it is not known which fields were changed.
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
     public ChangeType getType() {
         return type;
     }
@@ -26,80 +26,74 @@
  */
 package net.sf.jabref;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.regex.PatternSyntaxException;
 
 import javax.swing.SwingUtilities;
 
+import net.sf.jabref.search.ParallelSearch;
+
+/**
+ * Searches a database in the background. The entries are not changed; the
+ * hits can be read with matches() once the search is done.
+ */
 public class DatabaseSearch extends Thread {
 
     BasePanel panel = null;
     BibtexDatabase thisDatabase = null;
     SearchRuleSet thisRuleSet = null;
     Map<String, String> thisSearchOptions = null;
-    String searchValueField = null;
     boolean reorder, select, grayOut;
     ErrorMessageDisplay errorDisplay;
-    Set<BibtexEntry> matches = new HashSet<>();
+    volatile Set<BibtexEntry> matches = Collections.emptySet();
+    private final ParallelSearch search;
 
     public DatabaseSearch(ErrorMessageDisplay errorDisplay,
             Map<String, String> searchOptions, SearchRuleSet searchRules,
-            BasePanel panel, String searchValueField, boolean reorder,
+            BasePanel panel, boolean reorder,
             boolean grayOut, boolean select) {
         this.panel = panel;
         this.errorDisplay = errorDisplay;
         thisDatabase = panel.getDatabase();
         thisSearchOptions = searchOptions;
         thisRuleSet = searchRules;
-        this.searchValueField = searchValueField;
         this.reorder = reorder;
         this.select = select;
         this.grayOut = grayOut;
+        search = new ParallelSearch(searchRules, searchOptions);
     }
 
     @Override
     public void run() {
-        int searchScore = 0;
-        matches.clear();
-        BibtexEntry bes = null;
-        int hits = 0;
-
-        for (String id : thisDatabase.getKeySet()) {
-
-            // 1. search all required fields using searchString
-            bes = thisDatabase.getEntryById(id);
-            if (bes == null) {
-                continue;
-            }
-            // (thisTableModel.getNameFromNumber(row));
-
-            // 2. add score per each hit
-            try {
-                searchScore = thisRuleSet.applyRule(thisSearchOptions, bes);
-            } catch (PatternSyntaxException ex) {
-                // There is something wrong with the regexp pattern.
-                errorDisplay.reportError("Malformed regular expression", ex);
-                return;
-            }
-            // When using float search, it messes up the sort order if we retain
-            // graded search scores, because the table is sorted by the score.
-            // To prevent this, we let the search score saturate at 1.
-            if (searchScore > 0) {
-                searchScore = 1;
-            }
-
-            // 2.1 set score to search field
-            bes.setField(searchValueField, String.valueOf(searchScore));
+        // Search a snapshot, so that the entries do not change while the
+        // rules look at them:
+        BibtexDatabase snapshot = thisDatabase.snapshot();
+        Set<BibtexEntry> hits;
+        try {
+            hits = search.search(snapshot.getEntries());
+        } catch (PatternSyntaxException ex) {
+            // There is something wrong with the regexp pattern.
+            errorDisplay.reportError("Malformed regular expression", ex);
+            return;
+        } catch (CancellationException ex) {
+            return;
+        }
 
-            if (searchScore > 0) {
-                hits++;
-                matches.add(bes);
+        Set<BibtexEntry> found = new HashSet<>();
+        for (BibtexEntry copy : hits) {
+            BibtexEntry bes = thisDatabase.getEntryById(copy.getId());
+            // Skip entries removed since the snapshot was taken:
+            if (bes != null) {
+                found.add(bes);
             }
         }
-        final int outputHits = hits;
+        matches = found;
+        final int outputHits = found.size();
         SwingUtilities.invokeLater(new Thread() {
             @Override
             public void run() {
@@ -109,6 +103,13 @@ public class DatabaseSearch extends Thread {
         });
     }
 
+    /**
+     * Stops the search. No hits are reported if it has not finished yet.
+     */
+    public void cancel() {
+        search.cancel();
+    }
+
     public Iterator<BibtexEntry> matches() {
         return matches.iterator();
     }
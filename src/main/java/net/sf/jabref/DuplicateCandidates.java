@@ -0,0 +1,316 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import net.sf.jabref.export.layout.format.RemoveLatexCommands;
+
+/**
+ * Finds the pairs of entries that may be duplicates, so that
+ * DuplicateCheck.isDuplicate() does not have to compare every entry with
+ * every other one.
+ *
+ * Each entry is given a few blocking keys, and only entries sharing a key
+ * are candidates. Since isDuplicate() only accepts entries of the same type,
+ * every key includes the type. The keys are:
+ * <ul>
+ * <li>the DOI, and the digits of the ISBN;</li>
+ * <li>the last name of the first author or editor, with the year;</li>
+ * <li>for the title, MinHash signatures of its three letter shingles, split
+ * into bands (locality sensitive hashing). Two titles share a band key with
+ * a probability that grows steeply with the share of shingles they have in
+ * common, so titles that differ by a few letters almost always meet, while
+ * unrelated ones seldom do;</li>
+ * <li>for entries without title and author, the year alone.</li>
+ * </ul>
+ * Keys shared by more than MAX_BLOCK_SIZE entries are dropped, as they do
+ * not tell entries apart; such entries are still found through their other
+ * keys.
+ */
+public class DuplicateCandidates {
+
+    private static final Logger logger = Logger.getLogger(DuplicateCandidates.class.getName());
+
+    // Keys shared by more entries than this are ignored:
+    static final int MAX_BLOCK_SIZE = 1000;
+
+    // The title signature has BANDS * ROWS MinHash values; titles with a
+    // share s of common shingles meet with probability 1 - (1 - s^ROWS)^BANDS,
+    // which is above 0.99 for s = 0.6, and below 0.03 for s = 0.2:
+    private static final int BANDS = 20;
+
+    private static final int ROWS = 4;
+
+    private static final int SHINGLE_LENGTH = 3;
+
+    private static final long[] SEEDS = new long[BANDS * ROWS];
+
+    static {
+        long seed = 0x2545f4914f6cdd1dL;
+        for (int i = 0; i < SEEDS.length; i++) {
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private static final RemoveLatexCommands removeLatexCommands = new RemoveLatexCommands();
+
+    // Keys are hashed to 40 bits, and packed with the index of their
+    // entry into a long, so that sorting the longs brings the entries of
+    // each key together:
+    private static final int INDEX_BITS = 24;
+
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    // The candidates of each entry with a higher index:
+    private final int[][] candidates;
+
+    private long pairCount = 0;
+
+    /**
+     * Finds the candidate pairs among the given entries, of which there may
+     * be up to 2^24.
+     */
+    public DuplicateCandidates(BibtexEntry[] entries) {
+        if (entries.length > INDEX_MASK) {
+            throw new IllegalArgumentException("Too many entries: " + entries.length);
+        }
+        long[] keys = new long[16];
+        int keyCount = 0;
+        for (int i = 0; i < entries.length; i++) {
+            for (long key : keys(entries[i])) {
+                if (keyCount == keys.length) {
+                    keys = Arrays.copyOf(keys, 2 * keyCount);
+                }
+                keys[keyCount++] = (key << INDEX_BITS) | i;
+            }
+        }
+        Arrays.sort(keys, 0, keyCount);
+
+        // The blocks are the runs of equal keys. Find the blocks of each
+        // entry, as start positions in keys:
+        int[] blockCount = new int[entries.length];
+        int dropped = 0;
+        for (int start = 0, end; start < keyCount; start = end) {
+            end = endOfBlock(keys, start, keyCount);
+            if ((end - start) > MAX_BLOCK_SIZE) {
+                dropped++;
+            } else if ((end - start) > 1) {
+                for (int k = start; k < end; k++) {
+                    blockCount[(int) (keys[k] & INDEX_MASK)]++;
+                }
+            }
+        }
+        int[][] blockStarts = new int[entries.length][];
+        for (int i = 0; i < entries.length; i++) {
+            blockStarts[i] = new int[blockCount[i]];
+            blockCount[i] = 0;
+        }
+        for (int start = 0, end; start < keyCount; start = end) {
+            end = endOfBlock(keys, start, keyCount);
+            if (((end - start) > 1) && ((end - start) <= MAX_BLOCK_SIZE)) {
+                for (int k = start; k < end; k++) {
+                    int i = (int) (keys[k] & INDEX_MASK);
+                    blockStarts[i][blockCount[i]++] = start;
+                }
+            }
+        }
+        if (dropped > 0) {
+            logger.fine("Ignored " + dropped + " duplicate search keys shared by more than "
+                    + MAX_BLOCK_SIZE + " entries");
+        }
+
+        candidates = new int[entries.length][];
+        int[] seenBy = new int[entries.length];
+        Arrays.fill(seenBy, -1);
+        int[] found = new int[16];
+        for (int i = 0; i < entries.length; i++) {
+            int count = 0;
+            for (int start : blockStarts[i]) {
+                for (int k = start, end = endOfBlock(keys, start, keyCount); k < end; k++) {
+                    int j = (int) (keys[k] & INDEX_MASK);
+                    if ((j > i) && (seenBy[j] != i)) {
+                        seenBy[j] = i;
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, 2 * count);
+                        }
+                        found[count++] = j;
+                    }
+                }
+            }
+            candidates[i] = Arrays.copyOf(found, count);
+            Arrays.sort(candidates[i]);
+            pairCount += count;
+        }
+    }
+
+    /**
+     * Returns the indexes of the entries after the given one that may be
+     * duplicates of it, in ascending order.
+     */
+    public int[] getCandidates(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * Returns the number of candidate pairs.
+     */
+    public long getPairCount() {
+        return pairCount;
+    }
+
+    private static int endOfBlock(long[] keys, int start, int keyCount) {
+        long key = keys[start] >>> INDEX_BITS;
+        int end = start + 1;
+        while ((end < keyCount) && ((keys[end] >>> INDEX_BITS) == key)) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the blocking keys of the given entry, hashed to 40 bits.
+     */
+    static List<Long> keys(BibtexEntry entry) {
+        List<Long> keys = new ArrayList<>();
+        String type = entry.getType().getName().toLowerCase() + '|';
+
+        String doi = entry.getField("doi");
+        if ((doi != null) && !doi.trim().isEmpty()) {
+            keys.add(hash(type + "doi|" + Util.getDOI(doi.trim()).toLowerCase()));
+        }
+        String isbn = entry.getField("isbn");
+        if (isbn != null) {
+            String digits = isbn.replaceAll("[^0-9xX]", "").toLowerCase();
+            if (!digits.isEmpty()) {
+                keys.add(hash(type + "isbn|" + digits));
+            }
+        }
+
+        String year = entry.getField("year");
+        year = year == null ? "" : year.trim();
+        String name = firstLastName(entry.getField("author"));
+        if (name == null) {
+            name = firstLastName(entry.getField("editor"));
+        }
+        if (name != null) {
+            keys.add(hash(type + "name|" + name + '|' + year));
+        }
+
+        String title = entry.getField("title");
+        String normalized = title == null ? "" : normalize(title);
+        if (!normalized.isEmpty()) {
+            long[] signature = signature(normalized);
+            long typeHash = hash(type + "title|");
+            for (int band = 0; band < BANDS; band++) {
+                long h = typeHash + band;
+                for (int row = 0; row < ROWS; row++) {
+                    h = mix(h * 31 + signature[band * ROWS + row]);
+                }
+                keys.add(h >>> INDEX_BITS);
+            }
+        } else if (name == null) {
+            keys.add(hash(type + "year|" + year));
+        }
+        return keys;
+    }
+
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h) >>> INDEX_BITS;
+    }
+
+    /**
+     * Returns the last name of the first person in the given name list, in
+     * lower case and without accents, or null if there is none.
+     */
+    private static String firstLastName(String names) {
+        if ((names == null) || names.trim().isEmpty()) {
+            return null;
+        }
+        AuthorList list = AuthorList.getAuthorList(names);
+        if (list.size() == 0) {
+            return null;
+        }
+        String last = normalize(list.getAuthor(0).getLastOnly());
+        return last.isEmpty() ? null : last;
+    }
+
+    /**
+     * Removes LaTeX commands, case and accents from the text, and reduces it
+     * to words of letters and digits separated by single spaces.
+     */
+    static String normalize(String text) {
+        String folded = NormalizedFields.fold(removeLatexCommands.format(text));
+        StringBuilder sb = new StringBuilder(folded.length());
+        boolean space = false;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && (sb.length() > 0)) {
+                    sb.append(' ');
+                }
+                sb.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the MinHash signature of the shingles of the given text: for
+     * each seed, the least hash value of a shingle.
+     */
+    private static long[] signature(String text) {
+        long[] signature = new long[SEEDS.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        int shingles = Math.max(1, text.length() - SHINGLE_LENGTH + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 0;
+            for (int i = start; i < Math.min(text.length(), start + SHINGLE_LENGTH); i++) {
+                shingle = (shingle << 16) | text.charAt(i);
+            }
+            for (int k = 0; k < SEEDS.length; k++) {
+                long hash = mix(shingle ^ SEEDS[k]);
+                if (hash < signature[k]) {
+                    signature[k] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads the bits of a long.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
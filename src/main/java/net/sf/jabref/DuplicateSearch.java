@@ -144,16 +144,21 @@ public class DuplicateSearch extends Thread {
 
         @Override
         public void run() {
-            for (int i = 0; (i < bes.length - 1) && !finished; i++) {
-                for (int j = i + 1; (j < bes.length) && !finished; j++) {
-                    boolean eq = DuplicateCheck.isDuplicate(bes[i], bes[j]);
-
-                    // If (suspected) duplicates, add them to the duplicates vector.
-                    if (eq) {
-                        synchronized (duplicates) {
-                            duplicates.add(new BibtexEntry[]{bes[i], bes[j]});
-                            duplicates.notifyAll(); // send wake up all
+            if (Globals.prefs.getBoolean(JabRefPreferences.USE_DUPLICATE_SEARCH_BLOCKING)) {
+                // Only compare the pairs that share a blocking key:
+                DuplicateCandidates candidates = new DuplicateCandidates(bes);
+                for (int i = 0; (i < bes.length - 1) && !finished; i++) {
+                    for (int j : candidates.getCandidates(i)) {
+                        if (finished) {
+                            break;
                         }
+                        compare(i, j);
+                    }
+                }
+            } else {
+                for (int i = 0; (i < bes.length - 1) && !finished; i++) {
+                    for (int j = i + 1; (j < bes.length) && !finished; j++) {
+                        compare(i, j);
                     }
                 }
             }
@@ -164,6 +169,18 @@ public class DuplicateSearch extends Thread {
             }
         }
 
+        private void compare(int i, int j) {
+            boolean eq = DuplicateCheck.isDuplicate(bes[i], bes[j]);
+
+            // If (suspected) duplicates, add them to the duplicates vector.
+            if (eq) {
+                synchronized (duplicates) {
+                    duplicates.add(new BibtexEntry[]{bes[i], bes[j]});
+                    duplicates.notifyAll(); // send wake up all
+                }
+            }
+        }
+
         public boolean finished() {
             return finished;
         }
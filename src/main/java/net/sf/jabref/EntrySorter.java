@@ -54,6 +54,14 @@ public class EntrySorter implements DatabaseChangeListener {
                     sortedSet.remove(e.getEntry());
                     needsReindex = true;
                     break;
+                case ADDED_ENTRIES:
+                    sortedSet.addAll(e.getEntries());
+                    needsReindex = true;
+                    break;
+                case REMOVED_ENTRIES:
+                    sortedSet.removeAll(e.getEntries());
+                    needsReindex = true;
+                    break;
                 case CHANGED_ENTRY:
                     sortedSet.remove(e.getEntry());
                     sortedSet.add(e.getEntry());
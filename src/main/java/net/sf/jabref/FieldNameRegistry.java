@@ -0,0 +1,81 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide mapping between field names and small integer ids, used by
+ * BibtexEntry to store its fields compactly. Ids are handed out in order of
+ * first use and are never reused, so there is one id per distinct field name
+ * seen since startup.
+ */
+public final class FieldNameRegistry {
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Indexed by id. Replaced, never modified, when it has to grow, so that
+    // readers need no locking.
+    private static volatile String[] names = new String[64];
+
+    private static int count = 0;
+
+    private FieldNameRegistry() {
+    }
+
+    /**
+     * Returns the id for the given field name, registering the name if it
+     * has not been seen before.
+     */
+    public static int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (FieldNameRegistry.class) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+            // Store the name first, so that every id found in the map can
+            // be resolved:
+            names[count] = name;
+            ids.put(name, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Returns the id for the given field name, or -1 if the name has never
+     * been registered. Unlike register(), this does not make the registry
+     * grow, so it is used for lookups.
+     */
+    public static int lookup(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the field name for the given id.
+     */
+    public static String getName(int id) {
+        return names[id];
+    }
+}
@@ -0,0 +1,211 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deduplicates field values while a database is loaded or imported, so that
+ * equal contents of fields like journal, publisher, month or owner are kept
+ * in memory only once. Values are pooled per field, and a field is dropped
+ * from pooling when its values turn out to be mostly distinct, as for titles
+ * or abstracts.
+ *
+ * A pool is meant to be used for one load or import and then discarded; the
+ * values it shares stay shared afterwards. It is thread safe.
+ */
+public class FieldValuePool {
+
+    private static final Logger logger = Logger.getLogger(FieldValuePool.class.getName());
+
+    // Longer values are hardly ever repeated, and are not worth a lookup:
+    private static final int MAX_LENGTH = 256;
+
+    // Number of lookups in a field before its hit rate is judged:
+    private static final int PROBE_LOOKUPS = 1000;
+
+    private static final double MIN_HIT_RATE = 0.1;
+
+    private final ConcurrentHashMap<String, FieldPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a new pool if value pooling is enabled in the preferences, or
+     * null otherwise.
+     */
+    public static FieldValuePool createIfEnabled() {
+        if ((Globals.prefs != null) && !Globals.prefs.getBoolean(JabRefPreferences.USE_FIELD_VALUE_POOL)) {
+            return null;
+        }
+        return new FieldValuePool();
+    }
+
+    /**
+     * Returns a value equal to the given one, which is the first such value
+     * passed for this field if the field is pooled.
+     */
+    public String intern(String field, String value) {
+        if ((value == null) || (value.length() > MAX_LENGTH)) {
+            return value;
+        }
+        FieldPool pool = pools.get(field);
+        if (pool == null) {
+            pool = new FieldPool();
+            FieldPool existing = pools.putIfAbsent(field, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool.intern(value);
+    }
+
+    /**
+     * Replaces the field values of the entry by pooled ones. This is meant
+     * for entries that do not belong to a database yet: no change events
+     * are of interest, and none are fired for values that are already equal.
+     */
+    public void intern(BibtexEntry entry) {
+        Map<String, String> pooled = null;
+        for (String field : entry.getAllFields()) {
+            String value = entry.getField(field);
+            String shared = intern(field, value);
+            if (shared != value) {
+                if (pooled == null) {
+                    pooled = new HashMap<>();
+                }
+                pooled.put(field, shared);
+            }
+        }
+        if (pooled != null) {
+            entry.setField(pooled);
+        }
+    }
+
+    public void intern(Collection<BibtexEntry> entries) {
+        for (BibtexEntry entry : entries) {
+            intern(entry);
+        }
+    }
+
+    /**
+     * Returns the fields looked up so far.
+     */
+    public Collection<String> getFields() {
+        return Collections.unmodifiableSet(pools.keySet());
+    }
+
+    /**
+     * Returns the number of values of the given field passed to intern(),
+     * except those too long to be pooled.
+     */
+    public long getLookups(String field) {
+        FieldPool pool = pools.get(field);
+        return pool == null ? 0 : pool.lookups.sum();
+    }
+
+    /**
+     * Returns the number of values of the given field that were replaced by
+     * an equal value from the pool.
+     */
+    public long getHits(String field) {
+        FieldPool pool = pools.get(field);
+        return pool == null ? 0 : pool.hits.sum();
+    }
+
+    /**
+     * Returns whether values of the given field are still being pooled.
+     */
+    public boolean isPooled(String field) {
+        FieldPool pool = pools.get(field);
+        return (pool == null) || !pool.disabled;
+    }
+
+    /**
+     * Returns one line per field with its hit rate, fields with the most hits
+     * first.
+     */
+    public String getStatistics() {
+        List<String> fields = new ArrayList<>(pools.keySet());
+        Collections.sort(fields, new Comparator<String>() {
+
+            @Override
+            public int compare(String a, String b) {
+                int c = Long.compare(getHits(b), getHits(a));
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            long lookups = getLookups(field);
+            long hits = getHits(field);
+            sb.append(field).append(": ").append(hits).append('/').append(lookups).append(" hits (")
+                    .append(lookups == 0 ? 0 : (100 * hits) / lookups).append("%)");
+            if (!isPooled(field)) {
+                sb.append(", not pooled");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Logs the statistics at level FINE.
+     */
+    public void logStatistics(String source) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Field value pool statistics for " + source + ":\n" + getStatistics());
+        }
+    }
+
+    private static class FieldPool {
+
+        private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+
+        private final LongAdder lookups = new LongAdder();
+
+        private final LongAdder hits = new LongAdder();
+
+        private volatile boolean disabled;
+
+        String intern(String value) {
+            lookups.increment();
+            if (disabled) {
+                return value;
+            }
+            String pooled = values.putIfAbsent(value, value);
+            if (pooled != null) {
+                hits.increment();
+                return pooled;
+            }
+            long n = lookups.sum();
+            if ((n >= PROBE_LOOKUPS) && (hits.sum() < (MIN_HIT_RATE * n))) {
+                // Mostly distinct values: stop keeping them alive.
+                disabled = true;
+                values.clear();
+            }
+            return value;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.logging.Filter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -1370,9 +1371,15 @@ public class Globals {
 
     }
 
+    // The last pattern made by getPatternForWords(), kept as highlighting
+    // asks for the same one for every field shown:
+    private static volatile WordsPattern lastPatternForWords = null;
+
     /**
      * Returns a reg exp pattern in the form (w1)|(w2)| ... wi are escaped if no
-     * regex search is enabled
+     * regex search is enabled. Unless the search is case sensitive, the words
+     * are folded like NormalizedFields.fold(), and the pattern has to be
+     * matched against folded text; see getMatcherForWords().
      */
     public static Pattern getPatternForWords(ArrayList<String> words) {
         if ((words == null) || (words.isEmpty()) || (words.get(0).isEmpty())) {
@@ -1380,23 +1387,66 @@ public class Globals {
         }
 
         boolean regExSearch = Globals.prefs.getBoolean("regExpSearch");
+        boolean caseSensitive = Globals.prefs.getBoolean("caseSensitiveSearch");
+        WordsPattern last = lastPatternForWords;
+        if ((last != null) && last.isFor(words, regExSearch, caseSensitive)) {
+            return last.pattern;
+        }
 
         // compile the words to a regex in the form (w1) | (w2) | (w3)
-        String searchPattern = "(".concat(regExSearch ? words.get(0) : Pattern.quote(words.get(0))).concat(")");
-        for (int i = 1; i < words.size(); i++) {
-            searchPattern = searchPattern.concat("|(").concat(regExSearch ? words.get(i) : Pattern.quote(words.get(i))).concat(")");
+        StringBuilder searchPattern = new StringBuilder();
+        for (String word : words) {
+            if (!caseSensitive) {
+                // Regular expressions keep their case, which matters in \S or \W:
+                word = regExSearch ? NormalizedFields.removeAccents(word) : NormalizedFields.fold(word);
+            }
+            if (searchPattern.length() > 0) {
+                searchPattern.append('|');
+            }
+            searchPattern.append('(').append(regExSearch ? word : Pattern.quote(word)).append(')');
         }
 
         Pattern pattern;
-        if (Globals.prefs.getBoolean("caseSensitiveSearch")) {
-            pattern = Pattern.compile(searchPattern);
+        if (caseSensitive) {
+            pattern = Pattern.compile(searchPattern.toString());
         } else {
-            pattern = Pattern.compile(searchPattern, Pattern.CASE_INSENSITIVE);
+            pattern = Pattern.compile(searchPattern.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
         }
 
+        lastPatternForWords = new WordsPattern(words, regExSearch, caseSensitive, pattern);
         return pattern;
     }
 
+    /**
+     * Returns a matcher that finds the words in the text the way the simple
+     * search does: ignoring case and accents, unless the search is case
+     * sensitive. Its positions are positions in the text.
+     */
+    public static Matcher getMatcherForWords(ArrayList<String> words, String text) {
+        Pattern pattern = getPatternForWords(words);
+        return pattern.matcher(Globals.prefs.getBoolean("caseSensitiveSearch") ? text : NormalizedFields.fold(text));
+    }
+
+    private static final class WordsPattern {
+
+        final List<String> words;
+        final boolean regExSearch;
+        final boolean caseSensitive;
+        final Pattern pattern;
+
+        WordsPattern(List<String> words, boolean regExSearch, boolean caseSensitive, Pattern pattern) {
+            this.words = new ArrayList<String>(words);
+            this.regExSearch = regExSearch;
+            this.caseSensitive = caseSensitive;
+            this.pattern = pattern;
+        }
+
+        boolean isFor(List<String> words, boolean regExSearch, boolean caseSensitive) {
+            return (this.regExSearch == regExSearch) && (this.caseSensitive == caseSensitive)
+                    && this.words.equals(words);
+        }
+    }
+
     /**
      * With Java 7, one could directly set a format for the SimpleFormatter
      * (http://stackoverflow.com/a/10722260/873282) and use that in a
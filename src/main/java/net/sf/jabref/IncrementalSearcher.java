@@ -38,33 +38,21 @@ public class IncrementalSearcher {
 
 	protected boolean searchFields(Set<String> fields, BibtexEntry bibtexEntry, 
 				       String searchString) {
-	    boolean found = false;
 	    if (fields != null) {
-	    	
-	    	for (String field : fields){
-		    try {
-			/*Globals.logger("Searching field '"+fields[i].toString()
-				       +"' for '"
-				       +pattern.toString()+"'.");*/
-			if (bibtexEntry.getField(field) != null) {
-			    if (prefs.getBoolean("caseSensitiveSearch")) {
-				if (bibtexEntry.getField(field).contains(searchString))
-				    found = true;
-			    } else {
-				if (bibtexEntry.getField(field).toLowerCase().contains(searchString.toLowerCase()))
-				    found = true;
-			    }
-			    
-			    if (found) {
-				hitInField = field;
-				return true;
-			    }
-			}
-		    }			
-		    catch(Throwable t ){
-			System.err.println("Searching error: "+t) ; 
+		// Like the simple search, look at the contents without LaTeX
+		// commands, and ignore accents unless the search is case sensitive:
+		boolean caseSensitive = prefs.getBoolean("caseSensitiveSearch");
+		if (!caseSensitive)
+		    searchString = NormalizedFields.fold(searchString);
+		NormalizedFields normalized = bibtexEntry.getNormalizedFields();
+		String[] values = normalized.getValues(caseSensitive);
+		for (int i = 0; i < values.length; i++) {
+		    String field = normalized.getFieldName(i);
+		    if ((values[i] != null) && values[i].contains(searchString) && fields.contains(field)) {
+			hitInField = field;
+			return true;
 		    }
-		}  
+		}
 	    }
 	    return false;
 	}
@@ -156,7 +156,7 @@ public class JTextAreaWithHighlighting extends JTextArea implements SearchTextLi
             return;
         }
 
-        Matcher matcher = Globals.getPatternForWords(words).matcher(content);
+        Matcher matcher = Globals.getMatcherForWords(words, content);
 
         while (matcher.find()) {
             try {
@@ -308,9 +308,25 @@ public final class JabRef {
         List<ParserResult> loaded = new ArrayList<>();
         List<String> toImport = new ArrayList<>();
 
+        // If only the search matches are to be exported from the last bib file,
+        // that file is searched while it is parsed instead of being loaded:
+        String streamedBibFile = null;
+        if (initialStartup && cli.isDisableGui() && cli.isExportMatches() && !cli.isBlank()
+                && !cli.isFileExport() && !cli.isAuxImport() && !cli.isFileImport()
+                && !cli.isImportToOpenBase() && !cli.isFetcherEngine()
+                && (cli.getLeftOver().length > 0)) {
+            String last = cli.getLeftOver()[cli.getLeftOver().length - 1];
+            if (last.toLowerCase().endsWith("bib") && new File(last).exists()) {
+                streamedBibFile = last;
+            }
+        }
+
         if (!cli.isBlank()
                 && (cli.getLeftOver().length > 0)) {
             for (String aLeftOver : cli.getLeftOver()) {
+                if (aLeftOver.equals(streamedBibFile)) {
+                    continue;
+                }
                 // Leftover arguments that have a "bib" extension are interpreted as
                 // bib files to open. Other files, and files that could not be opened
                 // as bib, we try to import instead.
@@ -373,14 +389,21 @@ public final class JabRef {
         }
 
         if (cli.isExportMatches()) {
-            if (!loaded.isEmpty()) {
+            if (!loaded.isEmpty() || (streamedBibFile != null)) {
                 String[] data = cli.getExportMatches().split(",");
                 String searchTerm = data[0].replace("\\$", " "); //enables blanks within the search term:
                 //? stands for a blank
-                ParserResult pr = loaded.get(loaded.size() - 1);
-                BibtexDatabase dataBase = pr.getDatabase();
-                SearchManagerNoGUI smng = new SearchManagerNoGUI(searchTerm, dataBase);
-                BibtexDatabase newBase = smng.getDBfromMatches(); //newBase contains only match entries
+                ParserResult pr;
+                BibtexDatabase newBase; //newBase contains only match entries
+                if (streamedBibFile != null) {
+                    pr = streamMatches(streamedBibFile, searchTerm);
+                    newBase = pr == null ? null : pr.getDatabase();
+                } else {
+                    pr = loaded.get(loaded.size() - 1);
+                    BibtexDatabase dataBase = pr.getDatabase();
+                    SearchManagerNoGUI smng = new SearchManagerNoGUI(searchTerm, dataBase);
+                    newBase = smng.getDBfromMatches();
+                }
 
                 //export database
                 if (newBase != null && newBase.getEntryCount() > 0) {
@@ -1211,6 +1234,29 @@ public final class JabRef {
         }
     }
 
+    /**
+     * Searches a bib file while it is parsed, without loading all of it.
+     *
+     * @return The matching entries, or null if the search or the file could
+     * not be handled.
+     */
+    private static ParserResult streamMatches(String name, String searchTerm) {
+        Globals.logger(Globals.lang("Opening") + ": " + name);
+        try {
+            ParserResult pr = new SearchManagerNoGUI(searchTerm, null).getMatchesFromBibFile(new File(name));
+            if ((pr != null) && pr.hasWarnings()) {
+                for (String aWarn : pr.warnings()) {
+                    System.out.println(Globals.lang("Warning") + ": " + aWarn);
+                }
+            }
+            return pr;
+        } catch (IOException ex) {
+            System.err.println(Globals.lang("Error opening file") + " '"
+                    + name + "': " + ex.getLocalizedMessage());
+            return null;
+        }
+    }
+
     public static ParserResult importFile(String argument) {
         String[] data = argument.split(",");
         try {
@@ -507,6 +507,11 @@ public final class JabRefPreferences {
         // TODO: Currently not possible to edit this setting:
         defaults.put("previewPrintButton", Boolean.FALSE);
         defaults.put("autoDoubleBraces", Boolean.FALSE);
+        defaults.put(USE_MAPPED_BIBTEX_PARSER, Boolean.TRUE);
+        defaults.put(USE_BIBTEX_SNAPSHOTS, Boolean.TRUE);
+        defaults.put(USE_SEARCH_INDEX_FILES, Boolean.TRUE);
+        defaults.put(USE_FIELD_VALUE_POOL, Boolean.TRUE);
+        defaults.put(USE_DUPLICATE_SEARCH_BLOCKING, Boolean.TRUE);
         defaults.put("doNotResolveStringsFor", "url");
         defaults.put("resolveStringsAllFields", Boolean.FALSE);
         defaults.put("putBracesAroundCapitals", "");//"title;journal;booktitle;review;abstract");
@@ -660,6 +665,12 @@ public final class JabRefPreferences {
 
     public static final String GROUP_SHOW_NUMBER_OF_ELEMENTS = "groupShowNumberOfElements";
 
+    public static final String USE_MAPPED_BIBTEX_PARSER = "useMappedBibtexParser";
+    public static final String USE_BIBTEX_SNAPSHOTS = "useBibtexSnapshots";
+    public static final String USE_SEARCH_INDEX_FILES = "useSearchIndexFiles";
+    public static final String USE_FIELD_VALUE_POOL = "useFieldValuePool";
+    public static final String USE_DUPLICATE_SEARCH_BLOCKING = "useDuplicateSearchBlocking";
+
     public boolean putBracesAroundCapitals(String fieldName) {
         return putBracesAroundCapitalsFields.contains(fieldName);
     }
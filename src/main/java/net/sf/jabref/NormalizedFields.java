@@ -0,0 +1,212 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref;
+
+import java.text.Normalizer;
+import java.util.Collection;
+
+import net.sf.jabref.export.layout.format.RemoveLatexCommands;
+
+/**
+ * The field values of an entry in the form they are searched in. LaTeX
+ * commands and braces are removed by RemoveLatexCommands. For searches that
+ * ignore case, the values are also lower cased and their accents are folded,
+ * so that "Sch{\"o}n", "Schön" and "schon" are all found by "schön" as well
+ * as by "schon".
+ *
+ * BibtexEntry.getNormalizedFields() computes them when first asked for after
+ * a change, and keeps them for the search rules, the search index,
+ * incremental search and highlighting. Instances are immutable. Values that
+ * normalizing does not change are shared with the entry, not copied.
+ */
+public final class NormalizedFields {
+
+    private static final RemoveLatexCommands removeLatexCommands = new RemoveLatexCommands();
+
+    // Accented Latin letters are folded to their base letter. Other scripts
+    // are left alone, as their diacritics often make different letters.
+    private static final char LATIN_END = 0x250;
+    private static final char EXTENDED_START = 0x1e00;
+    private static final char EXTENDED_END = 0x1f00;
+
+    // The letter without accents, for each char of the Latin ranges:
+    private static final char[] BASE = new char[LATIN_END];
+    private static final char[] EXTENDED_BASE = new char[EXTENDED_END - EXTENDED_START];
+
+    static {
+        for (char c = 0; c < LATIN_END; c++) {
+            BASE[c] = decompose(c);
+        }
+        for (char c = EXTENDED_START; c < EXTENDED_END; c++) {
+            EXTENDED_BASE[c - EXTENDED_START] = decompose(c);
+        }
+    }
+
+    // Approximate size of an array or String object apart from its
+    // contents, and of a reference:
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = OBJECT_OVERHEAD + 24;
+    private static final int REFERENCE_SIZE = 4;
+
+    private final int[] fieldIds;
+
+    private final String[] source;
+
+    private final String[] plain;
+
+    private final String[] folded;
+
+    NormalizedFields(int[] fieldIds, String[] values) {
+        this.fieldIds = fieldIds;
+        source = values;
+        plain = new String[values.length];
+        folded = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            String s = removeLatexCommands.format(values[i]);
+            plain[i] = s.equals(values[i]) ? values[i] : s;
+            s = fold(plain[i]);
+            folded[i] = s.equals(plain[i]) ? plain[i] : s;
+        }
+    }
+
+    /**
+     * Returns whether these are the normalized forms of the given values.
+     */
+    boolean isFor(String[] values) {
+        return source == values;
+    }
+
+    /**
+     * Returns the number of fields.
+     */
+    public int size() {
+        return source.length;
+    }
+
+    /**
+     * Returns the name of the field at the given position.
+     */
+    public String getFieldName(int index) {
+        return FieldNameRegistry.getName(fieldIds[index]);
+    }
+
+    /**
+     * Returns the normalized field values, in the order of the fields in the
+     * entry. Unset values are null. The array must not be modified.
+     *
+     * @param caseSensitive If false, the values are lower cased and have
+     * their accents folded, and must be compared with search words treated by
+     * fold().
+     */
+    public String[] getValues(boolean caseSensitive) {
+        return caseSensitive ? plain : folded;
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by these values, not
+     * counting those shared with the entry.
+     */
+    public long getMemoryUsage() {
+        long bytes = OBJECT_OVERHEAD + (2 * (OBJECT_OVERHEAD + ((long) REFERENCE_SIZE * source.length)));
+        for (int i = 0; i < source.length; i++) {
+            if (plain[i] != source[i]) {
+                bytes += STRING_OVERHEAD + (2L * plain[i].length());
+            }
+            if (folded[i] != plain[i]) {
+                bytes += STRING_OVERHEAD + (2L * folded[i].length());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the normalized values
+     * the given entries currently keep.
+     */
+    public static long getMemoryUsage(Collection<BibtexEntry> entries) {
+        long bytes = 0;
+        for (BibtexEntry entry : entries) {
+            NormalizedFields normalized = entry.peekNormalizedFields();
+            if (normalized != null) {
+                bytes += normalized.getMemoryUsage();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Lower cases the text and folds its accents, the way field values are
+     * treated for searches that ignore case. This is done character by
+     * character, so the result is as long as the text, and positions in the
+     * one are positions in the other.
+     */
+    public static String fold(String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char f = Character.toLowerCase(removeAccent(c));
+            if (f != c) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = f;
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    /**
+     * Folds the accents of the text like fold(), but keeps its case. Meant
+     * for regular expressions, in which case may matter, as in \S or \W.
+     */
+    public static String removeAccents(String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char f = removeAccent(c);
+            if (f != c) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = f;
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    private static char removeAccent(char c) {
+        if (c < LATIN_END) {
+            return BASE[c];
+        }
+        if ((c >= EXTENDED_START) && (c < EXTENDED_END)) {
+            return EXTENDED_BASE[c - EXTENDED_START];
+        }
+        return c;
+    }
+
+    private static char decompose(char c) {
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        // Only letters followed by combining marks are folded:
+        if ((decomposed.length() > 1) && Character.isLetter(decomposed.charAt(0))
+                && (Character.getType(decomposed.charAt(1)) == Character.NON_SPACING_MARK)) {
+            return decomposed.charAt(0);
+        }
+        return c;
+    }
+}
@@ -32,27 +32,19 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import net.sf.jabref.export.layout.format.RemoveLatexCommands;
-
 public class RegExpRule implements SearchRule {
 
     final boolean m_caseSensitiveSearch;
-    //static RemoveBrackets removeBrackets = new RemoveBrackets();
-    static RemoveLatexCommands removeBrackets = new RemoveLatexCommands();
+    // The last compiled pattern, reused as long as the search string is the same:
+    private volatile Query m_query = null;
 
     public RegExpRule(boolean caseSensitive) {
         m_caseSensitiveSearch = caseSensitive;
     }
 
     public boolean validateSearchStrings(Map<String, String> searchStrings) {
-        int score = 0;
-        String searchString = searchStrings.values().iterator().next();
-
-        int flags = 0;
-        if (!m_caseSensitiveSearch)
-            flags = Pattern.CASE_INSENSITIVE; // testing
         try {
-            Pattern pattern = Pattern.compile(searchString, flags);
+            getQuery(searchStrings);
         } catch (PatternSyntaxException ex) {
             return false;
         }
@@ -62,28 +54,45 @@ public class RegExpRule implements SearchRule {
     public int applyRule(Map<String, String> searchStrings, BibtexEntry bibtexEntry) throws PatternSyntaxException {
 
         int score = 0;
-        String searchString = searchStrings.values().iterator().next();
-
-        int flags = 0;
-        if (!m_caseSensitiveSearch)
-            flags = Pattern.CASE_INSENSITIVE; // testing
-        //System.out.println(searchString);
-        Pattern pattern = Pattern.compile(searchString, flags);
+        Pattern pattern = getQuery(searchStrings).pattern;
 
         score += searchFields(bibtexEntry.getAllFields(), bibtexEntry, pattern);
 
         return score;
     }
 
+    /**
+     * Returns the pattern compiled from the search string, compiling it only
+     * if the string differs from the last one. Unless the search is case
+     * sensitive, the pattern is matched against folded field contents, so
+     * accents are folded in it as well.
+     */
+    private Query getQuery(Map<String, String> searchStrings) throws PatternSyntaxException {
+        String searchString = searchStrings.values().iterator().next();
+        Query query = m_query;
+        if ((query == null) || !query.searchString.equals(searchString)) {
+            int flags = 0;
+            String regex = searchString;
+            if (!m_caseSensitiveSearch) {
+                flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE; // testing
+                regex = NormalizedFields.removeAccents(regex);
+            }
+            query = new Query(searchString, Pattern.compile(regex, flags));
+            m_query = query;
+        }
+        return query;
+    }
+
     protected int searchFields(Set<String> fields, BibtexEntry bibtexEntry,
                                Pattern pattern) {
         int score = 0;
         if (fields != null) {
-        	for (String field : fields){
+            NormalizedFields normalized = bibtexEntry.getNormalizedFields();
+            String[] values = normalized.getValues(m_caseSensitiveSearch);
+            for (int i = 0; i < values.length; i++) {
                 try {
-                    Object value = bibtexEntry.getField(field);
-                    if (value != null) {
-                        Matcher m = pattern.matcher(removeBrackets.format((String)value));
+                    if ((values[i] != null) && fields.contains(normalized.getFieldName(i))) {
+                        Matcher m = pattern.matcher(values[i]);
                         if (m.find())
                             score++;
                     }
@@ -97,4 +106,18 @@ public class RegExpRule implements SearchRule {
         return score;
     }
 
+    /**
+     * A search string with its compiled pattern. Immutable, so that it can
+     * be used by several threads.
+     */
+    private static final class Query {
+
+        final String searchString;
+        final Pattern pattern;
+
+        Query(String searchString, Pattern pattern) {
+            this.searchString = searchString;
+            this.pattern = pattern;
+        }
+    }
 }
@@ -23,16 +23,31 @@ import java.awt.event.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.swing.*;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import net.sf.jabref.gui.AutoCompleteListener;
 import net.sf.jabref.search.BasicSearch;
+import net.sf.jabref.search.ParallelSearch;
 import net.sf.jabref.search.SearchExpression;
 import net.sf.jabref.search.SearchExpressionParser;
 import net.sf.jabref.search.SearchMatcher;
@@ -78,6 +93,25 @@ public class SearchManager2 extends SidePaneComponent
     // an incremental search. -1 means
     // that the search is inactive.
 
+    // The search running in the background, if any:
+    private SearchWorker runningSearch = null;
+
+    private static final Logger logger = Logger.getLogger(SearchManager2.class.getName());
+
+    // Searches the databases in a search of all databases. Each database
+    // search may use the common fork-join pool as well, so a few threads
+    // are enough:
+    private static final ExecutorService globalSearchExecutor = Executors.newFixedThreadPool(
+            Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors() / 2)),
+            r -> {
+                Thread t = new Thread(r, "SearchManager2-Global");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // Number of hits added to the search results dialog at a time:
+    private static final int RESULT_BATCH_SIZE = 500;
+
     public SearchManager2(JabRefFrame frame, SidePaneManager manager) {
 //        super(manager, GUIGlobals.getIconUrl("search"), Globals.lang("Search"));
         super(manager, GUIGlobals.getIcon("search", GUIGlobals.MENU_ICON_SIZE, GUIGlobals.MENU_ICON_SIZE), Globals.lang("Search"));
@@ -168,6 +202,24 @@ public class SearchManager2 extends SidePaneComponent
 
         searchField.addActionListener(this);
         searchField.addCaretListener(this);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+
+            // When the search string changes, a search still running for the
+            // old one is outdated:
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                cancelRunningSearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                cancelRunningSearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
         search.addActionListener(this);
         searchField.addFocusListener(new FocusAdapter() {
 
@@ -533,7 +585,21 @@ public class SearchManager2 extends SidePaneComponent
                 return;
             }
             SearchWorker worker = new SearchWorker(searchRules, searchOptions);
+            if ((rule1 instanceof BasicSearch) && ((BasicSearch) rule1).canUseIndex()) {
+                worker.useIndex((BasicSearch) rule1);
+            }
+            cancelRunningSearch();
+            runningSearch = worker;
+            if (searchAllBases.isSelected()) {
+                // The hits are shown as soon as each database is searched:
+                showSearchDialog();
+            }
             worker.getWorker().run();
+            if (runningSearch != worker) {
+                // Cancelled, or replaced by a newer search, while it was running.
+                return;
+            }
+            runningSearch = null;
             worker.getCallBack().update();
             escape.setEnabled(true);
 
@@ -573,95 +639,195 @@ public class SearchManager2 extends SidePaneComponent
 //            return image != null ? new ImageIcon(image) : null;
 //        }
 //    }
+    /**
+     * Stops the search running in the background, if any, so that its result
+     * is not shown.
+     */
+    private void cancelRunningSearch() {
+        if (runningSearch != null) {
+            runningSearch.cancel();
+            runningSearch = null;
+        }
+    }
+
+    /**
+     * Turns off the other ways of showing search results, and opens the
+     * search results dialog without any entries.
+     */
+    private void showSearchDialog() {
+        if (startedFloatSearch) {
+            panel.mainTable.stopShowingFloatSearch();
+            startedFloatSearch = false;
+        }
+        if (startedFilterSearch) {
+            panel.stopShowingSearchResults();
+            startedFilterSearch = false;
+        }
+        // Make sure the search dialog is instantiated and cleared:
+        instantiateSearchDialog();
+        searchDialog.clear();
+        searchDialog.setVisible(true);
+    }
+
     class SearchWorker extends AbstractWorker {
 
-        private final SearchRuleSet rules;
         Hashtable<String, String> searchTerm;
         int hits = 0;
+        private BasicSearch indexedRule = null;
+        private final ParallelSearch search;
+        // The databases to search, taken on the EDT:
+        private final List<BasePanel> panels = new ArrayList<>();
+        private final boolean allBases;
+        // The hits in each database searched:
+        private final Map<BasePanel, Set<BibtexEntry>> results = new LinkedHashMap<>();
+        private volatile boolean cancelled = false;
 
         public SearchWorker(SearchRuleSet rules, Hashtable<String, String> searchTerm) {
-            this.rules = rules;
             this.searchTerm = searchTerm;
+            search = new ParallelSearch(rules, searchTerm);
+            allBases = searchAllBases.isSelected();
+            if (allBases) {
+                for (int i = 0; i < frame.getTabbedPane().getTabCount(); i++) {
+                    panels.add(frame.baseAt(i));
+                }
+            } else {
+                panels.add(panel);
+            }
+        }
+
+        public void cancel() {
+            cancelled = true;
+            search.cancel();
+        }
+
+        /**
+         * Lets the worker look up the matches of the given rule, which must be
+         * the only one, in the search indexes of the databases, narrowing
+         * down the results of earlier searches where possible.
+         */
+        public void useIndex(BasicSearch rule) {
+            indexedRule = rule;
         }
 
         @Override
         public void run() {
-            if (!searchAllBases.isSelected()) {
-                // Search only the current database:
-                for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-
-                    boolean hit = rules.applyRule(searchTerm, entry) > 0;
-                    entry.setSearchHit(hit);
-                    if (hit) {
-                        hits++;
+            try {
+                if (!allBases) {
+                    // Search only the current database:
+                    results.put(panel, search(panel));
+                    hits = results.get(panel).size();
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("Normalized field values of " + panel.database().getEntryCount()
+                                + " entries take about " + (NormalizedFields.getMemoryUsage(
+                                        panel.database().getEntries()) / 1024) + " KB");
                     }
+                } else {
+                    searchAll();
                 }
-            } else {
-                // Search all databases:
-                for (int i = 0; i < frame.getTabbedPane().getTabCount(); i++) {
-                    BasePanel p = frame.baseAt(i);
-                    for (BibtexEntry entry : p.getDatabase().getEntries()) {
-
-                        boolean hit = rules.applyRule(searchTerm, entry) > 0;
-                        entry.setSearchHit(hit);
-                        if (hit) {
-                            hits++;
-                        }
+            } catch (CancellationException ex) {
+                // The user has started typing a new search.
+            }
+        }
+
+        /**
+         * Searches all databases at the same time, and adds the hits of each
+         * database to the search results dialog as soon as it is done.
+         */
+        private void searchAll() {
+            long start = System.currentTimeMillis();
+            CompletionService<DatabaseResult> completion = new ExecutorCompletionService<>(globalSearchExecutor);
+            List<Future<DatabaseResult>> futures = new ArrayList<>();
+            for (final BasePanel p : panels) {
+                futures.add(completion.submit(() -> {
+                    long started = System.currentTimeMillis();
+                    Set<BibtexEntry> matches = search(p);
+                    return new DatabaseResult(p, matches, System.currentTimeMillis() - started);
+                }));
+            }
+            StringBuilder timings = new StringBuilder();
+            try {
+                for (int i = 0; i < panels.size(); i++) {
+                    DatabaseResult result = completion.take().get();
+                    if (cancelled) {
+                        throw new CancellationException();
                     }
+                    results.put(result.panel, result.hits);
+                    hits += result.hits.size();
+                    showHits(result.panel, new ArrayList<>(result.hits));
+                    timings.append(timings.length() == 0 ? "" : ", ").append(getName(result.panel))
+                            .append(' ').append(result.time).append(" ms (").append(result.hits.size())
+                            .append(" hits)");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
                 }
+                throw new RuntimeException(ex.getCause());
+            } finally {
+                for (Future<DatabaseResult> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            logger.info("Searched " + panels.size() + " databases in " + (System.currentTimeMillis() - start)
+                    + " ms: " + timings);
+        }
+
+        private Set<BibtexEntry> search(BasePanel p) {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (indexedRule != null) {
+                return p.getSearchSession().search(indexedRule, searchTerm, search);
+            } else {
+                return search.search(p.getDatabase().getEntries());
+            }
+        }
+
+        /**
+         * Adds hits to the search results dialog on the EDT, a batch at a
+         * time, so that the dialog stays responsive.
+         */
+        private void showHits(final BasePanel p, final List<BibtexEntry> matches) {
+            for (int from = 0; from < matches.size(); from += RESULT_BATCH_SIZE) {
+                final List<BibtexEntry> batch = matches.subList(from,
+                        Math.min(matches.size(), from + RESULT_BATCH_SIZE));
+                SwingUtilities.invokeLater(() -> {
+                    if (!cancelled) {
+                        searchDialog.addEntries(batch, p);
+                    }
+                });
             }
         }
 
+        private String getName(BasePanel p) {
+            return p.getFile() == null ? GUIGlobals.untitledTitle : p.getFile().getName();
+        }
+
         @Override
         public void update() {
+            // Mark the hits, for highlighting them in the preview:
+            for (Map.Entry<BasePanel, Set<BibtexEntry>> result : results.entrySet()) {
+                for (BibtexEntry entry : result.getKey().getDatabase().getEntries()) {
+                    entry.setSearchHit(result.getValue().contains(entry));
+                }
+            }
+
             panel.output(Globals.lang("Searched database. Number of hits")
                     + ": " + hits);
 
             // Show the result in the chosen way:
-            if (searchAllBases.isSelected()) {
-                // Search all databases. This means we need to use the search results dialog.
-                // Turn off other search mode, if activated:
-                if (startedFloatSearch) {
-                    panel.mainTable.stopShowingFloatSearch();
-                    startedFloatSearch = false;
-                }
-                if (startedFilterSearch) {
-                    panel.stopShowingSearchResults();
-                    startedFilterSearch = false;
-                }
-                // Make sure the search dialog is instantiated and cleared:
-                instantiateSearchDialog();
-                searchDialog.clear();
-                for (int i = 0; i < frame.getTabbedPane().getTabCount(); i++) {
-                    BasePanel p = frame.baseAt(i);
-                    for (BibtexEntry entry : p.getDatabase().getEntries()) {
-                        if (entry.isSearchHit()) {
-                            searchDialog.addEntry(entry, p);
-                        }
-                    }
-                }
-                searchDialog.selectFirstEntry();
-                searchDialog.setVisible(true);
+            if (allBases) {
+                // Search all databases. The hits have been added to the search
+                // results dialog while searching, the last ones may still be
+                // waiting on the EDT:
+                SwingUtilities.invokeLater(() -> searchDialog.selectFirstEntry());
             } else if (showResultsInDialog.isSelected()) {
-                // Turn off other search mode, if activated:
-                if (startedFloatSearch) {
-                    panel.mainTable.stopShowingFloatSearch();
-                    startedFloatSearch = false;
-                }
-                if (startedFilterSearch) {
-                    panel.stopShowingSearchResults();
-                    startedFilterSearch = false;
-                }
-                // Make sure the search dialog is instantiated and cleared:
-                instantiateSearchDialog();
-                searchDialog.clear();
-                for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-                    if (entry.isSearchHit()) {
-                        searchDialog.addEntry(entry, panel);
-                    }
-                }
+                showSearchDialog();
+                searchDialog.addEntries(new ArrayList<>(results.get(panel)), panel);
                 searchDialog.selectFirstEntry();
-                searchDialog.setVisible(true);
             } else if (hideSearch.isSelected()) {
                 // Filtering search - removes non-hits from the table:
                 if (startedFloatSearch) {
@@ -669,7 +835,7 @@ public class SearchManager2 extends SidePaneComponent
                     startedFloatSearch = false;
                 }
                 startedFilterSearch = true;
-                panel.setSearchMatcher(SearchMatcher.INSTANCE);
+                panel.setSearchMatcher(new SearchMatcher(results.get(panel)));
 
             } else {
                 // Float search - floats hits to the top of the table:
@@ -678,7 +844,7 @@ public class SearchManager2 extends SidePaneComponent
                     startedFilterSearch = false;
                 }
                 startedFloatSearch = true;
-                panel.mainTable.showFloatSearch(SearchMatcher.INSTANCE);
+                panel.mainTable.showFloatSearch(new SearchMatcher(results.get(panel)));
 
             }
 
@@ -688,6 +854,22 @@ public class SearchManager2 extends SidePaneComponent
         }
     }
 
+    /**
+     * The hits found in one database, and the time it took.
+     */
+    private static class DatabaseResult {
+
+        final BasePanel panel;
+        final Set<BibtexEntry> hits;
+        final long time;
+
+        DatabaseResult(BasePanel panel, Set<BibtexEntry> hits, long time) {
+            this.panel = panel;
+            this.hits = hits;
+            this.time = time;
+        }
+    }
+
     public void clearSearch() {
 
         if (panel.isShowingFloatSearch()) {
@@ -15,9 +15,12 @@
 */
 package net.sf.jabref;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.Integer;
 import java.lang.Math;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Collection;
 import java.util.List;
@@ -32,6 +35,7 @@ public class SearchManagerNoGUI {
     private String searchTerm;
     private BibtexDatabase database, base=null;
     Hashtable<String,String> searchOptions = new Hashtable<String,String> ();
+    private SearchRuleSet searchRules;
     
     public SearchManagerNoGUI(String term, BibtexDatabase dataBase) {
         searchTerm = term;
@@ -39,14 +43,97 @@ public class SearchManagerNoGUI {
     }
     
     public BibtexDatabase getDBfromMatches() {
-        int hits = 0;
+        if (!prepareSearch()) {
+            return base;
+        }
+        
+        Collection<BibtexEntry> entries = database.getEntries();
+        List<BibtexEntry> matchEntries = new ArrayList<>();
+        for (BibtexEntry entry : entries) {
+            if (matches(entry)) {
+                matchEntries.add(entry);
+            }
+        }
+        
+        base = ImportFormatReader.createDatabase(matchEntries);
+
+        return base; 
+    }//end getDBfromMatches()
+
+    /**
+     * Searches a BibTeX file while it is parsed, so that only the matching
+     * entries are ever kept in memory. The database given to the constructor
+     * is not used.
+     *
+     * @param file The BibTeX file to search.
+     * @return The matching entries with the file's meta data and entry types,
+     * or null if the search expression is illegal.
+     */
+    public ParserResult getMatchesFromBibFile(File file) throws IOException {
+        if (!prepareSearch()) {
+            return null;
+        }
+
+        final List<BibtexEntry> matchEntries = new ArrayList<>();
+        final HashMap<String, String> meta = new HashMap<>();
+        final HashMap<String, BibtexEntryType> entryTypes = new HashMap<>();
+        final List<String> warnings = new ArrayList<>();
+        String encoding = OpenDatabaseAction.streamDatabase(file, Globals.prefs.get("defaultEncoding"),
+                new BibtexVisitor() {
+
+                    public void visitPreamble(String preamble) {
+                        // Not used by the exported matches.
+                    }
+
+                    public void visitString(BibtexString string) {
+                        // Not used by the exported matches.
+                    }
+
+                    public void visitEntry(BibtexEntry entry) {
+                        if (matches(entry)) {
+                            matchEntries.add(entry);
+                        }
+                    }
+
+                    public void visitMetaData(String key, String value) {
+                        meta.put(key, value);
+                    }
+
+                    public void visitEntryType(CustomEntryType type) {
+                        entryTypes.put(type.getName().toLowerCase(), type);
+                    }
+
+                    public void visitWarning(String warning) {
+                        warnings.add(warning);
+                    }
+                });
+
+        // Entry types defined in the file are only known now:
+        for (BibtexEntry entry : matchEntries) {
+            if (entry.getType() instanceof UnknownEntryType) {
+                BibtexEntryType type = entryTypes.get(entry.getType().getName());
+                entry.setType(type != null ? type : BibtexEntryType.OTHER);
+            }
+        }
+
+        base = ImportFormatReader.createDatabase(matchEntries);
+        ParserResult pr = new ParserResult(base, new MetaData(meta, base), entryTypes);
+        pr.setEncoding(encoding);
+        pr.setFile(file);
+        for (String warning : warnings) {
+            pr.addWarning(warning);
+        }
+        return pr;
+    }
+
+    private boolean prepareSearch() {
                 System.out.println("search term: "+searchTerm);
         if(specifiedYears()) { 
             searchTerm = fieldYear(); 
         }
 
         searchOptions.put("option", searchTerm); 
-        SearchRuleSet searchRules = new SearchRuleSet();
+        searchRules = new SearchRuleSet();
         SearchRule rule1;
         rule1 = new BasicSearch(Globals.prefs.getBoolean("caseSensitiveSearch"),
                 Globals.prefs.getBoolean("regExpSearch"));
@@ -59,24 +146,16 @@ public class SearchManagerNoGUI {
         
         if (!searchRules.validateSearchStrings(searchOptions)) {
             System.out.println(Globals.lang("Search failed: illegal search expression"));
-            return base;
-        }
-        
-        Collection<BibtexEntry> entries = database.getEntries();
-        List<BibtexEntry> matchEntries = new ArrayList<>();
-        for (BibtexEntry entry : entries) {
-            boolean hit = searchRules.applyRule(searchOptions, entry) > 0;
-            entry.setSearchHit(hit);
-            if (hit) {
-                hits++;
-                matchEntries.add(entry);
-            }
+            return false;
         }
-        
-        base = ImportFormatReader.createDatabase(matchEntries);
+        return true;
+    }
 
-        return base; 
-    }//end getDBfromMatches()
+    private boolean matches(BibtexEntry entry) {
+        boolean hit = searchRules.applyRule(searchOptions, entry) > 0;
+        entry.setSearchHit(hit);
+        return hit;
+    }
     
     private boolean specifiedYears() {
         return searchTerm.matches("year=[0-9]{4}-[0-9]{4}");
@@ -28,13 +28,11 @@ package net.sf.jabref;
 
 import java.util.Map;
 
-import net.sf.jabref.export.layout.format.RemoveLatexCommands;
-
 public class SimpleSearchRule implements SearchRule {
 
     final boolean m_caseSensitiveSearch;
-    //static RemoveBrackets removeBrackets = new RemoveBrackets();
-    static RemoveLatexCommands removeBrackets = new RemoveLatexCommands();
+    // The last search string and the form it is looked for in:
+    private volatile String[] m_query = null;
 
     public SimpleSearchRule(boolean caseSensitive) {
         m_caseSensitiveSearch = caseSensitive;
@@ -45,21 +43,12 @@ public class SimpleSearchRule implements SearchRule {
     }
 
     public int applyRule(Map<String, String> searchStrings, BibtexEntry bibtexEntry) {
-        String searchString = searchStrings.values().iterator().next();
-
-        if (!m_caseSensitiveSearch)
-            searchString = searchString.toLowerCase();
+        String searchString = getQuery(searchStrings);
         int score = 0;
         int counter = 0;
-        Object fieldContentAsObject;
-        String fieldContent;
-        for (String field : bibtexEntry.getAllFields()){
-            fieldContentAsObject = bibtexEntry.getField(field); 
-            if (fieldContentAsObject != null)
+        for (String fieldContent : bibtexEntry.getNormalizedFields().getValues(m_caseSensitiveSearch)){
+            if (fieldContent != null)
                 try {
-                    fieldContent = removeBrackets.format(fieldContentAsObject.toString());
-                    if (!m_caseSensitiveSearch)
-                        fieldContent = fieldContent.toLowerCase();
                     counter = fieldContent.indexOf(searchString, counter);
                     while (counter >= 0) {
                         ++score;
@@ -73,4 +62,19 @@ public class SimpleSearchRule implements SearchRule {
         return score;
     }
 
+    /**
+     * Returns the search string, folded like the field contents unless the
+     * search is case sensitive. The result is kept as long as the search
+     * string is the same.
+     */
+    private String getQuery(Map<String, String> searchStrings) {
+        String searchString = searchStrings.values().iterator().next();
+        String[] query = m_query;
+        if ((query == null) || !query[0].equals(searchString)) {
+            query = new String[] {searchString,
+                    m_caseSensitiveSearch ? searchString : NormalizedFields.fold(searchString)};
+            m_query = query;
+        }
+        return query[1];
+    }
 }
@@ -1333,6 +1333,18 @@ public class Util {
         }
     }
 
+    /**
+     * Like updateCompletersForEntry(), for entries added in one go.
+     */
+    public static void updateCompletersForEntries(HashMap<String, AbstractAutoCompleter> autoCompleters,
+            Collection<BibtexEntry> entries) {
+        for (AbstractAutoCompleter comp : autoCompleters.values()) {
+            for (BibtexEntry bibtexEntry : entries) {
+                comp.addBibtexEntry(bibtexEntry);
+            }
+        }
+    }
+
     /**
      * Sets empty or non-existing owner fields of bibtex entries inside a List
      * to a specified default value. Timestamp field is also set. Preferences
@@ -167,6 +167,8 @@ public class ExportFormat implements IExportFormat {
             final MetaData metaData, final String file,
 		final String encoding, Set<String> entryIds) throws Exception {
 
+        // Export a consistent state, without blocking edits meanwhile:
+        final BibtexDatabase snapshot = database.snapshot();
         File outFile = new File(file);
         SaveSession ss = null;
         if (this.encoding != null) {
@@ -207,7 +209,7 @@ public class ExportFormat implements IExportFormat {
 		}
 		// Write the header
 		if (beginLayout != null) {
-			ps.write(beginLayout.doLayout(database, encoding));
+			ps.write(beginLayout.doLayout(snapshot, encoding));
             missingFormatters.addAll(beginLayout.getMissingFormatters());
 		}
 
@@ -218,7 +220,7 @@ public class ExportFormat implements IExportFormat {
 		 * be non-null, and be used to choose entries. Otherwise, it will be
 		 * null, and be ignored.
 		 */
-		List<BibtexEntry> sorted = FileActions.getSortedEntries(database, metaData,
+		List<BibtexEntry> sorted = FileActions.getSortedEntries(snapshot, metaData,
 			entryIds, false);
 
 		// Load default layout
@@ -263,7 +265,7 @@ public class ExportFormat implements IExportFormat {
 			}
 
 			// Write the entry
-			ps.write(layout.doLayout(entry, database));
+			ps.write(layout.doLayout(entry, snapshot));
 		}
 
 		// Print footer
@@ -283,7 +285,7 @@ public class ExportFormat implements IExportFormat {
 
 		// Write footer
 		if (endLayout != null) {
-			ps.write(endLayout.doLayout(database, encoding));
+			ps.write(endLayout.doLayout(snapshot, encoding));
             missingFormatters.addAll(endLayout.getMissingFormatters());
 		}
 
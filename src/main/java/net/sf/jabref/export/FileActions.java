@@ -196,6 +196,9 @@ public class FileActions {
             throw new SaveException(e.getMessage());
         }
 
+        // Save a snapshot, so that edits made meanwhile are either saved
+        // completely or not at all:
+        BibtexDatabase snapshot = database.snapshot();
         try {
 
             // Get our data stream. This stream writes only to a temporary file,
@@ -206,17 +209,17 @@ public class FileActions {
             writeBibFileHeader(fw, encoding);
 
             // Write preamble if there is one.
-            writePreamble(fw, database.getPreamble());
+            writePreamble(fw, snapshot.getPreamble());
 
             // Write strings if there are any.
-            writeStrings(fw, database);
+            writeStrings(fw, snapshot);
 
             // Write database entries. Take care, using CrossRefEntry-
             // Comparator, that referred entries occur after referring
             // ones. Apart from crossref requirements, entries will be
             // sorted as they appear on the screen.
             long startTime = System.currentTimeMillis();
-            List<BibtexEntry> sorter = getSortedEntries(database, metaData, null, true);
+            List<BibtexEntry> sorter = getSortedEntries(snapshot, metaData, null, true);
             long sortTime = System.currentTimeMillis() - startTime;
 
             BibtexEntryWriter bibtexEntryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
@@ -276,6 +279,10 @@ public class FileActions {
             ex.printStackTrace();
             session.cancel();
             // repairAfterError(file, backup, INIT_OK);
+            // Report the entry in the database, not its copy:
+            if (exceptionCause != null) {
+                exceptionCause = database.getEntryById(exceptionCause.getId());
+            }
             throw new SaveException(ex.getMessage(), exceptionCause);
         }
 
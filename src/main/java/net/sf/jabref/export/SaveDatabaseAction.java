@@ -20,6 +20,7 @@ import com.jgoodies.forms.layout.FormLayout;
 import net.sf.jabref.*;
 import net.sf.jabref.gui.FileDialogs;
 import net.sf.jabref.collab.ChangeScanner;
+import net.sf.jabref.imports.BibtexSnapshot;
 
 import javax.swing.*;
 import java.io.File;
@@ -300,6 +301,13 @@ public class SaveDatabaseAction extends AbstractWorker {
             }
         }
 
+        if (commit) {
+            BibtexSnapshot.delete(file);
+            if (!selectedOnly) {
+                panel.writeSearchIndexLater(file);
+            }
+        }
+
         return commit;
     }
 
@@ -537,25 +537,28 @@ public class LayoutEntry {
             return text;
         }
 
-        Matcher matcher = Globals.getPatternForWords(toHighlight).matcher(text);
-
         if (Character.isLetterOrDigit(text.charAt(0))) {
+            // The matcher may look at a folded copy of the text, with the
+            // same positions:
+            Matcher matcher = Globals.getMatcherForWords(toHighlight, text);
             String hlColor = Globals.highlightColor;
-            StringBuffer sb = new StringBuffer();
-            boolean foundSomething = false;
+            StringBuilder sb = new StringBuilder();
+            int copied = 0;
 
-            String found;
             while (matcher.find()) {
-                matcher.end();
-                found = matcher.group();
+                if (matcher.end() == matcher.start()) {
+                    continue;
+                }
                 // color the search keyword	-
-                // put first String Part and then html + word + html to a StringBuffer
-                matcher.appendReplacement(sb, "<span style=\"background-color:" + hlColor + ";\">" + found + "</span>");
-                foundSomething = true;
+                // put first String Part and then html + word + html to a StringBuilder
+                sb.append(text, copied, matcher.start());
+                sb.append("<span style=\"background-color:").append(hlColor).append(";\">");
+                sb.append(text, matcher.start(), matcher.end()).append("</span>");
+                copied = matcher.end();
             }
 
-            if (foundSomething) {
-                matcher.appendTail(sb);
+            if (copied > 0) {
+                sb.append(text, copied, text.length());
                 text = sb.toString();
             }
 
@@ -115,10 +115,12 @@ class AutoGroupDialog extends JDialog implements CaretListener {
                     field = "editor";
                 }
 
+                List<AbstractGroup> groups = new ArrayList<AbstractGroup>(hs.size());
                 for (String keyword : hs){
                     KeywordGroup group = new KeywordGroup(keyword, field,
                             keyword, false, false, AbstractGroup.INDEPENDENT);
                     autoGroupsRoot.add(new GroupTreeNode(group));
+                    groups.add(group);
                 }
 
                 m_groupsRoot.add(autoGroupsRoot);
@@ -131,6 +133,17 @@ class AutoGroupDialog extends JDialog implements CaretListener {
 
                 panel.markBaseChanged(); // a change always occurs
                 gs.revalidateGroups();
+                // Find the entries of all new groups in one pass over the
+                // database, and show their numbers when done:
+                panel.getGroupMembership().countLater(groups, new Runnable() {
+                    public void run() {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                gs.revalidateGroups();
+                            }
+                        });
+                    }
+                });
                 frame.output(Globals.lang("Created groups."));
                 ce.end();
                 panel.undoManager.addEdit(ce);
@@ -15,18 +15,25 @@
 */
 package net.sf.jabref.groups;
 
+import java.util.Set;
+
 import ca.odell.glazedlists.matchers.Matcher;
 import net.sf.jabref.BibtexEntry;
 
 /**
  * Matcher for filtering or sorting the table according to whether entries
- * are tagged as group matches.
+ * are in the current group selection. The entries are given as a set, which
+ * should not change afterwards.
  */
 public class GroupMatcher implements Matcher<BibtexEntry> {
 
-    public static GroupMatcher INSTANCE = new GroupMatcher();
+    private final Set<BibtexEntry> hits;
+
+    public GroupMatcher(Set<BibtexEntry> hits) {
+        this.hits = hits;
+    }
 
     public boolean matches(BibtexEntry entry) {
-        return entry.isGroupHit();
+        return hits.contains(entry);
     }
 }
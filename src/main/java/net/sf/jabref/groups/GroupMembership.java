@@ -0,0 +1,636 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.groups;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+
+/**
+ * Remembers which entries of a database belong to which groups, so that
+ * selecting groups does not have to check every entry against the groups
+ * again.
+ *
+ * Each entry gets a number, and each group a BitSet of the numbers of its
+ * entries. The BitSet of a group is computed the first time the group is
+ * asked for, and is then kept up to date through DatabaseChangeEvents: when
+ * an entry is added, it is checked against each group; when a field is
+ * changed, it is checked again only against the groups that may depend on
+ * that field. Keyword groups are checked together by a KeywordMatcher, which
+ * looks at each field once for all of them. The hierarchical context of the
+ * groups and the combination of several selected groups are worked out with
+ * BitSet operations, in the same way as GroupTreeNode.getSearchRule() and
+ * AndOrSearchRuleSet do it.
+ *
+ * The entries of an ExplicitGroup are not given by their fields, and the
+ * group can change without a DatabaseChangeEvent. Its BitSet is therefore
+ * made from the entries it holds each time, which does not involve the other
+ * entries of the database.
+ *
+ * The number of entries of each group is kept along with its BitSet, for
+ * the groups tree to show. countLater() computes it in the background for a
+ * group that has not been selected yet, together with the other groups asked
+ * for meanwhile; the database is not locked meanwhile, and entries changed in
+ * the meantime are checked again at the end.
+ */
+public class GroupMembership implements DatabaseChangeListener {
+
+    // Entry -> number, and number -> entry:
+    private final Map<BibtexEntry, Integer> numbers = new IdentityHashMap<>();
+
+    private final List<BibtexEntry> entries = new ArrayList<>();
+
+    // The numbers in use, and those freed by removed entries:
+    private final BitSet present = new BitSet();
+
+    private int[] free = new int[16];
+
+    private int freeCount = 0;
+
+    // The entries of each group, by the group's identity:
+    private final Map<AbstractGroup, Members> members = new IdentityHashMap<>();
+
+    // Matches entries against the groups in members, or null if it has to
+    // be made again:
+    private KeywordMatcher matcher = null;
+
+    // The groups being counted in the background, and those of them still
+    // waiting to be counted:
+    private final Map<AbstractGroup, Counting> counting = new IdentityHashMap<>();
+
+    private final List<AbstractGroup> queued = new ArrayList<>();
+
+    // Counts groups in the background, one at a time:
+    private static final ExecutorService countExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "GroupMembership-Count");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Logger logger = Logger.getLogger(GroupMembership.class.getName());
+
+    public GroupMembership(BibtexDatabase database) {
+        for (BibtexEntry entry : database.getEntries()) {
+            add(entry);
+        }
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+        case ADDED_ENTRIES:
+            for (BibtexEntry entry : e.getEntries()) {
+                int number = add(entry);
+                if (!members.isEmpty()) {
+                    BitSet matching = matcher().match(entry);
+                    for (int i = 0; i < matcher.size(); i++) {
+                        members.get(matcher.getGroup(i)).set(number, matching.get(i));
+                    }
+                }
+                touched(number);
+            }
+            break;
+        case REMOVED_ENTRY:
+        case REMOVED_ENTRIES:
+            for (BibtexEntry entry : e.getEntries()) {
+                remove(entry);
+            }
+            break;
+        case CHANGED_ENTRY:
+            Integer number = numbers.get(e.getEntry());
+            if (number == null) {
+                break;
+            }
+            if (!members.isEmpty()) {
+                // Only the groups that may depend on the changed field:
+                BitSet affected = matcher().dependingOn(e.getFieldName());
+                BitSet matching = matcher.match(e.getEntry(), e.getFieldName());
+                for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+                    members.get(matcher.getGroup(i)).set(number, matching.get(i));
+                }
+            }
+            touched(number);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the number of the given entry, or -1 if it is not in the
+     * database. Numbers are between 0 and size(), and are reused after the
+     * entry has been removed.
+     */
+    public synchronized int getNumber(BibtexEntry entry) {
+        Integer number = numbers.get(entry);
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * Returns the entry with the given number, or null if there is none.
+     */
+    public synchronized BibtexEntry getEntry(int number) {
+        return number < entries.size() ? entries.get(number) : null;
+    }
+
+    /**
+     * Returns an upper bound for the numbers of the entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the numbers of the entries of the given group, without regard
+     * to its place in the groups tree. The BitSet is a copy.
+     */
+    public synchronized BitSet getMembers(AbstractGroup group) {
+        return (BitSet) members(group).clone();
+    }
+
+    /**
+     * Returns the numbers of the entries that the given node stands for,
+     * according to the hierarchical context of its group.
+     */
+    public synchronized BitSet getMembers(GroupTreeNode node) {
+        List<AbstractGroup> missing = new ArrayList<>();
+        collectMissing(node, node.getGroup().getHierarchicalContext(), missing);
+        computeMembers(missing);
+        return getMembers(node, node.getGroup().getHierarchicalContext());
+    }
+
+    /**
+     * Returns the numbers of the entries that belong to all (if and is true)
+     * or any (if and is false) of the given nodes, or to none of them if
+     * invert is true. This is the BitSet counterpart of an
+     * AndOrSearchRuleSet holding the search rules of the nodes.
+     */
+    public synchronized BitSet getMembers(GroupTreeNode[] nodes, boolean and, boolean invert) {
+        retainGroupsOf((GroupTreeNode) nodes[0].getRoot());
+        List<AbstractGroup> missing = new ArrayList<>();
+        for (GroupTreeNode node : nodes) {
+            collectMissing(node, node.getGroup().getHierarchicalContext(), missing);
+        }
+        computeMembers(missing);
+        BitSet result = new BitSet();
+        if (and) {
+            result.or(present);
+        }
+        for (GroupTreeNode node : nodes) {
+            BitSet nodeMembers = getMembers(node);
+            if (and) {
+                result.and(nodeMembers);
+            } else {
+                result.or(nodeMembers);
+            }
+        }
+        if (invert) {
+            BitSet inverted = (BitSet) present.clone();
+            inverted.andNot(result);
+            return inverted;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of entries of the given group, without regard to
+     * its place in the groups tree, or -1 if it has not been computed yet.
+     * This takes constant time for all groups but explicit ones.
+     */
+    public synchronized int getCount(AbstractGroup group) {
+        if (group instanceof AllEntriesGroup) {
+            return numbers.size();
+        }
+        if (group instanceof ExplicitGroup) {
+            return members(group).cardinality();
+        }
+        Members groupMembers = members.get(group);
+        return groupMembers == null ? -1 : groupMembers.count;
+    }
+
+    /**
+     * Computes the entries of the given group in the background, unless
+     * they are known already. The given Runnable is run when getCount() has
+     * become available, in the background thread or right away.
+     */
+    public void countLater(AbstractGroup group, Runnable whenDone) {
+        countLater(Collections.singletonList(group), whenDone);
+    }
+
+    /**
+     * Computes the entries of the given groups in the background, looking
+     * at each entry once for all of them. The given Runnable is run when
+     * getCount() has become available for all of the groups, in the
+     * background thread or right away.
+     */
+    public void countLater(Collection<? extends AbstractGroup> groups, Runnable whenDone) {
+        List<AbstractGroup> missing = new ArrayList<>();
+        synchronized (this) {
+            for (AbstractGroup group : groups) {
+                if (!(group instanceof AllEntriesGroup) && !(group instanceof ExplicitGroup)
+                        && !members.containsKey(group)) {
+                    missing.add(group);
+                }
+            }
+            if (!missing.isEmpty()) {
+                final AtomicInteger remaining = new AtomicInteger(missing.size());
+                Runnable countDown = () -> {
+                    if (remaining.decrementAndGet() == 0) {
+                        whenDone.run();
+                    }
+                };
+                boolean idle = queued.isEmpty();
+                for (AbstractGroup group : missing) {
+                    Counting groupCounting = counting.get(group);
+                    if (groupCounting == null) {
+                        groupCounting = new Counting();
+                        counting.put(group, groupCounting);
+                        queued.add(group);
+                    }
+                    groupCounting.whenDone.add(countDown);
+                }
+                if (idle && !queued.isEmpty()) {
+                    countExecutor.execute(this::countQueued);
+                }
+                return;
+            }
+        }
+        whenDone.run();
+    }
+
+    /**
+     * Counts the queued groups, in the background.
+     */
+    private void countQueued() {
+        final List<AbstractGroup> groups;
+        final List<BibtexEntry> snapshot;
+        synchronized (this) {
+            groups = new ArrayList<>(queued);
+            queued.clear();
+            snapshot = new ArrayList<>(entries);
+        }
+        if (groups.isEmpty()) {
+            return;
+        }
+        BitSet[] bits;
+        try {
+            bits = match(groups, snapshot.toArray(new BibtexEntry[snapshot.size()]));
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Could not count the entries of groups", ex);
+            synchronized (this) {
+                for (AbstractGroup group : groups) {
+                    counting.remove(group);
+                }
+            }
+            return;
+        }
+        List<Runnable> done = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < bits.length; i++) {
+                AbstractGroup group = groups.get(i);
+                Counting groupCounting = counting.remove(group);
+                if (!members.containsKey(group)) {
+                    // Check the entries changed while counting again:
+                    BitSet changed = groupCounting.changed;
+                    for (int number = changed.nextSetBit(0); number >= 0; number = changed.nextSetBit(number + 1)) {
+                        BibtexEntry entry = entries.get(number);
+                        bits[i].set(number, (entry != null) && group.contains(entry));
+                    }
+                    putMembers(group, new Members(bits[i]));
+                }
+                done.addAll(groupCounting.whenDone);
+            }
+        }
+        for (Runnable whenDone : done) {
+            whenDone.run();
+        }
+    }
+
+    /**
+     * Returns the nodes of the given tree that, if selected, would show at
+     * least one of the entries with the numbers set in the given BitSet. The
+     * groups not known yet are all computed at once.
+     */
+    public synchronized List<GroupTreeNode> getOverlapping(GroupTreeNode root, BitSet set) {
+        List<GroupTreeNode> nodes = new ArrayList<>();
+        List<AbstractGroup> missing = new ArrayList<>();
+        for (Enumeration<GroupTreeNode> e = root.depthFirstEnumeration(); e.hasMoreElements();) {
+            GroupTreeNode node = e.nextElement();
+            collectMissing(node, node.getGroup().getHierarchicalContext(), missing);
+            nodes.add(node);
+        }
+        computeMembers(missing);
+        List<GroupTreeNode> result = new ArrayList<>();
+        for (GroupTreeNode node : nodes) {
+            if (getMembers(node, node.getGroup().getHierarchicalContext()).intersects(set)) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entries with the numbers set in the given BitSet, as a set
+     * that cannot be modified.
+     */
+    public synchronized Set<BibtexEntry> getEntrySet(BitSet set) {
+        return Collections.unmodifiableSet(new HashSet<>(getEntries(set)));
+    }
+
+    /**
+     * Returns the entries with the numbers set in the given BitSet.
+     */
+    public synchronized List<BibtexEntry> getEntries(BitSet set) {
+        List<BibtexEntry> result = new ArrayList<>(set.cardinality());
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            result.add(entries.get(i));
+        }
+        return result;
+    }
+
+    private BitSet getMembers(GroupTreeNode node, int originalContext) {
+        final int context = node.getGroup().getHierarchicalContext();
+        BitSet result = (BitSet) members(node.getGroup()).clone();
+        if (context == AbstractGroup.INCLUDING
+                && originalContext != AbstractGroup.REFINING) {
+            for (int i = 0; i < node.getChildCount(); ++i) {
+                result.or(getMembers((GroupTreeNode) node.getChildAt(i), originalContext));
+            }
+        } else if (context == AbstractGroup.REFINING && !node.isRoot()
+                && originalContext != AbstractGroup.INCLUDING) {
+            result.and(getMembers((GroupTreeNode) node.getParent(), originalContext));
+        }
+        return result;
+    }
+
+    private BitSet members(AbstractGroup group) {
+        if (group instanceof AllEntriesGroup) {
+            return present;
+        }
+        if (group instanceof ExplicitGroup) {
+            BitSet result = new BitSet(entries.size());
+            for (BibtexEntry entry : ((ExplicitGroup) group).getEntries()) {
+                Integer number = numbers.get(entry);
+                if (number != null) {
+                    result.set(number);
+                }
+            }
+            return result;
+        }
+        Members result = members.get(group);
+        if (result == null) {
+            computeMembers(Collections.singletonList(group));
+            result = members.get(group);
+        }
+        return result.bits;
+    }
+
+    /**
+     * Collects the groups whose entries are needed for getMembers(node,
+     * originalContext), and are not known yet.
+     */
+    private void collectMissing(GroupTreeNode node, int originalContext, List<AbstractGroup> missing) {
+        final int context = node.getGroup().getHierarchicalContext();
+        AbstractGroup group = node.getGroup();
+        if (!(group instanceof AllEntriesGroup) && !(group instanceof ExplicitGroup)
+                && !members.containsKey(group) && !missing.contains(group)) {
+            missing.add(group);
+        }
+        if (context == AbstractGroup.INCLUDING
+                && originalContext != AbstractGroup.REFINING) {
+            for (int i = 0; i < node.getChildCount(); ++i) {
+                collectMissing((GroupTreeNode) node.getChildAt(i), originalContext, missing);
+            }
+        } else if (context == AbstractGroup.REFINING && !node.isRoot()
+                && originalContext != AbstractGroup.INCLUDING) {
+            collectMissing((GroupTreeNode) node.getParent(), originalContext, missing);
+        }
+    }
+
+    /**
+     * Finds the entries of the given groups, looking at each entry once.
+     */
+    private void computeMembers(List<AbstractGroup> groups) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        BitSet[] bits = match(groups, entries.toArray(new BibtexEntry[entries.size()]));
+        for (int i = 0; i < bits.length; i++) {
+            putMembers(groups.get(i), new Members(bits[i]));
+        }
+    }
+
+    /**
+     * Finds the entries of the given groups among the given ones, which are
+     * indexed by their numbers and may be null. The entries are split
+     * between the threads of the common fork-join pool; the groups must
+     * therefore be safe to use by several threads at once, which is the case
+     * for all group types.
+     *
+     * @return The numbers of the entries of each group.
+     */
+    static BitSet[] match(List<? extends AbstractGroup> groups, BibtexEntry[] byNumber) {
+        KeywordMatcher groupsMatcher = new KeywordMatcher(groups);
+        BitSet[] matching = new BitSet[byNumber.length];
+        ForkJoinPool.commonPool().invoke(new MatchTask(groupsMatcher, byNumber, matching, 0, byNumber.length));
+        BitSet[] bits = new BitSet[groups.size()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = new BitSet(byNumber.length);
+        }
+        for (int number = 0; number < matching.length; number++) {
+            if (matching[number] != null) {
+                for (int i = matching[number].nextSetBit(0); i >= 0; i = matching[number].nextSetBit(i + 1)) {
+                    bits[i].set(number);
+                }
+            }
+        }
+        return bits;
+    }
+
+    private void putMembers(AbstractGroup group, Members groupMembers) {
+        members.put(group, groupMembers);
+        matcher = null;
+    }
+
+    private KeywordMatcher matcher() {
+        if (matcher == null) {
+            matcher = new KeywordMatcher(new ArrayList<>(members.keySet()));
+        }
+        return matcher;
+    }
+
+    /**
+     * Forgets the groups that are no longer in the given tree, so that they
+     * are not kept up to date needlessly.
+     */
+    private void retainGroupsOf(GroupTreeNode root) {
+        if (members.isEmpty()) {
+            return;
+        }
+        Map<AbstractGroup, Boolean> inTree = new IdentityHashMap<>();
+        for (Enumeration<GroupTreeNode> e = root.preorderEnumeration(); e.hasMoreElements();) {
+            inTree.put(e.nextElement().getGroup(), Boolean.TRUE);
+        }
+        Set<AbstractGroup> cached = members.keySet();
+        if (cached.retainAll(inTree.keySet())) {
+            matcher = null;
+        }
+    }
+
+    private int add(BibtexEntry entry) {
+        Integer known = numbers.get(entry);
+        if (known != null) {
+            return known;
+        }
+        int number;
+        if (freeCount > 0) {
+            number = free[--freeCount];
+            entries.set(number, entry);
+        } else {
+            number = entries.size();
+            entries.add(entry);
+        }
+        numbers.put(entry, number);
+        present.set(number);
+        return number;
+    }
+
+    private void remove(BibtexEntry entry) {
+        Integer number = numbers.remove(entry);
+        if (number == null) {
+            return;
+        }
+        entries.set(number, null);
+        present.clear(number);
+        for (Members groupMembers : members.values()) {
+            groupMembers.set(number, false);
+        }
+        touched(number);
+        if (freeCount == free.length) {
+            int[] grown = new int[2 * free.length];
+            System.arraycopy(free, 0, grown, 0, freeCount);
+            free = grown;
+        }
+        free[freeCount++] = number;
+    }
+
+    /**
+     * Notes a change of the given entry for the groups being counted.
+     */
+    private void touched(int number) {
+        for (Counting groupCounting : counting.values()) {
+            groupCounting.changed.set(number);
+        }
+    }
+
+    /**
+     * Matches a range of entries against the groups, splitting it between
+     * tasks when it is large.
+     */
+    private static final class MatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -1136631306349510829L;
+
+        // Number of entries a task matches by itself instead of splitting them:
+        private static final int CHUNK_SIZE = 256;
+
+        private final KeywordMatcher matcher;
+
+        private final BibtexEntry[] entries;
+
+        // The groups matching each entry, or null if none does:
+        private final BitSet[] matching;
+
+        private final int from, to;
+
+        MatchTask(KeywordMatcher matcher, BibtexEntry[] entries, BitSet[] matching, int from, int to) {
+            this.matcher = matcher;
+            this.entries = entries;
+            this.matching = matching;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MatchTask(matcher, entries, matching, from, middle),
+                        new MatchTask(matcher, entries, matching, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (entries[i] != null) {
+                    BitSet groups = matcher.match(entries[i]);
+                    matching[i] = groups.isEmpty() ? null : groups;
+                }
+            }
+        }
+    }
+
+    /**
+     * A group being counted in the background.
+     */
+    private static final class Counting {
+
+        // The numbers of the entries changed since the counting began:
+        final BitSet changed = new BitSet();
+
+        final List<Runnable> whenDone = new ArrayList<>();
+    }
+
+    /**
+     * The entries of a group, and their number.
+     */
+    private static final class Members {
+
+        final BitSet bits;
+
+        int count;
+
+        Members(BitSet bits) {
+            this.bits = bits;
+            count = bits.cardinality();
+        }
+
+        void set(int number, boolean member) {
+            if (bits.get(number) != member) {
+                bits.set(number, member);
+                count += member ? 1 : -1;
+            }
+        }
+    }
+}
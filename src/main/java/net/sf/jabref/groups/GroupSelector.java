@@ -28,11 +28,10 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.swing.AbstractAction;
@@ -71,8 +70,6 @@ import net.sf.jabref.Globals;
 import net.sf.jabref.JabRefFrame;
 import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.MetaData;
-import net.sf.jabref.SearchRule;
-import net.sf.jabref.SearchRuleSet;
 import net.sf.jabref.SidePaneComponent;
 import net.sf.jabref.SidePaneManager;
 import net.sf.jabref.help.HelpAction;
@@ -744,15 +741,16 @@ public class GroupSelector extends SidePaneComponent implements
     }
 
     private void updateSelections() {
-        final AndOrSearchRuleSet searchRules = new AndOrSearchRuleSet(andCb.isSelected(), invCb.isSelected());
         TreePath[] selection = groupsTree.getSelectionPaths();
-
-        for (TreePath aSelection : selection) {
-            searchRules.addRule(((GroupTreeNode) aSelection.getLastPathComponent()).getSearchRule());
-        }
-        Hashtable<String, String> searchOptions = new Hashtable<String, String>();
-        searchOptions.put("option", "dummy");
-        GroupingWorker worker = new GroupingWorker(searchRules, searchOptions);
+        GroupTreeNode[] nodes = new GroupTreeNode[selection.length];
+        for (int i = 0; i < selection.length; i++) {
+            nodes[i] = (GroupTreeNode) selection[i].getLastPathComponent();
+        }
+        // The group memberships are remembered by the panel, so only the
+        // groups not selected before are checked against the entries:
+        GroupMembership membership = panel.getGroupMembership();
+        BitSet hits = membership.getMembers(nodes, andCb.isSelected(), invCb.isSelected());
+        GroupingWorker worker = new GroupingWorker(membership, hits);
         worker.getWorker().run();
         worker.getCallBack().update();
         /*panel.setGroupMatcher(new SearchMatcher(searchRules, searchOptions));
@@ -766,44 +764,38 @@ public class GroupSelector extends SidePaneComponent implements
 
     class GroupingWorker extends AbstractWorker {
 
-        private SearchRuleSet rules;
-        private Hashtable<String, String> searchTerm;
-        private ArrayList<BibtexEntry> matches = new ArrayList<BibtexEntry>();
+        private GroupMembership membership;
+        private BitSet hitSet;
+        private Set<BibtexEntry> hitEntries;
         private boolean showOverlappingGroupsP;
         int hits = 0;
 
-        public GroupingWorker(SearchRuleSet rules, Hashtable<String, String> searchTerm) {
-            this.rules = rules;
-            this.searchTerm = searchTerm;
+        public GroupingWorker(GroupMembership membership, BitSet hitSet) {
+            this.membership = membership;
+            this.hitSet = hitSet;
             showOverlappingGroupsP = showOverlappingGroups.isSelected();
         }
 
         public void run() {
-            for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-                boolean hit = rules.applyRule(searchTerm, entry) > 0;
-                entry.setGroupHit(hit);
-                if (hit) {
-                    hits++;
-                    if (showOverlappingGroupsP) {
-                        matches.add(entry);
-                    }
-                }
-            }
+            // The entries are left alone; the table is given the hits:
+            hitEntries = membership.getEntrySet(hitSet);
+            hits = hitEntries.size();
         }
 
         public void update() {
+            GroupMatcher matcher = new GroupMatcher(hitEntries);
             // Show the result in the chosen way:
             if (hideNonHits.isSelected()) {
                 panel.mainTable.stopShowingFloatGrouping(); // Turn off shading, if active.
-                panel.setGroupMatcher(GroupMatcher.INSTANCE); // Turn on filtering.
+                panel.setGroupMatcher(matcher); // Turn on filtering.
 
             } else if (grayOut.isSelected()) {
                 panel.stopShowingGroup(); // Turn off filtering, if active.
-                panel.mainTable.showFloatGrouping(GroupMatcher.INSTANCE); // Turn on shading.
+                panel.mainTable.showFloatGrouping(matcher); // Turn on shading.
             }
 
             if (showOverlappingGroupsP) {
-                showOverlappingGroups(matches);
+                showOverlappingGroups(membership, hitSet);
             }
             frame.output(Globals.lang("Updated group selection") + ".");
         }
@@ -1439,6 +1431,7 @@ public class GroupSelector extends SidePaneComponent implements
     public void setActiveBasePanel(BasePanel panel) {
         super.setActiveBasePanel(panel);
         if (panel == null) { // hide groups
+            groupsTree.setGroupMembership(null);
             frame.sidePaneManager.hide("groups");
             return;
         }
@@ -1450,6 +1443,7 @@ public class GroupSelector extends SidePaneComponent implements
             metaData.setGroups(newGroupsRoot);
             setGroups(newGroupsRoot);
         }
+        groupsTree.setGroupMembership(panel.getGroupMembership());
 
         // auto show/hide groups interface
         if (Globals.prefs.getBoolean("groupAutoShow")
@@ -1542,25 +1536,8 @@ public class GroupSelector extends SidePaneComponent implements
      * Show groups that, if selected, would show at least one of the entries
      * found in the specified search.
      */
-    protected void showOverlappingGroups(List<BibtexEntry> matches) { //DatabaseSearch search) {
-        GroupTreeNode node;
-        SearchRule rule;
-        BibtexEntry entry;
-        List<GroupTreeNode> vec = new ArrayList<>();
-        Map<String, String> dummyMap = new HashMap<String, String>(); // just because I don't want to use null...
-        for (Enumeration<GroupTreeNode> e = groupsRoot.depthFirstEnumeration(); e.hasMoreElements();) {
-            node = e.nextElement();
-            rule = node.getSearchRule();
-            for (BibtexEntry matche : matches) {
-                entry = matche;
-                if (rule.applyRule(dummyMap, entry) == 0) {
-                    continue;
-                }
-                vec.add(node);
-                break;
-            }
-        }
-        groupsTree.setHighlight2Cells(vec.toArray());
+    protected void showOverlappingGroups(GroupMembership membership, BitSet matches) {
+        groupsTree.setHighlight2Cells(membership.getOverlapping(groupsRoot, matches).toArray());
     }
 
     public GroupsTree getGroupsTree() {
@@ -21,13 +21,13 @@ import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
 
-import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.GUIGlobals;
 import net.sf.jabref.Globals;
-import net.sf.jabref.JabRef;
 import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.Util;
 
@@ -49,6 +49,12 @@ public class GroupTreeCellRenderer extends DefaultTreeCellRenderer {
     protected Object[] highlight3Cells = null;
     protected Object highlightBorderCell = null;
 
+    /**
+     * The group memberships in the database of the groups tree, for the
+     * number of entries of each group.
+     */
+    protected GroupMembership groupMembership = null;
+
     public static ImageIcon groupRefiningIcon = GUIGlobals.getImage("groupRefining"),
             groupIncludingIcon = GUIGlobals.getImage("groupIncluding"),
             groupRegularIcon = null;
@@ -123,14 +129,21 @@ public class GroupTreeCellRenderer extends DefaultTreeCellRenderer {
         if (Globals.prefs.getBoolean(JabRefPreferences.GROUP_SHOW_NUMBER_OF_ELEMENTS)) {
             if (group instanceof ExplicitGroup) {
                 sb.append(" [").append(((ExplicitGroup) group).getNumEntries()).append("]");
-            } else if ((group instanceof KeywordGroup) || (group instanceof SearchGroup)) {
-                int hits = 0;
-                for (BibtexEntry entry : JabRef.jrf.basePanel().getDatabase().getEntries()) {
-                    if (group.contains(entry)) {
-                        hits++;
-                    }
+            } else if (((group instanceof KeywordGroup) || (group instanceof SearchGroup))
+                    && (groupMembership != null)) {
+                int hits = groupMembership.getCount(group);
+                if (hits >= 0) {
+                    sb.append(" [").append(hits).append("]");
+                } else {
+                    // Show the number once it has been counted:
+                    final GroupTreeNode node = (GroupTreeNode) value;
+                    groupMembership.countLater(group, () -> SwingUtilities.invokeLater(() -> {
+                        if ((tree.getModel() instanceof DefaultTreeModel)
+                                && (tree.getModel().getRoot() == node.getRoot())) {
+                            ((DefaultTreeModel) tree.getModel()).nodeChanged(node);
+                        }
+                    }));
                 }
-                sb.append(" [").append(hits).append("]");
             }
         }
         if (italics) {
@@ -205,4 +218,12 @@ public class GroupTreeCellRenderer extends DefaultTreeCellRenderer {
     void setHighlightBorderCell(Object highlightBorderCell) {
         this.highlightBorderCell = highlightBorderCell;
     }
+
+    /**
+     * Sets the group memberships of the database whose groups are shown, or
+     * null if there is none.
+     */
+    void setGroupMembership(GroupMembership groupMembership) {
+        this.groupMembership = groupMembership;
+    }
 }
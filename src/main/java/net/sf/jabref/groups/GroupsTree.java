@@ -406,6 +406,15 @@ public class GroupsTree extends JTree implements DragSourceListener,
         repaint();
     }
 
+    /**
+     * Sets the group memberships the numbers of entries shown for the groups
+     * are taken from, or null if there is no database.
+     */
+    public void setGroupMembership(GroupMembership groupMembership) {
+        cellRenderer.setGroupMembership(groupMembership);
+        repaint();
+    }
+
     /**
      * Highlights the specified cell or disables highlight if cell == null
      */
@@ -0,0 +1,333 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.groups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jabref.BibtexEntry;
+
+/**
+ * Finds which of many groups contain an entry, looking at each field only
+ * once. The keyword groups that are not regular expressions are compiled,
+ * field by field, into Aho-Corasick automata, which find all their search
+ * expressions in a field's text in one pass; a match counts if it is a
+ * complete word, as in KeywordGroup.contains(). Groups ignoring case share
+ * one automaton run on the lower cased text, groups respecting case another
+ * one run on the text itself. All other groups are asked one by one.
+ *
+ * The groups are numbered in the order they are given. A KeywordMatcher is
+ * immutable, and can be used by several threads at once.
+ */
+final class KeywordMatcher {
+
+    private final List<AbstractGroup> groups;
+
+    // The automata for each field, and the groups that are asked directly:
+    private final Map<String, Automaton[]> automata = new LinkedHashMap<>();
+
+    private final int[] others;
+
+    KeywordMatcher(List<? extends AbstractGroup> groups) {
+        this.groups = new ArrayList<>(groups);
+        // Field -> words ignoring case and words respecting it -> groups:
+        Map<String, List<Map<String, List<Integer>>>> byField = new LinkedHashMap<>();
+        List<Integer> asked = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            AbstractGroup group = groups.get(i);
+            if (!canMatch(group)) {
+                asked.add(i);
+                continue;
+            }
+            KeywordGroup keywordGroup = (KeywordGroup) group;
+            List<Map<String, List<Integer>>> words = byField.computeIfAbsent(keywordGroup.getSearchField(),
+                    f -> Arrays.asList(new HashMap<>(), new HashMap<>()));
+            String word = keywordGroup.isCaseSensitive() ? keywordGroup.getSearchExpression()
+                    : keywordGroup.getSearchExpression().toLowerCase();
+            words.get(keywordGroup.isCaseSensitive() ? 1 : 0).computeIfAbsent(word, w -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Map<String, List<Integer>>>> field : byField.entrySet()) {
+            Automaton[] fieldAutomata = new Automaton[2];
+            for (int c = 0; c < 2; c++) {
+                if (!field.getValue().get(c).isEmpty()) {
+                    fieldAutomata[c] = new Automaton(field.getValue().get(c));
+                }
+            }
+            automata.put(field.getKey(), fieldAutomata);
+        }
+        others = new int[asked.size()];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = asked.get(i);
+        }
+    }
+
+    /**
+     * Returns whether the given group is matched by an automaton rather than
+     * asked directly.
+     */
+    static boolean canMatch(AbstractGroup group) {
+        return (group instanceof KeywordGroup) && !((KeywordGroup) group).isRegExp()
+                && !((KeywordGroup) group).getSearchExpression().isEmpty();
+    }
+
+    /**
+     * Returns the number of groups.
+     */
+    int size() {
+        return groups.size();
+    }
+
+    /**
+     * Returns the group with the given number.
+     */
+    AbstractGroup getGroup(int number) {
+        return groups.get(number);
+    }
+
+    /**
+     * Returns the numbers of the groups that contain the given entry.
+     */
+    BitSet match(BibtexEntry entry) {
+        BitSet result = new BitSet(groups.size());
+        for (Map.Entry<String, Automaton[]> field : automata.entrySet()) {
+            match(entry, field.getKey(), field.getValue(), result);
+        }
+        for (int i : others) {
+            if (groups.get(i).contains(entry)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the numbers of the groups that contain the given entry, of
+     * those that may depend on the given field. A null field stands for any
+     * field. The other bits are left clear.
+     */
+    BitSet match(BibtexEntry entry, String field) {
+        if (field == null) {
+            return match(entry);
+        }
+        BitSet result = new BitSet(groups.size());
+        for (Map.Entry<String, Automaton[]> fieldAutomata : automata.entrySet()) {
+            if (field.equalsIgnoreCase(fieldAutomata.getKey())) {
+                match(entry, fieldAutomata.getKey(), fieldAutomata.getValue(), result);
+            }
+        }
+        for (int i : others) {
+            if (dependsOn(groups.get(i), field) && groups.get(i).contains(entry)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the numbers of the groups that may depend on the given field,
+     * as for match(BibtexEntry, String).
+     */
+    BitSet dependingOn(String field) {
+        BitSet result = new BitSet(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            if (dependsOn(groups.get(i), field)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether an entry's membership in the given group may change
+     * when the given field changes. A null field stands for any field.
+     */
+    static boolean dependsOn(AbstractGroup group, String field) {
+        if ((field != null) && (group instanceof KeywordGroup)) {
+            return field.equalsIgnoreCase(((KeywordGroup) group).getSearchField());
+        }
+        return true;
+    }
+
+    private static void match(BibtexEntry entry, String field, Automaton[] fieldAutomata, BitSet result) {
+        String content = entry.getField(field);
+        if (content == null) {
+            return;
+        }
+        if (fieldAutomata[0] != null) {
+            fieldAutomata[0].match(content.toLowerCase(), result);
+        }
+        if (fieldAutomata[1] != null) {
+            fieldAutomata[1].match(content, result);
+        }
+    }
+
+    /**
+     * An Aho-Corasick automaton over the search expressions of some groups.
+     * State 0 is the root. The transitions of each state are kept as sorted
+     * arrays of chars and target states.
+     */
+    private static final class Automaton {
+
+        private final char[][] labels;
+
+        private final int[][] targets;
+
+        private final int[] failure;
+
+        // The next state on the failure chain that ends a word, or -1:
+        private final int[] outputLink;
+
+        // The lengths of the words ending in each state, and their groups:
+        private final int[] wordLength;
+
+        private final int[][] wordGroups;
+
+        /**
+         * Creates an automaton for the given words, each with the numbers
+         * of the groups looking for it.
+         */
+        Automaton(Map<String, List<Integer>> words) {
+            // Build the trie with growable lists, then freeze it:
+            List<StringBuilder> trieLabels = new ArrayList<>();
+            List<List<Integer>> trieTargets = new ArrayList<>();
+            List<List<Integer>> ends = new ArrayList<>();
+            List<Integer> lengths = new ArrayList<>();
+            trieLabels.add(new StringBuilder());
+            trieTargets.add(new ArrayList<>());
+            ends.add(null);
+            lengths.add(0);
+            for (Map.Entry<String, List<Integer>> word : words.entrySet()) {
+                int state = 0;
+                for (char c : word.getKey().toCharArray()) {
+                    int index = trieLabels.get(state).indexOf(String.valueOf(c));
+                    if (index >= 0) {
+                        state = trieTargets.get(state).get(index);
+                    } else {
+                        int next = trieLabels.size();
+                        trieLabels.add(new StringBuilder());
+                        trieTargets.add(new ArrayList<>());
+                        ends.add(null);
+                        lengths.add(0);
+                        trieLabels.get(state).append(c);
+                        trieTargets.get(state).add(next);
+                        state = next;
+                    }
+                }
+                ends.set(state, word.getValue());
+                lengths.set(state, word.getKey().length());
+            }
+            int states = trieLabels.size();
+            labels = new char[states][];
+            targets = new int[states][];
+            wordLength = new int[states];
+            wordGroups = new int[states][];
+            for (int s = 0; s < states; s++) {
+                char[] stateLabels = trieLabels.get(s).toString().toCharArray();
+                Integer[] order = new Integer[stateLabels.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Character.compare(stateLabels[a], stateLabels[b]));
+                labels[s] = new char[order.length];
+                targets[s] = new int[order.length];
+                for (int i = 0; i < order.length; i++) {
+                    labels[s][i] = stateLabels[order[i]];
+                    targets[s][i] = trieTargets.get(s).get(order[i]);
+                }
+                wordLength[s] = lengths.get(s);
+                if (ends.get(s) != null) {
+                    wordGroups[s] = new int[ends.get(s).size()];
+                    for (int i = 0; i < wordGroups[s].length; i++) {
+                        wordGroups[s][i] = ends.get(s).get(i);
+                    }
+                }
+            }
+
+            // Failure and output links, breadth first:
+            failure = new int[states];
+            outputLink = new int[states];
+            outputLink[0] = -1;
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int child : targets[0]) {
+                failure[child] = 0;
+                outputLink[child] = -1;
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int i = 0; i < labels[state].length; i++) {
+                    char c = labels[state][i];
+                    int child = targets[state][i];
+                    int f = failure[state];
+                    int next = step(f, c);
+                    while ((next < 0) && (f != 0)) {
+                        f = failure[f];
+                        next = step(f, c);
+                    }
+                    failure[child] = next < 0 ? 0 : next;
+                    outputLink[child] = wordGroups[failure[child]] != null ? failure[child]
+                            : outputLink[failure[child]];
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        /**
+         * Returns the state reached from the given one by the given char,
+         * without following failure links, or -1.
+         */
+        private int step(int state, char c) {
+            int index = Arrays.binarySearch(labels[state], c);
+            return index < 0 ? -1 : targets[state][index];
+        }
+
+        /**
+         * Sets the numbers of the groups whose words occur in the text as
+         * complete words.
+         */
+        void match(String text, BitSet result) {
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                int next = step(state, c);
+                while ((next < 0) && (state != 0)) {
+                    state = failure[state];
+                    next = step(state, c);
+                }
+                state = next < 0 ? 0 : next;
+                int end = i + 1;
+                if ((end < text.length()) && Character.isLetterOrDigit(text.charAt(end))) {
+                    continue; // no word ends here
+                }
+                for (int s = wordGroups[state] != null ? state : outputLink[state]; s > 0; s = outputLink[s]) {
+                    int start = end - wordLength[s];
+                    if ((start == 0) || !Character.isLetterOrDigit(text.charAt(start - 1))) {
+                        for (int group : wordGroups[s]) {
+                            result.set(group);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package net.sf.jabref.groups;
 
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -25,10 +26,9 @@ import javax.swing.undo.AbstractUndoableEdit;
 import net.sf.jabref.*;
 import net.sf.jabref.search.SearchExpressionLexer;
 import net.sf.jabref.search.SearchExpressionParser;
-import net.sf.jabref.search.SearchExpressionTreeParser;
+import net.sf.jabref.search.SearchPredicate;
 import net.sf.jabref.search.SearchExpressionTreeParserTokenTypes;
 import net.sf.jabref.util.QuotedStringTokenizer;
-import antlr.RecognitionException;
 import antlr.collections.AST;
 
 /**
@@ -49,7 +49,11 @@ public class SearchGroup extends AbstractGroup implements SearchRule {
 
     private final AST m_ast;
 
-    private static final SearchExpressionTreeParser m_treeParser = new SearchExpressionTreeParser();
+    // The compiled m_ast, if m_searchExpression is an advanced search:
+    private final SearchPredicate m_predicate;
+
+    // The options for m_searchRule, which searches for m_searchExpression:
+    private final Map<String, String> m_searchOptions;
 
     /**
      * If m_searchExpression is in valid syntax for advanced search, <b>this
@@ -83,6 +87,8 @@ public class SearchGroup extends AbstractGroup implements SearchRule {
             // nothing to do; set m_ast to null -> regular plaintext search
         }
         m_ast = ast;
+        m_predicate = ast == null ? null : SearchPredicate.compile(ast);
+        m_searchOptions = Collections.singletonMap("option", m_searchExpression);
 
         if (m_ast != null) { // do advanced search
             m_searchRule = this;
@@ -217,16 +223,11 @@ public class SearchGroup extends AbstractGroup implements SearchRule {
 
     public int applyRule(Map<String, String> searchOptions, BibtexEntry entry) {
         if (m_ast == null) {
-            // the searchOptions object is a dummy; we need to insert
+            // the searchOptions object is a dummy; we need to use
             // the actual search expression.
-            searchOptions.put("option", m_searchExpression);
-            return m_searchRule.applyRule(searchOptions, entry);
-        }
-        try {
-            return m_treeParser.apply(m_ast, entry);
-        } catch (RecognitionException e) {
-            return 0; // this should never occur
+            return m_searchRule.applyRule(m_searchOptions, entry);
         }
+        return m_predicate.matches(entry) ? 1 : 0;
     }
 
     public AbstractGroup deepCopy() {
@@ -18,6 +18,7 @@ package net.sf.jabref.gui;
 import com.formdev.flatlaf.FlatLightLaf;
 
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -61,6 +62,21 @@ public class GlazedEntrySorter implements DatabaseChangeListener {
             list.add(e.getEntry());
         } else if (e.getType() == DatabaseChangeEvent.ChangeType.REMOVED_ENTRY) {
             list.remove(e.getEntry());
+        } else if (e.getType() == DatabaseChangeEvent.ChangeType.ADDED_ENTRIES) {
+            // A single list event for all of them:
+            list.addAll(e.getEntries());
+        } else if (e.getType() == DatabaseChangeEvent.ChangeType.REMOVED_ENTRIES) {
+            // removeAll() would search the list for each entry, while
+            // retainAll() makes a single pass, firing a single list event:
+            Set<BibtexEntry> removed = Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+            removed.addAll(e.getEntries());
+            Set<BibtexEntry> kept = Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+            for (BibtexEntry entry : list) {
+                if (!removed.contains(entry)) {
+                    kept.add(entry);
+                }
+            }
+            list.retainAll(kept);
         } else if (e.getType() == DatabaseChangeEvent.ChangeType.CHANGED_ENTRY) {
             int index = list.indexOf(e.getEntry());
             if (index != -1) {
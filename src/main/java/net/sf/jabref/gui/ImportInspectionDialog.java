@@ -696,6 +696,7 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
                         Util.unmarkEntry(entry, true, panel.database(), ce);
                     }
 
+                List<BibtexEntry> toInsert = new ArrayList<BibtexEntry>(selected.size());
                 for (BibtexEntry entry : selected) {
                     // entry.clone();
 
@@ -741,13 +742,18 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
                         }
                     }
 
-                    try {
-                        entry.setId(Util.createNeutralId());
-                        panel.database().insertEntry(entry);
+                    entry.setId(Util.createNeutralId());
+                    toInsert.add(entry);
+                }
+
+                // Insert all entries at once, so that listeners get a single event:
+                try {
+                    panel.database().insertEntries(toInsert);
+                    for (BibtexEntry entry : toInsert) {
                         ce.addEdit(new UndoableInsertEntry(panel.database(), entry, panel));
-                    } catch (KeyCollisionException e) {
-                        e.printStackTrace();
                     }
+                } catch (KeyCollisionException e) {
+                    e.printStackTrace();
                 }
 
                 ce.end();
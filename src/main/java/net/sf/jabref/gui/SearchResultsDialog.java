@@ -260,16 +260,22 @@ public class SearchResultsDialog {
     }
 
     /**
-     * Add a list of entries to the table.
+     * Add a list of entries to the table. They are added in one go, so that
+     * the table is only updated once.
      *
      * @param newEntries The list of entries.
      * @param panel A reference to the BasePanel where the entries belong.
      */
     public synchronized void addEntries(java.util.List<BibtexEntry> newEntries, BasePanel panel) {
         for (BibtexEntry entry : newEntries) {
-            entries.add(entry);
             entryHome.put(entry, panel);
         }
+        entries.getReadWriteLock().writeLock().lock();
+        try {
+            entries.addAll(newEntries);
+        } finally {
+            entries.getReadWriteLock().writeLock().unlock();
+        }
     }
 
     /**
@@ -131,9 +131,11 @@ public class AppendDatabaseAction extends BaseAction {
                   BibtexEntry be = (BibtexEntry) (originalEntry.clone());
                   be.setId(Util.createNeutralId());
                   Util.setAutomaticFields(be, overwriteOwner, overwriteTimeStamp);
-                  database.insertEntry(be);
                   appendedEntries.add(be);
                   originalEntries.add(originalEntry);
+              }
+              database.insertEntries(appendedEntries);
+              for (BibtexEntry be : appendedEntries) {
                   ce.addEdit(new UndoableInsertEntry(database, be, panel));
               }
           }
@@ -28,12 +28,32 @@
 package net.sf.jabref.imports;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PushbackReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.logging.Level;
@@ -54,6 +74,13 @@ import net.sf.jabref.*;
  *
  * ParserResult result = BibtexParser.parse(reader);
  *
+ * or, for files on disk,
+ *
+ * ParserResult result = BibtexParser.parse(file, encoding);
+ *
+ * The last form maps the file into memory, decodes it into a char array and
+ * lexes it by index instead of pulling every character through a Reader.
+ *
  * Can be used stand-alone.
  *
  * @author David Weitzman
@@ -91,15 +118,20 @@ public class BibtexParser {
     private static final int PHASE_FIELD_CONTENT = 10;
     private static final int PHASE_OTHER = 11;
 
-    // Add buffering for I/O optimization
-    private BufferedReader _bufferedReader;
+    // Reader mode: characters are pulled one by one through a pushback reader.
     private PushbackReader _in;
 
-    // Add larger buffer for bulk reading
-    private char[] _largeBuffer = new char[65536]; // 64KB buffer
-    private int _largeBufferPos = 0;
-    private int _largeBufferLength = 0;
-    private boolean _useLargeBuffer = true;
+    // Buffer mode: the whole input is held in _chars and lexed by index.
+    // _in is null in this mode. _pos may run past _limit when EOF is read, so
+    // that read() and unread() stay symmetric just like in reader mode.
+    private char[] _chars;
+    private int _pos;
+    private int _limit;
+
+    // Decoding target for parse(File, String), kept per thread so that
+    // repeated loads do not allocate a new file-sized char array every time.
+    private static final ThreadLocal<SoftReference<char[]>> decodeBuffer =
+            new ThreadLocal<SoftReference<char[]>>();
 
     // Add this method for timing
     private void startTimer() {
@@ -158,6 +190,29 @@ public class BibtexParser {
 
     private HashMap<String, BibtexEntryType> entryTypes;
 
+    private HashMap<String, String> _meta;
+
+    // Receives everything that is parsed. parse() uses a DatabaseBuilder.
+    private BibtexVisitor _visitor;
+
+    // Minimum number of characters per chunk when parsing in parallel, 0 to
+    // always parse sequentially.
+    private int _parallelChunkSize = PARALLEL_CHUNK_SIZE;
+
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 20;
+
+    // Set when this parser handles one chunk of a parallel parse: results
+    // are recorded here instead of being passed to _visitor.
+    private List<Runnable> _deferred;
+
+    private boolean _checkOverrun;
+
+    private boolean _overrun;
+
+    // Placeholder ID of entries and strings parsed in a chunk. The real ID is
+    // set when the chunk's results are applied.
+    private static final String UNASSIGNED_ID = "";
+
     private boolean _eof = false;
 
     private int line = 1;
@@ -170,17 +225,84 @@ public class BibtexParser {
 
     private final boolean autoDoubleBraces;
 
+    // Shares repeated field values between entries, or null.
+    private FieldValuePool _valuePool;
+
     public BibtexParser(Reader in) {
 
         if (in == null) {
             throw new NullPointerException();
         }
+        autoDoubleBraces = readAutoDoubleBraces();
+        _valuePool = FieldValuePool.createIfEnabled();
+        _in = new PushbackReader(new BufferedReader(in, LOOKAHEAD), LOOKAHEAD);
+    }
+
+    /**
+     * Creates a parser working directly on the first <code>length</code>
+     * characters of the given array. The array is not copied, and must not be
+     * modified until parsing has finished.
+     *
+     * @param chars The characters to parse.
+     * @param length The number of valid characters in the array.
+     */
+    public BibtexParser(char[] chars, int length) {
+
+        if (chars == null) {
+            throw new NullPointerException();
+        }
+        if ((length < 0) || (length > chars.length)) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+        autoDoubleBraces = readAutoDoubleBraces();
+        _valuePool = FieldValuePool.createIfEnabled();
+        _chars = chars;
+        _pos = 0;
+        _limit = length;
+    }
+
+    /**
+     * Creates a parser for the chunk [start, end) of the owner's buffer. The
+     * chunk parser shares the owner's visitor, but must only call it through
+     * emit().
+     */
+    private BibtexParser(BibtexParser owner, int start, int end, int startLine, boolean checkOverrun) {
+        autoDoubleBraces = owner.autoDoubleBraces;
+        _chars = owner._chars;
+        _pos = start;
+        _limit = end;
+        line = startLine;
+        _visitor = owner._visitor;
+        _valuePool = owner._valuePool;
+        _deferred = new ArrayList<Runnable>();
+        _checkOverrun = checkOverrun;
+    }
+
+    /**
+     * Sets the minimum number of characters per chunk when parsing a buffer
+     * in parallel. 0 disables parallel parsing.
+     */
+    void setParallelChunkSize(int chars) {
+        _parallelChunkSize = chars;
+    }
+
+    /**
+     * Sets the pool used to share repeated field values, or null to keep
+     * every value as it was read.
+     */
+    void setValuePool(FieldValuePool pool) {
+        _valuePool = pool;
+    }
+
+    FieldValuePool getValuePool() {
+        return _valuePool;
+    }
+
+    private static boolean readAutoDoubleBraces() {
         if (Globals.prefs == null) {
             Globals.prefs = JabRefPreferences.getInstance();
         }
-        autoDoubleBraces = Globals.prefs.getBoolean("autoDoubleBraces");
-        _bufferedReader = new BufferedReader(in, LOOKAHEAD);
-        _in = new PushbackReader(_bufferedReader, LOOKAHEAD);
+        return Globals.prefs.getBoolean("autoDoubleBraces");
     }
 
     /**
@@ -194,6 +316,85 @@ public class BibtexParser {
         return parser.parse();
     }
 
+    /**
+     * Parses the given file in buffer mode. The file is memory mapped and
+     * decoded in one go into a char buffer which is reused by later calls
+     * from the same thread.
+     *
+     * @param file The file to parse.
+     * @param encoding The name of the file's character encoding.
+     * @throws IOException if the file cannot be read or the encoding is not
+     * supported.
+     */
+    public static ParserResult parse(File file, String encoding) throws IOException {
+        Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Unsupported encoding: " + encoding, ex);
+        }
+
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // Too large to be mapped in one piece, stream it instead:
+                return parse(new InputStreamReader(stream, charset));
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CharBuffer chars = decode(bytes, charset);
+            return new BibtexParser(chars.array(), chars.position()).parse();
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Decodes the given bytes into the thread's decoding buffer, growing it
+     * if necessary. Malformed input is replaced just like InputStreamReader
+     * does.
+     *
+     * @return A buffer whose backing array holds the characters in the range
+     * [0, position()).
+     */
+    private static CharBuffer decode(ByteBuffer bytes, Charset charset)
+            throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        long wanted = (long) Math.ceil(bytes.remaining() * (double) decoder.averageCharsPerByte()) + 16;
+        SoftReference<char[]> ref = decodeBuffer.get();
+        char[] buf = (ref != null) ? ref.get() : null;
+        if ((buf == null) || (buf.length < wanted)) {
+            buf = new char[(int) Math.min(wanted, Integer.MAX_VALUE - 8)];
+        }
+
+        CharBuffer out = CharBuffer.wrap(buf);
+        boolean flushing = false;
+        while (true) {
+            CoderResult result = flushing ? decoder.flush(out) : decoder.decode(bytes, out, true);
+            if (result.isOverflow()) {
+                // Grow and continue where we stopped:
+                char[] larger = new char[(int) Math.min(2L * buf.length, Integer.MAX_VALUE - 8)];
+                System.arraycopy(buf, 0, larger, 0, out.position());
+                CharBuffer next = CharBuffer.wrap(larger);
+                next.position(out.position());
+                buf = larger;
+                out = next;
+            } else if (result.isError()) {
+                result.throwException();
+            } else if (flushing) {
+                break;
+            } else {
+                flushing = true;
+            }
+        }
+        decodeBuffer.set(new SoftReference<char[]>(buf));
+        return out;
+    }
+
     /**
      * Parses BibtexEntries from the given string and returns the collection of
      * all entries found.
@@ -258,6 +459,10 @@ public class BibtexParser {
     private void skipWhitespace() throws IOException {
         long start = PROFILE ? System.nanoTime() : 0L;
         try {
+            if (_chars != null) {
+                skipWhitespaceInBuffer();
+                return;
+            }
             int c;
             while (true) {
                 c = read();
@@ -280,6 +485,30 @@ public class BibtexParser {
         }
     }
 
+    private void skipWhitespaceInBuffer() {
+        final char[] chars = _chars;
+        int p = _pos;
+        while (p < _limit) {
+            char c = chars[p];
+            if (c == 65535) {
+                _eof = true;
+                _pos = p + 1;
+                return;
+            }
+            if (!Character.isWhitespace(c)) {
+                _pos = p;
+                return;
+            }
+            if (c == '\n') {
+                line++;
+            }
+            p++;
+        }
+        // Consumed the end of input, like read() returning -1 would have:
+        _eof = true;
+        _pos = p + 1;
+    }
+
     private String skipAndRecordWhitespace(int j) throws IOException {
         int c;
         StringBuilder sb = new StringBuilder();
@@ -336,9 +565,10 @@ public class BibtexParser {
         }
 
         _db = new BibtexDatabase(); // Bibtex related contents.
-        HashMap<String, String> meta = new HashMap<String, String>();
+        _meta = new HashMap<String, String>();
         entryTypes = new HashMap<String, BibtexEntryType>(); // To store custem entry types parsed.
         _pr = new ParserResult(_db, null, entryTypes);
+        _visitor = new DatabaseBuilder();
 
         // First see if we can find the version number of the JabRef version that
         // wrote the file:
@@ -352,155 +582,19 @@ public class BibtexParser {
         recordTime(PHASE_WHITESPACE);
 
         try {
-            while (!_eof) {
-                boolean found = consumeUncritically('@');
-                recordTime(PHASE_ENTRY_DETECTION);
-
-                if (!found) {
-                    break;
-                }
-                skipWhitespace();
-                recordTime(PHASE_WHITESPACE);
-
-                String entryType = parseTextToken();
-                recordTime(PHASE_TEXT_TOKEN);
-
-                BibtexEntryType tp = BibtexEntryType.getType(entryType);
-                boolean isEntry = (tp != null);
-                // Util.pr(tp.getName());
-                if (!isEntry) {
-                    // The entry type name was not recognized. This can mean
-                    // that it is a string, preamble, or comment. If so,
-                    // parse and set accordingly. If not, assume it is an entry
-                    // with an unknown type.
-                    if (entryType.toLowerCase().equals("preamble")) {
-                        _db.setPreamble(parsePreamble());
-                    } else if (entryType.toLowerCase().equals("string")) {
-                        BibtexString bs = parseString();
-                        try {
-                            _db.addString(bs);
-                        } catch (KeyCollisionException ex) {
-                            _pr.addWarning(Globals.lang("Duplicate string name") + ": "
-                                    + bs.getName());
-                            // ex.printStackTrace();
-                        }
-                    } else if (entryType.toLowerCase().equals("comment")) {
-                        StringBuffer commentBuf = parseBracketedTextExactly();
-                        /**
-                         *
-                         * Metadata are used to store Bibkeeper-specific
-                         * information in .bib files.
-                         *
-                         * Metadata are stored in bibtex files in the format
-                         *
-                         * @comment{jabref-meta: type:data0;data1;data2;...}
-                         *
-                         * Each comment that starts with the META_FLAG is stored
-                         * in the meta HashMap, with type as key. Unluckily, the
-                         * old META_FLAG bibkeeper-meta: was used in JabRef 1.0
-                         * and 1.1, so we need to support it as well. At least
-                         * for a while. We'll always save with the new one.
-                         */
-                        String comment = commentBuf.toString().replaceAll("[\\x0d\\x0a]", "");
-                        if (comment.substring(0,
-                                Math.min(comment.length(), GUIGlobals.META_FLAG.length())).equals(
-                                GUIGlobals.META_FLAG)
-                                || comment.substring(0,
-                                        Math.min(comment.length(), GUIGlobals.META_FLAG_OLD.length()))
-                                        .equals(GUIGlobals.META_FLAG_OLD)) {
-
-                            String rest;
-                            if (comment.substring(0, GUIGlobals.META_FLAG.length()).equals(
-                                    GUIGlobals.META_FLAG)) {
-                                rest = comment.substring(GUIGlobals.META_FLAG.length());
-                            } else {
-                                rest = comment.substring(GUIGlobals.META_FLAG_OLD.length());
-                            }
-
-                            int pos = rest.indexOf(':');
-
-                            if (pos > 0) {
-                                meta.put(rest.substring(0, pos), rest.substring(pos + 1));
-                            }
-                            // We remove all line breaks in the metadata - these
-                            // will have been inserted
-                            // to prevent too long lines when the file was
-                            // saved, and are not part of the data.
-
-                        } else if (comment.substring(0,
-                                Math.min(comment.length(), GUIGlobals.ENTRYTYPE_FLAG.length())).equals(
-                                GUIGlobals.ENTRYTYPE_FLAG)) {
-                            // A custom entry type can also be stored in a
-                            // "@comment"
-                            CustomEntryType typ = CustomEntryType.parseEntryType(comment);
-                            entryTypes.put(typ.getName().toLowerCase(), typ);
-                        } else {
-                            // FIXME: user comments are simply dropped
-                            // at least, we log that we ignored the comment
-                            Globals.logger(Globals.lang("Dropped comment from database") + ":" + comment);
-                        }
-                    } else {
-                        // The entry type was not recognized. This may mean that
-                        // it is a custom entry type whose definition will
-                        // appear
-                        // at the bottom of the file. So we use an
-                        // UnknownEntryType
-                        // to remember the type name by.
-                        tp = new UnknownEntryType(entryType.toLowerCase());
-                        // System.out.println("unknown type: "+entryType);
-                        isEntry = true;
-                    }
-                    recordTime(PHASE_OTHER);
-                }
-
-                if (isEntry) // True if not comment, preamble or string.
-                {
-                    /**
-                     * Morten Alver 13 Aug 2006: Trying to make the parser more
-                     * robust. If an exception is thrown when parsing an entry,
-                     * drop the entry and try to resume parsing. Add a warning
-                     * for the user.
-                     *
-                     * An alternative solution is to try rescuing the entry for
-                     * which parsing failed, by returning the entry with the
-                     * exception and adding it before parsing is continued.
-                     */
-                    try {
-                        startTimer(); // Reset for entry parsing
-                        BibtexEntry be = parseEntry(tp);
-                        recordTime(PHASE_ENTRY_PARSING);
-
-                        // Time database operations separately
-                        long dbStart = System.nanoTime();
-                        boolean duplicateKey = _db.insertEntry(be);
-                        _phaseTimes[PHASE_DATABASE_OPS] += System.nanoTime() - dbStart;
-
-                        if (duplicateKey) // JZTODO lyrics
-                        {
-                            _pr.addDuplicateKey(be.getCiteKey());
-                        } // _pr.addWarning(Globals.lang("duplicate BibTeX key") + ": "
-                        //	+ be.getCiteKey() + " ("
-                        //	+ Globals.lang("grouping may not work for this entry") + ")");                        
-                        else if (be.getCiteKey() == null || be.getCiteKey().equals("")) {
-                            _pr.addWarning(Globals.lang("empty BibTeX key") + ": "
-                                    + be.getAuthorTitleYear(40) + " ("
-                                    + Globals.lang("grouping may not work for this entry") + ")");
-                        }
-                    } catch (IOException ex) {
-                        logger.log(Level.WARNING, ex.getMessage(), ex);
-                        _pr.addWarning(Globals.lang("Error occured when parsing entry") + ": '"
-                                + ex.getMessage() + "'. " + Globals.lang("Skipped entry."));
-                    }
-                }
-                skipWhitespace();
-                recordTime(PHASE_WHITESPACE);
+            if (!parseItemsInParallel()) {
+                parseItems();
             }
             // Before returning the database, update entries with unknown type
             // based on parsed type definitions, if possible.
             checkEntryTypes(_pr);
 
             // Instantiate meta data:
-            _pr.setMetaData(new MetaData(meta, _db));
+            _pr.setMetaData(new MetaData(_meta, _db));
+
+            if (_valuePool != null) {
+                _valuePool.logStatistics("parsed database");
+            }
 
             recordTime(PHASE_TOTAL); // Final total time
             // printTimingStats();
@@ -512,6 +606,390 @@ public class BibtexParser {
         }
     }
 
+    /**
+     * Parses the input without building a database, handing each item to
+     * the visitor as soon as it has been read. Together with the Reader
+     * constructor, this reads files of any size in bounded memory.
+     *
+     * Unlike parse(), this does not resolve entry types defined in the file
+     * and does not interpret meta data; see BibtexVisitor.
+     *
+     * The reader will be consumed.
+     *
+     * @param visitor Receives the items, in file order.
+     * @throws IOException
+     */
+    public void parse(BibtexVisitor visitor) throws IOException {
+        if ((_pr != null) || (_visitor != null)) {
+            throw new IllegalStateException("Input has already been parsed");
+        }
+        _visitor = visitor;
+        // Streamed entries are mostly dropped after being visited, so the
+        // pool would only grow:
+        _valuePool = null;
+
+        // Skip the JabRef signature, as parse() does:
+        readJabRefVersionNumber();
+        skipWhitespace();
+
+        parseItems();
+    }
+
+    /**
+     * Parses all entries, strings, preambles and comments up to the end of
+     * the input.
+     */
+    private void parseItems() throws IOException {
+        while (!_eof) {
+            boolean found = consumeUncritically('@');
+            recordTime(PHASE_ENTRY_DETECTION);
+
+            if (!found) {
+                break;
+            }
+            skipWhitespace();
+            recordTime(PHASE_WHITESPACE);
+
+            parseItem();
+
+            if (_checkOverrun && (_pos > _limit)) {
+                // The item did not end inside this chunk, so the chunk
+                // boundary was wrong. Give up on this chunk.
+                _overrun = true;
+                return;
+            }
+            skipWhitespace();
+            recordTime(PHASE_WHITESPACE);
+        }
+    }
+
+    /**
+     * Parses the item following an '@'.
+     */
+    private void parseItem() throws IOException {
+        String entryType = parseTextToken();
+        recordTime(PHASE_TEXT_TOKEN);
+
+        BibtexEntryType tp = BibtexEntryType.getType(entryType);
+        boolean isEntry = (tp != null);
+        // Util.pr(tp.getName());
+        if (!isEntry) {
+            // The entry type name was not recognized. This can mean
+            // that it is a string, preamble, or comment. If so,
+            // parse and set accordingly. If not, assume it is an entry
+            // with an unknown type.
+            if (entryType.toLowerCase().equals("preamble")) {
+                final String preamble = parsePreamble();
+                emit(() -> _visitor.visitPreamble(preamble));
+            } else if (entryType.toLowerCase().equals("string")) {
+                final BibtexString bs = parseString();
+                emit(() -> {
+                    if (_deferred != null) {
+                        bs.setId(Util.createNeutralId());
+                    }
+                    _visitor.visitString(bs);
+                });
+            } else if (entryType.toLowerCase().equals("comment")) {
+                StringBuffer commentBuf = parseBracketedTextExactly();
+                /**
+                 *
+                 * Metadata are used to store Bibkeeper-specific
+                 * information in .bib files.
+                 *
+                 * Metadata are stored in bibtex files in the format
+                 *
+                 * @comment{jabref-meta: type:data0;data1;data2;...}
+                 *
+                 * Each comment that starts with the META_FLAG is stored
+                 * in the meta HashMap, with type as key. Unluckily, the
+                 * old META_FLAG bibkeeper-meta: was used in JabRef 1.0
+                 * and 1.1, so we need to support it as well. At least
+                 * for a while. We'll always save with the new one.
+                 */
+                final String comment = commentBuf.toString().replaceAll("[\\x0d\\x0a]", "");
+                if (comment.substring(0,
+                        Math.min(comment.length(), GUIGlobals.META_FLAG.length())).equals(
+                        GUIGlobals.META_FLAG)
+                        || comment.substring(0,
+                                Math.min(comment.length(), GUIGlobals.META_FLAG_OLD.length()))
+                                .equals(GUIGlobals.META_FLAG_OLD)) {
+
+                    String rest;
+                    if (comment.substring(0, GUIGlobals.META_FLAG.length()).equals(
+                            GUIGlobals.META_FLAG)) {
+                        rest = comment.substring(GUIGlobals.META_FLAG.length());
+                    } else {
+                        rest = comment.substring(GUIGlobals.META_FLAG_OLD.length());
+                    }
+
+                    int pos = rest.indexOf(':');
+
+                    if (pos > 0) {
+                        final String key = rest.substring(0, pos);
+                        final String value = rest.substring(pos + 1);
+                        emit(() -> _visitor.visitMetaData(key, value));
+                    }
+                    // We remove all line breaks in the metadata - these
+                    // will have been inserted
+                    // to prevent too long lines when the file was
+                    // saved, and are not part of the data.
+
+                } else if (comment.substring(0,
+                        Math.min(comment.length(), GUIGlobals.ENTRYTYPE_FLAG.length())).equals(
+                        GUIGlobals.ENTRYTYPE_FLAG)) {
+                    // A custom entry type can also be stored in a
+                    // "@comment"
+                    final CustomEntryType typ = CustomEntryType.parseEntryType(comment);
+                    if (typ != null) {
+                        emit(() -> _visitor.visitEntryType(typ));
+                    }
+                } else {
+                    // FIXME: user comments are simply dropped
+                    // at least, we log that we ignored the comment
+                    emit(() -> Globals.logger(Globals.lang("Dropped comment from database") + ":" + comment));
+                }
+            } else {
+                // The entry type was not recognized. This may mean that
+                // it is a custom entry type whose definition will
+                // appear
+                // at the bottom of the file. So we use an
+                // UnknownEntryType
+                // to remember the type name by.
+                tp = new UnknownEntryType(entryType.toLowerCase());
+                // System.out.println("unknown type: "+entryType);
+                isEntry = true;
+            }
+            recordTime(PHASE_OTHER);
+        }
+
+        if (isEntry) // True if not comment, preamble or string.
+        {
+            /**
+             * Morten Alver 13 Aug 2006: Trying to make the parser more
+             * robust. If an exception is thrown when parsing an entry,
+             * drop the entry and try to resume parsing. Add a warning
+             * for the user.
+             *
+             * An alternative solution is to try rescuing the entry for
+             * which parsing failed, by returning the entry with the
+             * exception and adding it before parsing is continued.
+             */
+            try {
+                startTimer(); // Reset for entry parsing
+                final BibtexEntry be = parseEntry(tp);
+                recordTime(PHASE_ENTRY_PARSING);
+
+                emit(() -> storeEntry(be));
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, ex.getMessage(), ex);
+                addWarning(Globals.lang("Error occured when parsing entry") + ": '"
+                        + ex.getMessage() + "'. " + Globals.lang("Skipped entry."));
+            }
+        }
+    }
+
+    private void storeEntry(BibtexEntry be) {
+        if (_deferred != null) {
+            // IDs are handed out in file order, as in a sequential parse.
+            be.setId(Util.createNeutralId());
+        }
+        _visitor.visitEntry(be);
+    }
+
+    /**
+     * Applies a result of the parse to the database or parser result. When
+     * this parser handles one chunk of a parallel parse, the action is only
+     * recorded, and run later in file order by the parser owning the chunk.
+     */
+    private void emit(Runnable action) {
+        if (_deferred != null) {
+            _deferred.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    private void addWarning(final String warning) {
+        emit(() -> _visitor.visitWarning(warning));
+    }
+
+    /**
+     * Builds the database and parser result returned by parse().
+     */
+    private class DatabaseBuilder implements BibtexVisitor {
+
+        @Override
+        public void visitPreamble(String preamble) {
+            _db.setPreamble(preamble);
+        }
+
+        @Override
+        public void visitString(BibtexString string) {
+            try {
+                _db.addString(string);
+            } catch (KeyCollisionException ex) {
+                _pr.addWarning(Globals.lang("Duplicate string name") + ": "
+                        + string.getName());
+                // ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public void visitEntry(BibtexEntry be) {
+            // Time database operations separately
+            long dbStart = System.nanoTime();
+            boolean duplicateKey = _db.insertEntry(be);
+            _phaseTimes[PHASE_DATABASE_OPS] += System.nanoTime() - dbStart;
+
+            if (duplicateKey) // JZTODO lyrics
+            {
+                _pr.addDuplicateKey(be.getCiteKey());
+            } // _pr.addWarning(Globals.lang("duplicate BibTeX key") + ": "
+            //	+ be.getCiteKey() + " ("
+            //	+ Globals.lang("grouping may not work for this entry") + ")");
+            else if (be.getCiteKey() == null || be.getCiteKey().equals("")) {
+                _pr.addWarning(Globals.lang("empty BibTeX key") + ": "
+                        + be.getAuthorTitleYear(40) + " ("
+                        + Globals.lang("grouping may not work for this entry") + ")");
+            }
+        }
+
+        @Override
+        public void visitMetaData(String key, String value) {
+            _meta.put(key, value);
+        }
+
+        @Override
+        public void visitEntryType(CustomEntryType type) {
+            entryTypes.put(type.getName().toLowerCase(), type);
+        }
+
+        @Override
+        public void visitWarning(String warning) {
+            _pr.addWarning(warning);
+        }
+    }
+
+    /**
+     * Parses the rest of the input in parallel if it is held in a buffer and
+     * large enough to be worth it. The buffer is first scanned for top level
+     * '@' characters at the beginning of a line, which split it into chunks
+     * of roughly _parallelChunkSize characters. The chunks are parsed on the
+     * fork-join pool, and their results applied to the database afterwards in
+     * file order, so that entry order, @string and @preamble handling and the
+     * warnings come out exactly as in a sequential parse. The scan is only a
+     * heuristic: if an item does not end inside its chunk, or a chunk fails
+     * to parse, everything is parsed sequentially instead.
+     *
+     * @return false if nothing was parsed, because the input is not suited
+     * for parallel parsing or a chunk boundary turned out to be inside an
+     * item. The caller should then parse sequentially from where it was.
+     */
+    private boolean parseItemsInParallel() throws IOException {
+        if ((_chars == null) || (_parallelChunkSize <= 0) || (_limit - _pos < 2 * _parallelChunkSize)) {
+            return false;
+        }
+
+        List<int[]> chunks = findChunks();
+        if (chunks.size() < 2) {
+            return false;
+        }
+
+        List<Callable<List<Runnable>>> tasks = new ArrayList<Callable<List<Runnable>>>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            int[] chunk = chunks.get(i);
+            final BibtexParser chunkParser = new BibtexParser(this, chunk[0], chunk[1], chunk[2],
+                    i < (chunks.size() - 1));
+            tasks.add(() -> chunkParser.parseChunk());
+        }
+
+        List<List<Runnable>> results = new ArrayList<List<Runnable>>(chunks.size());
+        try {
+            for (Future<List<Runnable>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                List<Runnable> result = future.get();
+                if (result == null) {
+                    return false;
+                }
+                results.add(result);
+            }
+        } catch (ExecutionException ex) {
+            // Parsing the chunk failed. Parse sequentially instead, which
+            // reports the problem just like it would have without chunks.
+            logger.log(Level.FINE, "Parallel parsing failed, parsing sequentially", ex.getCause());
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        }
+
+        for (List<Runnable> result : results) {
+            for (Runnable action : result) {
+                action.run();
+            }
+        }
+        _pos = _limit + 1;
+        _eof = true;
+        return true;
+    }
+
+    /**
+     * Splits the remaining buffer into chunks.
+     *
+     * @return A list of {start, end, line} triples covering the rest of the
+     * buffer.
+     */
+    private List<int[]> findChunks() {
+        final char[] chars = _chars;
+        List<int[]> chunks = new ArrayList<int[]>();
+        int chunkStart = _pos;
+        int chunkLine = line;
+        int currentLine = line;
+        int braces = 0;
+        boolean quoted = false;
+        boolean lineStart = true;
+        for (int p = _pos; p < _limit; p++) {
+            char c = chars[p];
+            if (c == '\n') {
+                currentLine++;
+                lineStart = true;
+                continue;
+            }
+            if (c == '{') {
+                braces++;
+            } else if (c == '}') {
+                if (braces > 0) {
+                    braces--;
+                }
+            } else if ((c == '"') && (braces <= 1)) {
+                // Quoted field value, which may contain '@' at the beginning
+                // of a line in entries delimited by parentheses.
+                quoted = !quoted;
+            } else if ((c == '@') && (braces == 0) && !quoted && lineStart
+                    && (p - chunkStart >= _parallelChunkSize)) {
+                chunks.add(new int[] {chunkStart, p, chunkLine});
+                chunkStart = p;
+                chunkLine = currentLine;
+            }
+            if (!Character.isWhitespace(c)) {
+                lineStart = false;
+            }
+        }
+        chunks.add(new int[] {chunkStart, _limit, chunkLine});
+        return chunks;
+    }
+
+    /**
+     * Parses the chunk this parser was created for.
+     *
+     * @return The recorded results, or null if an item ran past the end of
+     * the chunk.
+     */
+    private List<Runnable> parseChunk() throws IOException {
+        skipWhitespace();
+        parseItems();
+        return _overrun ? null : _deferred;
+    }
+
     private int peek() throws IOException {
         int c = read();
         unread(c);
@@ -520,7 +998,13 @@ public class BibtexParser {
     }
 
     private int read() throws IOException {
-        int c = _in.read();
+        int c;
+        if (_chars != null) {
+            int p = _pos++;
+            c = (p < _limit) ? _chars[p] : -1;
+        } else {
+            c = _in.read();
+        }
         if (c == '\n') {
             line++;
         }
@@ -528,18 +1012,16 @@ public class BibtexParser {
     }
 
     private void unread(int c) throws IOException {
-        _in.unread(c);
+        if (_chars != null) {
+            _pos--;
+        } else {
+            _in.unread(c);
+        }
         if (c == '\n') {
             line--;
         }
     }
 
-    private void fillLargeBuffer() throws IOException {
-        _largeBufferLength = _bufferedReader.read(_largeBuffer);
-        _largeBufferPos = 0;
-        _useLargeBuffer = (_largeBufferLength > 0);
-    }
-
     public BibtexString parseString() throws IOException {
         long start = PROFILE ? System.nanoTime() : 0L;
         try {
@@ -558,7 +1040,7 @@ public class BibtexParser {
             // Util.pr("Now I'm going to consume a }");
             consume('}', ')');
             // Util.pr("Finished string parsing.");
-            String id = Util.createNeutralId();
+            String id = (_deferred == null) ? Util.createNeutralId() : UNASSIGNED_ID;
             return new BibtexString(id, name, content);
         } finally {
             if (PROFILE) {
@@ -582,7 +1064,7 @@ public class BibtexParser {
         // Don't time the entire method since it includes other timed operations
         // Just do the core entry parsing logic without timing
 
-        String id = Util.createNeutralId();
+        String id = (_deferred == null) ? Util.createNeutralId() : UNASSIGNED_ID;
         BibtexEntry result = new BibtexEntry(id, tp);
         skipWhitespace();
         consume('{', '(');
@@ -596,7 +1078,9 @@ public class BibtexParser {
         if ((key != null) && key.equals("")) {
             key = null;
         }
-        result.setField(BibtexFields.KEY_FIELD, key);
+        // The fields are collected first and set all at once:
+        Map<String, String> fields = new HashMap<String, String>();
+        fields.put(BibtexFields.KEY_FIELD, key);
         skipWhitespace();
 
         int fieldCount = 0;
@@ -616,15 +1100,16 @@ public class BibtexParser {
                 break;
             }
 
-            parseField(result);
+            parseField(fields);
             fieldCount++;
         }
 
         consume('}', ')');
+        result.setField(fields);
         return result;
     }
 
-    private void parseField(BibtexEntry entry) throws IOException {
+    private void parseField(Map<String, String> fields) throws IOException {
         long start = PROFILE ? System.nanoTime() : 0L;
         try {
             String key = parseTextToken().toLowerCase();
@@ -638,8 +1123,15 @@ public class BibtexParser {
                 content = Util.removeBracesAroundCapitals(content);
             }
             if (content.length() > 0) {
-                if (entry.getField(key) == null) {
-                    entry.setField(key, content);
+                if (BibtexEntry.ID_FIELD.equals(key)) {
+                    // As BibtexEntry.setField() would:
+                    throw new IllegalArgumentException("The field name '" + key + "' is reserved");
+                }
+                if (fields.get(key) == null) {
+                    if (_valuePool != null) {
+                        content = _valuePool.intern(key, content);
+                    }
+                    fields.put(key, content);
                 } else {
                     // The following hack enables the parser to deal with multiple
                     // author or
@@ -651,7 +1143,7 @@ public class BibtexParser {
                     // it inconvenient
                     // for users if JabRef didn't accept it.
                     if (key.equals("author") || key.equals("editor")) {
-                        entry.setField(key, entry.getField(key) + " and " + content);
+                        fields.put(key, fields.get(key) + " and " + content);
                     }
                 }
             }
@@ -808,6 +1300,9 @@ public class BibtexParser {
         long start = PROFILE ? System.nanoTime() : 0L;
         try {
             consume('{');
+            if (_chars != null) {
+                return scanBracketedTextInBuffer();
+            }
             StringBuilder value = new StringBuilder(2048); // Even larger for content
 
             int brackets = 1;
@@ -851,10 +1346,45 @@ public class BibtexParser {
         }
     }
 
+    /**
+     * Buffer mode counterpart of the reading loop in
+     * parseBracketedTextOptimized(). Expects the opening brace to be consumed
+     * and consumes the closing one.
+     */
+    private String scanBracketedTextInBuffer() {
+        final char[] chars = _chars;
+        final int start = _pos;
+        int brackets = 1;
+        int p = start;
+        while (p < _limit) {
+            char c = chars[p];
+            if (c == 65535) {
+                break;
+            }
+            if (c == '{') {
+                brackets++;
+            } else if (c == '}') {
+                brackets--;
+                if (brackets == 0) {
+                    _pos = p + 1;
+                    return new String(chars, start, p - start);
+                }
+            } else if (c == '\n') {
+                line++;
+            }
+            p++;
+        }
+        _pos = p + 1;
+        throw new RuntimeException("Error in line " + line + ": EOF in mid-string");
+    }
+
     private StringBuffer parseQuotedFieldOptimized() throws IOException {
         long start = PROFILE ? System.nanoTime() : 0L;
         try {
             consume('"');
+            if (_chars != null) {
+                return new StringBuffer(scanQuotedTextInBuffer());
+            }
             StringBuilder value = new StringBuilder(1024);
 
             int c;
@@ -875,6 +1405,32 @@ public class BibtexParser {
         }
     }
 
+    /**
+     * Buffer mode counterpart of the reading loop in
+     * parseQuotedFieldOptimized(). Consumes the closing quote.
+     */
+    private String scanQuotedTextInBuffer() {
+        final char[] chars = _chars;
+        final int start = _pos;
+        int p = start;
+        while (p < _limit) {
+            char c = chars[p];
+            if (c == '"') {
+                _pos = p + 1;
+                return new String(chars, start, p - start);
+            }
+            if (c == 65535) {
+                break;
+            }
+            if (c == '\n') {
+                line++;
+            }
+            p++;
+        }
+        _pos = p + 1;
+        throw new RuntimeException("Error in line " + line + ": EOF in quoted string");
+    }
+
     private String processAutoDoubleBraces(StringBuilder value) {
         if (!autoDoubleBraces) {
             return value.toString();
@@ -966,6 +1522,9 @@ public class BibtexParser {
     private String parseTextToken() throws IOException {
         long start = PROFILE ? System.nanoTime() : 0L;
         try {
+            if (_chars != null) {
+                return scanTextTokenInBuffer();
+            }
 
             StringBuilder token = new StringBuilder(32);
 
@@ -994,6 +1553,22 @@ public class BibtexParser {
 
     }
 
+    private String scanTextTokenInBuffer() {
+        final char[] chars = _chars;
+        final int start = Math.min(_pos, _limit);
+        int p = start;
+        while ((p < _limit) && isTextTokenChar(chars[p])) {
+            p++;
+        }
+        if (p < _limit) {
+            _pos = p;
+        } else {
+            _eof = true;
+            _pos = Math.max(_pos, p) + 1;
+        }
+        return new String(chars, start, p - start);
+    }
+
     private boolean isTextTokenChar(char ch) {
         return ((ch >= 'a' && ch <= 'z')
                 || (ch >= 'A' && ch <= 'Z')
@@ -1059,7 +1634,7 @@ public class BibtexParser {
                         }
 
                         // Finished, now reverse newKey and remove whitespaces:
-                        _pr.addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key.",
+                        addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key.",
                                 String.valueOf(line)));
                         key = newKey.reverse();
                     }
@@ -1068,12 +1643,12 @@ public class BibtexParser {
 
             case ',':
 
-                _pr.addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (contains whitespaces).",
+                addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (contains whitespaces).",
                         String.valueOf(line)));
 
             case '\n':
 
-                _pr.addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (comma missing).",
+                addWarning(Globals.lang("Line %0: Found corrupted BibTeX-key (comma missing).",
                         String.valueOf(line)));
 
                 break;
@@ -1305,6 +1880,9 @@ public class BibtexParser {
     }
 
     private boolean consumeUncritically(char expected) throws IOException {
+        if (_chars != null) {
+            return consumeUncriticallyInBuffer(expected);
+        }
         int c;
         while (((c = read()) != expected) && (c != -1) && (c != 65535)) {
             // do nothing
@@ -1318,6 +1896,29 @@ public class BibtexParser {
         return c == expected;
     }
 
+    private boolean consumeUncriticallyInBuffer(char expected) {
+        final char[] chars = _chars;
+        int p = _pos;
+        while (p < _limit) {
+            char c = chars[p++];
+            if (c == '\n') {
+                line++;
+            }
+            if (c == expected) {
+                _pos = p;
+                return true;
+            }
+            if (c == 65535) {
+                _pos = p;
+                _eof = true;
+                return false;
+            }
+        }
+        _pos = p + 1;
+        _eof = true;
+        return false;
+    }
+
     private void consume(char expected1, char expected2) throws IOException {
         // Consumes one of the two, doesn't care which appears.
 
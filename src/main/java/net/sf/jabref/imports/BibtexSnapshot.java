@@ -0,0 +1,550 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.imports;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryType;
+import net.sf.jabref.BibtexFields;
+import net.sf.jabref.BibtexString;
+import net.sf.jabref.CustomEntryType;
+import net.sf.jabref.FieldValuePool;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.Util;
+import net.sf.jabref.groups.GroupTreeNode;
+import net.sf.jabref.groups.VersionHandling;
+
+/**
+ * Binary cache of a parsed BibTeX file, stored as a hidden file next to it.
+ *
+ * A snapshot holds everything BibtexParser produces for a file: entries,
+ * strings, preamble, meta data, groups, custom entry types, the JabRef version
+ * and the parser warnings. It is only used when the size, the modification
+ * time and the SHA-1 hash of the .bib file still match the values recorded
+ * when the snapshot was written, and when it was made with the same encoding
+ * and the same parser-relevant preferences. In all other cases load() returns
+ * null and the caller falls back to parsing the file.
+ *
+ * Snapshots are a pure cache: they can be deleted at any time, and failures
+ * while writing them are logged and otherwise ignored.
+ */
+public class BibtexSnapshot {
+
+    private static final Logger logger = Logger.getLogger(BibtexSnapshot.class.getName());
+
+    private static final int MAGIC = 0x4a52534e; // "JRSN"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    // Writes snapshot files in the background, one at a time:
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "BibtexSnapshot-Writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Comparator<BibtexEntry> BY_ID = new Comparator<BibtexEntry>() {
+
+        @Override
+        public int compare(BibtexEntry e1, BibtexEntry e2) {
+            return e1.getId().compareTo(e2.getId());
+        }
+    };
+
+    private BibtexSnapshot() {
+    }
+
+    /**
+     * Returns the snapshot file belonging to the given BibTeX file, or null if
+     * the file is not eligible for snapshots. Only files with the .bib
+     * extension are cached, which also excludes the temporary copies made
+     * while scanning for external changes.
+     */
+    public static File getSnapshotFile(File bibFile) {
+        String name = bibFile.getName();
+        if (!name.toLowerCase().endsWith(".bib")) {
+            return null;
+        }
+        return new File(bibFile.getAbsoluteFile().getParentFile(), "." + name + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Loads the snapshot for the given file, if there is a valid one.
+     *
+     * @param bibFile  The BibTeX file.
+     * @param encoding The encoding the file is to be read with.
+     * @return The restored parser result, or null if there is no usable
+     * snapshot.
+     */
+    public static ParserResult load(File bibFile, String encoding) {
+        File snapshotFile = getSnapshotFile(bibFile);
+        if ((snapshotFile == null) || !snapshotFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(snapshotFile), 1 << 16))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)) {
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            byte[] hash = new byte[in.readInt()];
+            in.readFully(hash);
+            if ((size != bibFile.length()) || (lastModified != bibFile.lastModified())
+                    || !encoding.equals(readString(in))
+                    || !settingsFingerprint().equals(readString(in))) {
+                return null;
+            }
+            // Size and time stamp alone can miss an edit, so only trust the
+            // snapshot if the content is still the same:
+            if (!Arrays.equals(hash, hash(bibFile))) {
+                return null;
+            }
+            return read(in);
+        } catch (Exception ex) {
+            // A truncated or otherwise broken snapshot is just a cache miss.
+            logger.log(Level.FINE, "Could not read snapshot " + snapshotFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot for a freshly parsed file. The parser result must
+     * have its file and encoding set.
+     *
+     * @param pr The result of parsing pr.getFile().
+     */
+    public static void write(ParserResult pr) {
+        Runnable writer = prepare(pr, pr.getDatabase());
+        if (writer != null) {
+            writer.run();
+        }
+    }
+
+    /**
+     * Writes the snapshot for a freshly parsed file in the background. What
+     * is written is taken from the parser result now, so its database may be
+     * changed as soon as this returns. The parser result must have its file
+     * and encoding set.
+     *
+     * @param pr The result of parsing pr.getFile().
+     * @return A Future that is done when the snapshot has been written, or
+     * writing it has failed.
+     */
+    public static Future<?> writeLater(ParserResult pr) {
+        Runnable writer = prepare(pr, pr.getDatabase().snapshot());
+        if (writer == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return writeExecutor.submit(writer);
+    }
+
+    /**
+     * Waits until the snapshots passed to writeLater() so far are written.
+     */
+    static void waitForWrites() throws InterruptedException {
+        try {
+            writeExecutor.submit(() -> { }).get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Deletes the snapshot of the given file, which has just been written.
+     * The next time the file is opened, it is parsed and a new snapshot is
+     * made from exactly what the parser reads.
+     *
+     * @param bibFile The file that was saved.
+     */
+    public static void delete(File bibFile) {
+        File snapshotFile = getSnapshotFile(bibFile);
+        if ((snapshotFile != null) && snapshotFile.exists() && !snapshotFile.delete()) {
+            logger.warning("Could not delete snapshot " + snapshotFile);
+        }
+    }
+
+    /**
+     * Takes everything the snapshot of the given parser result needs except
+     * the entries, which are read from the given database. Returns the task
+     * that writes the snapshot file, or null if no snapshot is to be written.
+     */
+    private static Runnable prepare(ParserResult pr, final BibtexDatabase entries) {
+        final File bibFile = pr.getFile();
+        final String encoding = pr.getEncoding();
+        final File snapshotFile = getSnapshotFile(bibFile);
+        if ((snapshotFile == null) || (encoding == null) || !bibFile.isFile()) {
+            return null;
+        }
+        MetaData metaData = pr.getMetaData();
+        if ((metaData != null) && !metaData.isGroupTreeValid()) {
+            // The groups could not be read; a reparse must report this again.
+            snapshotFile.delete();
+            return null;
+        }
+
+        final long size = bibFile.length();
+        final long lastModified = bibFile.lastModified();
+        final String settings = settingsFingerprint();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(head)) {
+            writeHead(out, pr, Arrays.asList(pr.warnings()));
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not write snapshot " + snapshotFile, ex);
+            return null;
+        }
+        final byte[] headBytes = head.toByteArray();
+
+        return () -> {
+            File tmp = null;
+            try {
+                byte[] hash = hash(bibFile);
+
+                tmp = File.createTempFile(snapshotFile.getName(), ".tmp", snapshotFile.getParentFile());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmp), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeLong(size);
+                    out.writeLong(lastModified);
+                    out.writeInt(hash.length);
+                    out.write(hash);
+                    writeString(out, encoding);
+                    writeString(out, settings);
+                    out.write(headBytes);
+                    writeEntries(out, entries);
+                }
+                if ((bibFile.length() != size) || (bibFile.lastModified() != lastModified)) {
+                    // The file changed after it was parsed; the snapshot is stale already.
+                    tmp.delete();
+                    return;
+                }
+                Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Could not write snapshot " + snapshotFile, ex);
+                if (tmp != null) {
+                    tmp.delete();
+                }
+            }
+        };
+    }
+
+    private static void writeHead(DataOutputStream out, ParserResult pr, List<String> warnings)
+            throws IOException {
+        BibtexDatabase db = pr.getDatabase();
+
+        writeString(out, pr.getJabrefVersion());
+        out.writeInt(pr.getJabrefMajorVersion());
+        out.writeInt(pr.getJabrefMinorVersion());
+        out.writeInt(pr.getJabrefMinor2Version());
+
+        writeString(out, db.getPreamble());
+
+        List<BibtexString> strings = new ArrayList<BibtexString>(db.getStringValues());
+        strings.sort(new Comparator<BibtexString>() {
+
+            @Override
+            public int compare(BibtexString s1, BibtexString s2) {
+                return s1.getId().compareTo(s2.getId());
+            }
+        });
+        out.writeInt(strings.size());
+        for (BibtexString s : strings) {
+            writeString(out, s.getName());
+            writeString(out, s.getContent());
+        }
+
+        // Custom entry types are stored in their @comment form:
+        out.writeInt(pr.getEntryTypes().size());
+        for (BibtexEntryType type : pr.getEntryTypes().values()) {
+            StringWriter sw = new StringWriter();
+            ((CustomEntryType) type).save(sw);
+            String comment = sw.toString().trim();
+            // Strip "@comment{" and "}", as the parser does:
+            writeString(out, comment.substring(9, comment.length() - 1));
+        }
+
+        MetaData metaData = pr.getMetaData();
+        List<String> keys = new ArrayList<String>();
+        if (metaData != null) {
+            for (String key : metaData) {
+                keys.add(key);
+            }
+        }
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            writeString(out, key);
+            List<String> values = metaData.getData(key);
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+
+        GroupTreeNode groups = metaData == null ? null : metaData.getGroups();
+        if ((groups != null) && (groups.getChildCount() > 0)) {
+            String[] lines = groups.getTreeAsString().split("\n");
+            out.writeInt(lines.length);
+            for (String line : lines) {
+                writeString(out, line);
+            }
+        } else {
+            out.writeInt(-1);
+        }
+
+        out.writeInt(warnings.size());
+        for (String warning : warnings) {
+            writeString(out, warning);
+        }
+    }
+
+    private static void writeEntries(DataOutputStream out, BibtexDatabase db) throws IOException {
+        // Entries, in creation order. Field names are written once into a
+        // table and referred to by index afterwards.
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>(db.getEntries());
+        entries.sort(BY_ID);
+        HashMap<String, Integer> fieldIndex = new HashMap<String, Integer>();
+        List<String> fieldNames = new ArrayList<String>();
+        for (BibtexEntry be : entries) {
+            for (String field : be.getAllFields()) {
+                if (isStored(field) && !fieldIndex.containsKey(field)) {
+                    fieldIndex.put(field, fieldNames.size());
+                    fieldNames.add(field);
+                }
+            }
+        }
+        out.writeInt(fieldNames.size());
+        for (String field : fieldNames) {
+            writeString(out, field);
+        }
+
+        out.writeInt(entries.size());
+        for (BibtexEntry be : entries) {
+            writeString(out, be.getType().getName());
+            int count = 0;
+            for (String field : be.getAllFields()) {
+                if (isStored(field)) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (String field : be.getAllFields()) {
+                if (isStored(field)) {
+                    out.writeInt(fieldIndex.get(field));
+                    writeString(out, be.getField(field));
+                }
+            }
+        }
+    }
+
+    private static ParserResult read(DataInputStream in) throws Exception {
+        BibtexDatabase db = new BibtexDatabase();
+        HashMap<String, BibtexEntryType> entryTypes = new HashMap<String, BibtexEntryType>();
+
+        String jabrefVersion = readString(in);
+        int major = in.readInt();
+        int minor = in.readInt();
+        int minor2 = in.readInt();
+
+        String preamble = readString(in);
+        if (preamble != null) {
+            db.setPreamble(preamble);
+        }
+
+        int stringCount = in.readInt();
+        for (int i = 0; i < stringCount; i++) {
+            String name = readString(in);
+            String content = readString(in);
+            db.addString(new BibtexString(Util.createNeutralId(), name, content));
+        }
+
+        int typeCount = in.readInt();
+        for (int i = 0; i < typeCount; i++) {
+            CustomEntryType type = CustomEntryType.parseEntryType(readString(in));
+            if (type == null) {
+                throw new IOException("Ill-formed entry type in snapshot");
+            }
+            entryTypes.put(type.getName().toLowerCase(), type);
+        }
+
+        MetaData metaData = new MetaData();
+        int keyCount = in.readInt();
+        for (int i = 0; i < keyCount; i++) {
+            String key = readString(in);
+            int valueCount = in.readInt();
+            List<String> values = new ArrayList<String>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(readString(in));
+            }
+            metaData.putData(key, values);
+        }
+
+        int groupLines = in.readInt();
+        List<String> groups = null;
+        if (groupLines >= 0) {
+            groups = new ArrayList<String>(groupLines);
+            for (int i = 0; i < groupLines; i++) {
+                groups.add(readString(in));
+            }
+        }
+
+        ParserResult pr = new ParserResult(db, metaData, entryTypes);
+        pr.setJabrefVersion(jabrefVersion);
+        pr.setJabrefMajorVersion(major);
+        pr.setJabrefMinorVersion(minor);
+        pr.setJabrefMinor2Version(minor2);
+
+        int warningCount = in.readInt();
+        for (int i = 0; i < warningCount; i++) {
+            pr.addWarning(readString(in));
+        }
+
+        String[] fieldNames = new String[in.readInt()];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = readString(in);
+        }
+
+        FieldValuePool valuePool = FieldValuePool.createIfEnabled();
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            String typeName = readString(in);
+            BibtexEntryType type = BibtexEntryType.getType(typeName);
+            if (type == null) {
+                type = entryTypes.get(typeName.toLowerCase());
+            }
+            if (type == null) {
+                type = BibtexEntryType.OTHER;
+            }
+            BibtexEntry be = new BibtexEntry(Util.createNeutralId(), type);
+            int fieldCount = in.readInt();
+            HashMap<String, String> fields = new HashMap<String, String>(Math.max(4, fieldCount * 2));
+            for (int j = 0; j < fieldCount; j++) {
+                String name = fieldNames[in.readInt()];
+                String value = readString(in);
+                fields.put(name, valuePool == null ? value : valuePool.intern(name, value));
+            }
+            be.setField(fields);
+            if (db.insertEntry(be)) {
+                pr.addDuplicateKey(be.getCiteKey());
+            }
+        }
+
+        // Explicit groups refer to entries, so they are restored last:
+        if (groups != null) {
+            metaData.setGroups(VersionHandling.importGroups(groups, db, VersionHandling.CURRENT_VERSION));
+        }
+        return pr;
+    }
+
+    /**
+     * Only the fields that can come from the .bib file are stored. Snapshots
+     * are written only after loading, so fields added by JabRef itself are
+     * left out, as they are when the file is parsed again.
+     */
+    private static boolean isStored(String field) {
+        return BibtexFields.KEY_FIELD.equals(field) || BibtexFields.isWriteableField(field);
+    }
+
+    /**
+     * Describes the preferences that change how BibtexParser reads a file. A
+     * snapshot written under different settings is not used.
+     */
+    private static String settingsFingerprint() {
+        if (Globals.prefs == null) {
+            Globals.prefs = JabRefPreferences.getInstance();
+        }
+        return Globals.prefs.getBoolean("autoDoubleBraces") + ";"
+                + Globals.prefs.get("putBracesAroundCapitals");
+    }
+
+    /**
+     * Returns the SHA-1 hash of the content of the file.
+     */
+    public static byte[] hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(size - position, Integer.MAX_VALUE);
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(buffer);
+                position += length;
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.imports;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexString;
+import net.sf.jabref.CustomEntryType;
+
+/**
+ * Receives the items of a BibTeX file one at a time, in file order, from
+ * BibtexParser.parse(BibtexVisitor).
+ */
+public interface BibtexVisitor {
+
+    public void visitPreamble(String preamble);
+
+    public void visitString(BibtexString string);
+
+    /**
+     * Called for each entry. Entries whose type is only defined by a
+     * jabref-entrytype comment are passed with an UnknownEntryType, because
+     * these comments are usually found at the end of the file.
+     */
+    public void visitEntry(BibtexEntry entry);
+
+    /**
+     * Called for each jabref-meta comment, with the unparsed data.
+     */
+    public void visitMetaData(String key, String value);
+
+    public void visitEntryType(CustomEntryType type);
+
+    public void visitWarning(String warning);
+
+}
@@ -119,6 +119,7 @@ public class ImportFormatReader {
         // Remove all empty entries
         if (res != null) {
             purgeEmptyEntries(res);
+            poolFieldValues(res);
         }
 
         return res;
@@ -155,9 +156,23 @@ public class ImportFormatReader {
             }
         }
 
+        if (result != null) {
+            poolFieldValues(result);
+        }
         return result;
     }
 
+    /**
+     * Lets the imported entries share repeated field values, if enabled.
+     */
+    private static void poolFieldValues(Collection<BibtexEntry> entries) {
+        FieldValuePool pool = FieldValuePool.createIfEnabled();
+        if (pool != null) {
+            pool.intern(entries);
+            pool.logStatistics("imported entries");
+        }
+    }
+
     public static BibtexDatabase createDatabase(Collection<BibtexEntry> bibentries) {
         purgeEmptyEntries(bibentries);
 
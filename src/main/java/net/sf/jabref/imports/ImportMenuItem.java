@@ -293,9 +293,7 @@ public class ImportMenuItem extends JMenuItem implements ActionListener {
                 }
 
                 // Merge entries:
-                for (BibtexEntry entry : pr.getDatabase().getEntries()) {
-                    database.insertEntry(entry);
-                }
+                database.insertEntries(pr.getDatabase().getEntries());
                 
                 // Merge strings:
                 for (BibtexString bs : pr.getDatabase().getStringValues()){
@@ -318,9 +316,7 @@ public class ImportMenuItem extends JMenuItem implements ActionListener {
                         Globals.prefs.getBoolean("overwriteTimeStamp"),
                         !openInNew && Globals.prefs.getBoolean("markImportedEntries")); // set timestamp and owner
 
-                for (BibtexEntry entry : entries){
-					database.insertEntry(entry);
-				}
+                database.insertEntries(entries);
 			}
         }
 
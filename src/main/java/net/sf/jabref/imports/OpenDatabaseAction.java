@@ -257,6 +257,9 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
                 if (tryingAutosave) {
                     panel.markNonUndoableBaseChanged();
                 }
+                if (Globals.prefs.getBoolean(JabRefPreferences.USE_SEARCH_INDEX_FILES)) {
+                    panel.loadSearchIndexLater();
+                }
 
                 final ParserResult prf = pr;
                 SwingUtilities.invokeLater(new Runnable() {
@@ -337,26 +340,29 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
     public static ParserResult loadDatabase(File fileToOpen, String encoding)
             throws IOException {
 
-        Reader reader;
-        String suppliedEncoding = detectEncodingFromHeader(fileToOpen);
+        encoding = getEncoding(fileToOpen, encoding);
 
-        if (suppliedEncoding != null) {
-            try {
-                reader = ImportFormatReader.getReader(fileToOpen, suppliedEncoding);
-                encoding = suppliedEncoding;
-            } catch (Exception ex) {
-                reader = ImportFormatReader.getReader(fileToOpen, encoding);
+        boolean useSnapshots = Globals.prefs.getBoolean(JabRefPreferences.USE_BIBTEX_SNAPSHOTS);
+        ParserResult pr = useSnapshots ? BibtexSnapshot.load(fileToOpen, encoding) : null;
+        if (pr == null) {
+            if (Globals.prefs.getBoolean(JabRefPreferences.USE_MAPPED_BIBTEX_PARSER)) {
+                pr = BibtexParser.parse(fileToOpen, encoding);
+            } else {
+                Reader reader = ImportFormatReader.getReader(fileToOpen, encoding);
+                pr = new BibtexParser(reader).parse();
+            }
+            pr.setEncoding(encoding);
+            pr.setFile(fileToOpen);
+            // Store the result as it is before anything below modifies the
+            // entries. The snapshot file is written in the background:
+            if (useSnapshots) {
+                BibtexSnapshot.writeLater(pr);
             }
         } else {
-            reader = ImportFormatReader.getReader(fileToOpen, encoding);
+            pr.setEncoding(encoding);
+            pr.setFile(fileToOpen);
         }
 
-        BibtexParser bp = new BibtexParser(reader);
-
-        ParserResult pr = bp.parse();
-        pr.setEncoding(encoding);
-        pr.setFile(fileToOpen);
-
         if (SpecialFieldsUtils.keywordSyncEnabled()) {
             for (BibtexEntry entry : pr.getDatabase().getEntries()) {
                 if (entry.getField("keywords") != null) {
@@ -373,6 +379,49 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
         return pr;
     }
 
+    /**
+     * Parses the given file item by item without building a database, see
+     * BibtexParser.parse(BibtexVisitor). The file is read through a Reader,
+     * so memory use does not grow with the size of the file.
+     *
+     * @param fileToOpen The file to read.
+     * @param encoding   The encoding to use unless the file names its own.
+     * @param visitor    Receives the items of the file.
+     * @return The encoding the file was read with.
+     */
+    public static String streamDatabase(File fileToOpen, String encoding, BibtexVisitor visitor)
+            throws IOException {
+
+        encoding = getEncoding(fileToOpen, encoding);
+
+        Reader reader = ImportFormatReader.getReader(fileToOpen, encoding);
+        try {
+            new BibtexParser(reader).parse(visitor);
+        } finally {
+            reader.close();
+        }
+        return encoding;
+    }
+
+    /**
+     * Returns the encoding given in the file's JabRef header, if it names a
+     * supported one, and the given default encoding otherwise.
+     */
+    private static String getEncoding(File file, String defaultEncoding) throws IOException {
+        String suppliedEncoding = detectEncodingFromHeader(file);
+
+        if (suppliedEncoding != null) {
+            try {
+                if (Charset.isSupported(suppliedEncoding)) {
+                    return suppliedEncoding;
+                }
+            } catch (IllegalArgumentException ex) {
+                // Illegal charset name in the header, keep the given encoding.
+            }
+        }
+        return defaultEncoding;
+    }
+
     private static String detectEncodingFromHeader(File file) throws IOException {
         final int maxBytes = 8192;
         byte[] buffer = new byte[maxBytes];
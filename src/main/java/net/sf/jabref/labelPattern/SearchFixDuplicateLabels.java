@@ -21,6 +21,7 @@ import net.sf.jabref.undo.UndoableKeyChange;
 
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -40,34 +41,9 @@ public class SearchFixDuplicateLabels extends AbstractWorker {
         // Find all multiple occurences of BibTeX keys.
         dupes = new HashMap<String, List<BibtexEntry>>();
 
-        HashMap<String, BibtexEntry> foundKeys = new HashMap<String, BibtexEntry>();
         BibtexDatabase db = panel.database();
-        for (BibtexEntry entry : db.getEntries()) {
-            String key = entry.getCiteKey();
-            // Only handle keys that are actually set:
-            if ((key != null) && (key.length() > 0)) {
-                // See whether this entry's key is already known:
-                if (!foundKeys.containsKey(key)) {
-                    // Not already known. Add key and entry to map:
-                    foundKeys.put(key, entry);
-                }
-                else {
-                    // Already known, so we have found a dupe. See if it was already found as a dupe:
-                    if (dupes.containsKey(key)) {
-                        // Already in the dupe map. Add this entry as well:
-                        dupes.get(key).add(entry);
-                    }
-                    else {
-                        // Construct a list of entries for this key:
-                        ArrayList<BibtexEntry> al = new ArrayList<BibtexEntry>();
-                        // Add both the first one we found, and the one we found just now:
-                        al.add(foundKeys.get(key));
-                        al.add(entry);
-                        // Add the list to the dupe map:
-                        dupes.put(key, al);
-                    }
-                }
-            }
+        for (String key : db.getDuplicateKeys()) {
+            dupes.put(key, new ArrayList<BibtexEntry>(Arrays.asList(db.getEntriesByKey(key))));
         }
     }
 
@@ -16,26 +16,28 @@
 package net.sf.jabref.search;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.NormalizedFields;
 import net.sf.jabref.SearchRule;
-import net.sf.jabref.export.layout.format.RemoveLatexCommands;
 
 /**
  * Search rule for simple search.
  */
 public class BasicSearch implements SearchRule {
 
-    private boolean caseSensitive;
-    private boolean regExp;
-    Pattern[] pattern;
-    //static RemoveBrackets removeLatexCommands = new RemoveBrackets();
-    static RemoveLatexCommands removeBrackets = new RemoveLatexCommands();
+    private final boolean caseSensitive;
+    private final boolean regExp;
+    // The last compiled query, reused as long as the search string is the same:
+    private volatile Query query = null;
 
     public BasicSearch(boolean caseSensitive, boolean regExp) {
 
@@ -50,78 +52,44 @@ public class BasicSearch implements SearchRule {
     }
 
     public boolean validateSearchStrings(Map<String, String> searchStrings) {
-        if (regExp) {
-            int flags = 0;
-            String searchString = searchStrings.values().iterator().next();
-            if (!caseSensitive) {
-                searchString = searchString.toLowerCase();
-                flags = Pattern.CASE_INSENSITIVE;
-            }
-            ArrayList<String> words = parseQuery(searchString);
-            try {
-                pattern = new Pattern[words.size()];
-                for (int i = 0; i < pattern.length; i++) {
-                    pattern[i] = Pattern.compile(words.get(i), flags);
-                }
-            } catch (PatternSyntaxException ex) {
-                return false;
-            }
+        try {
+            getQuery(searchStrings);
+        } catch (PatternSyntaxException ex) {
+            return false;
         }
         return true;
     }
 
     public int applyRule(Map<String, String> searchStrings, BibtexEntry bibtexEntry) {
 
-        int flags = 0;
-        String searchString = searchStrings.values().iterator().next();
-        if (!caseSensitive) {
-            searchString = searchString.toLowerCase();
-            flags = Pattern.CASE_INSENSITIVE;
-        }
-
-        ArrayList<String> words = parseQuery(searchString);
-
-        if (regExp)
-            try {
-            pattern = new Pattern[words.size()];
-            for (int i = 0; i < pattern.length; i++) {
-                pattern[i] = Pattern.compile(words.get(i), flags);
-            }
+        Query q;
+        try {
+            q = getQuery(searchStrings);
         } catch (PatternSyntaxException ex) {
             return 0;
         }
+        String[] words = q.words;
 
         //print(words);
         // We need match for all words:
-        boolean[] matchFound = new boolean[words.size()];
-
-        Object fieldContentAsObject;
-        String fieldContent;
+        boolean[] matchFound = new boolean[words.length];
 
-        for (String field : bibtexEntry.getAllFields()) {
-            fieldContentAsObject = bibtexEntry.getField(field);
-            if (fieldContentAsObject != null) {
-                fieldContent = removeBrackets.format(fieldContentAsObject.toString());
-                if (!caseSensitive) {
-                    fieldContent = fieldContent.toLowerCase();
-                }
-                int index = 0;
+        // The field contents without LaTeX commands, and folded unless the
+        // search is case sensitive:
+        for (String fieldContent : bibtexEntry.getNormalizedFields().getValues(caseSensitive)) {
+            if (fieldContent != null) {
                 // Check if we have a match for each of the query words, ignoring
                 // those words for which we already have a match:
-                for (int j = 0; j < words.size(); j++) {
+                for (int j = 0; j < words.length; j++) {
+                    if (matchFound[j]) {
+                        continue;
+                    }
                     if (!regExp) {
-                        String s = words.get(j);
-                        matchFound[index] = matchFound[index]
-                                || (fieldContent.contains(s));
+                        matchFound[j] = fieldContent.contains(words[j]);
                     } else {
-                        if (fieldContent != null) {
-                            Matcher m = pattern[j].matcher(removeBrackets.format(fieldContent));
-                            matchFound[index] = matchFound[index]
-                                    || m.find();
-                        }
+                        Matcher m = q.patterns[j].matcher(fieldContent);
+                        matchFound[j] = m.find();
                     }
-
-                    index++;
                 }
             }
 
@@ -134,7 +102,53 @@ public class BasicSearch implements SearchRule {
         return 1; // Matched all words.
     }
 
-    private ArrayList<String> parseQuery(String query) {
+    /**
+     * Returns whether this rule can be applied through a SearchIndex, which
+     * is the case unless it uses regular expressions.
+     */
+    public boolean canUseIndex() {
+        return !regExp;
+    }
+
+    /**
+     * Finds the entries this rule matches, using the index instead of looking
+     * at every entry. Gives the same result as applyRule() on each entry of
+     * the indexed database; only usable if canUseIndex() returns true.
+     */
+    public Set<BibtexEntry> findMatches(SearchIndex index, Map<String, String> searchStrings) {
+        return index.search(getWords(searchStrings), caseSensitive);
+    }
+
+    boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    /**
+     * Returns the words of the search string, which must all be found in an
+     * entry. They are folded by NormalizedFields.fold() unless the search is
+     * case sensitive.
+     */
+    List<String> getWords(Map<String, String> searchStrings) {
+        return Arrays.asList(getQuery(searchStrings).words);
+    }
+
+    /**
+     * Returns the query compiled from the search string, compiling it only
+     * if the string differs from the last one. Thus a search that applies
+     * this rule to all entries parses the query and compiles its patterns
+     * once, in validateSearchStrings().
+     */
+    private Query getQuery(Map<String, String> searchStrings) throws PatternSyntaxException {
+        String searchString = searchStrings.values().iterator().next();
+        Query q = query;
+        if ((q == null) || !q.searchString.equals(searchString)) {
+            q = new Query(searchString, caseSensitive, regExp);
+            query = q;
+        }
+        return q;
+    }
+
+    private static ArrayList<String> parseQuery(String query) {
         StringBuilder sb = new StringBuilder();
         ArrayList<String> result = new ArrayList<>();
         int c;
@@ -174,4 +188,38 @@ public class BasicSearch implements SearchRule {
 
         return result;
     }
+
+    /**
+     * A search string prepared for matching: folded like the field contents
+     * unless the search is case sensitive, split into words and, for a
+     * regular expression search, compiled into patterns. Immutable, so that
+     * one query can be used by several threads.
+     */
+    private static final class Query {
+
+        final String searchString;
+        final String[] words;
+        final Pattern[] patterns;
+
+        Query(String searchString, boolean caseSensitive, boolean regExp) throws PatternSyntaxException {
+            this.searchString = searchString;
+            int flags = 0;
+            String s = searchString;
+            if (!caseSensitive) {
+                // Patterns keep their case, which matters in escapes like \S:
+                s = regExp ? NormalizedFields.removeAccents(s) : NormalizedFields.fold(s);
+                flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            }
+            ArrayList<String> parsed = parseQuery(s);
+            words = parsed.toArray(new String[parsed.size()]);
+            if (regExp) {
+                patterns = new Pattern[words.length];
+                for (int i = 0; i < patterns.length; i++) {
+                    patterns[i] = Pattern.compile(words[i], flags);
+                }
+            } else {
+                patterns = null;
+            }
+        }
+    }
 }
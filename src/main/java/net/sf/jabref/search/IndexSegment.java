@@ -0,0 +1,412 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.imports.BibtexSnapshot;
+
+/**
+ * The terms, postings and searched text of a SearchIndex, stored as a hidden
+ * file next to the .bib file the database was loaded from or saved to.
+ *
+ * The file is mapped into memory and read where it lies: terms are found by
+ * binary search in the sorted term table, and postings and texts are only
+ * decoded when a query needs them. Opening it therefore costs little more
+ * than checking that it belongs to the .bib file, by size, modification time
+ * and SHA-1 hash, as for BibtexSnapshot.
+ *
+ * Each entry of the file has a fingerprint of its fields, so that the
+ * entries of the database can be matched to it however they were loaded.
+ * Entries without a match, such as those changed after loading, are left
+ * for SearchIndex to index itself.
+ *
+ * Index files are a pure cache: they can be deleted at any time, and
+ * failures while writing them are logged and otherwise ignored.
+ */
+final class IndexSegment {
+
+    private static final Logger logger = Logger.getLogger(IndexSegment.class.getName());
+
+    private static final int MAGIC = 0x4a525349; // "JRSI"
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String INDEX_SUFFIX = ".index";
+
+    // Bytes per entry in the entry table (fingerprint, text offset), and per
+    // term in the term table (term offset, postings offset):
+    private static final int ENTRY_SIZE = 12;
+    private static final int TERM_SIZE = 8;
+
+    // Size of the counts and section offsets at the start of the data:
+    private static final int HEADER_SIZE = 36;
+
+    private final ByteBuffer data;
+
+    private final int entryCount;
+    private final int termCount;
+    private final int entryTable;
+    private final int termTable;
+    private final int termStrings;
+    private final int postings;
+    private final int texts;
+
+    private final String[] fieldNames;
+
+    private IndexSegment(ByteBuffer data) {
+        this.data = data;
+        entryCount = data.getInt(0);
+        termCount = data.getInt(4);
+        int fieldNameTable = data.getInt(8);
+        entryTable = data.getInt(12);
+        termTable = data.getInt(16);
+        termStrings = data.getInt(20);
+        postings = data.getInt(24);
+        texts = data.getInt(28);
+        fieldNames = new String[data.getInt(fieldNameTable)];
+        int offset = fieldNameTable + 4;
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = readString(offset).intern();
+            offset += 4 + data.getInt(offset);
+        }
+    }
+
+    /**
+     * Returns the index file belonging to the given BibTeX file, or null if
+     * the file is not eligible for one. As with snapshots, only files with
+     * the .bib extension get an index file.
+     */
+    static File getIndexFile(File bibFile) {
+        String name = bibFile.getName();
+        if (!name.toLowerCase().endsWith(".bib")) {
+            return null;
+        }
+        return new File(bibFile.getAbsoluteFile().getParentFile(), "." + name + INDEX_SUFFIX);
+    }
+
+    /**
+     * Maps the index file of the given BibTeX file into memory.
+     *
+     * @return The index, or null if there is no index file for the file as
+     * it is now.
+     */
+    static IndexSegment open(File bibFile) {
+        File indexFile = getIndexFile(bibFile);
+        if ((indexFile == null) || !indexFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed:
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != FORMAT_VERSION)) {
+                return null;
+            }
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            byte[] hash = new byte[buffer.getInt()];
+            buffer.get(hash);
+            if ((size != bibFile.length()) || (lastModified != bibFile.lastModified())
+                    || !Arrays.equals(hash, BibtexSnapshot.hash(bibFile))) {
+                return null;
+            }
+            ByteBuffer data = buffer.slice();
+            if ((data.capacity() < HEADER_SIZE) || (data.getInt(32) != data.capacity())) {
+                throw new IOException("Truncated index file");
+            }
+            return new IndexSegment(data);
+        } catch (Exception ex) {
+            // A truncated or otherwise broken index file is just a cache miss.
+            logger.log(Level.FINE, "Could not read index file " + indexFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index file for the given BibTeX file.
+     *
+     * @param bibFile  The file the indexed entries have been read from or
+     *                 written to.
+     * @param terms    The postings of SearchIndex, by term.
+     * @param entries  The texts of SearchIndex, by entry.
+     */
+    static void write(File bibFile, SortedMap<String, Map<BibtexEntry, int[]>> terms,
+            Map<BibtexEntry, SearchIndex.EntryText> entries) {
+        File indexFile = getIndexFile(bibFile);
+        if ((indexFile == null) || !bibFile.isFile()) {
+            return;
+        }
+
+        File tmp = null;
+        try {
+            long size = bibFile.length();
+            long lastModified = bibFile.lastModified();
+            byte[] hash = BibtexSnapshot.hash(bibFile);
+
+            // Number the entries and field names, and lay out the texts:
+            Map<BibtexEntry, Integer> ordinals = new IdentityHashMap<>();
+            Map<String, Integer> fieldIndex = new LinkedHashMap<>();
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entryTable = new DataOutputStream(entryBytes);
+            ByteArrayOutputStream textBytes = new ByteArrayOutputStream();
+            DataOutputStream textSection = new DataOutputStream(textBytes);
+            for (Map.Entry<BibtexEntry, SearchIndex.EntryText> e : entries.entrySet()) {
+                ordinals.put(e.getKey(), ordinals.size());
+                SearchIndex.EntryText text = e.getValue();
+                entryTable.writeLong(fingerprint(e.getKey()));
+                entryTable.writeInt(textSection.size());
+                textSection.writeInt(text.fields.length);
+                for (int f = 0; f < text.fields.length; f++) {
+                    Integer index = fieldIndex.get(text.fields[f]);
+                    if (index == null) {
+                        index = fieldIndex.size();
+                        fieldIndex.put(text.fields[f], index);
+                    }
+                    textSection.writeInt(index);
+                    writeString(textSection, text.values[f]);
+                }
+            }
+
+            ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+            DataOutputStream fieldSection = new DataOutputStream(fieldBytes);
+            fieldSection.writeInt(fieldIndex.size());
+            for (String field : fieldIndex.keySet()) {
+                writeString(fieldSection, field);
+            }
+
+            ByteArrayOutputStream termTableBytes = new ByteArrayOutputStream();
+            DataOutputStream termTable = new DataOutputStream(termTableBytes);
+            ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+            DataOutputStream termSection = new DataOutputStream(termBytes);
+            ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+            DataOutputStream postingSection = new DataOutputStream(postingBytes);
+            for (Map.Entry<String, Map<BibtexEntry, int[]>> e : terms.entrySet()) {
+                termTable.writeInt(termSection.size());
+                termTable.writeInt(postingSection.size());
+                writeString(termSection, e.getKey());
+                postingSection.writeInt(e.getValue().size());
+                for (Map.Entry<BibtexEntry, int[]> p : e.getValue().entrySet()) {
+                    postingSection.writeInt(ordinals.get(p.getKey()));
+                    postingSection.writeInt(p.getValue().length);
+                    for (int position : p.getValue()) {
+                        postingSection.writeInt(position);
+                    }
+                }
+            }
+
+            long fieldNameTable = HEADER_SIZE;
+            long entryTableStart = fieldNameTable + fieldBytes.size();
+            long termTableStart = entryTableStart + entryBytes.size();
+            long termStart = termTableStart + termTableBytes.size();
+            long postingStart = termStart + termBytes.size();
+            long textStart = postingStart + postingBytes.size();
+            long end = textStart + textBytes.size();
+            if (end > Integer.MAX_VALUE) {
+                logger.info("Not writing index file " + indexFile + ", as it would be too large");
+                return;
+            }
+
+            tmp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+            tmp.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeInt(hash.length);
+                out.write(hash);
+                out.writeInt(entries.size());
+                out.writeInt(terms.size());
+                out.writeInt((int) fieldNameTable);
+                out.writeInt((int) entryTableStart);
+                out.writeInt((int) termTableStart);
+                out.writeInt((int) termStart);
+                out.writeInt((int) postingStart);
+                out.writeInt((int) textStart);
+                out.writeInt((int) end);
+                fieldBytes.writeTo(out);
+                entryBytes.writeTo(out);
+                termTableBytes.writeTo(out);
+                termBytes.writeTo(out);
+                postingBytes.writeTo(out);
+                textBytes.writeTo(out);
+            }
+            if ((bibFile.length() != size) || (bibFile.lastModified() != lastModified)) {
+                // The file changed while we were writing; the index is stale already.
+                tmp.delete();
+                return;
+            }
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not write index file " + indexFile, ex);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns a hash of the fields of the entry, which does not depend on
+     * their order. Entries with the same fields get the same text and
+     * postings in the index.
+     */
+    static long fingerprint(BibtexEntry entry) {
+        long fingerprint = 0;
+        for (String field : entry.getAllFields()) {
+            String value = entry.getField(field);
+            if (value != null) {
+                fingerprint += mix((hash(field) * 31) + hash(value));
+            }
+        }
+        return fingerprint;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    long getFingerprint(int ordinal) {
+        return data.getLong(entryTable + (ordinal * ENTRY_SIZE));
+    }
+
+    int getTermCount() {
+        return termCount;
+    }
+
+    String getTerm(int term) {
+        return readString(termStrings + data.getInt(termTable + (term * TERM_SIZE)));
+    }
+
+    /**
+     * Looks the term up in the sorted term table.
+     *
+     * @return The number of the term, or (-(insertion point) - 1) if there is
+     * no such term, as for Arrays.binarySearch().
+     */
+    int findTerm(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getTerm(mid).compareTo(term);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the postings of the term as one array of the form
+     * (entry number, number of positions, positions...)*.
+     */
+    int[] getPostings(int term) {
+        int offset = postings + data.getInt(termTable + (term * TERM_SIZE) + 4);
+        int count = data.getInt(offset);
+        offset += 4;
+        int length = 0;
+        int end = offset;
+        for (int i = 0; i < count; i++) {
+            int positions = data.getInt(end + 4);
+            length += 2 + positions;
+            end += 4 * (2 + positions);
+        }
+        int[] result = new int[length];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offset);
+        buffer.asIntBuffer().get(result);
+        return result;
+    }
+
+    /**
+     * Returns the searched text of the entry with the given number, without
+     * its terms.
+     */
+    SearchIndex.EntryText getText(int ordinal) {
+        int offset = texts + data.getInt(entryTable + (ordinal * ENTRY_SIZE) + 8);
+        SearchIndex.EntryText text = new SearchIndex.EntryText(data.getInt(offset));
+        offset += 4;
+        for (int f = 0; f < text.fields.length; f++) {
+            text.fields[f] = fieldNames[data.getInt(offset)];
+            offset += 4;
+            text.values[f] = readString(offset);
+            offset += 4 + data.getInt(offset);
+        }
+        return text;
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[data.getInt(offset)];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offset + 4);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static long hash(String s) {
+        // 64-bit FNV-1a:
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long h) {
+        // The finalizer of MurmurHash3, so that the sum of field hashes does
+        // not cancel out:
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,120 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.SearchRule;
+
+/**
+ * Applies a search rule to a collection of entries, splitting them between
+ * the threads of the common fork-join pool. The entries are left as they
+ * are; the hits are returned as a set, which can be given to a SearchMatcher.
+ *
+ * The rule is used by several threads at once, so it must be thread safe,
+ * as the rules of the search package are once validateSearchStrings() has
+ * been called.
+ */
+public class ParallelSearch {
+
+    // Number of entries a task searches by itself instead of splitting them:
+    private static final int CHUNK_SIZE = 256;
+
+    private final SearchRule rule;
+
+    private final Map<String, String> searchStrings;
+
+    private volatile boolean cancelled = false;
+
+    public ParallelSearch(SearchRule rule, Map<String, String> searchStrings) {
+        this.rule = rule;
+        this.searchStrings = searchStrings;
+    }
+
+    /**
+     * Returns the entries the rule gives a score above zero.
+     *
+     * @throws CancellationException if the search was cancelled.
+     */
+    public Set<BibtexEntry> search(Collection<BibtexEntry> entries) {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        BibtexEntry[] array = entries.toArray(new BibtexEntry[entries.size()]);
+        List<BibtexEntry> hits = ForkJoinPool.commonPool().invoke(new SearchTask(array, 0, array.length));
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(hits));
+    }
+
+    /**
+     * Stops the search as soon as possible. May be called from any thread,
+     * e.g. when the user changes the search string.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private class SearchTask extends RecursiveTask<List<BibtexEntry>> {
+
+        private static final long serialVersionUID = -5871996130492110529L;
+
+        private final BibtexEntry[] entries;
+
+        private final int from, to;
+
+        SearchTask(BibtexEntry[] entries, int from, int to) {
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<BibtexEntry> compute() {
+            if ((to - from) > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                SearchTask first = new SearchTask(entries, from, middle);
+                first.fork();
+                List<BibtexEntry> hits = new SearchTask(entries, middle, to).compute();
+                List<BibtexEntry> firstHits = first.join();
+                firstHits.addAll(hits);
+                return firstHits;
+            }
+            List<BibtexEntry> hits = new ArrayList<>();
+            for (int i = from; (i < to) && !cancelled; i++) {
+                if (rule.applyRule(searchStrings, entries[i]) > 0) {
+                    hits.add(entries[i]);
+                }
+            }
+            return hits;
+        }
+    }
+}
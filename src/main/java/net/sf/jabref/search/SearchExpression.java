@@ -25,11 +25,9 @@ import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.SearchRule;
 import antlr.RecognitionException;
 import antlr.TokenStreamException;
-import antlr.collections.AST;
 
 public class SearchExpression implements SearchRule {
-	private SearchExpressionTreeParser treeParser = new SearchExpressionTreeParser();
-	private AST ast = null;
+	private final SearchPredicate predicate;
 
     public SearchExpression(JabRefPreferences prefs, Hashtable<String, String> searchOptions)
 		throws TokenStreamException, RecognitionException,
@@ -41,15 +39,12 @@ public class SearchExpression implements SearchRule {
 		parser.caseSensitive = prefs.getBoolean("caseSensitiveSearch");
 		parser.regex = prefs.getBoolean("regExpSearch");
 		parser.searchExpression(); // this is the "global" rule
-		ast = parser.getAST(); // remember abstract syntax tree
+		// compile the abstract syntax tree once, for all entries:
+		predicate = SearchPredicate.compile(parser.getAST());
 	}
 
 	public int applyRule(Map<String, String> searchStrings, BibtexEntry bibtexEntry) {
-		try {
-			return treeParser.apply(ast, bibtexEntry);
-		} catch (RecognitionException e) {
-			return 0; // this should never occur
-		}
+		return predicate.matches(bibtexEntry) ? 1 : 0;
 	}
 
     public boolean validateSearchStrings(Map<String, String> searchStrings) {
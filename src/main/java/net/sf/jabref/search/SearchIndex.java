@@ -0,0 +1,607 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.NormalizedFields;
+
+/**
+ * An inverted index over the field contents of a database, for the simple
+ * search. Field values are indexed the way BasicSearch looks at them when
+ * ignoring case, as given by NormalizedFields, split into terms made of
+ * letters and digits. Each term maps to the entries containing it, with the field and
+ * position of each occurrence.
+ *
+ * A query word matches an entry if some field contains it, just like in
+ * BasicSearch. The terms of the word narrow the entries down to those having
+ * them in a row in one field, and only these are checked against the text.
+ *
+ * The index follows the database through DatabaseChangeEvents. They are
+ * only queued, without waiting for a search that may be running, and the
+ * changed entries are indexed again when the next query comes, so that a
+ * series of changes costs nothing until the index is used.
+ *
+ * An index can be written to a file next to the .bib file and loaded from
+ * there when the file is opened again; see IndexSegment. The terms of the
+ * entries in the file are then looked up in the file, and only the entries
+ * changed since are indexed in memory.
+ */
+public class SearchIndex implements DatabaseChangeListener {
+
+    // Positions are stored as field number << FIELD_SHIFT | term number:
+    private static final int FIELD_SHIFT = 24;
+
+    private static final int MAX_POSITION = (1 << FIELD_SHIFT) - 1;
+
+    // Entries are checked directly, without the terms, if there are this
+    // many times fewer of them than indexed entries:
+    private static final int NARROW_FACTOR = 8;
+
+    // Number of entries indexed or checked between looks at cancellation:
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    // Term -> entry -> positions of the term in the entry:
+    private final TreeMap<String, Map<BibtexEntry, int[]>> postings = new TreeMap<>();
+
+    // The indexed text of each entry:
+    private final Map<BibtexEntry, EntryText> texts = new IdentityHashMap<>();
+
+    // Changes not yet looked at, appended without holding the lock:
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+
+    // Entries to be indexed before the next query:
+    private final Set<BibtexEntry> dirty = newEntrySet();
+
+    // The index file the index was loaded from, or null:
+    private final IndexSegment segment;
+
+    // The entries whose terms are looked up in the index file, by their
+    // number in the file, and the other way round:
+    private final Map<BibtexEntry, Integer> ordinals = new IdentityHashMap<>();
+
+    private final BibtexEntry[] segmentEntries;
+
+    public SearchIndex(BibtexDatabase database) {
+        this(database, null);
+    }
+
+    private SearchIndex(BibtexDatabase database, IndexSegment segment) {
+        this.segment = segment;
+        if (segment == null) {
+            segmentEntries = new BibtexEntry[0];
+            dirty.addAll(database.getEntries());
+            return;
+        }
+        segmentEntries = new BibtexEntry[segment.getEntryCount()];
+        Map<Long, List<Integer>> byFingerprint = new HashMap<>();
+        for (int i = 0; i < segmentEntries.length; i++) {
+            byFingerprint.computeIfAbsent(segment.getFingerprint(i), k -> new ArrayList<>(1)).add(i);
+        }
+        for (BibtexEntry entry : database.getEntries()) {
+            List<Integer> matching = byFingerprint.get(IndexSegment.fingerprint(entry));
+            if ((matching == null) || matching.isEmpty()) {
+                dirty.add(entry);
+            } else {
+                int ordinal = matching.remove(matching.size() - 1);
+                ordinals.put(entry, ordinal);
+                segmentEntries[ordinal] = entry;
+            }
+        }
+    }
+
+    /**
+     * Loads the index from the index file of the given BibTeX file.
+     *
+     * @param database The database loaded from the file. It may have changed
+     * since the index file was written.
+     * @param bibFile The BibTeX file.
+     * @return The index, which is not yet listening to the database, or null
+     * if there is no index file for the file as it is now.
+     */
+    public static SearchIndex load(BibtexDatabase database, File bibFile) {
+        IndexSegment segment = IndexSegment.open(bibFile);
+        return segment == null ? null : new SearchIndex(database, segment);
+    }
+
+    /**
+     * Indexes the database and writes the index to the index file of the
+     * given BibTeX file. This takes as long as the first search without an
+     * index file, so it should be done in the background, on a snapshot of
+     * the database.
+     *
+     * @param bibFile The file the database has just been loaded from or
+     * saved to.
+     * @param database The database.
+     */
+    public static void write(File bibFile, BibtexDatabase database) {
+        SearchIndex index = new SearchIndex(database);
+        synchronized (index) {
+            index.flush(null);
+            IndexSegment.write(bibFile, index.postings, index.texts);
+        }
+    }
+
+    @Override
+    public void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+        case ADDED_ENTRIES:
+        case CHANGED_ENTRY:
+            changes.add(new Change(e.getEntries(), false));
+            break;
+        case REMOVED_ENTRY:
+        case REMOVED_ENTRIES:
+            changes.add(new Change(e.getEntries(), true));
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the entries that contain each of the given words in one of
+     * their fields. The words are compared to field contents without LaTeX
+     * commands.
+     *
+     * @param words The words, as parsed from the query by BasicSearch.
+     * @param caseSensitive Whether the case of the words has to match. If
+     * not, the words have to be in lower case.
+     */
+    public Set<BibtexEntry> search(List<String> words, boolean caseSensitive) {
+        return search(words, caseSensitive, null, null);
+    }
+
+    /**
+     * Like search(List, boolean), but only returns entries of the given set,
+     * which saves time if the set is small. A null set stands for all
+     * entries.
+     *
+     * @param search The search this is part of, whose cancellation stops
+     * this one as well, or null.
+     * @throws CancellationException if the search was cancelled.
+     */
+    public synchronized Set<BibtexEntry> search(List<String> words, boolean caseSensitive,
+            Set<BibtexEntry> within, ParallelSearch search) {
+        flush(search);
+        Set<BibtexEntry> result = within;
+        for (String word : words) {
+            Set<BibtexEntry> matches = findWord(word, caseSensitive, result, search);
+            result = matches;
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        if ((result == null) || (result == within)) {
+            // No words: everything matches, as in BasicSearch.
+            result = newEntrySet();
+            result.addAll(within == null ? allEntries() : within);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct terms in the index. The terms of an
+     * index file count as long as it is used, even if no entry has them any
+     * more.
+     */
+    public synchronized int getTermCount() {
+        flush(null);
+        if (segment == null) {
+            return postings.size();
+        }
+        int count = segment.getTermCount();
+        for (String term : postings.keySet()) {
+            if (segment.findTerm(term) < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Set<BibtexEntry> findWord(String word, boolean caseSensitive, Set<BibtexEntry> within,
+            ParallelSearch search) {
+        String foldedWord = caseSensitive ? NormalizedFields.fold(word) : word;
+        Collection<BibtexEntry> candidates;
+        if ((within != null) && (within.size() < (size() / NARROW_FACTOR))) {
+            // Checking a few entries is faster than looking up the terms:
+            candidates = within;
+        } else {
+            candidates = findCandidates(foldedWord);
+            if (candidates == null) {
+                candidates = allEntries();
+            }
+        }
+        checkCancelled(search);
+        Set<BibtexEntry> matches = newEntrySet();
+        int checked = 0;
+        for (BibtexEntry entry : candidates) {
+            if ((++checked % CANCEL_CHECK_INTERVAL) == 0) {
+                checkCancelled(search);
+            }
+            if (((within == null) || within.contains(entry)) && contains(entry, word, foldedWord, caseSensitive)) {
+                matches.add(entry);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the entries that have the terms of the word in a row in one of
+     * their fields, or null if the word has no terms to look for.
+     */
+    private Collection<BibtexEntry> findCandidates(String word) {
+        List<String> terms = new ArrayList<>();
+        tokenize(word, terms);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        boolean startsWithTerm = isTermChar(word.charAt(0));
+        boolean endsWithTerm = isTermChar(word.charAt(word.length() - 1));
+        // Entry -> positions at which the first term may start the word:
+        Map<BibtexEntry, Set<Integer>> starts = null;
+        for (int i = 0; i < terms.size(); i++) {
+            // A term that is followed or preceded by a separator in the word
+            // must end or start a term of the text:
+            boolean mustStart = (i > 0) || !startsWithTerm;
+            boolean mustEnd = (i < (terms.size() - 1)) || !endsWithTerm;
+            Map<BibtexEntry, Set<Integer>> positions = findTerm(terms.get(i), mustStart, mustEnd,
+                    starts == null ? null : starts.keySet());
+            if (starts == null) {
+                starts = positions;
+            } else {
+                Map<BibtexEntry, Set<Integer>> remaining = new IdentityHashMap<>();
+                for (Map.Entry<BibtexEntry, Set<Integer>> e : starts.entrySet()) {
+                    Set<Integer> next = positions.get(e.getKey());
+                    if (next == null) {
+                        continue;
+                    }
+                    Set<Integer> kept = new HashSet<>();
+                    for (Integer start : e.getValue()) {
+                        if (next.contains(start + i)) {
+                            kept.add(start);
+                        }
+                    }
+                    if (!kept.isEmpty()) {
+                        remaining.put(e.getKey(), kept);
+                    }
+                }
+                starts = remaining;
+            }
+            if (starts.isEmpty()) {
+                break;
+            }
+        }
+        return starts.keySet();
+    }
+
+    /**
+     * Collects the positions of all terms of the index that match the given
+     * part of a query word.
+     */
+    private Map<BibtexEntry, Set<Integer>> findTerm(String part, boolean mustStart, boolean mustEnd,
+            Set<BibtexEntry> within) {
+        Map<BibtexEntry, Set<Integer>> positions = new IdentityHashMap<>();
+        if (mustStart && mustEnd) {
+            addPositions(postings.get(part), positions, within);
+        } else if (mustStart) {
+            // Terms starting with the part are a range of the sorted terms:
+            SortedMap<String, Map<BibtexEntry, int[]>> range = postings.subMap(part, part + Character.MAX_VALUE);
+            for (Map<BibtexEntry, int[]> p : range.values()) {
+                addPositions(p, positions, within);
+            }
+        } else {
+            for (Map.Entry<String, Map<BibtexEntry, int[]>> e : postings.entrySet()) {
+                String term = e.getKey();
+                if (mustEnd ? term.endsWith(part) : term.contains(part)) {
+                    addPositions(e.getValue(), positions, within);
+                }
+            }
+        }
+        if (segment != null) {
+            findSegmentTerm(part, mustStart, mustEnd, positions, within);
+        }
+        return positions;
+    }
+
+    /**
+     * Like findTerm(), for the terms of the index file.
+     */
+    private void findSegmentTerm(String part, boolean mustStart, boolean mustEnd,
+            Map<BibtexEntry, Set<Integer>> positions, Set<BibtexEntry> within) {
+        if (mustStart) {
+            int term = segment.findTerm(part);
+            if (mustEnd) {
+                if (term >= 0) {
+                    addSegmentPositions(segment.getPostings(term), positions, within);
+                }
+                return;
+            }
+            for (term = term >= 0 ? term : -term - 1; (term < segment.getTermCount())
+                    && segment.getTerm(term).startsWith(part); term++) {
+                addSegmentPositions(segment.getPostings(term), positions, within);
+            }
+        } else {
+            for (int term = 0; term < segment.getTermCount(); term++) {
+                String s = segment.getTerm(term);
+                if (mustEnd ? s.endsWith(part) : s.contains(part)) {
+                    addSegmentPositions(segment.getPostings(term), positions, within);
+                }
+            }
+        }
+    }
+
+    private static void addPositions(Map<BibtexEntry, int[]> p, Map<BibtexEntry, Set<Integer>> positions,
+            Set<BibtexEntry> within) {
+        if (p == null) {
+            return;
+        }
+        for (Map.Entry<BibtexEntry, int[]> e : p.entrySet()) {
+            if ((within != null) && !within.contains(e.getKey())) {
+                continue;
+            }
+            Set<Integer> set = positionsOf(e.getKey(), positions);
+            for (int position : e.getValue()) {
+                set.add(position);
+            }
+        }
+    }
+
+    private void addSegmentPositions(int[] p, Map<BibtexEntry, Set<Integer>> positions,
+            Set<BibtexEntry> within) {
+        for (int i = 0; i < p.length; i += 2 + p[i + 1]) {
+            // Entries changed or removed since are left out:
+            BibtexEntry entry = segmentEntries[p[i]];
+            if ((entry == null) || ((within != null) && !within.contains(entry))) {
+                continue;
+            }
+            Set<Integer> set = positionsOf(entry, positions);
+            for (int j = i + 2; j < (i + 2 + p[i + 1]); j++) {
+                set.add(p[j]);
+            }
+        }
+    }
+
+    private static Set<Integer> positionsOf(BibtexEntry entry, Map<BibtexEntry, Set<Integer>> positions) {
+        Set<Integer> set = positions.get(entry);
+        if (set == null) {
+            set = new HashSet<>();
+            positions.put(entry, set);
+        }
+        return set;
+    }
+
+    private boolean contains(BibtexEntry entry, String word, String foldedWord, boolean caseSensitive) {
+        EntryText text = texts.get(entry);
+        Integer ordinal = text == null ? ordinals.get(entry) : null;
+        if ((text == null) && (ordinal == null)) {
+            // Not in the database any more.
+            return false;
+        }
+        if (caseSensitive) {
+            // Only the folded text is indexed:
+            for (String value : entry.getNormalizedFields().getValues(true)) {
+                if ((value != null) && value.contains(word)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (text == null) {
+            text = segment.getText(ordinal);
+        }
+        for (String value : text.values) {
+            if (value.contains(foldedWord)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int size() {
+        return texts.size() + ordinals.size();
+    }
+
+    private Collection<BibtexEntry> allEntries() {
+        List<BibtexEntry> entries = new ArrayList<>(size());
+        entries.addAll(texts.keySet());
+        entries.addAll(ordinals.keySet());
+        return entries;
+    }
+
+    /**
+     * Takes in the queued changes and indexes the changed entries again. If
+     * the search is cancelled meanwhile, the entries not yet indexed are left
+     * for the next time.
+     */
+    private void flush(ParallelSearch search) {
+        Change change;
+        while ((change = changes.poll()) != null) {
+            for (BibtexEntry entry : change.entries) {
+                if (change.removed) {
+                    dirty.remove(entry);
+                    unindex(entry);
+                } else {
+                    dirty.add(entry);
+                }
+            }
+        }
+        int indexed = 0;
+        for (Iterator<BibtexEntry> i = dirty.iterator(); i.hasNext();) {
+            if ((++indexed % CANCEL_CHECK_INTERVAL) == 0) {
+                checkCancelled(search);
+            }
+            BibtexEntry entry = i.next();
+            unindex(entry);
+            index(entry);
+            i.remove();
+        }
+    }
+
+    private static void checkCancelled(ParallelSearch search) {
+        if ((search != null) && search.isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    private void index(BibtexEntry entry) {
+        NormalizedFields normalized = entry.getNormalizedFields();
+        String[] values = normalized.getValues(false);
+        EntryText text = new EntryText(values.length);
+        Map<String, List<Integer>> found = new HashMap<>();
+        int f = 0;
+        for (int v = 0; v < values.length; v++) {
+            if (values[v] == null) {
+                continue;
+            }
+            text.fields[f] = normalized.getFieldName(v);
+            text.values[f] = values[v];
+            List<String> terms = new ArrayList<>();
+            tokenize(text.values[f], terms);
+            for (int i = 0; (i < terms.size()) && (i <= MAX_POSITION); i++) {
+                List<Integer> list = found.get(terms.get(i));
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    found.put(terms.get(i), list);
+                }
+                list.add((f << FIELD_SHIFT) | i);
+            }
+            f++;
+        }
+        text.trim(f);
+        text.terms = found.keySet().toArray(new String[found.size()]);
+        for (Map.Entry<String, List<Integer>> e : found.entrySet()) {
+            Map<BibtexEntry, int[]> p = postings.get(e.getKey());
+            if (p == null) {
+                p = new IdentityHashMap<>(4);
+                postings.put(e.getKey(), p);
+            }
+            List<Integer> list = e.getValue();
+            int[] positions = new int[list.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = list.get(i);
+            }
+            p.put(entry, positions);
+        }
+        texts.put(entry, text);
+    }
+
+    private void unindex(BibtexEntry entry) {
+        Integer ordinal = ordinals.remove(entry);
+        if (ordinal != null) {
+            segmentEntries[ordinal] = null;
+            return;
+        }
+        EntryText text = texts.remove(entry);
+        if (text == null) {
+            return;
+        }
+        for (String term : text.terms) {
+            Map<BibtexEntry, int[]> p = postings.get(term);
+            if (p != null) {
+                p.remove(entry);
+                if (p.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the text into runs of letters and digits.
+     */
+    private static void tokenize(String text, List<String> terms) {
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (isTermChar(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            terms.add(text.substring(start));
+        }
+    }
+
+    private static boolean isTermChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static Set<BibtexEntry> newEntrySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+    }
+
+    /**
+     * Entries added, changed or removed by one DatabaseChangeEvent.
+     */
+    private static final class Change {
+
+        final List<BibtexEntry> entries;
+
+        final boolean removed;
+
+        Change(List<BibtexEntry> entries, boolean removed) {
+            this.entries = entries;
+            this.removed = removed;
+        }
+    }
+
+    static class EntryText {
+
+        // The names of the fields, and their values as they are searched:
+        String[] fields;
+
+        String[] values;
+
+        // The distinct terms of the entry, to find its postings:
+        String[] terms;
+
+        EntryText(int fields) {
+            this.fields = new String[fields];
+            values = new String[fields];
+        }
+
+        void trim(int fields) {
+            if (fields < values.length) {
+                this.fields = Arrays.copyOf(this.fields, fields);
+                values = Arrays.copyOf(values, fields);
+            }
+        }
+    }
+}
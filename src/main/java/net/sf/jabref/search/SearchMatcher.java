@@ -15,18 +15,24 @@
 */
 package net.sf.jabref.search;
 
+import java.util.Set;
+
 import net.sf.jabref.BibtexEntry;
 import ca.odell.glazedlists.matchers.Matcher;
 
 /**
  * Matcher for filtering or sorting the table according to whether entries are
- * tagged as search matches.
+ * among the hits of a search.
  */
 public class SearchMatcher implements Matcher<BibtexEntry> {
 
-	public static SearchMatcher INSTANCE = new SearchMatcher();
+	private final Set<BibtexEntry> hits;
+
+	public SearchMatcher(Set<BibtexEntry> hits) {
+		this.hits = hits;
+	}
 
 	public boolean matches(BibtexEntry entry) {
-		return entry.isSearchHit();
+		return hits.contains(entry);
 	}
 }
@@ -0,0 +1,209 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.search;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.FieldNameRegistry;
+import antlr.collections.AST;
+
+/**
+ * A search expression compiled from the tree built by SearchExpressionParser.
+ * It gives the same results as walking the tree with
+ * SearchExpressionTreeParser, but the tree is only looked at once, and the
+ * field name patterns are matched once per field name instead of once per
+ * field of every entry.
+ *
+ * Predicates are immutable, apart from the field names they have resolved,
+ * and can be used by several threads at once.
+ */
+public abstract class SearchPredicate {
+
+    /**
+     * Compiles the tree returned by SearchExpressionParser.getAST() after
+     * parsing a search expression.
+     *
+     * @throws IllegalArgumentException if the tree has an unexpected form.
+     */
+    public static SearchPredicate compile(AST ast) {
+        switch (ast.getType()) {
+        case SearchExpressionTreeParserTokenTypes.And:
+            return new And(compile(ast.getFirstChild()), compile(ast.getFirstChild().getNextSibling()));
+        case SearchExpressionTreeParserTokenTypes.Or:
+            return new Or(compile(ast.getFirstChild()), compile(ast.getFirstChild().getNextSibling()));
+        case SearchExpressionTreeParserTokenTypes.Not:
+            return new Not(compile(ast.getFirstChild()));
+        case SearchExpressionTreeParserTokenTypes.ExpressionSearch:
+            AST field = ast.getFirstChild();
+            AST type = field.getNextSibling();
+            AST value = type.getNextSibling();
+            return new FieldSearch(((RegExNode) field).getPattern(), matchType(type),
+                    ((RegExNode) value).getPattern());
+        default:
+            throw new IllegalArgumentException("Unexpected node in search expression: " + ast);
+        }
+    }
+
+    /**
+     * Returns whether the entry satisfies the expression.
+     */
+    public abstract boolean matches(BibtexEntry entry);
+
+    private static int matchType(AST type) {
+        switch (type.getType()) {
+        case SearchExpressionTreeParserTokenTypes.LITERAL_contains:
+        case SearchExpressionTreeParserTokenTypes.EQUAL:
+            return FieldSearch.MATCH_CONTAINS;
+        case SearchExpressionTreeParserTokenTypes.LITERAL_matches:
+        case SearchExpressionTreeParserTokenTypes.EEQUAL:
+            return FieldSearch.MATCH_EXACT;
+        case SearchExpressionTreeParserTokenTypes.NEQUAL:
+            return FieldSearch.MATCH_DOES_NOT_CONTAIN;
+        default:
+            throw new IllegalArgumentException("Unexpected comparison in search expression: " + type);
+        }
+    }
+
+    private static final class And extends SearchPredicate {
+
+        private final SearchPredicate left, right;
+
+        And(SearchPredicate left, SearchPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return left.matches(entry) && right.matches(entry);
+        }
+    }
+
+    private static final class Or extends SearchPredicate {
+
+        private final SearchPredicate left, right;
+
+        Or(SearchPredicate left, SearchPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return left.matches(entry) || right.matches(entry);
+        }
+    }
+
+    private static final class Not extends SearchPredicate {
+
+        private final SearchPredicate negated;
+
+        Not(SearchPredicate negated) {
+            this.negated = negated;
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            return !negated.matches(entry);
+        }
+    }
+
+    /**
+     * Compares the fields whose names match a pattern with another pattern.
+     * The entry type can be searched as the pseudo field "entrytype".
+     */
+    private static final class FieldSearch extends SearchPredicate {
+
+        static final int MATCH_EXACT = 0;
+        static final int MATCH_CONTAINS = 1;
+        static final int MATCH_DOES_NOT_CONTAIN = 2;
+
+        private static final byte UNKNOWN = 0, SEARCHED = 1, NOT_SEARCHED = 2;
+
+        private final Pattern fieldSpec;
+        private final int matchType;
+        private final Pattern valueSpec;
+        private final boolean searchesType;
+
+        // Whether each field, by its FieldNameRegistry id, is searched.
+        // Replaced, never modified, when a field name is resolved.
+        private volatile byte[] searchedFields = new byte[0];
+
+        FieldSearch(Pattern fieldSpec, int matchType, Pattern valueSpec) {
+            this.fieldSpec = fieldSpec;
+            this.matchType = matchType;
+            this.valueSpec = valueSpec;
+            searchesType = fieldSpec.matcher("entrytype").matches();
+        }
+
+        @Override
+        public boolean matches(BibtexEntry entry) {
+            boolean noSuchField = true;
+            for (int id : entry.getFieldIds()) {
+                if (!isSearched(id)) {
+                    continue;
+                }
+                noSuchField = false;
+                String content = entry.getField(FieldNameRegistry.getName(id));
+                if ((content != null) && matches(content)) {
+                    return true;
+                }
+            }
+            if (searchesType) {
+                noSuchField = false;
+                if (matches(entry.getType().getName())) {
+                    return true;
+                }
+            }
+            // An entry without the field does not contain anything:
+            return noSuchField && (matchType == MATCH_DOES_NOT_CONTAIN);
+        }
+
+        private boolean matches(String content) {
+            Matcher matcher = valueSpec.matcher(content);
+            switch (matchType) {
+            case MATCH_CONTAINS:
+                return matcher.find();
+            case MATCH_EXACT:
+                return matcher.matches();
+            default:
+                return !matcher.find();
+            }
+        }
+
+        private boolean isSearched(int id) {
+            byte[] searched = searchedFields;
+            if ((id < searched.length) && (searched[id] != UNKNOWN)) {
+                return searched[id] == SEARCHED;
+            }
+            boolean result = fieldSpec.matcher(FieldNameRegistry.getName(id)).matches();
+            synchronized (this) {
+                searched = searchedFields;
+                if (id >= searched.length) {
+                    searched = Arrays.copyOf(searched, Math.max(id + 1, searched.length * 2));
+                } else {
+                    searched = searched.clone();
+                }
+                searched[id] = result ? SEARCHED : NOT_SEARCHED;
+                searchedFields = searched;
+            }
+            return result;
+        }
+    }
+}
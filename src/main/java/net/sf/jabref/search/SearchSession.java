@@ -0,0 +1,150 @@
+/*  Copyright (C) 2003-2011 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package net.sf.jabref.search;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+
+/**
+ * The simple searches done in one database, one after the other, as when the
+ * user refines the search string. The results of the last few searches are
+ * kept while the database does not change. A search for words that contain
+ * the words of an earlier search (e.g. "neural" after "neur") can only find
+ * entries found by the earlier one, so only these are searched again.
+ * Otherwise, as when a word is removed, the whole database is searched.
+ */
+public class SearchSession {
+
+    // Number of results kept:
+    private static final int CACHE_SIZE = 16;
+
+    private final BibtexDatabase database;
+
+    private final SearchIndex index;
+
+    // Results by query, the most recently used last:
+    private final LinkedHashMap<Query, Set<BibtexEntry>> recent = new LinkedHashMap<Query, Set<BibtexEntry>>(
+            CACHE_SIZE, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Query, Set<BibtexEntry>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // The modification count of the database the results are valid for:
+    private long modificationCount = -1;
+
+    public SearchSession(BibtexDatabase database, SearchIndex index) {
+        this.database = database;
+        this.index = index;
+    }
+
+    /**
+     * Returns the entries the rule matches. The rule must not use regular
+     * expressions; see BasicSearch.canUseIndex().
+     */
+    public Set<BibtexEntry> search(BasicSearch rule, Map<String, String> searchStrings) {
+        return search(rule, searchStrings, null);
+    }
+
+    /**
+     * Like search(BasicSearch, Map), but stops when the given search is
+     * cancelled.
+     *
+     * @throws CancellationException if the search was cancelled.
+     */
+    public synchronized Set<BibtexEntry> search(BasicSearch rule, Map<String, String> searchStrings,
+            ParallelSearch search) {
+        long count = database.getModificationCount();
+        if (count != modificationCount) {
+            recent.clear();
+            modificationCount = count;
+        }
+        Query query = new Query(rule.getWords(searchStrings), rule.isCaseSensitive());
+        Set<BibtexEntry> result = recent.get(query);
+        if (result != null) {
+            return result;
+        }
+
+        // Search the smallest earlier result that contains all new hits:
+        Set<BibtexEntry> within = null;
+        for (Map.Entry<Query, Set<BibtexEntry>> earlier : recent.entrySet()) {
+            if (query.refines(earlier.getKey())
+                    && ((within == null) || (earlier.getValue().size() < within.size()))) {
+                within = earlier.getValue();
+            }
+        }
+        result = Collections.unmodifiableSet(index.search(query.words, query.caseSensitive, within, search));
+        recent.put(query, result);
+        return result;
+    }
+
+    private static final class Query {
+
+        final List<String> words;
+        final boolean caseSensitive;
+
+        Query(List<String> words, boolean caseSensitive) {
+            this.words = words;
+            this.caseSensitive = caseSensitive;
+        }
+
+        /**
+         * Returns whether every entry matching this query also matches the
+         * given one, because each of its words is part of one of ours.
+         */
+        boolean refines(Query other) {
+            if (caseSensitive != other.caseSensitive) {
+                return false;
+            }
+            for (String otherWord : other.words) {
+                boolean found = false;
+                for (String word : words) {
+                    if (word.contains(otherWord)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Query)) {
+                return false;
+            }
+            Query other = (Query) o;
+            return (caseSensitive == other.caseSensitive) && words.equals(other.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * words.hashCode()) + (caseSensitive ? 1 : 0);
+        }
+    }
+}
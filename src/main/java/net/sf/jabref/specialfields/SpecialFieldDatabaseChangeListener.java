@@ -13,12 +13,15 @@ public class SpecialFieldDatabaseChangeListener implements
 	private static SpecialFieldDatabaseChangeListener INSTANCE = null;
 
 	public void databaseChanged(DatabaseChangeEvent e) {
-		if ((e.getType() == DatabaseChangeEvent.ChangeType.ADDED_ENTRY) &&
+		if (((e.getType() == DatabaseChangeEvent.ChangeType.ADDED_ENTRY)
+		        || (e.getType() == DatabaseChangeEvent.ChangeType.ADDED_ENTRIES)) &&
 		    SpecialFieldsUtils.keywordSyncEnabled()) {
-			final BibtexEntry entry = e.getEntry();
 			// NamedCompount code similar to SpecialFieldUpdateListener
+			// One undo step for all entries added at once:
 			NamedCompound nc = new NamedCompound(Globals.lang("Synchronized special fields based on keywords"));
-			SpecialFieldsUtils.syncSpecialFieldsFromKeywords(entry, nc);
+			for (BibtexEntry entry : e.getEntries()) {
+				SpecialFieldsUtils.syncSpecialFieldsFromKeywords(entry, nc);
+			}
             nc.end();
 			JabRef.jrf.basePanel().undoManager.addEdit(nc);
 		}
@@ -32,6 +32,7 @@ import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.BibtexEntryType;
 import net.sf.jabref.BibtexFields;
 import net.sf.jabref.BibtexString;
+import net.sf.jabref.FieldValuePool;
 import net.sf.jabref.MetaData;
 import net.sf.jabref.Util;
 import net.sf.jabref.groups.AbstractGroup;
@@ -135,6 +136,7 @@ public abstract class DBImporter extends DBImporterExporter{
 			String database_id = rsDatabase.getString("database_id");
 			// Read the entries and create BibtexEntry instances:
 			HashMap<String, BibtexEntry> entries = new HashMap<String, BibtexEntry>();
+			FieldValuePool valuePool = FieldValuePool.createIfEnabled();
 			ResultSet rsEntries = SQLUtil.queryAllFromTable(conn,
 					"entries WHERE database_id= '" + database_id + "';");
 			while (rsEntries.next()) {
@@ -148,6 +150,9 @@ public abstract class DBImporter extends DBImporterExporter{
                     if (value != null) {
                         col = col.charAt(col.length() - 1) == '_' ? col
                                 .substring(0, col.length() - 1) : col;
+                        if (valuePool != null) {
+                            value = valuePool.intern(col, value);
+                        }
                         entry.setField(col, value);
                     }
                 }
@@ -155,6 +160,9 @@ public abstract class DBImporter extends DBImporterExporter{
 				database.insertEntry(entry);
 			}
 			rsEntries.getStatement().close();
+			if (valuePool != null) {
+				valuePool.logStatistics("SQL import");
+			}
 
 			// Import strings and preamble:
 			ResultSet rsStrings = SQLUtil.queryAllFromTable(conn,
@@ -6,11 +6,24 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyVetoException;
+import java.beans.VetoableChangeListener;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class BibtexDatabaseTest {
 
@@ -47,5 +60,491 @@ public class BibtexDatabaseTest {
 
     }
 
+    @Test
+    public void testResolvedStringsFollowChanges() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexString first = new BibtexString("s1", "first", "Donald");
+        BibtexString full = new BibtexString("s2", "full", "#first# Knuth");
+        db.addString(first);
+        db.addString(full);
+        assertEquals("Donald Knuth", db.resolveForStrings("#full#"));
+        assertEquals("By Donald Knuth.", db.resolveForStrings("By #FULL#."));
+
+        first.setContent("D. E.");
+        assertEquals("D. E. Knuth", db.resolveForStrings("#full#"));
+
+        full.setName("author");
+        assertEquals("#full#", db.resolveForStrings("#full#"));
+        assertEquals("D. E. Knuth", db.resolveForStrings("#author#"));
+        assertTrue(db.hasStringLabel("author"));
+        assertFalse(db.hasStringLabel("full"));
+
+        db.removeString("s1");
+        assertEquals("#first# Knuth", db.resolveForStrings("#author#"));
+        db.addString(new BibtexString("s3", "first", "Don"));
+        assertEquals("Don Knuth", db.resolveForStrings("#author#"));
+    }
+
+    @Test
+    public void testResolveContent() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        db.addString(new BibtexString("s1", "a", "A"));
+        db.addString(new BibtexString("s2", "loop", "x #loop# y"));
+        db.addString(new BibtexString("s3", "viaLoop", "#loop#!"));
+        assertEquals("A", db.resolveForStrings("#a#"));
+        // Text after the last reference is kept:
+        assertEquals("Ab", db.resolveForStrings("#a#b"));
+        assertEquals("no refs", db.resolveForStrings("no refs"));
+        assertEquals("C# and F#", db.resolveForStrings("C# and F#"));
+        assertEquals("## A #", db.resolveForStrings("## #a# #"));
+        assertEquals("#unknown# A", db.resolveForStrings("#unknown# #a#"));
+        assertEquals("January", db.resolveForStrings("#jan#"));
+        // References are not resolved in text spanning several lines:
+        assertEquals("#a#\n#a#", db.resolveForStrings("#a#\n#a#"));
+        // Circular references are cut short at the string we started from:
+        assertEquals("x loop y", db.resolveForStrings("#loop#"));
+        assertEquals("x loop y!", db.resolveForStrings("#viaLoop#"));
+        assertEquals("x loop y", db.resolveForStrings("#loop#"));
+    }
+
+    /**
+     * Runs readers and writers on one database at the same time. Each writer
+     * works on entries and strings of its own, so that the final state is
+     * known.
+     */
+    @Test
+    public void testConcurrentReadersAndWriters() throws Exception {
+        final BibtexDatabase db = new BibtexDatabase();
+        final int writers = 4;
+        final int readers = 4;
+        final int rounds = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final CountDownLatch writersDone = new CountDownLatch(writers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int w = 0; w < writers; w++) {
+                final int writer = w;
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        try {
+                            for (int i = 0; i < rounds; i++) {
+                                BibtexEntry e = new BibtexEntry(Util.createNeutralId());
+                                e.setField(BibtexFields.KEY_FIELD, "w" + writer + "e" + i);
+                                assertFalse(db.insertEntry(e));
+                                // Every other entry gets a new key, every third one is removed again:
+                                if ((i % 2) == 0) {
+                                    db.setCiteKeyForEntry(e.getId(), "w" + writer + "k" + i);
+                                }
+                                if ((i % 3) == 0) {
+                                    assertSame(e, db.removeEntry(e.getId()));
+                                }
+                                db.addString(new BibtexString(Util.createNeutralId(), "w" + writer + "s" + i, "v"));
+                            }
+                        } finally {
+                            writersDone.countDown();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        while (writing.get()) {
+                            for (BibtexEntry e : db.getEntries()) {
+                                BibtexEntry byId = db.getEntryById(e.getId());
+                                assertTrue((byId == null) || (byId == e));
+                                String key = e.getCiteKey();
+                                if (key != null) {
+                                    BibtexEntry byKey = db.getEntryByKey(key);
+                                    assertTrue((byKey == null) || (byKey == e) || !key.equals(byKey.getCiteKey()));
+                                    db.getNumberOfKeyOccurences(key);
+                                }
+                            }
+                            for (String id : db.getStringKeySet()) {
+                                BibtexString s = db.getString(id);
+                                assertTrue((s == null) || db.hasStringLabel(s.getName()));
+                            }
+                            db.resolveForStrings("#w0s1# and more");
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            start.countDown();
+            writersDone.await();
+            writing.set(false);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int perWriter = rounds - ((rounds + 2) / 3);
+        assertEquals(writers * perWriter, db.getEntryCount());
+        assertEquals(writers * rounds, db.getStringCount());
+        for (int w = 0; w < writers; w++) {
+            for (int i = 0; i < rounds; i++) {
+                String key = ((i % 2) == 0 ? "w" + w + "k" : "w" + w + "e") + i;
+                BibtexEntry e = db.getEntryByKey(key);
+                if ((i % 3) == 0) {
+                    assertNull(e);
+                    assertEquals(0, db.getNumberOfKeyOccurences(key));
+                } else {
+                    assertNotNull(key, e);
+                    assertEquals(key, e.getCiteKey());
+                    assertEquals(1, db.getNumberOfKeyOccurences(key));
+                }
+                assertTrue(db.hasStringLabel("w" + w + "s" + i));
+            }
+        }
+        assertEquals("v and more", db.resolveForStrings("#w0s1# and more"));
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByChanges() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry a = new BibtexEntry(Util.createNeutralId());
+        a.setField(BibtexFields.KEY_FIELD, "a");
+        a.setField("title", "Old");
+        BibtexEntry b = new BibtexEntry(Util.createNeutralId());
+        b.setField(BibtexFields.KEY_FIELD, "b");
+        db.insertEntry(a);
+        db.insertEntry(b);
+        db.addString(new BibtexString(Util.createNeutralId(), "s", "Old"));
+        db.setPreamble("Old");
+
+        BibtexDatabase snapshot = db.snapshot();
+        assertTrue(snapshot.isSnapshot());
+        assertFalse(db.isSnapshot());
+
+        a.setField("title", "New");
+        a.setType(BibtexEntryType.BOOK);
+        db.setCiteKeyForEntry(b.getId(), "renamed");
+        BibtexEntry c = new BibtexEntry(Util.createNeutralId());
+        c.setField(BibtexFields.KEY_FIELD, "c");
+        db.insertEntry(c);
+        db.removeEntry(a.getId());
+        db.getString(db.getStringKeySet().iterator().next()).setContent("New");
+        db.setPreamble("New");
+
+        assertEquals(2, snapshot.getEntryCount());
+        BibtexEntry copy = snapshot.getEntryById(a.getId());
+        assertNotSame(a, copy);
+        assertEquals("Old", copy.getField("title"));
+        assertEquals(BibtexEntryType.OTHER, copy.getType());
+        assertSame(copy, snapshot.getEntryByKey("a"));
+        assertEquals("b", snapshot.getEntryByKey("b").getCiteKey());
+        assertNull(snapshot.getEntryByKey("renamed"));
+        assertNull(snapshot.getEntryById(c.getId()));
+        assertEquals(1, snapshot.getNumberOfKeyOccurences("b"));
+        assertEquals("Old", snapshot.resolveForStrings("#s#"));
+        assertEquals("Old", snapshot.getPreamble());
+
+        // A new snapshot sees the changes:
+        BibtexDatabase later = db.snapshot();
+        assertEquals(2, later.getEntryCount());
+        assertNull(later.getEntryById(a.getId()));
+        assertEquals(b.getId(), later.getEntryByKey("renamed").getId());
+        assertEquals(c.getId(), later.getEntryByKey("c").getId());
+        assertEquals("New", later.resolveForStrings("#s#"));
+        assertEquals("New", later.getPreamble());
+    }
+
+    @Test
+    public void testSnapshotIsReadOnly() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        db.insertEntry(new BibtexEntry(Util.createNeutralId()));
+        db.addString(new BibtexString(Util.createNeutralId(), "s", "s"));
+        BibtexDatabase snapshot = db.snapshot();
+        assertSame(snapshot, snapshot.snapshot());
+        try {
+            snapshot.insertEntry(new BibtexEntry(Util.createNeutralId()));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.removeEntry(snapshot.getKeySet().iterator().next());
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.setPreamble("x");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.getString(snapshot.getStringKeySet().iterator().next()).setContent("x");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(1, db.getEntryCount());
+        assertEquals("s", snapshot.resolveForStrings("#s#"));
+    }
+
+    @Test
+    public void testSnapshotDoesNotSeeVetoedChange() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry entry = new BibtexEntry(Util.createNeutralId());
+        entry.setField("title", "Old");
+        db.insertEntry(entry);
+        db.snapshot();
+        entry.addPropertyChangeListener(new VetoableChangeListener() {
+
+            @Override
+            public void vetoableChange(PropertyChangeEvent e) throws PropertyVetoException {
+                if ("Vetoed".equals(e.getNewValue())) {
+                    throw new PropertyVetoException("No", e);
+                }
+            }
+        });
+        try {
+            entry.setField("title", "Vetoed");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("Old", entry.getField("title"));
+        assertEquals("Old", db.snapshot().getEntryById(entry.getId()).getField("title"));
+        entry.setField("title", "New");
+        assertEquals("New", db.snapshot().getEntryById(entry.getId()).getField("title"));
+    }
 
+    /**
+     * Takes snapshots while another thread keeps changing the database, and
+     * checks that no snapshot changes after it has been taken.
+     */
+    @Test
+    public void testSnapshotsWhileWriting() throws Exception {
+        final BibtexDatabase db = new BibtexDatabase();
+        final List<BibtexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            BibtexEntry e = new BibtexEntry(Util.createNeutralId());
+            e.setField("round", "0");
+            db.insertEntry(e);
+            entries.add(e);
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                int round = 0;
+                while (running.get()) {
+                    round++;
+                    for (BibtexEntry e : entries) {
+                        e.setField("round", String.valueOf(round));
+                    }
+                }
+            }
+        };
+        writer.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                BibtexDatabase snapshot = db.snapshot();
+                List<String> values = new ArrayList<>();
+                for (BibtexEntry e : entries) {
+                    values.add(snapshot.getEntryById(e.getId()).getField("round"));
+                }
+                // Entries are changed in order, so the values can only go down:
+                for (int j = 1; j < values.size(); j++) {
+                    assertTrue(Integer.parseInt(values.get(j)) <= Integer.parseInt(values.get(j - 1)));
+                }
+                Thread.yield();
+                for (int j = 0; j < entries.size(); j++) {
+                    assertEquals(values.get(j), snapshot.getEntryById(entries.get(j).getId()).getField("round"));
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void testBulkInsertAndRemoveFireOneEvent() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        db.insertEntry(new BibtexEntry("existing"));
+        EntrySorter sorter = db.getSorter(new FieldComparator(BibtexFields.KEY_FIELD));
+        final List<DatabaseChangeEvent> events = new ArrayList<>();
+        db.addDatabaseChangeListener(new DatabaseChangeListener() {
+
+            @Override
+            public void databaseChanged(DatabaseChangeEvent e) {
+                events.add(e);
+            }
+        });
+
+        List<BibtexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            BibtexEntry entry = new BibtexEntry("id" + i);
+            entry.setField(BibtexFields.KEY_FIELD, "key" + i);
+            entries.add(entry);
+        }
+        assertFalse(db.insertEntries(entries));
+        assertEquals(1, events.size());
+        assertEquals(DatabaseChangeEvent.ChangeType.ADDED_ENTRIES, events.get(0).getType());
+        assertEquals(entries, events.get(0).getEntries());
+        assertEquals(101, db.getEntryCount());
+        sorter.index();
+        assertEquals(101, sorter.getEntryCount());
+
+        events.clear();
+        List<BibtexEntry> removed = db.removeEntries(entries.subList(0, 50));
+        assertEquals(entries.subList(0, 50), removed);
+        assertEquals(1, events.size());
+        assertEquals(DatabaseChangeEvent.ChangeType.REMOVED_ENTRIES, events.get(0).getType());
+        assertEquals(removed, events.get(0).getEntries());
+        assertEquals(51, db.getEntryCount());
+        assertNull(db.getEntryById("id0"));
+        sorter.index();
+        assertEquals(51, sorter.getEntryCount());
+
+        // Removing entries that are not there fires nothing:
+        events.clear();
+        assertTrue(db.removeEntries(entries.subList(0, 50)).isEmpty());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testBulkInsertWithIdCollisionInsertsNothing() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        db.insertEntry(new BibtexEntry("taken"));
+        List<BibtexEntry> entries = new ArrayList<>();
+        entries.add(new BibtexEntry("new"));
+        entries.add(new BibtexEntry("taken"));
+        try {
+            db.insertEntries(entries);
+            fail();
+        } catch (KeyCollisionException expected) {
+            // Expected
+        }
+        assertEquals(1, db.getEntryCount());
+        assertNull(db.getEntryById("new"));
+
+        // Duplicate ids within the batch are rejected as well:
+        entries.set(1, new BibtexEntry("new"));
+        try {
+            db.insertEntries(entries);
+            fail();
+        } catch (KeyCollisionException expected) {
+            // Expected
+        }
+        assertEquals(1, db.getEntryCount());
+    }
+
+    @Test
+    public void testCrossrefResolutionFollowsChanges() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry parent = new BibtexEntry("p");
+        parent.setField(BibtexFields.KEY_FIELD, "proc");
+        parent.setField("booktitle", "Proceedings of #conf#");
+        BibtexEntry child = new BibtexEntry("c");
+        child.setField(BibtexFields.KEY_FIELD, "paper");
+        child.setField("crossref", "proc");
+        BibtexEntry other = new BibtexEntry("o");
+        other.setField("crossref", "elsewhere");
+        db.insertEntries(Arrays.asList(parent, child, other));
+        BibtexString conf = new BibtexString("s", "conf", "SIGIR");
+        db.addString(conf);
+
+        assertEquals("Proceedings of SIGIR", BibtexDatabase.getResolvedField("booktitle", child, db));
+        assertNull(BibtexDatabase.getResolvedField("booktitle", other, db));
+        assertEquals(Collections.singleton(child), db.getDependentEntries(parent));
+        assertTrue(db.getDependentEntries(child).isEmpty());
+
+        // A change of the parent:
+        parent.setField("booktitle", "Proc. #conf#");
+        assertEquals("Proc. SIGIR", BibtexDatabase.getResolvedField("booktitle", child, db));
+        // of a string:
+        conf.setContent("CIKM");
+        assertEquals("Proc. CIKM", BibtexDatabase.getResolvedField("booktitle", child, db));
+        // of the child's own fields:
+        child.setField("booktitle", "Own title");
+        assertEquals("Own title", BibtexDatabase.getResolvedField("booktitle", child, db));
+        child.clearField("booktitle");
+        assertEquals("Proc. CIKM", BibtexDatabase.getResolvedField("booktitle", child, db));
+
+        // of the parent's key:
+        db.setCiteKeyForEntry("p", "proc2");
+        assertNull(BibtexDatabase.getResolvedField("booktitle", child, db));
+        assertTrue(db.getDependentEntries(parent).isEmpty());
+        // of the child's crossref:
+        child.setField("crossref", "proc2");
+        assertEquals("Proc. CIKM", BibtexDatabase.getResolvedField("booktitle", child, db));
+        assertEquals(Collections.singleton(child), db.getDependentEntries(parent));
+
+        // Removing and adding the parent:
+        db.removeEntry("p");
+        assertNull(BibtexDatabase.getResolvedField("booktitle", child, db));
+        db.insertEntry(parent);
+        assertEquals("Proc. CIKM", BibtexDatabase.getResolvedField("booktitle", child, db));
+        db.removeEntry("c");
+        assertTrue(db.getDependentEntries(parent).isEmpty());
+
+        // Snapshots find dependents as well:
+        db.insertEntry(child);
+        BibtexDatabase snapshot = db.snapshot();
+        assertEquals(1, snapshot.getDependentEntries(snapshot.getEntryById("p")).size());
+        assertEquals("Proc. CIKM",
+                BibtexDatabase.getResolvedField("booktitle", snapshot.getEntryById("c"), snapshot));
+    }
+
+    @Test
+    public void testEntriesSharingAKey() throws KeyCollisionException {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry a = new BibtexEntry("a");
+        a.setField(BibtexFields.KEY_FIELD, "Knuth1984");
+        BibtexEntry b = new BibtexEntry("b");
+        b.setField(BibtexFields.KEY_FIELD, "Knuth1984");
+        BibtexEntry c = new BibtexEntry("c");
+        c.setField(BibtexFields.KEY_FIELD, "Lamport1986");
+        assertFalse(db.insertEntry(a));
+        assertTrue(db.insertEntry(b));
+        assertFalse(db.insertEntry(c));
+
+        assertArrayEquals(new BibtexEntry[] {a, b}, db.getEntriesByKey("Knuth1984"));
+        assertSame(a, db.getEntryByKey("Knuth1984"));
+        assertEquals(2, db.getNumberOfKeyOccurences("Knuth1984"));
+        assertEquals(0, db.getNumberOfKeyOccurences("Knuth1985"));
+        assertEquals(Collections.singleton("Knuth1984"), db.getDuplicateKeys());
+
+        // Removing one of them leaves the other findable:
+        db.removeEntry("a");
+        assertSame(b, db.getEntryByKey("Knuth1984"));
+        assertTrue(db.getDuplicateKeys().isEmpty());
+        db.insertEntry(a);
+        assertSame(b, db.getEntryByKey("Knuth1984"));
+
+        // Key changes, whether through the database or on the entry:
+        assertTrue(db.setCiteKeyForEntry("c", "Knuth1984"));
+        assertEquals(3, db.getNumberOfKeyOccurences("Knuth1984"));
+        assertEquals(0, db.getNumberOfKeyOccurences("Lamport1986"));
+        b.setField(BibtexFields.KEY_FIELD, "Knuth1984a");
+        assertArrayEquals(new BibtexEntry[] {a, c}, db.getEntriesByKey("Knuth1984"));
+        assertSame(b, db.getEntryByKey("Knuth1984a"));
+        assertFalse(db.setCiteKeyForEntry("a", null));
+        assertSame(c, db.getEntryByKey("Knuth1984"));
+        assertTrue(db.getDuplicateKeys().isEmpty());
+
+        db.setCiteKeyForEntry("a", "Knuth1984a");
+        BibtexDatabase snapshot = db.snapshot();
+        assertEquals(Collections.singleton("Knuth1984a"), snapshot.getDuplicateKeys());
+        assertEquals(2, snapshot.getEntriesByKey("Knuth1984a").length);
+        assertEquals("b", snapshot.getEntryByKey("Knuth1984a").getId());
+    }
 }
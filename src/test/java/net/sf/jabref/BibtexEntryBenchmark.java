@@ -0,0 +1,104 @@
+package net.sf.jabref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jabref.imports.BibtexParser;
+
+/**
+ * Compares the heap used by entries parsed from a large synthetic database
+ * with what the same fields take up in one HashMap per entry, which is
+ * how BibtexEntry used to store them. The values are shared between both,
+ * so only the storage structure is measured. Not part of the test suite;
+ * run it by hand with the number of entries as argument (default 20000).
+ */
+public class BibtexEntryBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("@article{key").append(i).append(",\n");
+            for (int f = 0; f < 24; f++) {
+                sb.append("  field").append(f).append(" = {Value ").append(f).append(" of ").append(i).append("},\n");
+            }
+            sb.append("}\n");
+        }
+        Collection<BibtexEntry> parsed = BibtexParser.parse(new StringReader(sb.toString()))
+                .getDatabase().getEntries();
+        sb = null;
+
+        // Keep the values alive, then measure the structures holding them:
+        List<String[]> values = new ArrayList<>();
+        for (BibtexEntry e : parsed) {
+            List<String> v = new ArrayList<>();
+            for (String field : e.getAllFields()) {
+                v.add(field);
+                v.add(e.getField(field));
+            }
+            values.add(v.toArray(new String[v.size()]));
+        }
+        parsed = null;
+
+        // Each structure is measured by releasing it again, so that memory
+        // freed meanwhile by other parts of the program does not count.
+        List<BibtexEntry> entries = new ArrayList<>(count);
+        for (String[] v : values) {
+            BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+            for (int i = 0; i < v.length; i += 2) {
+                e.setField(v[i], v[i + 1]);
+            }
+            entries.add(e);
+        }
+        long used = usedMemory();
+        entries.clear();
+        entries = null;
+        long compact = (used - usedMemory()) / count;
+
+        List<Object[]> maps = new ArrayList<>(count);
+        for (String[] v : values) {
+            // The old layout: the entry object plus a HashMap of its fields.
+            BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+            Map<String, String> map = new HashMap<>();
+            for (int i = 0; i < v.length; i += 2) {
+                map.put(v[i], v[i + 1]);
+            }
+            maps.add(new Object[] {e, map});
+        }
+        used = usedMemory();
+        maps.clear();
+        maps = null;
+        long hashMap = (used - usedMemory()) / count;
+
+        System.out.println(values.size() + " entries with 25 fields, bytes per entry:");
+        System.out.println("HashMap (before): " + hashMap);
+        System.out.println("Compact (after):  " + compact);
+    }
+
+    private static long usedMemory() {
+        // Collect several times and take the lowest reading, so that garbage
+        // left by parsing or earlier measurements does not count.
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            System.runFinalization();
+            long now = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if ((pool.getType() == MemoryType.HEAP) && (pool.getCollectionUsage() != null)) {
+                    now += pool.getCollectionUsage().getUsed();
+                }
+            }
+            used = Math.min(used, now);
+        }
+        return used;
+    }
+}
@@ -0,0 +1,185 @@
+package net.sf.jabref;
+
+import net.sf.jabref.imports.BibtexParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyVetoException;
+import java.beans.VetoableChangeListener;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BibtexEntryTest {
+
+    @Before
+    public void setup() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void teardown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSetGetAndClearFields() {
+        BibtexEntry e = new BibtexEntry("1");
+        assertTrue(e.getAllFields().isEmpty());
+        assertNull(e.getField("title"));
+        assertNull(e.getField("neverRegisteredFieldName"));
+
+        e.setField("year", "2014");
+        e.setField("author", "Ed");
+        e.setField("title", "T");
+        e.setField("author", "Ed von Test");
+        assertEquals(new TreeSet<>(Arrays.asList("author", "title", "year")), e.getAllFields());
+        assertEquals("Ed von Test", e.getField("author"));
+        assertEquals("T", e.getField("title"));
+        assertEquals("2014", e.getField("year"));
+
+        e.clearField("title");
+        e.clearField("notSet");
+        assertEquals(new TreeSet<>(Arrays.asList("author", "year")), e.getAllFields());
+        assertNull(e.getField("title"));
+
+        e.clearField("author");
+        e.clearField("year");
+        assertTrue(e.getAllFields().isEmpty());
+    }
+
+    @Test
+    public void testSetFieldMap() {
+        BibtexEntry e = new BibtexEntry("1");
+        e.setField("title", "Old");
+        Map<String, String> fields = new HashMap<>();
+        fields.put("title", "New");
+        fields.put("journal", "J");
+        e.setField(fields);
+        assertEquals("New", e.getField("title"));
+        assertEquals("J", e.getField("journal"));
+        assertEquals(2, e.getAllFields().size());
+    }
+
+    @Test
+    public void testSetFieldMapMergesIntoSetFields() {
+        BibtexEntry e = new BibtexEntry("1");
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < 30; i += 2) {
+            e.setField("mapfield" + i, "Old " + i);
+        }
+        for (int i = 0; i < 30; i += 3) {
+            fields.put("mapfield" + i, "New " + i);
+        }
+        e.setField(fields);
+
+        assertEquals(20, e.getAllFields().size());
+        int[] ids = e.getFieldIds();
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i - 1] < ids[i]);
+        }
+        for (int i = 0; i < 30; i++) {
+            String expected = i % 3 == 0 ? "New " + i : i % 2 == 0 ? "Old " + i : null;
+            assertEquals(expected, e.getField("mapfield" + i));
+        }
+    }
+
+    @Test
+    public void testCloneIsIndependent() {
+        BibtexEntry e = new BibtexEntry("1");
+        e.setField("title", "T");
+        e.setField(BibtexFields.KEY_FIELD, "key");
+        BibtexEntry c = (BibtexEntry) e.clone();
+
+        c.setField("title", "Changed");
+        c.setField("year", "2000");
+        e.clearField(BibtexFields.KEY_FIELD);
+
+        assertEquals("T", e.getField("title"));
+        assertNull(e.getField("year"));
+        assertNull(e.getCiteKey());
+        assertEquals("Changed", c.getField("title"));
+        assertEquals("2000", c.getField("year"));
+        assertEquals("key", c.getCiteKey());
+    }
+
+    @Test
+    public void testChangeEventsAndVeto() {
+        BibtexEntry e = new BibtexEntry("1");
+        final List<String> events = new ArrayList<>();
+        e.addPropertyChangeListener(new VetoableChangeListener() {
+
+            @Override
+            public void vetoableChange(PropertyChangeEvent evt) throws PropertyVetoException {
+                events.add(evt.getPropertyName() + ":" + evt.getOldValue() + "->" + evt.getNewValue());
+                if ("veto".equals(evt.getNewValue())) {
+                    throw new PropertyVetoException("no", evt);
+                }
+            }
+        });
+
+        e.setField("title", "A");
+        e.setField("title", "B");
+        e.clearField("title");
+        assertEquals(Arrays.asList("title:null->A", "title:A->B", "title:B->null"), events);
+
+        e.setField("title", "C");
+        try {
+            e.setField("title", "veto");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertEquals("C", e.getField("title"));
+
+        try {
+            e.setField("note", "veto");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertNull(e.getField("note"));
+        assertEquals(Collections.singleton("title"), e.getAllFields());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIdFieldIsReserved() {
+        new BibtexEntry("1").setField(BibtexEntry.ID_FIELD, "x");
+    }
+
+    /**
+     * Entries parsed from a database with many fields keep every field
+     * under its name.
+     */
+    @Test
+    public void testManyParsedFields() throws IOException {
+        final int count = 200;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("@article{key").append(i).append(",\n");
+            for (int f = 0; f < 24; f++) {
+                sb.append("  field").append(f).append(" = {Value ").append(f).append(" of ").append(i).append("},\n");
+            }
+            sb.append("}\n");
+        }
+        Collection<BibtexEntry> parsed = BibtexParser.parse(new StringReader(sb.toString()))
+                .getDatabase().getEntries();
+        assertEquals(count, parsed.size());
+
+        for (BibtexEntry e : parsed) {
+            String key = e.getCiteKey();
+            assertEquals(25, e.getAllFields().size());
+            for (int f = 0; f < 24; f++) {
+                assertEquals("Value " + f + " of " + key.substring(3), e.getField("field" + f));
+            }
+            e.clearField("field0");
+            assertNull(e.getField("field0"));
+            assertEquals("Value 23 of " + key.substring(3), e.getField("field23"));
+            assertEquals(24, e.getAllFields().size());
+        }
+    }
+}
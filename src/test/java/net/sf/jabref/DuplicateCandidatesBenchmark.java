@@ -0,0 +1,51 @@
+package net.sf.jabref;
+
+import java.util.Set;
+
+/**
+ * Compares the duplicate search on candidate pairs from DuplicateCandidates
+ * with comparing all pairs, on a generated database with planted
+ * duplicates. Not part of the test suite; run it by hand with the number of
+ * original entries and of planted copies as arguments (default 1000 and
+ * 100).
+ */
+public class DuplicateCandidatesBenchmark {
+
+    public static void main(String[] args) {
+        Globals.prefs = JabRefPreferences.getInstance();
+        int originals = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        PlantedDuplicates data = new PlantedDuplicates(20111017, originals, copies);
+        BibtexEntry[] entries = data.getEntries();
+
+        long start = System.nanoTime();
+        Set<String> exhaustive = data.findExhaustively();
+        long exhaustiveTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        DuplicateCandidates candidates = new DuplicateCandidates(entries);
+        Set<String> blocked = data.findCandidates(candidates);
+        long blockedTime = System.nanoTime() - start;
+
+        int planted = 0;
+        int plantedBlocked = 0;
+        for (String pair : exhaustive) {
+            if (data.isPlanted(pair)) {
+                planted++;
+                if (blocked.contains(pair)) {
+                    plantedBlocked++;
+                }
+            }
+        }
+        long pairs = ((long) entries.length * (entries.length - 1)) / 2;
+        System.out.println(entries.length + " entries, " + exhaustive.size() + " duplicate pairs (" + planted
+                + " planted)");
+        System.out.println("All pairs:       " + pairs + " compared in " + (exhaustiveTime / 1000000) + " ms");
+        System.out.println("Candidate pairs: " + candidates.getPairCount() + " compared in "
+                + (blockedTime / 1000000) + " ms, finding " + blocked.size() + " (" + plantedBlocked
+                + " planted)");
+        System.out.println("Recall " + String.format("%.3f", exhaustive.isEmpty() ? 1.0
+                : ((double) blocked.size()) / exhaustive.size()) + ", planted "
+                + String.format("%.3f", planted == 0 ? 1.0 : ((double) plantedBlocked) / planted));
+    }
+}
@@ -0,0 +1,73 @@
+package net.sf.jabref;
+
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test case for DuplicateCandidates. On a generated database with planted
+ * duplicates, the pairs it suggests have to hold all the pairs that
+ * DuplicateCheck.isDuplicate() finds when comparing all pairs. See
+ * DuplicateCandidatesBenchmark for measuring recall and speed on larger
+ * databases.
+ */
+public class DuplicateCandidatesTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("schon und gut 2", DuplicateCandidates.normalize("Sch{\\\"o}n -- und {G}ut (2)"));
+    }
+
+    @Test
+    public void testDoiAndIsbnMakeCandidates() {
+        BibtexEntry one = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.BOOK);
+        one.setField("isbn", "978-3-16-148410-0");
+        one.setField("year", "2001");
+        BibtexEntry two = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.BOOK);
+        two.setField("isbn", "9783161484100");
+        two.setField("title", "Something else entirely");
+        BibtexEntry three = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.BOOK);
+        three.setField("doi", "http://dx.doi.org/10.1000/182");
+        three.setField("year", "2005");
+        BibtexEntry four = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.BOOK);
+        four.setField("doi", "10.1000/182");
+        four.setField("author", "Someone");
+        DuplicateCandidates candidates = new DuplicateCandidates(new BibtexEntry[] {one, two, three, four});
+        assertArrayEquals(new int[] {1}, candidates.getCandidates(0));
+        assertArrayEquals(new int[] {3}, candidates.getCandidates(2));
+        assertEquals(2, candidates.getPairCount());
+    }
+
+    @Test
+    public void testFindsSameDuplicatesAsAllPairs() {
+        PlantedDuplicates data = new PlantedDuplicates(20111017, 200, 20);
+        DuplicateCandidates candidates = new DuplicateCandidates(data.getEntries());
+        Set<String> exhaustive = data.findExhaustively();
+        int planted = 0;
+        for (String pair : exhaustive) {
+            if (data.isPlanted(pair)) {
+                planted++;
+            }
+        }
+        assertTrue(planted >= 15);
+        assertEquals(exhaustive, data.findCandidates(candidates));
+        int entries = data.getEntries().length;
+        assertTrue(candidates.getPairCount() < (((long) entries * (entries - 1)) / 2 / 20));
+    }
+}
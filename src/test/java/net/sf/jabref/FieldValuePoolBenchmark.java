@@ -0,0 +1,87 @@
+package net.sf.jabref;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.sf.jabref.imports.BibtexParser;
+
+/**
+ * Measures the heap taken up by the field values of a generated database
+ * with and without pooling, as they are after parsing. Not part of the test
+ * suite; run it by hand with the number of entries as argument (default
+ * 100000).
+ */
+public class FieldValuePoolBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("@article{key").append(i).append(",\n");
+            sb.append("  author = {Author, A. and Other, ").append(i % 5000).append("},\n");
+            sb.append("  title = {A title with some words, number ").append(i).append("},\n");
+            sb.append("  journal = {").append(FieldValuePoolTest.JOURNALS[i % FieldValuePoolTest.JOURNALS.length])
+                    .append("},\n");
+            sb.append("  publisher = {")
+                    .append(FieldValuePoolTest.PUBLISHERS[i % FieldValuePoolTest.PUBLISHERS.length]).append("},\n");
+            sb.append("  year = {").append(1950 + (i % 70)).append("},\n");
+            sb.append("  month = ").append(FieldValuePoolTest.MONTHS[i % FieldValuePoolTest.MONTHS.length])
+                    .append(",\n");
+            sb.append("  volume = {").append(i % 40).append("},\n");
+            sb.append("  pages = {").append(i % 900).append("--").append((i % 900) + 12).append("},\n");
+            sb.append("  owner = {jdoe},\n");
+            sb.append("  timestamp = {2014.0").append(1 + (i % 9)).append(".1").append(i % 10).append("}\n}\n");
+        }
+        Collection<BibtexEntry> parsed = BibtexParser.parse(new StringReader(sb.toString()))
+                .getDatabase().getEntries();
+        sb = null;
+
+        // The values as the parser reads them without a pool: one string
+        // per field of each entry.
+        List<BibtexEntry> entries = new ArrayList<>(count);
+        for (BibtexEntry e : parsed) {
+            BibtexEntry copy = new BibtexEntry(e.getId(), e.getType());
+            for (String field : e.getAllFields()) {
+                copy.setField(field, new String(e.getField(field)));
+            }
+            entries.add(copy);
+        }
+        parsed = null;
+
+        long used = usedMemory();
+        FieldValuePool pool = new FieldValuePool();
+        pool.intern(entries);
+        long after = usedMemory();
+
+        System.out.println(entries.size() + " entries, heap in use:");
+        System.out.println("Without pool: " + (used / 1024) + " KB");
+        System.out.println("With pool:    " + (after / 1024) + " KB, " + ((used - after) / entries.size())
+                + " bytes saved per entry");
+        System.out.print(pool.getStatistics());
+    }
+
+    private static long usedMemory() {
+        // Collect several times and take the lowest reading, so that garbage
+        // left by parsing or earlier measurements does not count.
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            System.runFinalization();
+            long now = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if ((pool.getType() == MemoryType.HEAP) && (pool.getCollectionUsage() != null)) {
+                    now += pool.getCollectionUsage().getUsed();
+                }
+            }
+            used = Math.min(used, now);
+        }
+        return used;
+    }
+}
@@ -0,0 +1,167 @@
+package net.sf.jabref;
+
+import net.sf.jabref.imports.BibtexParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FieldValuePoolTest {
+
+    static final String[] JOURNALS = {"Journal of Duplicates", "Annals of Repetition",
+            "Proceedings of the Same Old Conference", "Transactions on Redundancy"};
+
+    static final String[] PUBLISHERS = {"Springer", "Elsevier", "IEEE Press"};
+
+    static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep",
+            "oct", "nov", "dec"};
+
+    @Before
+    public void setup() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void teardown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testInternReturnsFirstEqualValue() {
+        FieldValuePool pool = new FieldValuePool();
+        String first = new String("Springer");
+        String second = new String("Springer");
+        assertSame(first, pool.intern("publisher", first));
+        assertSame(first, pool.intern("publisher", second));
+        // Pools are per field:
+        assertSame(second, pool.intern("organization", second));
+        assertNull(pool.intern("publisher", null));
+
+        assertEquals(2, pool.getLookups("publisher"));
+        assertEquals(1, pool.getHits("publisher"));
+        assertEquals(0, pool.getHits("organization"));
+        assertEquals(0, pool.getLookups("journal"));
+        assertEquals(new HashSet<>(Arrays.asList("publisher", "organization")),
+                new HashSet<>(pool.getFields()));
+        assertTrue(pool.getStatistics().startsWith("publisher: 1/2 hits (50%)\n"));
+    }
+
+    @Test
+    public void testDistinctFieldsStopBeingPooled() {
+        FieldValuePool pool = new FieldValuePool();
+        for (int i = 0; i < 5000; i++) {
+            pool.intern("title", "Title " + i);
+            pool.intern("year", String.valueOf(2000 + (i % 10)));
+        }
+        assertFalse(pool.isPooled("title"));
+        assertTrue(pool.isPooled("year"));
+        assertEquals(5000, pool.getLookups("title"));
+        assertEquals(0, pool.getHits("title"));
+        assertEquals(4990, pool.getHits("year"));
+        assertTrue(pool.getStatistics().contains("title: 0/5000 hits (0%), not pooled"));
+    }
+
+    @Test
+    public void testInternEntries() {
+        BibtexEntry a = new BibtexEntry("1");
+        a.setField("journal", new String("J"));
+        a.setField("title", "A");
+        BibtexEntry b = new BibtexEntry("2");
+        b.setField("journal", new String("J"));
+        b.setField("title", "B");
+        FieldValuePool pool = new FieldValuePool();
+        pool.intern(Arrays.asList(a, b));
+        assertSame(a.getField("journal"), b.getField("journal"));
+        assertEquals("B", b.getField("title"));
+        assertEquals(1, pool.getHits("journal"));
+    }
+
+    @Test
+    public void testPoolIsThreadSafe() throws InterruptedException {
+        final FieldValuePool pool = new FieldValuePool();
+        final String[][] results = new String[4][1000];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final String[] result = results[t];
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = pool.intern("month", new String(MONTHS[i % MONTHS.length]));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 1000; i++) {
+            for (String[] result : results) {
+                assertSame(results[0][i], result[i]);
+            }
+        }
+        assertEquals(4000, pool.getLookups("month"));
+        assertEquals(4000 - MONTHS.length, pool.getHits("month"));
+    }
+
+    /**
+     * Pools the field values of a parsed database, as they are after parsing,
+     * and checks that repeated values are shared and distinct ones are left
+     * alone.
+     */
+    @Test
+    public void testParsedValuesAreShared() throws IOException {
+        final int count = 2000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("@article{key").append(i).append(",\n");
+            sb.append("  title = {A title with some words, number ").append(i).append("},\n");
+            sb.append("  journal = {").append(JOURNALS[i % JOURNALS.length]).append("},\n");
+            sb.append("  publisher = {").append(PUBLISHERS[i % PUBLISHERS.length]).append("},\n");
+            sb.append("  month = ").append(MONTHS[i % MONTHS.length]).append(",\n");
+            sb.append("  owner = {jdoe}\n}\n");
+        }
+        Collection<BibtexEntry> parsed = BibtexParser.parse(new StringReader(sb.toString()))
+                .getDatabase().getEntries();
+        assertEquals(count, parsed.size());
+
+        // The values as the parser reads them without a pool: one string
+        // per field of each entry.
+        List<BibtexEntry> entries = new ArrayList<>(count);
+        for (BibtexEntry e : parsed) {
+            BibtexEntry copy = new BibtexEntry(e.getId(), e.getType());
+            for (String field : e.getAllFields()) {
+                copy.setField(field, new String(e.getField(field)));
+            }
+            entries.add(copy);
+        }
+        assertNotSame(entries.get(0).getField("owner"), entries.get(1).getField("owner"));
+
+        FieldValuePool pool = new FieldValuePool();
+        pool.intern(entries);
+        Map<String, String> journals = new HashMap<>();
+        for (BibtexEntry e : entries) {
+            assertSame(entries.get(0).getField("owner"), e.getField("owner"));
+            String journal = e.getField("journal");
+            if (journals.containsKey(journal)) {
+                assertSame(journals.get(journal), journal);
+            } else {
+                journals.put(journal, journal);
+            }
+        }
+        assertEquals(JOURNALS.length, journals.size());
+        assertEquals(count, pool.getLookups("journal"));
+        assertEquals(count - JOURNALS.length, pool.getHits("journal"));
+        assertEquals(count - PUBLISHERS.length, pool.getHits("publisher"));
+        assertEquals(count - 1, pool.getHits("owner"));
+        assertFalse(pool.isPooled("title"));
+        assertEquals(0, pool.getHits("title"));
+    }
+}
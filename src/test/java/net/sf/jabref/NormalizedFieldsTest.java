@@ -0,0 +1,123 @@
+package net.sf.jabref;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.jabref.search.BasicSearch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NormalizedFieldsTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testFold() {
+        assertEquals("schon muller creme", NormalizedFields.fold("Schön MÜLLER Crème"));
+        assertEquals("ngoc", NormalizedFields.fold("Ngọc"));
+        // Letters of other scripts keep their diacritics:
+        assertEquals("й", NormalizedFields.fold("Й"));
+        // Letters without a decomposition are kept:
+        assertEquals("øæß", NormalizedFields.fold("ØÆß"));
+        String unchanged = "plain text 123";
+        assertSame(unchanged, NormalizedFields.fold(unchanged));
+    }
+
+    @Test
+    public void testRemoveAccentsKeepsCase() {
+        assertEquals("Schon \\S+", NormalizedFields.removeAccents("Schön \\S+"));
+    }
+
+    @Test
+    public void testValues() {
+        BibtexEntry entry = makeEntry("Sch{\\\"o}n und {G}ut", "Müller, Anna");
+        NormalizedFields normalized = entry.getNormalizedFields();
+        Map<String, String> plain = new HashMap<>();
+        Map<String, String> folded = new HashMap<>();
+        for (int i = 0; i < normalized.size(); i++) {
+            plain.put(normalized.getFieldName(i), normalized.getValues(true)[i]);
+            folded.put(normalized.getFieldName(i), normalized.getValues(false)[i]);
+        }
+        assertEquals("Schon und Gut", plain.get("title"));
+        assertEquals("schon und gut", folded.get("title"));
+        assertEquals("Müller, Anna", plain.get("author"));
+        assertEquals("muller, anna", folded.get("author"));
+        // Unchanged values are shared with the entry:
+        assertSame(entry.getField("author"), plain.get("author"));
+    }
+
+    @Test
+    public void testKeptUntilChanged() {
+        BibtexEntry entry = makeEntry("Title", "Author");
+        NormalizedFields normalized = entry.getNormalizedFields();
+        assertSame(normalized, entry.getNormalizedFields());
+
+        entry.setField("title", "Other {T}itle");
+        NormalizedFields changed = entry.getNormalizedFields();
+        assertNotSame(normalized, changed);
+        assertTrue(java.util.Arrays.asList(changed.getValues(true)).contains("Other Title"));
+
+        // Also without change events:
+        entry.setField(Collections.singletonMap("title", "Third"));
+        assertTrue(java.util.Arrays.asList(entry.getNormalizedFields().getValues(true)).contains("Third"));
+
+        entry.clearField("title");
+        assertFalse(java.util.Arrays.asList(entry.getNormalizedFields().getValues(true)).contains("Third"));
+    }
+
+    @Test
+    public void testSearchIgnoresAccentsUnlessCaseSensitive() {
+        BibtexEntry latex = makeEntry("Sch{\\\"o}n", "Doe");
+        BibtexEntry unicode = makeEntry("Schön", "Doe");
+        BibtexEntry plain = makeEntry("Schon", "Doe");
+        BasicSearch search = new BasicSearch(false, false);
+        for (String query : new String[] {"schön", "schon", "SCHÖN"}) {
+            assertEquals(1, search.applyRule(query, latex));
+            assertEquals(1, search.applyRule(query, unicode));
+            assertEquals(1, search.applyRule(query, plain));
+        }
+        BasicSearch caseSensitive = new BasicSearch(true, false);
+        assertEquals(0, caseSensitive.applyRule("Schön", latex));
+        assertEquals(1, caseSensitive.applyRule("Schön", unicode));
+        assertEquals(0, caseSensitive.applyRule("Schön", plain));
+        BasicSearch regex = new BasicSearch(false, true);
+        assertEquals(1, regex.applyRule("^sch.n$", unicode));
+        assertEquals(1, regex.applyRule("SCHÖN", latex));
+    }
+
+    @Test
+    public void testMemoryUsage() throws KeyCollisionException {
+        BibtexDatabase database = new BibtexDatabase();
+        for (int i = 0; i < 10000; i++) {
+            BibtexEntry entry = makeEntry("A {T}itle with \\\"{u}mlauts and some more words, part " + i,
+                    "Author, A. and Brother, B. and Other, " + i);
+            entry.setField("year", String.valueOf(1950 + (i % 70)));
+            database.insertEntry(entry);
+        }
+        assertEquals(0, NormalizedFields.getMemoryUsage(database.getEntries()));
+        for (BibtexEntry entry : database.getEntries()) {
+            entry.getNormalizedFields();
+        }
+        long bytes = NormalizedFields.getMemoryUsage(database.getEntries());
+        assertTrue(bytes > 0);
+    }
+
+    private static BibtexEntry makeEntry(String title, String author) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        e.setField("title", title);
+        e.setField("author", author);
+        return e;
+    }
+}
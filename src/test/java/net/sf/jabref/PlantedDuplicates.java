@@ -0,0 +1,157 @@
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A generated database of articles, some of which have been entered twice
+ * with small differences, for testing and measuring duplicate detection.
+ */
+class PlantedDuplicates {
+
+    private final Random random;
+
+    private final BibtexEntry[] entries;
+
+    // The pairs of IDs of each original and its copy, in both orders:
+    private final Set<String> planted = new HashSet<>();
+
+    PlantedDuplicates(long seed, int originals, int copies) {
+        random = new Random(seed);
+        List<BibtexEntry> list = new ArrayList<>();
+        for (int i = 0; i < originals; i++) {
+            list.add(makeEntry());
+        }
+        for (int i = 0; i < copies; i++) {
+            BibtexEntry original = list.get(random.nextInt(originals));
+            BibtexEntry copy = vary(original);
+            list.add(random.nextInt(list.size()), copy);
+            planted.add(pair(original, copy));
+            planted.add(pair(copy, original));
+        }
+        entries = list.toArray(new BibtexEntry[list.size()]);
+    }
+
+    BibtexEntry[] getEntries() {
+        return entries;
+    }
+
+    boolean isPlanted(String pair) {
+        return planted.contains(pair);
+    }
+
+    /**
+     * Returns the pairs of entries DuplicateCheck.isDuplicate() accepts, of
+     * all pairs.
+     */
+    Set<String> findExhaustively() {
+        Set<String> found = new HashSet<>();
+        for (int i = 0; i < (entries.length - 1); i++) {
+            for (int j = i + 1; j < entries.length; j++) {
+                if (DuplicateCheck.isDuplicate(entries[i], entries[j])) {
+                    found.add(pair(entries[i], entries[j]));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the pairs of entries DuplicateCheck.isDuplicate() accepts, of
+     * the candidate pairs.
+     */
+    Set<String> findCandidates(DuplicateCandidates candidates) {
+        Set<String> found = new HashSet<>();
+        for (int i = 0; i < (entries.length - 1); i++) {
+            for (int j : candidates.getCandidates(i)) {
+                if (DuplicateCheck.isDuplicate(entries[i], entries[j])) {
+                    found.add(pair(entries[i], entries[j]));
+                }
+            }
+        }
+        return found;
+    }
+
+    static String pair(BibtexEntry one, BibtexEntry two) {
+        return one.getId() + '|' + two.getId();
+    }
+
+    private BibtexEntry makeEntry() {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        StringBuilder title = new StringBuilder();
+        int words = 5 + random.nextInt(8);
+        for (int w = 0; w < words; w++) {
+            title.append(w > 0 ? " " : "").append(word(3 + random.nextInt(8)));
+        }
+        e.setField("title", title.toString());
+        StringBuilder author = new StringBuilder();
+        int authors = 1 + random.nextInt(3);
+        for (int a = 0; a < authors; a++) {
+            author.append(a > 0 ? " and " : "").append(capitalize(word(4 + random.nextInt(6)))).append(", ")
+                    .append(Character.toUpperCase(word(1).charAt(0))).append('.');
+        }
+        e.setField("author", author.toString());
+        e.setField("journal", "Journal of " + capitalize(word(5 + random.nextInt(5))));
+        e.setField("year", String.valueOf(1990 + random.nextInt(30)));
+        e.setField("volume", String.valueOf(1 + random.nextInt(40)));
+        int firstPage = 1 + random.nextInt(500);
+        e.setField("pages", firstPage + "--" + (firstPage + random.nextInt(30)));
+        if (random.nextInt(3) == 0) {
+            e.setField("doi", "10." + (1000 + random.nextInt(9000)) + "/" + word(8));
+        }
+        return e;
+    }
+
+    /**
+     * Returns a copy of the entry as it might have been entered again.
+     */
+    private BibtexEntry vary(BibtexEntry original) {
+        BibtexEntry copy = (BibtexEntry) original.clone();
+        copy.setId(Util.createNeutralId());
+        String title = copy.getField("title");
+        switch (random.nextInt(4)) {
+        case 0: // a typo
+            int p = random.nextInt(title.length());
+            title = title.substring(0, p) + (char) ('a' + random.nextInt(26)) + title.substring(p + 1);
+            break;
+        case 1: // protected capitals
+            title = "{" + Character.toUpperCase(title.charAt(0)) + "}" + title.substring(1);
+            break;
+        case 2: // title case
+            StringBuilder sb = new StringBuilder();
+            for (String w : title.split(" ")) {
+                sb.append(sb.length() > 0 ? " " : "").append(capitalize(w));
+            }
+            title = sb.toString();
+            break;
+        default:
+            break;
+        }
+        copy.setField("title", title);
+        if (random.nextBoolean()) {
+            copy.setField("pages", copy.getField("pages").replace("--", " - "));
+        }
+        if (random.nextBoolean()) {
+            copy.clearField("doi");
+        }
+        if (random.nextInt(4) == 0) {
+            copy.clearField("volume");
+        }
+        return copy;
+    }
+
+    private String word(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,76 @@
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import net.sf.jabref.search.BasicSearch;
+
+/**
+ * Compares searching a generated database with one rule reused for all
+ * entries, which compiles the query once, with a new rule for each entry,
+ * which compiles it every time. Not part of the test suite; run it by hand
+ * with the number of entries as argument (default 100000).
+ */
+public class SearchRuleBenchmark {
+
+    public static void main(String[] args) {
+        Globals.prefs = JabRefPreferences.getInstance();
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        List<BibtexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+            e.setField("bibtexkey", "key" + i);
+            e.setField("title", "Title " + i + " about {S}ome {\\em things}");
+            e.setField("author", (i % 3 == 0 ? "Smith" : "Sm{\\o}th") + ", A. and Doe, J.");
+            e.setField("journal", "Journal " + (i % 50));
+            e.setField("year", String.valueOf(1950 + (i % 70)));
+            entries.add(e);
+        }
+        Map<String, String> query = Collections.singletonMap("1", "Title 4");
+        Map<String, Supplier<SearchRule>> rules = new LinkedHashMap<>();
+        rules.put("BasicSearch", () -> new BasicSearch(false, false));
+        rules.put("BasicSearch, case sensitive regular expressions", () -> new BasicSearch(true, true));
+        rules.put("SimpleSearchRule", () -> new SimpleSearchRule(false));
+        rules.put("RegExpRule", () -> new RegExpRule(false));
+        System.out.println("Searching " + count + " entries for " + query.get("1") + ":");
+        for (Map.Entry<String, Supplier<SearchRule>> rule : rules.entrySet()) {
+            Supplier<SearchRule> factory = rule.getValue();
+            // Best of a few runs, so that warming up does not count:
+            long reusedTime = Long.MAX_VALUE;
+            long compiledTime = Long.MAX_VALUE;
+            int hits = 0;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                hits = 0;
+                SearchRule reused = factory.get();
+                reused.validateSearchStrings(query);
+                for (BibtexEntry entry : entries) {
+                    if (reused.applyRule(query, entry) > 0) {
+                        hits++;
+                    }
+                }
+                reusedTime = Math.min(reusedTime, System.nanoTime() - start);
+
+                // A new rule for each entry compiles the query every time:
+                start = System.nanoTime();
+                int compiledHits = 0;
+                for (BibtexEntry entry : entries) {
+                    if (factory.get().applyRule(query, entry) > 0) {
+                        compiledHits++;
+                    }
+                }
+                compiledTime = Math.min(compiledTime, System.nanoTime() - start);
+                if (compiledHits != hits) {
+                    throw new IllegalStateException("Different hits for " + rule.getKey());
+                }
+            }
+            System.out.println(rule.getKey() + ": " + hits + " hits, "
+                    + (reusedTime / 1000000) + " ms compiled once, " + (compiledTime / 1000000)
+                    + " ms compiled for each entry");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jabref.search.BasicSearch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the search rules, which compile a search string once and reuse
+ * it for all entries searched with it.
+ */
+public class SearchRuleTest {
+
+    private interface RuleFactory {
+
+        SearchRule create();
+    }
+
+    private static final RuleFactory[] RULES = {
+        new RuleFactory() {
+
+            @Override
+            public SearchRule create() {
+                return new BasicSearch(false, false);
+            }
+        },
+        new RuleFactory() {
+
+            @Override
+            public SearchRule create() {
+                return new BasicSearch(true, true);
+            }
+        },
+        new RuleFactory() {
+
+            @Override
+            public SearchRule create() {
+                return new SimpleSearchRule(false);
+            }
+        },
+        new RuleFactory() {
+
+            @Override
+            public SearchRule create() {
+                return new RegExpRule(false);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testChangingSearchString() {
+        BibtexEntry entry = makeEntry(1);
+        for (RuleFactory factory : RULES) {
+            SearchRule rule = factory.create();
+            assertTrue(rule.validateSearchStrings(query("Title 1")));
+            assertTrue(rule.applyRule(query("Title 1"), entry) > 0);
+            assertEquals(0, rule.applyRule(query("Title 2"), entry));
+            assertTrue(rule.applyRule(query("Title 1"), entry) > 0);
+        }
+    }
+
+    @Test
+    public void testInvalidRegularExpression() {
+        assertFalse(new RegExpRule(false).validateSearchStrings(query("a(")));
+        assertFalse(new BasicSearch(false, true).validateSearchStrings(query("a(")));
+        assertTrue(new BasicSearch(false, false).validateSearchStrings(query("a(")));
+
+        BasicSearch search = new BasicSearch(false, true);
+        assertEquals(0, search.applyRule("a(", makeEntry(1)));
+        assertEquals(1, search.applyRule("title", makeEntry(1)));
+    }
+
+    @Test
+    public void testNonAsciiCapitalsInRegularExpression() {
+        BibtexEntry entry = makeEntry(1);
+        entry.setField("title", "Системы Москвы and σοφια");
+        SearchRule[] rules = {new RegExpRule(false), new BasicSearch(false, true)};
+        for (SearchRule rule : rules) {
+            assertTrue(rule.applyRule(query("МОСКВ."), entry) > 0);
+            assertTrue(rule.applyRule(query("ΣΟΦ[ΙΑ]+"), entry) > 0);
+            assertEquals(0, rule.applyRule(query("ΣΟΦΟΣ"), entry));
+        }
+    }
+
+    @Test
+    public void testReusedRuleFindsSameAsNewRules() {
+        List<BibtexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(makeEntry(i));
+        }
+        Map<String, String> query = query("\"title 4\" sm.th");
+        for (RuleFactory factory : RULES) {
+            // A new rule for each entry compiles the query every time:
+            assertEquals(search(factory, query, entries), search(factory.create(), query, entries));
+        }
+    }
+
+    private static int search(SearchRule rule, Map<String, String> query, List<BibtexEntry> entries) {
+        assertTrue(rule.validateSearchStrings(query));
+        int hits = 0;
+        for (BibtexEntry entry : entries) {
+            if (rule.applyRule(query, entry) > 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static int search(RuleFactory factory, Map<String, String> query, List<BibtexEntry> entries) {
+        int hits = 0;
+        for (BibtexEntry entry : entries) {
+            if (factory.create().applyRule(query, entry) > 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static Map<String, String> query(String searchString) {
+        return Collections.singletonMap("1", searchString);
+    }
+
+    private static BibtexEntry makeEntry(int i) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        e.setField("bibtexkey", "key" + i);
+        e.setField("title", "Title " + i + " about {S}ome {\\em things}");
+        e.setField("author", (i % 3 == 0 ? "Smith" : "Sm{\\o}th") + ", A. and Doe, J.");
+        e.setField("journal", "Journal " + (i % 50));
+        e.setField("year", String.valueOf(1950 + (i % 70)));
+        return e;
+    }
+}
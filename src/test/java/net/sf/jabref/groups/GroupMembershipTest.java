@@ -0,0 +1,235 @@
+package net.sf.jabref.groups;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test case for GroupMembership, which has to find the same entries as the
+ * search rules of the groups tree while following the database.
+ */
+public class GroupMembershipTest {
+
+    private static final Map<String, String> NO_OPTIONS = Collections.emptyMap();
+
+    private BibtexDatabase database;
+
+    private GroupMembership membership;
+
+    private GroupTreeNode root;
+
+    private ExplicitGroup explicit;
+
+    @Before
+    public void setUp() throws KeyCollisionException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        for (int i = 0; i < 300; i++) {
+            database.insertEntry(makeEntry(i));
+        }
+        root = new GroupTreeNode(new AllEntriesGroup());
+        GroupTreeNode neural = add(root, new KeywordGroup("Neural", "keywords", "neural", false, false,
+                AbstractGroup.INCLUDING));
+        add(neural, new KeywordGroup("Deep", "keywords", "deep", false, false, AbstractGroup.INDEPENDENT));
+        add(neural, new SearchGroup("Smith", "author=smith", false, false, AbstractGroup.REFINING));
+        GroupTreeNode recent = add(root, new SearchGroup("Recent", "year>=2010", false, false,
+                AbstractGroup.INDEPENDENT));
+        add(recent, new KeywordGroup("Graph", "title", "graph", false, false, AbstractGroup.REFINING));
+        explicit = new ExplicitGroup("Picked", AbstractGroup.INDEPENDENT);
+        for (int i = 0; i < 300; i += 7) {
+            explicit.addEntry(database.getEntriesByKey("key" + i)[0]);
+        }
+        add(root, explicit);
+        membership = new GroupMembership(database);
+        database.addDatabaseChangeListener(membership);
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSameResultsAsSearchRules() {
+        assertSameResults();
+    }
+
+    @Test
+    public void testFollowsChanges() throws KeyCollisionException {
+        assertSameResults();
+        database.getEntriesByKey("key1")[0].setField("keywords", "neural, deep");
+        database.getEntriesByKey("key2")[0].setField("author", "Smith");
+        database.getEntriesByKey("key3")[0].setField("title", "Graph theory");
+        database.getEntriesByKey("key4")[0].setField("year", "2015");
+        database.getEntriesByKey("key5")[0].clearField("keywords");
+        database.removeEntry(database.getEntriesByKey("key6")[0].getId());
+        database.removeEntry(database.getEntriesByKey("key7")[0].getId());
+        BibtexEntry added = makeEntry(1000);
+        added.setField("keywords", "deep");
+        database.insertEntry(added);
+        explicit.addEntry(added);
+        explicit.removeEntry(database.getEntriesByKey("key14")[0]);
+        assertSameResults();
+    }
+
+    @Test
+    public void testNumbersAreReused() throws KeyCollisionException {
+        BibtexEntry removed = database.getEntriesByKey("key10")[0];
+        int number = membership.getNumber(removed);
+        database.removeEntry(removed.getId());
+        assertEquals(-1, membership.getNumber(removed));
+        BibtexEntry added = makeEntry(1000);
+        database.insertEntry(added);
+        assertEquals(number, membership.getNumber(added));
+        assertEquals(300, membership.size());
+        assertSameResults();
+    }
+
+    @Test
+    public void testCountsFollowChanges() throws InterruptedException, KeyCollisionException {
+        for (GroupTreeNode node : nodes()) {
+            AbstractGroup group = node.getGroup();
+            if (!(group instanceof ExplicitGroup) && !(group instanceof AllEntriesGroup)) {
+                assertEquals(-1, membership.getCount(group));
+                CountDownLatch counted = new CountDownLatch(1);
+                membership.countLater(group, counted::countDown);
+                assertTrue(counted.await(10, TimeUnit.SECONDS));
+            }
+        }
+        assertSameCounts();
+        database.getEntriesByKey("key1")[0].setField("keywords", "neural, deep");
+        database.getEntriesByKey("key3")[0].setField("year", "2019");
+        database.removeEntry(database.getEntriesByKey("key6")[0].getId());
+        database.insertEntry(makeEntry(1000));
+        assertSameCounts();
+    }
+
+    @Test
+    public void testOverlappingGroups() {
+        GroupTreeNode deep = nodes().get(2);
+        BitSet hits = membership.getMembers(deep);
+        Set<BibtexEntry> hitEntries = membership.getEntrySet(hits);
+        List<GroupTreeNode> expected = new ArrayList<>();
+        for (Enumeration<GroupTreeNode> e = root.depthFirstEnumeration(); e.hasMoreElements();) {
+            GroupTreeNode node = e.nextElement();
+            for (BibtexEntry entry : hitEntries) {
+                if (node.getSearchRule().applyRule(NO_OPTIONS, entry) > 0) {
+                    expected.add(node);
+                    break;
+                }
+            }
+        }
+        assertEquals(expected, membership.getOverlapping(root, hits));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHitSetCannotBeModified() {
+        membership.getEntrySet(membership.getMembers(root)).clear();
+    }
+
+    @Test
+    public void testSwitchingGroupsGivesSameMembers() throws KeyCollisionException {
+        BibtexDatabase large = new BibtexDatabase();
+        for (int i = 0; i < 5000; i++) {
+            large.insertEntry(makeEntry(i));
+        }
+        GroupMembership largeMembership = new GroupMembership(large);
+        List<GroupTreeNode> nodes = nodes();
+
+        List<BitSet> first = new ArrayList<>();
+        for (GroupTreeNode node : nodes) {
+            first.add(largeMembership.getMembers(new GroupTreeNode[] {node}, false, false));
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            GroupTreeNode node = nodes.get(i);
+            assertEquals(node.getGroup().getName(), first.get(i),
+                    largeMembership.getMembers(new GroupTreeNode[] {node}, false, false));
+            assertEquals(node.getGroup().getName(), first.get(i), largeMembership.getMembers(node));
+        }
+    }
+
+    private void assertSameResults() {
+        List<GroupTreeNode> nodes = nodes();
+        for (GroupTreeNode node : nodes) {
+            assertEquals(node.getGroup().getName(), expected(node.getSearchRule()),
+                    found(membership.getMembers(node)));
+        }
+        for (boolean and : new boolean[] {false, true}) {
+            for (boolean invert : new boolean[] {false, true}) {
+                for (int i = 1; i < nodes.size(); i++) {
+                    GroupTreeNode[] selection = {nodes.get(i - 1), nodes.get(i)};
+                    AndOrSearchRuleSet rules = new AndOrSearchRuleSet(and, invert);
+                    rules.addRule(selection[0].getSearchRule());
+                    rules.addRule(selection[1].getSearchRule());
+                    assertEquals(expected(rules), found(membership.getMembers(selection, and, invert)));
+                }
+            }
+        }
+    }
+
+    private void assertSameCounts() {
+        for (GroupTreeNode node : nodes()) {
+            AbstractGroup group = node.getGroup();
+            int expected = 0;
+            for (BibtexEntry entry : database.getEntries()) {
+                if (group.contains(entry)) {
+                    expected++;
+                }
+            }
+            assertEquals(group.getName(), expected, membership.getCount(group));
+        }
+    }
+
+    private Set<BibtexEntry> expected(SearchRule rule) {
+        Set<BibtexEntry> result = new HashSet<>();
+        for (BibtexEntry entry : database.getEntries()) {
+            if (rule.applyRule(NO_OPTIONS, entry) > 0) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private Set<BibtexEntry> found(BitSet members) {
+        return new HashSet<>(membership.getEntries(members));
+    }
+
+    private List<GroupTreeNode> nodes() {
+        List<GroupTreeNode> result = new ArrayList<>();
+        for (Enumeration<GroupTreeNode> e = root.preorderEnumeration(); e.hasMoreElements();) {
+            result.add(e.nextElement());
+        }
+        return result;
+    }
+
+    private static GroupTreeNode add(GroupTreeNode parent, AbstractGroup group) {
+        GroupTreeNode node = new GroupTreeNode(group);
+        parent.add(node);
+        return node;
+    }
+
+    private static BibtexEntry makeEntry(int i) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        e.setField("bibtexkey", "key" + i);
+        e.setField("title", (i % 4 == 0 ? "Graph networks " : "Learning results ") + i);
+        e.setField("author", i % 5 == 0 ? "Smith, J." : "Doe, A.");
+        e.setField("year", String.valueOf(2000 + (i % 20)));
+        e.setField("keywords", i % 3 == 0 ? "neural" : (i % 3 == 1 ? "deep, neural" : "other"));
+        return e;
+    }
+}
@@ -0,0 +1,118 @@
+package net.sf.jabref.groups;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test case for KeywordMatcher, which has to find the same groups as asking
+ * each group whether it contains an entry.
+ */
+public class KeywordMatcherTest {
+
+    private static final String[] WORDS = {
+        "net", "neural net", "network", "Network", "networks", "neural", "deep", "deep learning",
+        "learning", "c++", "x-ray", "ray", "über", "Über", "a", "the", "graph", "graphs", "se", "set"
+    };
+
+    private static final String[] TEXTS = {
+        "neural networks, deep learning", "Neural Net; graph", "X-ray, ray tracing", "c++ and set theory",
+        "über-graphs", "network", "NETWORK", "a the", "subset", "deep-learning", "Über alles", "", "nets",
+        "learning neural net", "rays", "neural   net"
+    };
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSameGroupsAsContains() {
+        List<AbstractGroup> groups = new ArrayList<>();
+        for (String word : WORDS) {
+            groups.add(new KeywordGroup(word, "keywords", word, false, false, AbstractGroup.INDEPENDENT));
+            groups.add(new KeywordGroup(word, "keywords", word, true, false, AbstractGroup.INDEPENDENT));
+            groups.add(new KeywordGroup(word, "title", word, false, false, AbstractGroup.INDEPENDENT));
+        }
+        groups.add(new KeywordGroup("regexp", "keywords", "ne.*?s", false, true, AbstractGroup.INDEPENDENT));
+        groups.add(new KeywordGroup("empty", "keywords", "", false, false, AbstractGroup.INDEPENDENT));
+        groups.add(new SearchGroup("search", "keywords=deep", false, false, AbstractGroup.INDEPENDENT));
+        KeywordMatcher matcher = new KeywordMatcher(groups);
+
+        for (String keywords : TEXTS) {
+            for (String title : TEXTS) {
+                BibtexEntry entry = makeEntry(keywords, title);
+                BitSet matching = matcher.match(entry);
+                BitSet keywordsMatching = matcher.match(entry, "keywords");
+                BitSet dependingOnKeywords = matcher.dependingOn("keywords");
+                for (int i = 0; i < groups.size(); i++) {
+                    String message = groups.get(i).getName() + " in " + keywords + " / " + title;
+                    assertEquals(message, groups.get(i).contains(entry), matching.get(i));
+                    if (dependingOnKeywords.get(i)) {
+                        assertEquals(message, matching.get(i), keywordsMatching.get(i));
+                    } else {
+                        assertEquals(message, false, keywordsMatching.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testManyGroupsMatchSameAsGroupByGroup() {
+        Random random = new Random(4711);
+        List<AbstractGroup> groups = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            groups.add(new KeywordGroup("Topic " + i, "keywords", "topic" + i, false, false,
+                    AbstractGroup.INDEPENDENT));
+        }
+        List<BibtexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder keywords = new StringBuilder();
+            for (int k = 0; k < 6; k++) {
+                keywords.append(k > 0 ? ", " : "").append("Topic").append(random.nextInt(500));
+            }
+            entries.add(makeEntry(keywords.toString(), "Title " + i));
+        }
+
+        long groupByGroup = 0;
+        for (BibtexEntry entry : entries) {
+            for (AbstractGroup group : groups) {
+                if (group.contains(entry)) {
+                    groupByGroup++;
+                }
+            }
+        }
+
+        KeywordMatcher matcher = new KeywordMatcher(groups);
+        long matched = 0;
+        for (BibtexEntry entry : entries) {
+            matched += matcher.match(entry).cardinality();
+        }
+        assertEquals(groupByGroup, matched);
+    }
+
+    private static BibtexEntry makeEntry(String keywords, String title) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        if (!keywords.isEmpty()) {
+            e.setField("keywords", keywords);
+        }
+        if (!title.isEmpty()) {
+            e.setField("title", title);
+        }
+        return e;
+    }
+}
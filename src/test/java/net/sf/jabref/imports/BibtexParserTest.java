@@ -0,0 +1,478 @@
+package net.sf.jabref.imports;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for BibtexParser. Every test runs against the Reader based parser,
+ * the char buffer based one, and the char buffer based one parsing tiny
+ * chunks in parallel.
+ */
+@RunWith(Parameterized.class)
+public class BibtexParserTest {
+
+    private final boolean bufferMode;
+
+    private final int chunkSize;
+
+    public BibtexParserTest(String name, boolean bufferMode, int chunkSize) {
+        this.bufferMode = bufferMode;
+        this.chunkSize = chunkSize;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] {{"reader", false, 0}, {"buffer", true, 0}, {"parallel", true, 8}});
+    }
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    private BibtexParser parser(String s) {
+        if (bufferMode) {
+            BibtexParser parser = new BibtexParser(s.toCharArray(), s.length());
+            parser.setParallelChunkSize(chunkSize);
+            return parser;
+        }
+        return new BibtexParser(new StringReader(s));
+    }
+
+    private ParserResult parse(String s) throws IOException {
+        return parser(s).parse();
+    }
+
+    private BibtexEntry single(String s) throws IOException {
+        Collection<BibtexEntry> c = parse(s).getDatabase().getEntries();
+        assertEquals(1, c.size());
+        return c.iterator().next();
+    }
+
+    @Test
+    public void testSimpleEntry() throws IOException {
+        BibtexEntry e = single("@article{test,author={Ed von Test}}");
+        assertEquals(BibtexEntryType.ARTICLE, e.getType());
+        assertEquals("test", e.getCiteKey());
+        assertEquals(2, e.getAllFields().size());
+        assertEquals("Ed von Test", e.getField("author"));
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException {
+        ParserResult pr = parse("");
+        assertEquals(0, pr.getDatabase().getEntryCount());
+        assertEquals(0, pr.getDatabase().getStringCount());
+        assertNull(pr.getDatabase().getPreamble());
+    }
+
+    @Test
+    public void testMultipleEntriesAndWhitespace() throws IOException {
+        ParserResult pr = parse("junk before\n\n@article{a,\n  title = {One}\n}\n\t@BOOK ( b ,\n  title = \"Two\",\n)\n  trailing junk");
+        BibtexDatabase db = pr.getDatabase();
+        assertEquals(2, db.getEntryCount());
+        assertEquals("One", db.getEntryByKey("a").getField("title"));
+        assertEquals("Two", db.getEntryByKey("b").getField("title"));
+        assertEquals(BibtexEntryType.BOOK, db.getEntryByKey("b").getType());
+    }
+
+    @Test
+    public void testNestedBracesAndQuotes() throws IOException {
+        BibtexEntry e = single("@article{k, title={The {DNA} of {{Nested}} \"quotes\"}, note = \"a {\"} b\"}");
+        assertEquals("The {DNA} of {{Nested}} \"quotes\"", e.getField("title"));
+        // A quote ends a quoted value even inside braces:
+        assertEquals("a {", e.getField("note"));
+    }
+
+    @Test
+    public void testNumbersAndConcatenation() throws IOException {
+        ParserResult pr = parse("@string{me = \"Morten\"}\n@misc{k, year = 2015, author = me # \" Alver\", month = jan}");
+        BibtexEntry e = pr.getDatabase().getEntryByKey("k");
+        assertEquals("2015", e.getField("year"));
+        assertEquals("#me# Alver", e.getField("author"));
+        assertEquals("#jan#", e.getField("month"));
+        assertEquals("Morten Alver", pr.getDatabase().resolveForStrings(e.getField("author")));
+    }
+
+    @Test
+    public void testStringsAndPreamble() throws IOException {
+        ParserResult pr = parse("@preamble{\"\\newcommand{\\noop}[1]{}\"}\n@STRING( name = {Value} )\n@string{other = \"x\"}");
+        BibtexDatabase db = pr.getDatabase();
+        assertEquals("\"\\newcommand{\\noop}[1]{}\"", db.getPreamble());
+        assertEquals(2, db.getStringCount());
+        Set<String> names = new HashSet<String>();
+        for (String id : db.getStringKeySet()) {
+            names.add(db.getString(id).getName());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("name", "other")), names);
+    }
+
+    @Test
+    public void testDuplicateStringWarning() throws IOException {
+        ParserResult pr = parse("@string{a = {1}}@string{a = {2}}");
+        assertEquals(1, pr.getDatabase().getStringCount());
+        assertTrue(pr.hasWarnings());
+    }
+
+    @Test
+    public void testDuplicateKeys() throws IOException {
+        ParserResult pr = parse("@article{dup, title={1}}\n@article{dup, title={2}}\n@article{other, title={3}}");
+        assertEquals(3, pr.getDatabase().getEntryCount());
+        assertEquals(Collections.singletonList("dup"), pr.getDuplicateKeys() == null ? null : Arrays.asList(pr.getDuplicateKeys()));
+    }
+
+    @Test
+    public void testUnknownTypeBecomesOther() throws IOException {
+        ParserResult pr = parse("@nosuchtype{k, title={t}}");
+        assertEquals(BibtexEntryType.OTHER, pr.getDatabase().getEntryByKey("k").getType());
+        assertTrue(pr.hasWarnings());
+    }
+
+    @Test
+    public void testMultipleAuthorFieldsAreJoined() throws IOException {
+        BibtexEntry e = single("@article{k, author={A}, author={B}, title={T}, title={U}}");
+        assertEquals("A and B", e.getField("author"));
+        assertEquals("T", e.getField("title"));
+    }
+
+    @Test
+    public void testKeyWithMissingComma() throws IOException {
+        ParserResult pr = parse("@article{my key\n  title = {T}}");
+        BibtexEntry e = pr.getDatabase().getEntries().iterator().next();
+        assertEquals("mykey", e.getCiteKey());
+        assertEquals("T", e.getField("title"));
+        assertTrue(pr.hasWarnings());
+    }
+
+    @Test
+    public void testEntryWithoutKey() throws IOException {
+        ParserResult pr = parse("@article{, title = {No key}}");
+        BibtexEntry e = pr.getDatabase().getEntries().iterator().next();
+        assertNull(e.getCiteKey());
+        assertEquals("No key", e.getField("title"));
+        assertTrue(pr.hasWarnings());
+    }
+
+    @Test
+    public void testMetaDataAndCustomTypeComments() throws IOException {
+        ParserResult pr = parse("@article{k, title={T}}\n"
+                + "@comment{" + GUIGlobals.META_FLAG + "fileDirectory:/tmp/pdfs;}\n"
+                + "@comment{" + GUIGlobals.ENTRYTYPE_FLAG + "mytype: req[title] opt[year]}\n"
+                + "@mytype{m, title={M}}\n"
+                + "@comment{A plain comment}");
+        assertEquals(2, pr.getDatabase().getEntryCount());
+        assertEquals("/tmp/pdfs", pr.getMetaData().getData("fileDirectory").get(0));
+        assertEquals("mytype", pr.getDatabase().getEntryByKey("m").getType().getName().toLowerCase());
+        assertNotNull(pr.getEntryTypes().get("mytype"));
+    }
+
+    @Test
+    public void testJabRefVersion() throws IOException {
+        ParserResult pr = parse("% " + GUIGlobals.SIGNATURE + " 2.11.\n% Encoding: UTF8\n\n@article{k, title={T}}");
+        assertEquals("2.11", pr.getJabrefVersion());
+        assertEquals(2, pr.getJabrefMajorVersion());
+        assertEquals(11, pr.getJabrefMinorVersion());
+        assertEquals(1, pr.getDatabase().getEntryCount());
+    }
+
+    @Test
+    public void testUnterminatedEntryFails() throws IOException {
+        // Like the reader, every mode gives up on a file that ends inside a
+        // field value instead of skipping the entry:
+        try {
+            parse("@article{a, title={A}}\n@article{k, title={never closed");
+            fail("Unterminated entry was accepted");
+        } catch (RuntimeException ex) {
+            assertEquals("Error in line 2: EOF in mid-string", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testErrorReportsLineNumber() throws IOException {
+        ParserResult pr = parse("@article{a, title={A}}\n\n\n@article{b#c, title={B}}");
+        assertEquals(1, pr.getDatabase().getEntryCount());
+        assertTrue(pr.warnings()[0], pr.warnings()[0].contains("line 4"));
+    }
+
+    @Test
+    public void testSameResultsInBothModes() throws IOException {
+        String content = new String(java.nio.file.Files.readAllBytes(
+                new File("src/test/resources/testbib/testjabref.bib").toPath()), "UTF-8");
+        ParserResult reference = new BibtexParser(new StringReader(content)).parse();
+        ParserResult result = parse(content);
+        assertSameDatabase(reference.getDatabase(), result.getDatabase());
+    }
+
+    @Test
+    public void testVisitorSeesItemsInFileOrder() throws IOException {
+        final List<String> items = new ArrayList<String>();
+        parser("% This file was created with JabRef 2.10.\n"
+                + "@preamble{\"pre\"}\n"
+                + "@string{s = {Str}}\n"
+                + "@article{a, title={A}}\n"
+                + "@comment{jabref-meta: selector_journal:J;}\n"
+                + "@mytype{b, title={B}}\n"
+                + "@article{c#d, title={C}}\n"
+                + "@comment{jabref-entrytype: Mytype: req[title] opt[]}").parse(new BibtexVisitor() {
+
+            public void visitPreamble(String preamble) {
+                items.add("preamble " + preamble);
+            }
+
+            public void visitString(BibtexString string) {
+                items.add("string " + string.getName() + "=" + string.getContent());
+            }
+
+            public void visitEntry(BibtexEntry entry) {
+                items.add("entry " + entry.getType().getName() + " " + entry.getCiteKey());
+            }
+
+            public void visitMetaData(String key, String value) {
+                items.add("meta " + key + "=" + value);
+            }
+
+            public void visitEntryType(CustomEntryType type) {
+                items.add("type " + type.getName());
+            }
+
+            public void visitWarning(String warning) {
+                items.add("warning");
+            }
+        });
+        assertEquals(Arrays.asList("preamble \"pre\"", "string s=Str", "entry Article a",
+                "meta selector_journal=J;", "entry mytype b", "warning", "type Mytype"), items);
+    }
+
+    @Test
+    public void testVisitorSeesSameEntriesAsParse() throws IOException {
+        String content = new String(java.nio.file.Files.readAllBytes(
+                new File("src/test/resources/testbib/testjabref.bib").toPath()), "UTF-8");
+        ParserResult reference = parse(content);
+        final BibtexDatabase db = new BibtexDatabase();
+        parser(content).parse(new BibtexVisitor() {
+
+            public void visitPreamble(String preamble) {
+                db.setPreamble(preamble);
+            }
+
+            public void visitString(BibtexString string) {
+                db.addString(string);
+            }
+
+            public void visitEntry(BibtexEntry entry) {
+                db.insertEntry(entry);
+            }
+
+            public void visitMetaData(String key, String value) {
+            }
+
+            public void visitEntryType(CustomEntryType type) {
+            }
+
+            public void visitWarning(String warning) {
+            }
+        });
+        assertSameDatabase(reference.getDatabase(), db);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testVisitorAfterParseFails() throws IOException {
+        BibtexParser parser = parser("@article{a, title={A}}");
+        parser.parse();
+        parser.parse(new BibtexVisitor() {
+
+            public void visitPreamble(String preamble) {
+            }
+
+            public void visitString(BibtexString string) {
+            }
+
+            public void visitEntry(BibtexEntry entry) {
+            }
+
+            public void visitMetaData(String key, String value) {
+            }
+
+            public void visitEntryType(CustomEntryType type) {
+            }
+
+            public void visitWarning(String warning) {
+            }
+        });
+    }
+
+    @Test
+    public void testRepeatedValuesAreShared() throws IOException {
+        String s = "@article{a, journal={Same Journal}, title={A}}\n"
+                + "@article{b, journal={Same Journal}, title={B}}\n"
+                + "@article{c, journal={Same Journal}, title={C}}\n";
+        BibtexParser parser = parser(s);
+        FieldValuePool pool = new FieldValuePool();
+        parser.setValuePool(pool);
+        BibtexDatabase db = parser.parse().getDatabase();
+        assertSame(db.getEntryByKey("a").getField("journal"), db.getEntryByKey("c").getField("journal"));
+        assertEquals(3, pool.getLookups("journal"));
+        assertEquals(2, pool.getHits("journal"));
+
+        parser = parser(s);
+        parser.setValuePool(null);
+        db = parser.parse().getDatabase();
+        assertNotSame(db.getEntryByKey("a").getField("journal"), db.getEntryByKey("c").getField("journal"));
+        assertEquals(db.getEntryByKey("a").getField("journal"), db.getEntryByKey("c").getField("journal"));
+    }
+
+    @Test
+    public void testParseFile() throws IOException {
+        File file = File.createTempFile("jabref-parser", ".bib");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write("@article{k, author={Andreas Köning}, title={Ångström}}".getBytes("ISO-8859-1"));
+            } finally {
+                out.close();
+            }
+            BibtexEntry e = BibtexParser.parse(file, "ISO8859_1").getDatabase().getEntryByKey("k");
+            assertEquals("Andreas Köning", e.getField("author"));
+            assertEquals("Ångström", e.getField("title"));
+
+            try {
+                BibtexParser.parse(file, "no-such-encoding");
+                fail();
+            } catch (IOException ex) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testParallelParseMatchesSequential() throws IOException {
+        StringBuilder sb = new StringBuilder("% " + GUIGlobals.SIGNATURE + " 2.11.\n\n");
+        sb.append("@preamble{\"first\"}\n");
+        for (int i = 0; i < 300; i++) {
+            switch (i % 7) {
+            case 0:
+                sb.append("@string{s").append(i).append(" = {String ").append(i).append("}}\n");
+                sb.append("@string{S").append(i - 7).append(" = {Duplicate}}\n");
+                break;
+            case 1:
+                sb.append("@article{dup").append(i % 5).append(", title = {T").append(i).append("}}\n");
+                break;
+            case 2:
+                sb.append("@book{, title = \"No key ").append(i).append("\"}\n");
+                break;
+            case 3:
+                sb.append("@misc{broken key").append(i).append("\n  note = {Corrupted}}\n");
+                break;
+            case 4:
+                sb.append("@comment{" + GUIGlobals.META_FLAG + "m").append(i % 3).append(":v").append(i).append(";}\n");
+                break;
+            case 5:
+                sb.append("@article(paren").append(i).append(", author = s0 # {\nand @ more}, year = ").append(i).append(")\n");
+                break;
+            default:
+                sb.append("@inproceedings{k").append(i).append(",\n  title = {{Nested {braces}} ").append(i)
+                        .append("},\n  note = {Line\n@notAnEntry}\n}\n\n");
+            }
+        }
+        sb.append("@preamble{\"last\"}\n");
+        String content = sb.toString();
+
+        ParserResult sequential = new BibtexParser(new StringReader(content)).parse();
+        for (int size : new int[] {1, 100, 1000, 10000, content.length()}) {
+            BibtexParser parser = new BibtexParser(content.toCharArray(), content.length());
+            parser.setParallelChunkSize(size);
+            ParserResult parallel = parser.parse();
+
+            assertSameDatabase(sequential.getDatabase(), parallel.getDatabase());
+            assertEquals(citeKeysInIdOrder(sequential.getDatabase()), citeKeysInIdOrder(parallel.getDatabase()));
+            assertEquals(Arrays.asList(sequential.warnings()), Arrays.asList(parallel.warnings()));
+            assertEquals(Arrays.asList(sequential.getDuplicateKeys()), Arrays.asList(parallel.getDuplicateKeys()));
+            assertEquals(sequential.getJabrefVersion(), parallel.getJabrefVersion());
+            for (String key : Arrays.asList("m0", "m1", "m2")) {
+                assertEquals(sequential.getMetaData().getData(key), parallel.getMetaData().getData(key));
+            }
+            Map<String, String> strings = new HashMap<String, String>();
+            for (BibtexString string : parallel.getDatabase().getStringValues()) {
+                strings.put(string.getName(), string.getContent());
+            }
+            for (BibtexString string : sequential.getDatabase().getStringValues()) {
+                assertEquals(string.getContent(), strings.get(string.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelParseFallsBackOnBadChunkBoundary() throws IOException {
+        // The unbalanced brace in the quoted value makes the chunk scanner
+        // split inside the entry.
+        String content = "@article{a, note = \"x } y\",\n  title = {T},\n@ = {bad}}\n@article{b, title={B}}\n";
+        BibtexParser parser = new BibtexParser(content.toCharArray(), content.length());
+        parser.setParallelChunkSize(1);
+        try {
+            new BibtexParser(new StringReader(content)).parse();
+            fail();
+        } catch (RuntimeException expected) {
+            try {
+                parser.parse();
+                fail();
+            } catch (RuntimeException ex) {
+                assertEquals(expected.getMessage(), ex.getMessage());
+            }
+        }
+    }
+
+    private static List<String> citeKeysInIdOrder(BibtexDatabase db) {
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>(db.getEntries());
+        Collections.sort(entries, new Comparator<BibtexEntry>() {
+
+            @Override
+            public int compare(BibtexEntry e1, BibtexEntry e2) {
+                return e1.getId().compareTo(e2.getId());
+            }
+        });
+        List<String> keys = new ArrayList<String>();
+        for (BibtexEntry e : entries) {
+            keys.add(e.getCiteKey() + ":" + e.getField("title"));
+        }
+        return keys;
+    }
+
+    static void assertSameDatabase(BibtexDatabase expected, BibtexDatabase actual) {
+        assertEquals(expected.getEntryCount(), actual.getEntryCount());
+        assertEquals(expected.getPreamble(), actual.getPreamble());
+        assertEquals(expected.getStringCount(), actual.getStringCount());
+        Map<String, BibtexEntry> byKey = new HashMap<String, BibtexEntry>();
+        for (BibtexEntry e : actual.getEntries()) {
+            byKey.put(e.getCiteKey() + ":" + e.getField("title"), e);
+        }
+        for (BibtexEntry e : expected.getEntries()) {
+            BibtexEntry other = byKey.get(e.getCiteKey() + ":" + e.getField("title"));
+            assertNotNull(e.getCiteKey(), other);
+            assertEquals(e.getType().getName(), other.getType().getName());
+            assertEquals(e.getAllFields(), other.getAllFields());
+            for (String field : e.getAllFields()) {
+                assertEquals(e.getField(field), other.getField(field));
+            }
+        }
+    }
+}
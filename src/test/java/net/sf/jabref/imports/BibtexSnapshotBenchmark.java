@@ -0,0 +1,58 @@
+package net.sf.jabref.imports;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+
+/**
+ * Compares loading a generated database with BibtexParser and loading it
+ * from its BibtexSnapshot. Not part of the test suite; run it by hand with
+ * the number of entries as argument (default 150000).
+ */
+public class BibtexSnapshotBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 150000;
+        File file = File.createTempFile("jabref-snapshot", ".bib");
+        File snapshot = BibtexSnapshot.getSnapshotFile(file);
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(BibtexSnapshotTest.generate(count).getBytes("UTF-8"));
+            }
+
+            // Best of a few runs, so that warming up does not count:
+            long parseTime = Long.MAX_VALUE;
+            long writeTime = Long.MAX_VALUE;
+            long loadTime = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                ParserResult pr = BibtexParser.parse(file, "UTF8");
+                parseTime = Math.min(parseTime, System.nanoTime() - start);
+                pr.setEncoding("UTF8");
+                pr.setFile(file);
+
+                start = System.nanoTime();
+                BibtexSnapshot.write(pr);
+                writeTime = Math.min(writeTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                ParserResult loaded = BibtexSnapshot.load(file, "UTF8");
+                loadTime = Math.min(loadTime, System.nanoTime() - start);
+                if ((loaded == null) || (loaded.getDatabase().getEntryCount() != pr.getDatabase().getEntryCount())) {
+                    throw new IllegalStateException("Snapshot was not loaded");
+                }
+            }
+            System.out.println("Loading " + file.length() + " bytes, " + (count + 1) + " entries:");
+            System.out.println("Parser:   " + (parseTime / 1000000) + " ms");
+            System.out.println("Snapshot: " + (loadTime / 1000000) + " ms, " + snapshot.length()
+                    + " bytes, written in " + (writeTime / 1000000) + " ms");
+        } finally {
+            file.delete();
+            snapshot.delete();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package net.sf.jabref.imports;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BibtexSnapshotTest {
+
+    private File file;
+
+    private File snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        file = File.createTempFile("jabref-snapshot", ".bib");
+        snapshot = BibtexSnapshot.getSnapshotFile(file);
+        snapshot.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        snapshot.delete();
+        Globals.prefs = null;
+    }
+
+    static String generate(int count) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("% This file was created with JabRef 2.10.\n% Encoding: UTF8\n\n");
+        sb.append("@preamble{\"\\newcommand{\\noop}[1]{}\"}\n\n");
+        sb.append("@string{jnl = {Journal of Snapshots}}\n\n");
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                sb.append("@mytype{key").append(i).append(",\n");
+            } else {
+                sb.append("@article{key").append(i).append(",\n");
+            }
+            sb.append("  author = {Author, A. and Brother, B. and Other, ").append(i).append("},\n");
+            sb.append("  title = {A {T}itle with \\\"{u}mlauts and some more words, part ").append(i).append("},\n");
+            sb.append("  journal = jnl,\n");
+            sb.append("  keywords = {topic").append(i % 7).append("},\n");
+            sb.append("  year = ").append(1950 + (i % 70)).append("\n}\n\n");
+        }
+        sb.append("@article{key1,\n  title = {Duplicate}\n}\n\n");
+        sb.append("@comment{jabref-meta: selector_journal:Journal of Snapshots;}\n\n");
+        sb.append("@comment{jabref-meta: groupsversion:3;}\n\n");
+        sb.append("@comment{jabref-meta: groupstree:\n0 AllEntriesGroup:;\n");
+        sb.append("1 ExplicitGroup:Mine\\;0\\;key1\\;key2\\;;\n");
+        sb.append("1 KeywordGroup:Topic\\;0\\;keywords\\;topic3\\;0\\;0\\;;\n}\n\n");
+        sb.append("@comment{jabref-entrytype: Mytype: req[author;title] opt[year]}\n\n");
+        return sb.toString();
+    }
+
+    private void write(String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    /**
+     * Loads the file and waits for the snapshot written in the background.
+     */
+    private ParserResult load() throws IOException {
+        ParserResult pr = OpenDatabaseAction.loadDatabase(file, "UTF8");
+        try {
+            BibtexSnapshot.waitForWrites();
+        } catch (InterruptedException ex) {
+            throw new AssertionError(ex);
+        }
+        return pr;
+    }
+
+    private static void assertSameResult(ParserResult expected, ParserResult actual) {
+        BibtexParserTest.assertSameDatabase(expected.getDatabase(), actual.getDatabase());
+        assertEquals(Arrays.asList(expected.warnings()), Arrays.asList(actual.warnings()));
+        assertEquals(Arrays.asList(expected.getDuplicateKeys()), Arrays.asList(actual.getDuplicateKeys()));
+        assertEquals(expected.getJabrefVersion(), actual.getJabrefVersion());
+        assertEquals(expected.getJabrefMajorVersion(), actual.getJabrefMajorVersion());
+        assertEquals(expected.getJabrefMinorVersion(), actual.getJabrefMinorVersion());
+        assertEquals(expected.getEntryTypes().keySet(), actual.getEntryTypes().keySet());
+        for (String key : expected.getMetaData()) {
+            assertEquals(expected.getMetaData().getData(key), actual.getMetaData().getData(key));
+        }
+        assertEquals(expected.getMetaData().getGroups().getTreeAsString(),
+                actual.getMetaData().getGroups().getTreeAsString());
+        assertEquals(expected.getDatabase().getString(expected.getDatabase().getStringKeySet().iterator().next())
+                .getContent(), actual.getDatabase().getStringValues().iterator().next().getContent());
+    }
+
+    @Test
+    public void testSnapshotLoadsLargeDatabase() throws IOException {
+        write(generate(2000));
+
+        ParserResult parsed = load();
+        assertTrue(snapshot.isFile());
+        ParserResult cached = load();
+
+        assertEquals(2001, cached.getDatabase().getEntryCount());
+        assertEquals("Mytype", cached.getDatabase().getEntryByKey("key10").getType().getName());
+        assertSameResult(parsed, cached);
+    }
+
+    @Test
+    public void testBackgroundWriteIgnoresLaterChanges() throws IOException {
+        write(generate(20));
+        ParserResult parsed = OpenDatabaseAction.loadDatabase(file, "UTF8");
+        parsed.getDatabase().getEntryByKey("key3").setField("title", "Changed after loading");
+        try {
+            BibtexSnapshot.waitForWrites();
+        } catch (InterruptedException ex) {
+            throw new AssertionError(ex);
+        }
+
+        ParserResult cached = BibtexSnapshot.load(file, "UTF8");
+        assertNotNull(cached);
+        assertEquals("A {T}itle with \\\"{u}mlauts and some more words, part 3",
+                cached.getDatabase().getEntryByKey("key3").getField("title"));
+    }
+
+    @Test
+    public void testSnapshotIsUsedWhenValid() throws IOException {
+        write(generate(20));
+        BibtexSnapshot.write(load());
+        assertNotNull(BibtexSnapshot.load(file, "UTF8"));
+    }
+
+    @Test
+    public void testChangedContentInvalidatesSnapshot() throws IOException {
+        write(generate(20));
+        ParserResult parsed = load();
+        assertTrue(snapshot.isFile());
+
+        // Same size and time stamp, different content:
+        long lastModified = file.lastModified();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 200);
+            raf.write('X');
+        }
+        assertTrue(file.setLastModified(lastModified));
+        assertNull(BibtexSnapshot.load(file, "UTF8"));
+
+        write(generate(21));
+        assertNull(BibtexSnapshot.load(file, "UTF8"));
+        ParserResult reparsed = load();
+        assertEquals(parsed.getDatabase().getEntryCount() + 1, reparsed.getDatabase().getEntryCount());
+    }
+
+    @Test
+    public void testDifferentEncodingInvalidatesSnapshot() throws IOException {
+        write(generate(20));
+        BibtexSnapshot.write(load());
+        assertNull(BibtexSnapshot.load(file, "ISO8859_1"));
+    }
+
+    @Test
+    public void testCorruptSnapshotFallsBackToParser() throws IOException {
+        write(generate(20));
+        ParserResult parsed = load();
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        assertNull(BibtexSnapshot.load(file, "UTF8"));
+        assertSameResult(parsed, load());
+        assertNotNull(BibtexSnapshot.load(file, "UTF8"));
+    }
+
+    @Test
+    public void testSaveDeletesSnapshot() throws IOException {
+        write(generate(20));
+        load();
+        assertTrue(snapshot.isFile());
+
+        BibtexSnapshot.delete(file);
+        assertFalse(snapshot.exists());
+        assertNull(BibtexSnapshot.load(file, "UTF8"));
+        load();
+        assertTrue(snapshot.isFile());
+    }
+
+    @Test
+    public void testOnlyBibFilesAreCached() {
+        assertNull(BibtexSnapshot.getSnapshotFile(new File("jabref123.tmp")));
+        assertEquals(".refs.bib.snapshot", BibtexSnapshot.getSnapshotFile(new File("refs.bib")).getName());
+    }
+}
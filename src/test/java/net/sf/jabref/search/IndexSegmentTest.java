@@ -0,0 +1,174 @@
+package net.sf.jabref.search;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for IndexSegment: a SearchIndex loaded from an index file has to
+ * find the same entries as BasicSearch, and stale or broken index files must
+ * not be used.
+ */
+public class IndexSegmentTest {
+
+    private static final String[] QUERIES = {
+        "marine", "Marine", "arine", "larvi", "fish", "marine 2001 shields", "\"marine finfish\"",
+        "\"e finf\"", "ine fin", "schön", "Schön", "müller", "-", "x-ray", "ray", "-ray", "x-",
+        "europe", "shields01", "b)", "2001 2002", "", "ot h", "zyxwvut"
+    };
+
+    private File file;
+
+    private File indexFile;
+
+    private BibtexDatabase database;
+
+    @Before
+    public void setUp() throws IOException, KeyCollisionException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        file = File.createTempFile("jabref-index", ".bib");
+        indexFile = IndexSegment.getIndexFile(file);
+        indexFile.delete();
+        write("% The entries are made by the test.\n");
+        database = new BibtexDatabase();
+        database.insertEntry(makeEntry("shields01", "Marine finfish larviculture in Europe", "Kevin Shields", "2001"));
+        database.insertEntry(makeEntry("schoen02", "Sch{\\\"o}n und gut", "M{\\\"u}ller, Anna", "2002"));
+        database.insertEntry(makeEntry("ray03", "Hard X-ray spectra (a) and (b)", "Smith, J.", "2003"));
+        database.insertEntry(makeEntry("quote04", "\"quoted\" words, and the other half", "Doe", "2001"));
+        database.insertEntry(makeEntry("copy05", "Marine finfish larviculture in Europe", "Kevin Shields", "2001"));
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        indexFile.delete();
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSameResultsAsBasicSearch() {
+        SearchIndex.write(file, database);
+        assertTrue(indexFile.isFile());
+        SearchIndex index = SearchIndex.load(database, file);
+        assertNotNull(index);
+        assertSameResults(index);
+        assertEquals(new SearchIndex(database).getTermCount(), index.getTermCount());
+    }
+
+    @Test
+    public void testFollowsChanges() throws KeyCollisionException {
+        SearchIndex.write(file, database);
+        SearchIndex index = SearchIndex.load(database, file);
+        database.addDatabaseChangeListener(index);
+        assertSameResults(index);
+
+        BibtexEntry entry = database.getEntriesByKey("shields01")[0];
+        entry.setField("title", "Freshwater fish");
+        entry.setField("note", "zyxwvut larviculture");
+        database.removeEntry(database.getEntriesByKey("ray03")[0].getId());
+        database.insertEntry(makeEntry("new06", "An X-ray of marine life", "M{\\\"u}ller", "2005"));
+        assertSameResults(index);
+
+        entry.clearField("note");
+        assertSameResults(index);
+    }
+
+    @Test
+    public void testEntriesChangedBeforeLoading() throws KeyCollisionException {
+        SearchIndex.write(file, database);
+        database.getEntriesByKey("schoen02")[0].setField("title", "Marine X-ray");
+        database.removeEntry(database.getEntriesByKey("copy05")[0].getId());
+        database.insertEntry(makeEntry("new06", "Zyxwvut", "Shields", "2002"));
+        SearchIndex index = SearchIndex.load(database, file);
+        assertNotNull(index);
+        assertSameResults(index);
+    }
+
+    @Test
+    public void testStaleIndexFileIsNotUsed() throws IOException {
+        SearchIndex.write(file, database);
+        assertNotNull(SearchIndex.load(database, file));
+
+        // Same size and time stamp, but different content:
+        long lastModified = file.lastModified();
+        write("% The entries are made by the TEST.\n");
+        file.setLastModified(lastModified);
+        assertNull(SearchIndex.load(database, file));
+    }
+
+    @Test
+    public void testBrokenIndexFileIsNotUsed() throws IOException {
+        SearchIndex.write(file, database);
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        assertNull(SearchIndex.load(database, file));
+    }
+
+    @Test
+    public void testOnlyBibFilesGetIndexFiles() {
+        assertNull(IndexSegment.getIndexFile(new File("database.txt")));
+        assertEquals(".database.bib.index", IndexSegment.getIndexFile(new File("database.bib")).getName());
+    }
+
+    @Test
+    public void testLoadedIndexFindsSameAsBuilt() throws KeyCollisionException {
+        BibtexDatabase large = new BibtexDatabase();
+        for (int i = 0; i < 2000; i++) {
+            large.insertEntry(makeEntry("key" + i, "A {T}itle with \\\"{u}mlauts and some more words, part " + i,
+                    "Author, A. and Brother, B. and Other, " + i, String.valueOf(1950 + (i % 70))));
+        }
+        SearchIndex.write(file, large);
+        BasicSearch search = new BasicSearch(false, false);
+
+        Set<BibtexEntry> built = search.findMatches(new SearchIndex(large),
+                Collections.singletonMap("1", "part 1234"));
+        Set<BibtexEntry> loaded = search.findMatches(SearchIndex.load(large, file),
+                Collections.singletonMap("1", "part 1234"));
+        assertEquals(1, built.size());
+        assertEquals(built, loaded);
+    }
+
+    private void assertSameResults(SearchIndex index) {
+        for (boolean caseSensitive : new boolean[] {false, true}) {
+            BasicSearch search = new BasicSearch(caseSensitive, false);
+            for (String query : QUERIES) {
+                Set<BibtexEntry> expected = new HashSet<>();
+                for (BibtexEntry entry : database.getEntries()) {
+                    if (search.applyRule(query, entry) > 0) {
+                        expected.add(entry);
+                    }
+                }
+                Set<BibtexEntry> found = new HashSet<>(search.findMatches(index,
+                        Collections.singletonMap("1", query)));
+                assertEquals("Query " + query + (caseSensitive ? ", case sensitive" : ""), expected, found);
+            }
+        }
+    }
+
+    private void write(String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    private static BibtexEntry makeEntry(String key, String title, String author, String year) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        e.setField("bibtexkey", key);
+        e.setField("title", title);
+        e.setField("author", author);
+        e.setField("year", year);
+        return e;
+    }
+}
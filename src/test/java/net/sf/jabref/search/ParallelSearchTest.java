@@ -0,0 +1,96 @@
+package net.sf.jabref.search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test case for ParallelSearch, which has to find the same entries as
+ * applying the rule to one entry after the other.
+ */
+public class ParallelSearchTest {
+
+    private List<BibtexEntry> entries;
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+            e.setField("bibtexkey", "key" + i);
+            e.setField("title", "Title " + i);
+            e.setField("author", (i % 7 == 0) ? "Smith" : "Doe");
+            e.setField("year", String.valueOf(1950 + (i % 70)));
+            entries.add(e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSameResultsAsSequentialSearch() throws Exception {
+        assertSameResults(new BasicSearch(false, false), "smith 19");
+        assertSameResults(new BasicSearch(false, true), "sm.th 19[0-9]5");
+        assertSameResults(new SearchExpression(Globals.prefs, options("author=smith and year=19.5")),
+                "author=smith and year=19.5");
+        assertSameResults(new SearchExpression(Globals.prefs, options("author=smith or title=\"title 1\"")),
+                "author=smith or title=\"title 1\"");
+    }
+
+    @Test
+    public void testEntriesAreNotChanged() {
+        Set<String> fields = entries.get(0).getAllFields();
+        new ParallelSearch(new BasicSearch(false, false), options("smith")).search(entries);
+        assertEquals(fields, entries.get(0).getAllFields());
+    }
+
+    @Test
+    public void testCancel() {
+        ParallelSearch search = new ParallelSearch(new BasicSearch(false, false), options("smith"));
+        assertFalse(search.isCancelled());
+        search.cancel();
+        assertTrue(search.isCancelled());
+        try {
+            search.search(entries);
+            fail("A cancelled search should not return hits");
+        } catch (CancellationException ex) {
+            // expected
+        }
+    }
+
+    private void assertSameResults(SearchRule rule, String query) {
+        Hashtable<String, String> options = options(query);
+        assertTrue(rule.validateSearchStrings(options));
+        Set<BibtexEntry> expected = new HashSet<>();
+        for (BibtexEntry entry : entries) {
+            if (rule.applyRule(options, entry) > 0) {
+                expected.add(entry);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(query, expected, new ParallelSearch(rule, options).search(entries));
+    }
+
+    private static Hashtable<String, String> options(String query) {
+        Hashtable<String, String> options = new Hashtable<>();
+        options.put("option", query);
+        return options;
+    }
+}
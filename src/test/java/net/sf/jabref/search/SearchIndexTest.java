@@ -0,0 +1,122 @@
+package net.sf.jabref.search;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test case for SearchIndex, which has to find the same entries as
+ * BasicSearch does when applied to every entry.
+ */
+public class SearchIndexTest {
+
+    private static final String[] QUERIES = {
+        "marine", "Marine", "MARINE", "arine", "larvi", "culture", "fish",
+        "marine 2001 shields", "\"marine finfish\"", "\"e finf\"", "\"marine larviculture\"",
+        "ine fin", "schön", "Schön", "müller", "-", "x-ray", "ray", "-ray", "x-",
+        "\"in Europe\"", "europe", "shields01", "{", "b)", "(a", "2001 2002", "", "  ",
+        "\"\"", "\\\"quoted", "ot h"
+    };
+
+    private BibtexDatabase database;
+
+    private SearchIndex index;
+
+    @Before
+    public void setUp() throws KeyCollisionException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        database.insertEntry(makeEntry("shields01", "Marine finfish larviculture in Europe", "Kevin Shields", "2001"));
+        database.insertEntry(makeEntry("schoen02", "Sch{\\\"o}n und gut", "M{\\\"u}ller, Anna", "2002"));
+        database.insertEntry(makeEntry("ray03", "Hard X-ray spectra (a) and (b)", "Smith, J.", "2003"));
+        database.insertEntry(makeEntry("quote04", "\"quoted\" words, and the other half", "Doe", "2001"));
+        index = new SearchIndex(database);
+        database.addDatabaseChangeListener(index);
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSameResultsAsBasicSearch() {
+        assertSameResults();
+    }
+
+    @Test
+    public void testFollowsChanges() throws KeyCollisionException {
+        assertSameResults();
+
+        BibtexEntry entry = database.getEntriesByKey("shields01")[0];
+        entry.setField("title", "Freshwater fish");
+        entry.setField("note", "marine larviculture");
+        database.removeEntry(database.getEntriesByKey("ray03")[0].getId());
+        database.insertEntry(makeEntry("new05", "An X-ray of marine life", "M{\\\"u}ller", "2005"));
+        assertSameResults();
+
+        entry.clearField("note");
+        assertSameResults();
+    }
+
+    @Test
+    public void testTermCount() {
+        int terms = index.getTermCount();
+        database.getEntriesByKey("shields01")[0].setField("note", "zyxwvut");
+        assertEquals(terms + 1, index.getTermCount());
+        database.getEntriesByKey("shields01")[0].clearField("note");
+        assertEquals(terms, index.getTermCount());
+    }
+
+    @Test
+    public void testCancelledSearchLeavesIndexUsable() throws KeyCollisionException {
+        for (int i = 0; i < 1000; i++) {
+            database.insertEntry(makeEntry("key" + i, "Marine title " + i, "Smith, J.", "2001"));
+        }
+        ParallelSearch cancelled = new ParallelSearch(new BasicSearch(false, false),
+                Collections.singletonMap("1", "marine"));
+        cancelled.cancel();
+        try {
+            index.search(Collections.singletonList("marine"), false, null, cancelled);
+            fail("Cancelled search returned");
+        } catch (CancellationException ex) {
+            // Expected.
+        }
+        assertSameResults();
+    }
+
+    private void assertSameResults() {
+        for (boolean caseSensitive : new boolean[] {false, true}) {
+            BasicSearch search = new BasicSearch(caseSensitive, false);
+            for (String query : QUERIES) {
+                Set<BibtexEntry> expected = new HashSet<>();
+                for (BibtexEntry entry : database.getEntries()) {
+                    if (search.applyRule(query, entry) > 0) {
+                        expected.add(entry);
+                    }
+                }
+                Set<BibtexEntry> found = new HashSet<>(search.findMatches(index,
+                        Collections.singletonMap("1", query)));
+                assertEquals("Query " + query + (caseSensitive ? ", case sensitive" : ""), expected, found);
+            }
+        }
+    }
+
+    private static BibtexEntry makeEntry(String key, String title, String author, String year) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+        e.setField("bibtexkey", key);
+        e.setField("title", title);
+        e.setField("author", author);
+        e.setField("year", year);
+        return e;
+    }
+}
@@ -0,0 +1,91 @@
+package net.sf.jabref.search;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.jabref.*;
+import antlr.collections.AST;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test case for SearchPredicate, which has to give the same results as
+ * SearchExpressionTreeParser.
+ */
+public class SearchPredicateTest {
+
+    private static final String[] EXPRESSIONS = {
+        "author=smith", "author==smith", "author matches smith", "author contains smi",
+        "author!=smith", "note!=anything", "title=\"the title\"", "title=\"The Title\"",
+        "a.*=smith", "author|editor=doe", "entrytype=article", "entrytype=book",
+        "entrytype==article", "any=smith", "year=19.5", "year=200[0-9]",
+        "author=smith and year=1995", "author=smith or author=doe", "not author=smith",
+        "not (author=smith or year=2001)", "(author=doe and year=2001) or title=last",
+        "author=smith and year=1995 and title=the", "author=doe or year=1995 or title=last",
+        "not note=x and author=doe", "pages=\"1--5\""
+    };
+
+    private List<BibtexEntry> entries;
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        entries = new ArrayList<>();
+        entries.add(makeEntry(BibtexEntryType.ARTICLE, "Smith, John", "The Title", "1995"));
+        entries.add(makeEntry(BibtexEntryType.BOOK, "Doe, Jane", "Another title", "2001"));
+        entries.add(makeEntry(BibtexEntryType.ARTICLE, "Smith", "Last one", "2005"));
+        BibtexEntry e = makeEntry(BibtexEntryType.ARTICLE, null, "No author", "1995");
+        e.setField("editor", "Doe, John");
+        e.setField("pages", "1--5");
+        e.setField("note", "x");
+        entries.add(e);
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testSameResultsAsTreeParser() throws Exception {
+        for (boolean caseSensitive : new boolean[] {false, true}) {
+            for (boolean regex : new boolean[] {false, true}) {
+                for (String expression : EXPRESSIONS) {
+                    AST ast = parse(expression, caseSensitive, regex);
+                    SearchPredicate predicate = SearchPredicate.compile(ast);
+                    for (BibtexEntry entry : entries) {
+                        boolean expected = new SearchExpressionTreeParser().apply(ast, entry) > 0;
+                        assertEquals(expression + " on " + entry.getCiteKey() + ", case sensitive "
+                                + caseSensitive + ", regex " + regex, expected, predicate.matches(entry));
+                        // Again, now that the fields are resolved:
+                        assertEquals(expected, predicate.matches(entry));
+                    }
+                }
+            }
+        }
+    }
+
+    private static AST parse(String expression, boolean caseSensitive, boolean regex) throws Exception {
+        SearchExpressionParser parser = new SearchExpressionParser(new SearchExpressionLexer(
+                new StringReader(expression)));
+        parser.caseSensitive = caseSensitive;
+        parser.regex = regex;
+        parser.searchExpression();
+        return parser.getAST();
+    }
+
+    private BibtexEntry makeEntry(BibtexEntryType type, String author, String title, String year) {
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), type);
+        e.setField("bibtexkey", "key" + entries.size());
+        if (author != null) {
+            e.setField("author", author);
+        }
+        e.setField("title", title);
+        e.setField("year", year);
+        return e;
+    }
+}
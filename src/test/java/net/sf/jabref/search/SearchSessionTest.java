@@ -0,0 +1,88 @@
+package net.sf.jabref.search;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jabref.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test case for SearchSession, which has to find the same entries as
+ * BasicSearch while reusing earlier results.
+ */
+public class SearchSessionTest {
+
+    private BibtexDatabase database;
+
+    private SearchSession session;
+
+    @Before
+    public void setUp() throws KeyCollisionException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        for (int i = 0; i < 200; i++) {
+            BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.ARTICLE);
+            e.setField("bibtexkey", "key" + i);
+            e.setField("title", (i % 3 == 0 ? "Neural networks " : "Neutral results ") + i);
+            e.setField("author", i % 5 == 0 ? "Smith" : "Doe");
+            database.insertEntry(e);
+        }
+        SearchIndex index = new SearchIndex(database);
+        database.addDatabaseChangeListener(index);
+        session = new SearchSession(database, index);
+    }
+
+    @After
+    public void tearDown() {
+        Globals.prefs = null;
+    }
+
+    @Test
+    public void testRefinedAndWidenedQueries() {
+        for (String query : new String[] {"n", "ne", "neu", "neur", "neura", "neural", "neural smith",
+                "neural smi", "neu", "neut", "\"neutral results 1\"", "neutral 1", "", "smith"}) {
+            assertSameResults(new BasicSearch(false, false), query);
+            assertSameResults(new BasicSearch(true, false), query);
+        }
+    }
+
+    @Test
+    public void testResultsAreKeptUntilTheDatabaseChanges() throws KeyCollisionException {
+        BasicSearch search = new BasicSearch(false, false);
+        Set<BibtexEntry> neural = session.search(search, query("neural"));
+        assertSame(neural, session.search(search, query("neural")));
+
+        database.getEntriesByKey("key1")[0].setField("title", "Neural now");
+        assertNotSame(neural, session.search(search, query("neural")));
+        assertSameResults(search, "neural");
+        assertSameResults(search, "neural now");
+
+        BibtexEntry e = new BibtexEntry(Util.createNeutralId(), BibtexEntryType.BOOK);
+        e.setField("title", "Neural nowhere");
+        database.insertEntry(e);
+        assertSameResults(search, "neural now");
+        assertSameResults(search, "neural nowh");
+    }
+
+    private void assertSameResults(BasicSearch search, String query) {
+        Set<BibtexEntry> expected = new HashSet<>();
+        for (BibtexEntry entry : database.getEntries()) {
+            if (search.applyRule(query, entry) > 0) {
+                expected.add(entry);
+            }
+        }
+        assertEquals(query, expected, new HashSet<>(session.search(search, query(query))));
+    }
+
+    private static Map<String, String> query(String query) {
+        return Collections.singletonMap("1", query);
+    }
+}
@@ -0,0 +1,109 @@
+package net.sf.jabref.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PersistentHashMapTest {
+
+    /**
+     * A key with a chosen hash code, to get collisions.
+     */
+    private static class Key {
+
+        private final int hash;
+
+        private final String name;
+
+        Key(int hash, String name) {
+            this.hash = hash;
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key) && ((Key) o).name.equals(name);
+        }
+    }
+
+    @Test
+    public void testPlusAndMinus() {
+        PersistentHashMap<String, String> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, String> one = empty.plus("a", "1");
+        PersistentHashMap<String, String> two = one.plus("b", "2");
+        PersistentHashMap<String, String> changed = two.plus("a", "3");
+
+        assertEquals(0, empty.size());
+        assertNull(empty.get("a"));
+        assertEquals(1, one.size());
+        assertEquals("1", one.get("a"));
+        assertNull(one.get("b"));
+        assertEquals(2, two.size());
+        assertEquals("1", two.get("a"));
+        assertEquals(2, changed.size());
+        assertEquals("3", changed.get("a"));
+
+        assertSame(two, two.minus("x"));
+        PersistentHashMap<String, String> removed = changed.minus("a");
+        assertEquals(1, removed.size());
+        assertFalse(removed.containsKey("a"));
+        assertTrue(removed.containsKey("b"));
+        assertEquals(0, removed.minus("b").size());
+        // The older versions are unchanged:
+        assertEquals("1", two.get("a"));
+        assertEquals("3", changed.get("a"));
+    }
+
+    @Test
+    public void testCollisions() {
+        Key a = new Key(42, "a");
+        Key b = new Key(42, "b");
+        Key c = new Key(42 + (1 << 20), "c");
+        PersistentHashMap<Key, String> map = PersistentHashMap.<Key, String>empty().plus(a, "a").plus(b, "b")
+                .plus(c, "c");
+        assertEquals(3, map.size());
+        assertEquals("a", map.get(new Key(42, "a")));
+        assertEquals("b", map.get(b));
+        assertEquals("c", map.get(c));
+        assertNull(map.get(new Key(42, "d")));
+
+        map = map.minus(a);
+        assertEquals(2, map.size());
+        assertNull(map.get(a));
+        assertEquals("b", map.get(b));
+        assertEquals(2, map.asMap().entrySet().size());
+        assertEquals(new HashMap<Key, String>(map.asMap()).keySet(), map.asMap().keySet());
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        Random random = new Random(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100000; i++) {
+            Integer key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 5000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        // Iteration visits every entry once:
+        assertEquals(expected, new HashMap<>(map.asMap()));
+    }
+}